@@ -1,14 +1,24 @@
 package webdata;
 
 import webdata.dictionary.Dictionary;
+import webdata.dictionary.LevenshteinAutomaton;
+import webdata.inverted_index.PositionalPostingsCursor;
+import webdata.inverted_index.PostingsCursor;
+import webdata.search.UnionPostingsCursor;
+import webdata.search.WildcardPattern;
 import webdata.storage.ProductIdToDocIdMapper;
 import webdata.storage.ReviewStorage;
 
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Enumeration;
-import java.util.stream.Stream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Spliterators;
+import java.util.stream.IntStream;
 
 public class IndexReader {
 
@@ -20,8 +30,16 @@ public class IndexReader {
 	* Creates an IndexReader which will read from the given directory
 	*/
 	public IndexReader(String dir) {
+		this(dir, Dictionary.DEFAULT_POSTINGS_CACHE_BYTES);
+	}
+
+	/**
+	* Creates an IndexReader which will read from the given directory, caching up to
+	* 'postingsCacheBytes' bytes of decoded posting lists (0 disables caching)
+	*/
+	public IndexReader(String dir, long postingsCacheBytes) {
 		try {
-			dictionary = new Dictionary(dir);
+			dictionary = new Dictionary(dir, postingsCacheBytes);
 			storage = ReviewStorage.inDirectory(dir);
 			prodToDoc = new ProductIdToDocIdMapper(dir);
 		} catch (IOException ex) {
@@ -122,18 +140,142 @@ public class IndexReader {
 	* Returns an empty Enumeration if there are no reviews containing this token
 	*/
 	public Enumeration<Integer> getReviewsWithToken(String token) {
+		return PostingsCursor.asDocIdFreqEnumeration(getCachedPostings(token));
+	}
+
+	/**
+	* Returns a cursor over the reviews containing a given token, along with the
+	* number of times the token appears in each of them, sorted by review id.
+	* Unlike {@link #getReviewsWithToken(String)}, doesn't box integers.
+	*
+	* Returns an empty cursor if there are no reviews containing this token
+	*/
+	public PostingsCursor getPostings(String token) {
 		token = token.toLowerCase();
 		int dictIndex = dictionary.getIndexOfToken(token);
 		if (dictIndex < 0) {
-			return Utils.streamToEnumeration(Stream.empty());
+			return PostingsCursor.empty();
 		}
-		try {
-			return dictionary.getDocIdsAndFreqs(dictIndex);
-		} catch (IOException e) {
-			System.err.format("Got IO exception while trying to get reviews with token %s: %s",
-					token, e);
-			return Utils.streamToEnumeration(Stream.empty());
+		return dictionary.getPostings(dictIndex);
+	}
+
+	/**
+	* Same as {@link #getPostings(String)}, but frequently used posting lists are served
+	* decoded from the postings cache. Only meant for reading whole posting lists, since
+	* the cached ones can't skip (see {@link Dictionary#getCachedPostings(int)})
+	*/
+	public PostingsCursor getCachedPostings(String token) {
+		token = token.toLowerCase();
+		int dictIndex = dictionary.getIndexOfToken(token);
+		if (dictIndex < 0) {
+			return PostingsCursor.empty();
+		}
+		return dictionary.getCachedPostings(dictIndex);
+	}
+
+	/**
+	* Returns a cursor over the reviews containing a given token, which can also read
+	* the positions of the token within every review.
+	*
+	* Returns an empty cursor if there are no reviews containing this token
+	* @throws UnsupportedOperationException If the index doesn't store positions
+	*/
+	public PositionalPostingsCursor getPositionalPostings(String token) {
+		token = token.toLowerCase();
+		int dictIndex = dictionary.getIndexOfToken(token);
+		if (dictIndex < 0) {
+			return PositionalPostingsCursor.empty();
+		}
+		return dictionary.getPositionalPostings(dictIndex);
+	}
+
+	/**
+	* Returns the dictionary indices of the terms matching a wildcard pattern (see {@link WildcardPattern}),
+	* in increasing (lexicographic) order. Only the terms beginning with the pattern's literal prefix are
+	* enumerated, and enumeration stops after 'maxExpansions' matches, so a pattern like "a*" yields the
+	* lexicographically first 'maxExpansions' terms rather than every term beginning with 'a'.
+	*
+	* Note: A pattern beginning with a wildcard (e.g "*cake") has no literal prefix, so its
+	* candidates are all terms of the dictionary - they're scanned in order until 'maxExpansions'
+	* matches are found, so a rarely matched pattern may scan the whole dictionary.
+	*/
+	public int[] expandWildcard(String pattern, int maxExpansions) {
+		var wildcard = new WildcardPattern(pattern.toLowerCase());
+		int[] range = dictionary.prefixRange(wildcard.getLiteralPrefix());
+		if (wildcard.isPrefixPattern()) {
+			return IntStream.range(range[0], range[1]).limit(maxExpansions).toArray();
+		}
+		return matchTerms(Spliterators.iterator(dictionary.terms(range[0], range[1])), range[0], wildcard,
+				maxExpansions);
+	}
+
+	/**
+	* Returns the indices of the terms matching a wildcard pattern, consuming terms only until
+	* 'maxExpansions' matches are found
+	* @param terms Terms in dictionary order, along with anything
+	* @param fromIndex Dictionary index of the first term
+	*/
+	static int[] matchTerms(Iterator<? extends Map.Entry<String, ?>> terms, int fromIndex, WildcardPattern wildcard,
+							int maxExpansions) {
+		var matches = IntStream.builder();
+		int numMatches = 0;
+		for (int index = fromIndex; numMatches < maxExpansions && terms.hasNext(); ++index) {
+			if (wildcard.matches(terms.next().getKey())) {
+				matches.add(index);
+				++numMatches;
+			}
+		}
+		return matches.build().toArray();
+	}
+
+	/**
+	* Returns a cursor over the reviews containing any of the terms matching a wildcard pattern (see
+	* {@link #expandWildcard(String, int)}), where the frequency of every review is the sum of the frequencies
+	* of said terms within it. The posting lists are merged lazily (see {@link UnionPostingsCursor}).
+	*
+	* Returns an empty cursor if no term matches the pattern
+	*/
+	public PostingsCursor getWildcardPostings(String pattern, int maxExpansions) {
+		var cursors = new ArrayList<PostingsCursor>();
+		for (int dictIndex : expandWildcard(pattern, maxExpansions)) {
+			cursors.add(dictionary.getPostings(dictIndex));
+		}
+		return new UnionPostingsCursor(cursors);
+	}
+
+	/**
+	* Returns the dictionary indices of the terms within an edit distance of 'maxEdits' from a token (see
+	* {@link LevenshteinAutomaton}), at most 'maxExpansions' of them. Candidates are ranked by their distance,
+	* and equally distant ones by their document frequency (descending), since a typo is usually rarer than the
+	* word it was meant to be, such that "delicous" prefers "delicious" over other rare misspellings.
+	*/
+	public int[] expandFuzzy(String token, int maxEdits, int maxExpansions) {
+		var candidates = new ArrayList<long[]>();
+		dictionary.forEachWithinDistance(token.toLowerCase(), maxEdits, (index, distance) ->
+				candidates.add(new long[]{index, distance, dictionary.getTokenFrequency(index)}));
+		return candidates.stream()
+				.sorted(Comparator.<long[]>comparingLong(candidate -> candidate[1])
+						.thenComparing(Comparator.<long[]>comparingLong(candidate -> candidate[2]).reversed())
+						.thenComparingLong(candidate -> candidate[0]))
+				.limit(maxExpansions)
+				.mapToInt(candidate -> (int) candidate[0])
+				.sorted()
+				.toArray();
+	}
+
+	/**
+	* Returns a cursor over the reviews containing any of the terms within an edit distance of 'maxEdits' from
+	* a token (see {@link #expandFuzzy(String, int, int)}), where the frequency of every review is the sum of
+	* the frequencies of said terms within it.
+	*
+	* Returns an empty cursor if no term is close enough to the token
+	*/
+	public PostingsCursor getFuzzyPostings(String token, int maxEdits, int maxExpansions) {
+		var cursors = new ArrayList<PostingsCursor>();
+		for (int dictIndex : expandFuzzy(token, maxEdits, maxExpansions)) {
+			cursors.add(dictionary.getPostings(dictIndex));
 		}
+		return new UnionPostingsCursor(cursors);
 	}
 
 	/**
@@ -1,9 +1,12 @@
 package webdata;
 
-import webdata.parsing.LinesMemoryParser;
+import webdata.dictionary.Dictionary;
+import webdata.inverted_index.PostingsFormat;
+import webdata.parsing.ParallelReviewParser;
 import webdata.parsing.Review;
 import webdata.parsing.SequentialReviewParser;
 import webdata.spimi.SPIMIIndexer;
+import webdata.spimi.TemporaryIndexBuilder;
 import webdata.storage.CompactReview;
 import webdata.storage.ProductIdToDocIdMapper;
 import webdata.storage.ReviewStorage;
@@ -17,6 +20,52 @@ import java.util.stream.Stream;
 
 public class IndexWriter {
 
+	private final PostingsFormat postingsFormat;
+	private final int dictionaryBlockSize;
+	private final int indexingThreads;
+	private final long indexingMemoryBytes;
+
+	public IndexWriter() {
+		this(PostingsFormat.DEFAULT);
+	}
+
+	/** Creates a writer whose index will use the given posting lists format */
+	public IndexWriter(PostingsFormat postingsFormat) {
+		this(postingsFormat, Dictionary.DEFAULT_BLOCK_SIZE);
+	}
+
+	/** Creates a writer whose index will use the given posting lists format, and the given number of terms in every
+	 *  block of the dictionary */
+	public IndexWriter(PostingsFormat postingsFormat, int dictionaryBlockSize) {
+		this(postingsFormat, dictionaryBlockSize, SPIMIIndexer.DEFAULT_NUM_THREADS);
+	}
+
+	/** Same as {@link #IndexWriter(PostingsFormat, int)}, inverting the reviews' tokens into temporary indices on the
+	 *  given number of threads */
+	public IndexWriter(PostingsFormat postingsFormat, int dictionaryBlockSize, int indexingThreads) {
+		this(postingsFormat, dictionaryBlockSize, indexingThreads, TemporaryIndexBuilder.defaultMemoryBudget());
+	}
+
+	/** Same as {@link #IndexWriter(PostingsFormat, int, int)}, writing a temporary index whenever the in-memory ones
+	 *  take the given number of bytes(as estimated by {@link TemporaryIndexBuilder}) */
+	public IndexWriter(PostingsFormat postingsFormat, int dictionaryBlockSize, int indexingThreads,
+					   long indexingMemoryBytes) {
+		if (dictionaryBlockSize < 1) {
+			throw new IllegalArgumentException("Dictionary block size must be positive, got " + dictionaryBlockSize);
+		}
+		if (indexingThreads < 1) {
+			throw new IllegalArgumentException("Number of indexing threads must be positive, got " + indexingThreads);
+		}
+		if (indexingMemoryBytes < indexingThreads) {
+			throw new IllegalArgumentException("Indexing memory must be positive for every thread, got " +
+					indexingMemoryBytes + " bytes for " + indexingThreads + " threads");
+		}
+		this.postingsFormat = postingsFormat;
+		this.dictionaryBlockSize = dictionaryBlockSize;
+		this.indexingThreads = indexingThreads;
+		this.indexingMemoryBytes = indexingMemoryBytes;
+	}
+
 	/**
 	 * Given product review data, creates an on disk index
 	 * inputFile is the path to the file containing the review data
@@ -28,9 +77,9 @@ public class IndexWriter {
 			Charset inputFileCharset = StandardCharsets.ISO_8859_1;
 
 //          var reviewStream = new SequentialReviewParser(8192, inputFileCharset).parse(inputFile);
-			var reviewStream = new LinesMemoryParser().parse(Path.of(inputFile), inputFileCharset);
-
-			writeFromReviews(reviewStream, dir);
+			try (var reviewStream = new ParallelReviewParser(inputFileCharset, postingsFormat.hasPositions()).parse(Path.of(inputFile))) {
+				writeFromReviews(reviewStream, dir);
+			}
 		} catch (IOException ex) {
 			System.err.println("Got IO exception during slowWrite:\n" + ex);
 		}
@@ -40,7 +89,8 @@ public class IndexWriter {
 		removeIndex(dir);
 		Files.createDirectories(Path.of(dir));
 
-		var indexer = new SPIMIIndexer(Path.of(dir));
+		var indexer = new SPIMIIndexer(Path.of(dir), postingsFormat, dictionaryBlockSize, indexingThreads,
+				indexingMemoryBytes);
 		try (var storage = ReviewStorage.inDirectory(dir);
 			 var mapper = new ProductIdToDocIdMapper(dir)) {
 
@@ -56,9 +106,10 @@ public class IndexWriter {
 						if (docId[0] % 100000 == 0) {
 							Utils.log("== Processed a total of %,d reviews ==", docId[0]);
 						}
-					})
-					.flatMap(Review::uniqueTokens);
-			indexer.processTokens(stream);
+					});
+			// reviews are read(and stored) in order, but may be tokenized by several indexing threads
+			indexer.processDocuments(stream,
+					postingsFormat.hasPositions() ? Review::uniqueTokensWithPositions : Review::uniqueTokens);
 			mapper.externalSort();
 		}
 	}
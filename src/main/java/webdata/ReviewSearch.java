@@ -1,23 +1,49 @@
 package webdata;
 
+import webdata.inverted_index.PositionalPostingsCursor;
+import webdata.inverted_index.PostingsCursor;
+import webdata.search.BlockMaxWand;
+import webdata.search.PhraseQuery;
 import webdata.search.SparseVector;
+import webdata.search.WildcardPattern;
 
 import java.util.*;
 import java.util.function.Function;
 import java.util.function.ToDoubleFunction;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 
 public class ReviewSearch {
+    /** Maximal number of terms a wildcard or fuzzy query term expands to by default */
+    public static final int DEFAULT_MAX_EXPANSIONS = 1024;
+
     private final IndexReader reader;
 
     private final long corpusSize;
 
+    private final int maxExpansions;
+
     /*** Constructor
      */
     public ReviewSearch(IndexReader iReader) {
+        this(iReader, DEFAULT_MAX_EXPANSIONS);
+    }
+
+    /**
+     * @param iReader Index reader
+     * @param maxExpansions Maximal number of terms a wildcard or fuzzy query term expands to, bounding the number of
+     *                      posting lists merged for a pattern like "a*"
+     *                      (see {@link IndexReader#expandWildcard(String, int)})
+     */
+    public ReviewSearch(IndexReader iReader, int maxExpansions) {
+        if (maxExpansions < 1) {
+            throw new IllegalArgumentException("The maximal number of expansions must be positive, got " +
+                    maxExpansions);
+        }
         this.reader = iReader;
         this.corpusSize = reader.getNumberOfReviews();
+        this.maxExpansions = maxExpansions;
     }
 
 
@@ -67,12 +93,10 @@ public class ReviewSearch {
         var map = new HashMap<Integer, HashMap<String, Double>>();
 
         for (var term: query) {
-            var docPostingIt = reader.getReviewsWithToken(term);
-            while (docPostingIt.hasMoreElements()) {
-                var docId = docPostingIt.nextElement();
-                var freq = docPostingIt.nextElement();
+            var postings = reader.getCachedPostings(term);
+            for (int docId = postings.nextDoc(); docId != PostingsCursor.NO_MORE_DOCS; docId = postings.nextDoc()) {
                 var sparseVecMap = map.computeIfAbsent(docId, i -> new HashMap<>());
-                sparseVecMap.put(term, 1.0 + Math.log10(freq));
+                sparseVecMap.put(term, 1.0 + Math.log10(postings.freq()));
             }
         }
 
@@ -90,17 +114,126 @@ public class ReviewSearch {
     public Enumeration<Integer> vectorSpaceSearch(Enumeration<String> query, int k) {
         var q = Utils.iteratorToStream(query.asIterator()).collect(Collectors.toList());
         var queryVec = queryLtc(q);
-        var docLtcs = docLnns(q);
 
-        return Utils.streamToEnumeration(docLtcs.entrySet()
-                .stream()
-                // compare by ranks in descending order, break ties by review IDs in ascending order.
-                .sorted(Comparator.comparingDouble(
-                        (Map.Entry<Integer, SparseVector> entry)-> queryVec.dot(entry.getValue())).reversed()
-                        .thenComparingInt(Map.Entry::getKey)
-                )
-                .map(Map.Entry::getKey)
-                .limit(k));
+        // terms are added in the query vector's order, so that scores are summed exactly as in SparseVector.dot
+        var wand = new BlockMaxWand(k);
+        for (var entry: queryVec.elements().entrySet()) {
+            var term = entry.getKey();
+            // every other document containing the term contains it at least once
+            int maxFreq = reader.getTokenCollectionFrequency(term) - reader.getTokenFrequency(term) + 1;
+            wand.addTerm(reader.getPostings(term), entry.getValue(), Math.max(1, maxFreq));
+        }
+        return Utils.streamToEnumeration(Arrays.stream(wand.search()).boxed());
+    }
+
+    /** Returns the positional postings of every query term, in the order of the query, or null if some term
+     *  doesn't appear in any review */
+    private List<PositionalPostingsCursor> positionalPostings(List<String> query) {
+        var cursors = new ArrayList<PositionalPostingsCursor>();
+        for (var term: query) {
+            var cursor = reader.getPositionalPostings(term);
+            if (cursor.size() == 0) {
+                return null;
+            }
+            cursors.add(cursor);
+        }
+        return cursors;
+    }
+
+    /**
+     * Returns a list of the id-s of the reviews which contain the given query as an exact phrase, that is,
+     * the query tokens appear in the review in the same order, one after the other.
+     * The list is sorted by id.
+     * Requires an index with positions (see {@link webdata.inverted_index.PostingsFormat#withPositions()})
+     */
+    public Enumeration<Integer> phraseSearch(Enumeration<String> query) {
+        var q = Utils.iteratorToStream(query.asIterator()).collect(Collectors.toList());
+        var cursors = positionalPostings(q);
+        if (cursors == null) {
+            return Collections.emptyEnumeration();
+        }
+        return Utils.streamToEnumeration(Arrays.stream(new PhraseQuery(cursors).exactMatches()).boxed());
+    }
+
+    /**
+     * Returns a list of the id-s of the reviews which contain all of the query tokens (in any order), such that
+     * there are at most 'distance' positions between the first and the last of them. For example,
+     * a distance of 1 between two tokens means they must be adjacent.
+     * The list is sorted by id.
+     * Requires an index with positions (see {@link webdata.inverted_index.PostingsFormat#withPositions()})
+     */
+    public Enumeration<Integer> proximitySearch(Enumeration<String> query, int distance) {
+        // repetitions don't matter for proximity
+        var q = Utils.iteratorToStream(query.asIterator()).distinct().collect(Collectors.toList());
+        var cursors = positionalPostings(q);
+        if (cursors == null) {
+            return Collections.emptyEnumeration();
+        }
+        return Utils.streamToEnumeration(Arrays.stream(new PhraseQuery(cursors).proximityMatches(distance)).boxed());
+    }
+
+    /**
+     * Returns a list of the id-s of the reviews which contain all of the query terms, where a term may be a wildcard
+     * pattern (see {@link WildcardPattern}), e.g "choco*" or "c?t", which is satisfied by any of the terms it expands
+     * to. A pattern expands to at most 'maxExpansions' terms (see {@link #ReviewSearch(IndexReader, int)}). Note that
+     * a pattern beginning with a wildcard scans the whole dictionary, unless it finds 'maxExpansions' terms first.
+     * The list is sorted by id.
+     */
+    public Enumeration<Integer> wildcardSearch(Enumeration<String> query) {
+        var cursors = Utils.iteratorToStream(query.asIterator())
+                .distinct()
+                .map(term -> WildcardPattern.isWildcard(term)
+                        ? reader.getWildcardPostings(term, maxExpansions)
+                        : reader.getPostings(term))
+                .collect(Collectors.toList());
+        return Utils.streamToEnumeration(Arrays.stream(intersect(cursors)).boxed());
+    }
+
+    /**
+     * Returns a list of the id-s of the reviews which contain, for every query term, some term within an edit distance
+     * of 'maxEdits' from it (at most {@link webdata.dictionary.LevenshteinAutomaton#MAX_EDITS}), tolerating typos in
+     * both the query and the reviews. Every query term is expanded to at most 'maxExpansions' terms, preferring closer
+     * and more frequent ones (see {@link IndexReader#expandFuzzy(String, int, int)}).
+     * The list is sorted by id.
+     */
+    public Enumeration<Integer> fuzzySearch(Enumeration<String> query, int maxEdits) {
+        var cursors = Utils.iteratorToStream(query.asIterator())
+                .distinct()
+                .map(term -> reader.getFuzzyPostings(term, maxEdits, maxExpansions))
+                .collect(Collectors.toList());
+        return Utils.streamToEnumeration(Arrays.stream(intersect(cursors)).boxed());
+    }
+
+    /** Returns the docIds(in increasing order) contained in all of the given posting lists, led by the shortest */
+    private static int[] intersect(List<PostingsCursor> cursors) {
+        if (cursors.isEmpty()) {
+            return new int[0];
+        }
+        var lead = Collections.min(cursors, Comparator.comparingInt(PostingsCursor::size));
+        var results = IntStream.builder();
+        int doc = lead.nextDoc();
+        while (doc != PostingsCursor.NO_MORE_DOCS) {
+            int next = doc;
+            for (var cursor : cursors) {
+                if (cursor != lead) {
+                    next = cursor.advance(doc);
+                    if (next != doc) {
+                        break;
+                    }
+                }
+            }
+            if (next == PostingsCursor.NO_MORE_DOCS) {
+                break;
+            }
+            if (next == doc) {
+                results.add(doc);
+                doc = lead.nextDoc();
+            } else {
+                // no document before 'next' contains all terms
+                doc = lead.advance(next);
+            }
+        }
+        return results.build().toArray();
     }
 
     /**
@@ -124,11 +257,9 @@ public class ReviewSearch {
                 .collect(Collectors.toMap(
                         Function.identity(), term -> {
                             var map = new HashMap<Integer, Integer>();
-                            var it = reader.getReviewsWithToken(term);
-                            while (it.hasMoreElements()) {
-                                var docId = it.nextElement();
-                                var freq = it.nextElement();
-                                var prev = map.put(docId, freq);
+                            var postings = reader.getCachedPostings(term);
+                            for (int docId = postings.nextDoc(); docId != PostingsCursor.NO_MORE_DOCS; docId = postings.nextDoc()) {
+                                var prev = map.put(docId, postings.freq());
                                 assert prev == null;
                             }
                             return map;
@@ -1,5 +1,6 @@
 package webdata;
 
+import java.util.Arrays;
 import java.util.Objects;
 
 /** Represents a token */
@@ -7,15 +8,27 @@ public class Token {
     private final String term;
     private final int docID;
     private final int docFrequency;
+    // positions of the term within the document, or null if they aren't known
+    private final int[] positions;
 
     public Token(String term, int docID, int docFrequency) {
+        this(term, docID, docFrequency, null);
+    }
+
+    /**
+     * @param positions Positions of the term within the document in increasing order(whose length is the
+     *                  frequency), or null if they aren't known
+     */
+    public Token(String term, int docID, int docFrequency, int[] positions) {
         assert !term.isEmpty() : "Term cannot be empty";
         assert docID > 0 : "docID must be positive";
         assert docFrequency > 0 : "docFrequency must be positive";
+        assert positions == null || positions.length == docFrequency : "There must be a position per occurrence";
 
         this.term = term;
         this.docID = docID;
         this.docFrequency = docFrequency;
+        this.positions = positions;
     }
 
     public String getTerm() {
@@ -30,6 +43,11 @@ public class Token {
         return docFrequency;
     }
 
+    /** Returns the positions of the term within the document, or null if they aren't known */
+    public int[] getPositions() {
+        return positions;
+    }
+
     public DocAndFreq toDocAndFreq() {
         return new DocAndFreq(docID, docFrequency);
     }
@@ -39,12 +57,13 @@ public class Token {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Token token = (Token) o;
-        return docID == token.docID && docFrequency == token.docFrequency && term.equals(token.term);
+        return docID == token.docID && docFrequency == token.docFrequency && term.equals(token.term) &&
+                Arrays.equals(positions, token.positions);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(term, docID, docFrequency);
+        return Objects.hash(term, docID, docFrequency) * 31 + Arrays.hashCode(positions);
     }
 
     @Override
@@ -53,6 +72,7 @@ public class Token {
                 "term='" + term + '\'' +
                 ", docID=" + docID +
                 ", docFrequency=" + docFrequency +
+                (positions != null ? ", positions=" + Arrays.toString(positions) : "") +
                 '}';
     }
 }
@@ -0,0 +1,172 @@
+package webdata.compression;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/** A monotone(non-decreasing) sequence of non-negative longs, compressed via Elias-Fano encoding, while allowing
+ *  random access.
+ *
+ *  Every value is split into its lowest 'l' bits, which are stored as is(bit packed), and its remaining high bits,
+ *  which are stored in unary as gaps: the i-th value sets bit {@code (value >>> l) + i} of the upper bits. Choosing
+ *  {@code l = floor(log2(maxValue / n))} takes less than {@code 2 + l} bits per value. Finding the i-th set bit is sped
+ *  up by sampling the position of every {@value #SAMPLE_INTERVAL}th set bit.
+ *
+ *  The encoded sequence is laid out as follows(all big endian):
+ *  <ul>
+ *      <li>int: number of values 'n'</li>
+ *      <li>int: number of low bits 'l'</li>
+ *      <li>int: number of longs of low bits, followed by the int number of longs of high bits</li>
+ *      <li>The longs of low bits, followed by the longs of high bits(bit i of the sequence is bit i % 64 of long
+ *          i / 64)</li>
+ *      <li>An int per sample: the position of said set bit within the high bits</li>
+ *  </ul>
+ *  It is read in place, via absolute gets from a buffer(e.g, a memory mapped file), so it is never copied into the
+ *  heap, and can be read by many threads.
+ */
+public class EliasFano {
+
+    static final int SAMPLE_INTERVAL = 64;
+    private static final int HEADER_SIZE = 4 * Integer.BYTES;
+
+    private final ByteBuffer buf;
+    private final int size;
+    private final int lowBits;
+    private final int lowPos;
+    private final int highPos;
+    private final int samplesPos;
+    private final int endPos;
+
+    private EliasFano(ByteBuffer buf, int pos) {
+        this.buf = buf;
+        this.size = buf.getInt(pos);
+        this.lowBits = buf.getInt(pos + 4);
+        int numLowLongs = buf.getInt(pos + 8);
+        int numHighLongs = buf.getInt(pos + 12);
+        this.lowPos = pos + HEADER_SIZE;
+        this.highPos = lowPos + Long.BYTES * numLowLongs;
+        this.samplesPos = highPos + Long.BYTES * numHighLongs;
+        this.endPos = samplesPos + Integer.BYTES * numSamples(size);
+    }
+
+    private static int numSamples(int n) {
+        return (n + SAMPLE_INTERVAL - 1) / SAMPLE_INTERVAL;
+    }
+
+    /** Returns a view of the sequence encoded at given position of the buffer, which is only accessed via absolute
+     *  gets */
+    public static EliasFano at(ByteBuffer buf, int pos) {
+        return new EliasFano(buf, pos);
+    }
+
+    /**
+     * Encodes the first n values into the stream
+     * @param values Non-decreasing, non-negative values
+     * @return Number of bytes written
+     */
+    public static int encode(long[] values, int n, DataOutputStream out) throws IOException {
+        long maxValue = n == 0 ? 0 : values[n - 1];
+        int lowBits = 0;
+        if (n > 0 && maxValue / n > 0) {
+            lowBits = 63 - Long.numberOfLeadingZeros(maxValue / n);
+        }
+        long lowMask = (1L << lowBits) - 1;
+        long[] low = new long[(int) (((long) n * lowBits + 63) / 64)];
+        long numHighBits = n + (maxValue >>> lowBits) + 1;
+        long[] high = new long[(int) ((numHighBits + 63) / 64)];
+        int[] samples = new int[numSamples(n)];
+
+        long prev = 0;
+        for (int i = 0; i < n; ++i) {
+            long value = values[i];
+            if (value < prev) {
+                throw new IllegalArgumentException("Values must be non-decreasing and non-negative, got " + value +
+                        " at index " + i + " after " + prev);
+            }
+            prev = value;
+            if (lowBits > 0) {
+                long bitPos = (long) i * lowBits;
+                int word = (int) (bitPos >>> 6);
+                int offset = (int) (bitPos & 63);
+                low[word] |= (value & lowMask) << offset;
+                if (offset + lowBits > 64) {
+                    low[word + 1] |= (value & lowMask) >>> (64 - offset);
+                }
+            }
+            long highBit = (value >>> lowBits) + i;
+            high[(int) (highBit >>> 6)] |= 1L << (highBit & 63);
+            if (i % SAMPLE_INTERVAL == 0) {
+                samples[i / SAMPLE_INTERVAL] = (int) highBit;
+            }
+        }
+
+        out.writeInt(n);
+        out.writeInt(lowBits);
+        out.writeInt(low.length);
+        out.writeInt(high.length);
+        var bytes = ByteBuffer.allocate(Long.BYTES * (low.length + high.length) + Integer.BYTES * samples.length);
+        bytes.asLongBuffer().put(low).put(high);
+        bytes.position(Long.BYTES * (low.length + high.length));
+        bytes.asIntBuffer().put(samples);
+        out.write(bytes.array());
+        return HEADER_SIZE + bytes.capacity();
+    }
+
+    /** Returns the number of values */
+    public int size() {
+        return size;
+    }
+
+    /** Returns the position following the encoded sequence within the buffer */
+    public int getEndPosition() {
+        return endPos;
+    }
+
+    /** Returns the value at given index */
+    public long get(int index) {
+        assert index >= 0 && index < size;
+        long high = selectHigh(index) - index;
+        if (lowBits == 0) {
+            return high;
+        }
+        long bitPos = (long) index * lowBits;
+        int word = (int) (bitPos >>> 6);
+        int offset = (int) (bitPos & 63);
+        long low = buf.getLong(lowPos + Long.BYTES * word) >>> offset;
+        if (offset + lowBits > 64) {
+            low |= buf.getLong(lowPos + Long.BYTES * (word + 1)) << (64 - offset);
+        }
+        return (high << lowBits) | (low & ((1L << lowBits) - 1));
+    }
+
+    /** Returns the position of the index-th set bit within the high bits */
+    private long selectHigh(int index) {
+        int sample = buf.getInt(samplesPos + Integer.BYTES * (index / SAMPLE_INTERVAL));
+        int remaining = index % SAMPLE_INTERVAL;
+        int word = sample >>> 6;
+        // ignore the bits before the sampled one
+        long bits = buf.getLong(highPos + Long.BYTES * word) & (-1L << (sample & 63));
+        int count = Long.bitCount(bits);
+        while (remaining >= count) {
+            remaining -= count;
+            bits = buf.getLong(highPos + Long.BYTES * ++word);
+            count = Long.bitCount(bits);
+        }
+        return ((long) word << 6) + selectInWord(bits, remaining);
+    }
+
+    /** Returns the position of the rank-th set bit of the word, by halving the range of bits containing it(without
+     *  branches, as they are unpredictable) */
+    private static int selectInWord(long bits, int rank) {
+        int pos = 0;
+        for (int width = 32; width > 0; width >>>= 1) {
+            int count = Long.bitCount(bits & ((1L << width) - 1));
+            // all ones iff the bit is beyond the lower half
+            int beyond = (count - 1 - rank) >> 31;
+            rank -= count & beyond;
+            bits >>>= width & beyond;
+            pos += width & beyond;
+        }
+        return pos;
+    }
+}
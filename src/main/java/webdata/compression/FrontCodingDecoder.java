@@ -2,58 +2,56 @@ package webdata.compression;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
-import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
 
 /** Responsible for decoding strings compressed via (k-1)-in-k front coding.
+ *  The encoded bytes aren't decoded as a whole, instead, every element is decoded on demand.
 * */
 public class FrontCodingDecoder {
 
-    private final String string;
+    // only accessed via absolute gets, so it may be shared between decoders
+    private final ByteBuffer bytes;
+    private final Charset charset;
 
     private final int maxElements;
-    private String prevWord;
+    // bytes of the previously decoded element
+    private byte[] prevWord;
+    private int prevWordLength;
 
 
-    /** Creates a (k-1)-in-k front coding decoder
+    /** Creates a (k-1)-in-k front coding decoder, memory mapping the encoded strings
      * @param maxElements 'k', the group size
      * @param charset Charset, used for encoding
      * @param path Path to terms
      */
     public FrontCodingDecoder(int maxElements, Charset charset, Path path) throws IOException {
-        this(maxElements, Files.readString(path, charset));
+        this(maxElements, charset, map(path));
     }
 
     public FrontCodingDecoder(int maxElements, Charset charset, InputStream is) throws IOException {
-        var bytes = is.readAllBytes();
-        this.maxElements = maxElements;
-        this.string = charset.decode(ByteBuffer.wrap(bytes)).toString();
-        this.prevWord = null;
+        this(maxElements, charset, ByteBuffer.wrap(is.readAllBytes()));
     }
 
-    public FrontCodingDecoder(int maxElements, String string) {
+    /** Creates a (k-1)-in-k front coding decoder over the given encoded strings, which may be shared with other
+     *  decoders(see {@link #getBytes()}) */
+    public FrontCodingDecoder(int maxElements, Charset charset, ByteBuffer bytes) {
         this.maxElements = maxElements;
-        this.string = string;
-        this.prevWord = null;
-    }
-
-
-    private String decodeFirstElement(FrontCodingResult result) {
-        assert result.prefixLength == 0;
-
-        String suffix = string.substring(result.suffixPos, result.suffixPos + result.suffixLength);
-        this.prevWord = suffix;
-        return suffix;
+        this.charset = charset;
+        this.bytes = bytes;
+        this.prevWord = new byte[64];
+        this.prevWordLength = 0;
     }
 
-    private String decodeAnyOtherElement(FrontCodingResult result) {
-        String prefix = prevWord.substring(0, result.prefixLength);
-        String suffix = string.substring(result.suffixPos, result.suffixPos + result.suffixLength);
-
-        this.prevWord = prefix + suffix;
-        return this.prevWord;
+    private static ByteBuffer map(Path path) throws IOException {
+        try (var raf = new RandomAccessFile(path.toString(), "r");
+             var channel = raf.getChannel()) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
     }
 
     /** Tries decoding an element within a group
@@ -62,17 +60,31 @@ public class FrontCodingDecoder {
      * @return Decoded element
      */
     public String decodeElement(FrontCodingResult result, int posInGroup) {
-        String ret;
-        if (posInGroup % maxElements == 0) {
-            ret = decodeFirstElement(result);
+        int prefixLength = 0;
+        if (posInGroup % maxElements != 0) {
+            assert result.prefixLength <= prevWordLength;
+            prefixLength = result.prefixLength;
         } else {
-            ret = decodeAnyOtherElement(result);
+            assert result.prefixLength == 0;
+        }
+        int length = prefixLength + result.suffixLength;
+        if (prevWord.length < length) {
+            prevWord = Arrays.copyOf(prevWord, Math.max(length, 2 * prevWord.length));
+        }
+        for (int i = 0; i < result.suffixLength; ++i) {
+            prevWord[prefixLength + i] = bytes.get(result.suffixPos + i);
         }
-        return ret;
+        prevWordLength = length;
+        return new String(prevWord, 0, length, charset);
+    }
+
+    /** Returns the encoded strings backing this decoder, which must only be accessed via absolute gets */
+    public ByteBuffer getBytes() {
+        return bytes;
     }
 
-    /** Returns the string backing this decoder */
-    public String getString() {
-        return string;
+    /** Returns the charset of the encoded strings */
+    public Charset getCharset() {
+        return charset;
     }
 }
@@ -1,41 +1,42 @@
 package webdata.compression;
 
 import java.io.*;
-import java.nio.CharBuffer;
 import java.nio.charset.Charset;
 
-/** Responsible for encoding strings using (k-1)-in-k front coding */
+/** Responsible for encoding strings using (k-1)-in-k front coding. Positions and lengths are in bytes(of the encoded
+ *  strings), but prefixes never split a character. */
 public class FrontCodingEncoder implements Closeable, Flushable {
     private final Charset charset;
-    private final OutputStreamWriter writer;
+    private final OutputStream os;
     private final int maxElements;
 
-    private int numCharsWritten;
+    private int numBytesWritten;
     private int numElements;
     private String curPrefix;
 
 
     /** Creates a (k-1)-in-k front coding encoder
      * @param maxElements 'k', the group size
-     * @param charset Charset, used for encoding
+     * @param charset Charset, used for encoding. Must be stateless, such that the encoding of a string's prefix is
+     *                a prefix of its encoding (e.g, UTF-8)
      * @param os Output stream where bytes are emitted
      */
     public FrontCodingEncoder(int maxElements, Charset charset, OutputStream os) {
         this.charset = charset;
-        this.writer = new OutputStreamWriter(os, charset);
+        this.os = os;
         this.maxElements = maxElements;
 
-        this.numCharsWritten = 0;
+        this.numBytesWritten = 0;
         this.numElements = 0;
         this.curPrefix = "";
     }
 
     private FrontCodingResult startNewPrefix(String string) throws IOException {
-        int pos = numCharsWritten;
-        int suffixLength = string.length();
-        writer.write(string);
-        numCharsWritten += suffixLength;
-        return new FrontCodingResult(pos, 0, suffixLength);
+        int pos = numBytesWritten;
+        var bytes = string.getBytes(charset);
+        os.write(bytes);
+        numBytesWritten += bytes.length;
+        return new FrontCodingResult(pos, 0, bytes.length);
     }
 
     private int greatestCommonPrefix(String a, String b) {
@@ -48,20 +49,25 @@ public class FrontCodingEncoder implements Closeable, Flushable {
                 break;
             }
         }
+        // don't split a surrogate pair
+        if (prefixLength > 0 && Character.isHighSurrogate(a.charAt(prefixLength - 1))) {
+            --prefixLength;
+        }
         return prefixLength;
     }
 
     private FrontCodingResult addWithPrefix(String string) throws IOException {
         int prefixLength = greatestCommonPrefix(string, curPrefix);
 
-        var suffix = string.substring(prefixLength);
+        var prefixBytes = string.substring(0, prefixLength).getBytes(charset);
+        var suffixBytes = string.substring(prefixLength).getBytes(charset);
 
-        int pos = numCharsWritten;
+        int pos = numBytesWritten;
 
-        writer.write(suffix);
-        numCharsWritten += suffix.length();
+        os.write(suffixBytes);
+        numBytesWritten += suffixBytes.length;
 
-        return new FrontCodingResult(pos, prefixLength, suffix.length());
+        return new FrontCodingResult(pos, prefixBytes.length, suffixBytes.length);
     }
 
     /** Encodes a new string, returning information that can be used to decode it via front coding */
@@ -82,12 +88,12 @@ public class FrontCodingEncoder implements Closeable, Flushable {
 
     @Override
     public void flush() throws IOException {
-        writer.flush();
+        os.flush();
     }
 
     @Override
     public void close() throws IOException {
         flush();
-        writer.close();
+        os.close();
     }
 }
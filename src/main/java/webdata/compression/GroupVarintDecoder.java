@@ -2,6 +2,7 @@ package webdata.compression;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 public class GroupVarintDecoder extends InputStream {
     private final InputStream inputStream;
@@ -87,6 +88,50 @@ public class GroupVarintDecoder extends InputStream {
         return value;
     }
 
+    /**
+     * Decodes whole groups directly from a buffer, without the overhead of reading the input a number at a time.
+     * @param src Buffer positioned at the beginning of a group, its position is advanced past the last decoded group
+     * @param dst Array where decoded numbers will be written, from its beginning
+     * @param count Number of numbers to decode. If it isn't a multiple of 4, the rest of the last group(which is
+     *              expected to be padding) is discarded
+     * @return Number of bytes consumed from the buffer
+     */
+    public static int decodeBlock(ByteBuffer src, int[] dst, int count) {
+        int start = src.position();
+        int i = 0;
+        while (i < count) {
+            byte[] lengths = MASK_TO_LENGTHS[src.get() & 0xff];
+            for (int j = 0; j < 4; ++j, ++i) {
+                int curNumber;
+                switch (lengths[j]) {
+                    case 1:
+                        curNumber = src.get() & 0xff;
+                        break;
+                    case 2:
+                        curNumber = src.getShort() & 0xffff;
+                        break;
+                    case 3:
+                        curNumber = ((src.getShort() & 0xffff) << 8) | (src.get() & 0xff);
+                        break;
+                    default:
+                        curNumber = src.getInt();
+                }
+                if (i < count) {
+                    dst[i] = curNumber;
+                }
+            }
+        }
+        return src.position() - start;
+    }
+
+    /**
+     * Decodes whole groups from the beginning of an array, see {@link #decodeBlock(ByteBuffer, int[], int)}
+     * @return Number of bytes consumed from the array
+     */
+    public static int decodeBlock(byte[] src, int[] dst, int count) {
+        return decodeBlock(ByteBuffer.wrap(src), dst, count);
+    }
+
     // Maps a length byte to the byte-lengths of the group
     final static byte[][] MASK_TO_LENGTHS = new byte[][] {
             {1, 1, 1, 1},
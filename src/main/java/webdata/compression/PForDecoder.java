@@ -0,0 +1,98 @@
+package webdata.compression;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/** Decodes blocks encoded via {@link PForEncoder}, a whole block at a time. */
+public class PForDecoder {
+    private final InputStream inputStream;
+
+    // holds the bit packed part of a block, an optimization so we won't re-allocate it for every block
+    private final byte[] buf;
+
+    /**
+     * @param inputStream Stream containing encoded blocks
+     */
+    public PForDecoder(InputStream inputStream) {
+        this.inputStream = inputStream;
+        this.buf = new byte[PForEncoder.MAX_BLOCK_LENGTH * 4];
+    }
+
+    /**
+     * Decodes the next block from the stream
+     * @param out Array where decoded values will be written, from its beginning
+     * @param count Number of values in the block, as given when it was encoded
+     * @throws IOException In case the backing stream throws or ends prematurely
+     */
+    public void decode(int[] out, int count) throws IOException {
+        int width = inputStream.read();
+        int numExceptions = inputStream.read();
+        int reference = Varint.decode(inputStream);
+        if (width < 0 || numExceptions < 0 || reference < 0) {
+            throw new EOFException("Stream ended within a PFOR block header");
+        }
+        int packedLength = packedLength(width, count);
+        if (inputStream.readNBytes(buf, 0, packedLength) != packedLength) {
+            throw new EOFException("Stream ended within a PFOR block");
+        }
+        unpack(ByteBuffer.wrap(buf, 0, packedLength), width, out, count);
+
+        for (int i = 0; i < numExceptions; ++i) {
+            int pos = inputStream.read();
+            int high = Varint.decode(inputStream);
+            if (pos < 0 || high < 0) {
+                throw new EOFException("Stream ended within PFOR exceptions");
+            }
+            out[pos] |= high << width;
+        }
+        addReference(out, count, reference);
+    }
+
+    /**
+     * Decodes a block directly from a buffer, advancing its position to the end of the block
+     * @param src Buffer positioned at the beginning of a block
+     * @param out Array where decoded values will be written, from its beginning
+     * @param count Number of values in the block, as given when it was encoded
+     */
+    public static void decode(ByteBuffer src, int[] out, int count) {
+        int width = src.get() & 0xff;
+        int numExceptions = src.get() & 0xff;
+        int reference = Varint.decode(src);
+        unpack(src, width, out, count);
+        for (int i = 0; i < numExceptions; ++i) {
+            int pos = src.get() & 0xff;
+            out[pos] |= Varint.decode(src) << width;
+        }
+        addReference(out, count, reference);
+    }
+
+    private static int packedLength(int width, int count) {
+        return (int)(((long)width * count + 7) / 8);
+    }
+
+    private static void unpack(ByteBuffer src, int width, int[] out, int count) {
+        long mask = (1L << width) - 1;
+        long acc = 0;
+        int numBits = 0;
+        for (int i = 0; i < count; ++i) {
+            while (numBits < width) {
+                acc |= (long)(src.get() & 0xff) << numBits;
+                numBits += 8;
+            }
+            out[i] = (int)(acc & mask);
+            acc >>>= width;
+            numBits -= width;
+        }
+    }
+
+    private static void addReference(int[] out, int count, int reference) {
+        if (reference == 0) {
+            return;
+        }
+        for (int i = 0; i < count; ++i) {
+            out[i] += reference;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package webdata.compression;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/** Encodes blocks of non-negative integers via patched frame of reference (PFOR) encoding.
+ *
+ *  Each block is encoded as follows:
+ *  <ul>
+ *      <li>1 byte: bit width 'b'</li>
+ *      <li>1 byte: number of exceptions</li>
+ *      <li>varint: the reference, that is, the minimal value in the block</li>
+ *      <li>The lowest 'b' bits of (value - reference) for each value, bit packed (little endian)</li>
+ *      <li>For each exception(a value whose difference from the reference doesn't fit in 'b' bits), 1 byte of its
+ *          position within the block followed by a varint of its remaining high bits.</li>
+ *  </ul>
+ *  The bit width is chosen to minimize the size of the block, so a few large values(e.g, a big docId gap) don't
+ *  inflate the width used for all other values. Since blocks are self delimiting, the decoder only needs to know
+ *  the number of values in a block.
+ */
+public class PForEncoder {
+
+    /** Maximal number of values in a block, since exception positions are stored in a byte */
+    public static final int MAX_BLOCK_LENGTH = 256;
+
+    private final OutputStream outputStream;
+
+    /**
+     * @param outputStream Stream where encoded blocks are written to
+     */
+    public PForEncoder(OutputStream outputStream) {
+        this.outputStream = outputStream;
+    }
+
+    /** Returns the number of bits needed to represent given non-negative value */
+    static int bitsRequired(int value) {
+        return 32 - Integer.numberOfLeadingZeros(value);
+    }
+
+    private static int varintLength(int value) {
+        return Math.max(1, (bitsRequired(value) + 6) / 7);
+    }
+
+    /** Returns the bit width which minimizes the encoded size of given differences from the reference */
+    private static int chooseBitWidth(int[] deltas, int count) {
+        int maxBits = 0;
+        for (int i = 0; i < count; ++i) {
+            maxBits = Math.max(maxBits, bitsRequired(deltas[i]));
+        }
+        int bestWidth = maxBits;
+        long bestSize = ((long)count * maxBits + 7) / 8;
+        for (int width = maxBits - 1; width >= 0; --width) {
+            long size = ((long)count * width + 7) / 8;
+            int numExceptions = 0;
+            for (int i = 0; i < count && size < bestSize; ++i) {
+                if (bitsRequired(deltas[i]) > width) {
+                    ++numExceptions;
+                    size += 1 + varintLength(deltas[i] >>> width);
+                }
+            }
+            if (numExceptions <= 0xff && size < bestSize) {
+                bestSize = size;
+                bestWidth = width;
+            }
+        }
+        return bestWidth;
+    }
+
+    /**
+     * Encodes a block of values
+     * @param values Non negative integers
+     * @param count Number of values to encode, from the beginning of the array. At most {@link #MAX_BLOCK_LENGTH}
+     * @throws IOException In case the backing stream throws
+     */
+    public void writeBlock(int[] values, int count) throws IOException {
+        if (count > MAX_BLOCK_LENGTH) {
+            throw new IllegalArgumentException("A block can contain at most " + MAX_BLOCK_LENGTH + " values");
+        }
+        int reference = Integer.MAX_VALUE;
+        for (int i = 0; i < count; ++i) {
+            if (values[i] < 0) {
+                throw new IllegalArgumentException("Cannot encode negative numbers");
+            }
+            reference = Math.min(reference, values[i]);
+        }
+        if (count == 0) {
+            reference = 0;
+        }
+
+        int[] deltas = new int[count];
+        for (int i = 0; i < count; ++i) {
+            deltas[i] = values[i] - reference;
+        }
+        int width = chooseBitWidth(deltas, count);
+        long mask = (1L << width) - 1;
+
+        int numExceptions = 0;
+        for (int i = 0; i < count; ++i) {
+            if (bitsRequired(deltas[i]) > width) {
+                ++numExceptions;
+            }
+        }
+        outputStream.write(width);
+        outputStream.write(numExceptions);
+        Varint.encode(outputStream, reference);
+
+        long acc = 0;
+        int numBits = 0;
+        for (int i = 0; i < count; ++i) {
+            acc |= (deltas[i] & mask) << numBits;
+            numBits += width;
+            while (numBits >= 8) {
+                outputStream.write((int)(acc & 0xff));
+                acc >>>= 8;
+                numBits -= 8;
+            }
+        }
+        if (numBits > 0) {
+            outputStream.write((int)(acc & 0xff));
+        }
+
+        for (int i = 0; i < count; ++i) {
+            if (bitsRequired(deltas[i]) > width) {
+                outputStream.write(i);
+                Varint.encode(outputStream, deltas[i] >>> width);
+            }
+        }
+    }
+}
@@ -3,6 +3,7 @@ package webdata.compression;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 /** Allows encoding/decoding integers via varint length encoding.
  *
@@ -17,7 +18,7 @@ import java.io.OutputStream;
  *  Group varint is more efficient, but this one is stateless */
 public class Varint {
     public static void encode(OutputStream os, int value) throws IOException {
-        assert value > 0 : "Can only encode positive values";
+        assert value >= 0 : "Can only encode non-negative values";
         boolean doContinue = true;
         while (doContinue) {
             int lowest7 = value & 0x7F;
@@ -46,4 +47,17 @@ public class Varint {
         } while (doContinue);
         return value;
     }
+
+    /** Decodes a value from given buffer, advancing its position past the value */
+    public static int decode(ByteBuffer buf) {
+        int value = 0;
+        int numIncrements = 0;
+        int byteRead;
+        do {
+            byteRead = buf.get();
+            value |= ((byteRead & 0x7F) << numIncrements);
+            numIncrements += 7;
+        } while ((byteRead & 0x80) == 0);
+        return value;
+    }
 }
@@ -0,0 +1,80 @@
+package webdata.dictionary;
+
+import java.nio.ByteBuffer;
+
+/** The first term of every dictionary block (as UTF-8 bytes), packed contiguously in memory, allowing to find the
+ *  block which may contain a term without touching the dictionary elements or the terms file. */
+class BlockHeadIndex {
+
+    // concatenated encodings of the block heads
+    private final byte[] headBytes;
+    // the head of block i is at headBytes[headOffsets[i], headOffsets[i + 1])
+    private final int[] headOffsets;
+
+    private BlockHeadIndex(byte[] headBytes, int[] headOffsets) {
+        this.headBytes = headBytes;
+        this.headOffsets = headOffsets;
+    }
+
+    /**
+     * Copies the block heads out of the terms file
+     * @param elements Dictionary elements
+     * @param terms Front coded terms, only accessed via absolute gets
+     */
+    static BlockHeadIndex build(DictionaryElementList elements, ByteBuffer terms) {
+        int blockSize = elements.getBlockSize();
+        int numBlocks = (elements.size() + blockSize - 1) / blockSize;
+        int[] headOffsets = new int[numBlocks + 1];
+        for (int block = 0; block < numBlocks; ++block) {
+            headOffsets[block + 1] = headOffsets[block] + elements.getSuffixLength(block * blockSize);
+        }
+        byte[] headBytes = new byte[headOffsets[numBlocks]];
+        for (int block = 0; block < numBlocks; ++block) {
+            int suffixPos = elements.getBlockSuffixPos(block * blockSize);
+            for (int i = headOffsets[block]; i < headOffsets[block + 1]; ++i) {
+                headBytes[i] = terms.get(suffixPos + i - headOffsets[block]);
+            }
+        }
+        return new BlockHeadIndex(headBytes, headOffsets);
+    }
+
+    /** Returns the number of blocks */
+    int size() {
+        return headOffsets.length - 1;
+    }
+
+    /** Compares the head of given block with a token, in the order of the terms(see {@link Dictionary#utf16Order}) */
+    private int compareHead(int block, byte[] token) {
+        int start = headOffsets[block];
+        int length = headOffsets[block + 1] - start;
+        int common = Math.min(length, token.length);
+        for (int i = 0; i < common; ++i) {
+            if (headBytes[start + i] != token[i]) {
+                return Dictionary.utf16Order(headBytes[start + i]) - Dictionary.utf16Order(token[i]);
+            }
+        }
+        return length - token.length;
+    }
+
+    /**
+     * Finds the block which should contain the given token, if it is in the dictionary
+     * @param token Encoded token
+     * @return The last block whose head is at most the token, or -1 if the token precedes all terms
+     */
+    int findBlock(byte[] token) {
+        int lo = 0;
+        int hi = size() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareHead(mid, token);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return lo - 1;
+    }
+}
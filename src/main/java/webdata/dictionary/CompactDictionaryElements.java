@@ -0,0 +1,242 @@
+package webdata.dictionary;
+
+import webdata.compression.EliasFano;
+import webdata.compression.Varint;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/** Dictionary elements in a compact format: the fields of the terms in a block are stored as varints in a variable
+ *  length record, and only the block heads' posting pointers and suffix positions are kept whole, as monotone
+ *  sequences compressed via Elias-Fano.
+ *
+ *  The record of a block contains the following varints for every term, in order:
+ *  <ul>
+ *      <li>For the first term: its suffix length, frequency, and collection frequency minus frequency</li>
+ *      <li>For other terms: prefix length, suffix length, frequency, collection frequency minus frequency, and the
+ *          gap between its posting pointer and the previous term's</li>
+ *  </ul>
+ *  Reading a field of a term means finding its block's record, and skipping the varints of the terms before it
+ *  within the block. The file consists of the records, followed by the position of every record(an int per block,
+ *  since every read begins with it, while an Elias-Fano lookup costs several times a plain read), the sequences of
+ *  posting pointers and suffix positions, and a footer containing the position of the record positions, the number
+ *  of elements and the block size.
+ *
+ *  Like {@link PackedDictionaryElements}, the file is memory mapped and only accessed via absolute gets.
+ */
+class CompactDictionaryElements extends DictionaryElementList {
+
+    private static final int FOOTER_SIZE = 3 * Integer.BYTES;
+    private static final int HEAD_FIELDS = 3;
+    private static final int OTHER_FIELDS = 5;
+
+    private final ByteBuffer buf;
+    private final int numElements;
+    private final int recordPositionsPos;
+    private final EliasFano headPostingPointers;
+    private final EliasFano headSuffixPositions;
+
+    private CompactDictionaryElements(ByteBuffer buf, int numElements, int blockSize) throws IOException {
+        super(blockSize);
+        this.buf = buf;
+        this.numElements = numElements;
+        if (buf.limit() < FOOTER_SIZE) {
+            throw new IOException("Compact dictionary file is truncated");
+        }
+        int footerPos = buf.limit() - FOOTER_SIZE;
+        this.recordPositionsPos = buf.getInt(footerPos);
+        int storedElements = buf.getInt(footerPos + 4);
+        int storedBlockSize = buf.getInt(footerPos + 8);
+        if (storedElements != numElements || storedBlockSize != blockSize) {
+            throw new IOException("Expected " + numElements + " dictionary elements in blocks of " + blockSize +
+                    ", found " + storedElements + " in blocks of " + storedBlockSize);
+        }
+        int numBlocks = (numElements + blockSize - 1) / blockSize;
+        this.headPostingPointers = EliasFano.at(buf, recordPositionsPos + Integer.BYTES * numBlocks);
+        this.headSuffixPositions = EliasFano.at(buf, headPostingPointers.getEndPosition());
+        if (headSuffixPositions.getEndPosition() != footerPos || headPostingPointers.size() != numBlocks) {
+            throw new IOException("Compact dictionary file is corrupt");
+        }
+    }
+
+    /** Memory maps the given number of dictionary elements(in blocks of given size) from the compact dictionary file
+     *  at given path */
+    static CompactDictionaryElements memoryMapped(Path path, int numElements, int blockSize) throws IOException {
+        try (var raf = new RandomAccessFile(path.toString(), "r");
+             var channel = raf.getChannel()) {
+            return new CompactDictionaryElements(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()),
+                    numElements, blockSize);
+        }
+    }
+
+    /** Writes dictionary elements in the compact format, given in order */
+    static class Writer implements Closeable {
+        private final DataOutputStream out;
+        private final int blockSize;
+        private int numElements = 0;
+        private int[] recordPositions = new int[256];
+        private long[] headPostingPointers = new long[256];
+        private long[] headSuffixPositions = new long[256];
+        private long prevPostingPointer;
+
+        Writer(OutputStream os, int blockSize) {
+            this.out = new DataOutputStream(os);
+            this.blockSize = blockSize;
+        }
+
+        /** Adds the next element, the suffix position is only used for the first element of a block */
+        void add(int frequency, int collectionFrequency, long postingPointer, int prefixLength, int suffixLength,
+                 int suffixPos) throws IOException {
+            assert frequency > 0 && collectionFrequency >= frequency;
+            if (numElements % blockSize == 0) {
+                assert prefixLength == 0;
+                int block = numElements / blockSize;
+                if (block == recordPositions.length) {
+                    recordPositions = Arrays.copyOf(recordPositions, 2 * block);
+                    headPostingPointers = Arrays.copyOf(headPostingPointers, 2 * block);
+                    headSuffixPositions = Arrays.copyOf(headSuffixPositions, 2 * block);
+                }
+                recordPositions[block] = out.size();
+                headPostingPointers[block] = postingPointer;
+                headSuffixPositions[block] = suffixPos;
+                Varint.encode(out, suffixLength);
+                Varint.encode(out, frequency);
+                Varint.encode(out, collectionFrequency - frequency);
+            } else {
+                long gap = postingPointer - prevPostingPointer;
+                assert gap >= 0 && (int) gap == gap : "Posting pointer gap within block can be at most 2^31";
+                Varint.encode(out, prefixLength);
+                Varint.encode(out, suffixLength);
+                Varint.encode(out, frequency);
+                Varint.encode(out, collectionFrequency - frequency);
+                Varint.encode(out, (int) gap);
+            }
+            if (out.size() == Integer.MAX_VALUE) {
+                throw new IOException("Compact dictionary files are limited to 2^31 bytes");
+            }
+            prevPostingPointer = postingPointer;
+            ++numElements;
+        }
+
+        void flush() throws IOException {
+            out.flush();
+        }
+
+        /** Writes the sequences and the footer, and closes the stream */
+        @Override
+        public void close() throws IOException {
+            int recordPositionsPos = out.size();
+            int numBlocks = (numElements + blockSize - 1) / blockSize;
+            for (int block = 0; block < numBlocks; ++block) {
+                out.writeInt(recordPositions[block]);
+            }
+            EliasFano.encode(headPostingPointers, numBlocks, out);
+            EliasFano.encode(headSuffixPositions, numBlocks, out);
+            out.writeInt(recordPositionsPos);
+            out.writeInt(numElements);
+            out.writeInt(blockSize);
+            out.close();
+        }
+    }
+
+    private int varintAt(int pos) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buf.get(pos++);
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) == 0);
+        return value;
+    }
+
+    /** Returns the position following the given number of varints from given position */
+    private int skipVarints(int pos, int count) {
+        while (count > 0) {
+            if ((buf.get(pos++) & 0x80) != 0) {
+                --count;
+            }
+        }
+        return pos;
+    }
+
+    private int recordPos(int block) {
+        return buf.getInt(recordPositionsPos + Integer.BYTES * block);
+    }
+
+    /** Returns the position of the first field of the term at given index */
+    private int termPos(int index) {
+        int pos = recordPos(index / getBlockSize());
+        int posInBlock = index % getBlockSize();
+        if (posInBlock > 0) {
+            pos = skipVarints(pos, HEAD_FIELDS + (posInBlock - 1) * OTHER_FIELDS);
+        }
+        return pos;
+    }
+
+    /** Returns the position of the frequency of the term at given index, followed by its collection frequency */
+    private int frequencyPos(int index) {
+        return skipVarints(termPos(index), index % getBlockSize() == 0 ? 1 : 2);
+    }
+
+    @Override
+    int getTokenFrequency(int index) {
+        return varintAt(frequencyPos(index));
+    }
+
+    @Override
+    int getTokenCollectionFrequency(int index) {
+        int pos = frequencyPos(index);
+        return varintAt(pos) + varintAt(skipVarints(pos, 1));
+    }
+
+    @Override
+    long getPostingsPointer(int index) {
+        int block = index / getBlockSize();
+        long pointer = headPostingPointers.get(block);
+        int posInBlock = index % getBlockSize();
+        if (posInBlock == 0) {
+            return pointer;
+        }
+        int pos = skipVarints(recordPos(block), HEAD_FIELDS);
+        for (int i = 1; i <= posInBlock; ++i) {
+            // the gap is the last field of every term
+            pos = skipVarints(pos, OTHER_FIELDS - 1);
+            pointer += varintAt(pos);
+            pos = skipVarints(pos, 1);
+        }
+        return pointer;
+    }
+
+    @Override
+    int getPrefixLength(int index) {
+        if (index % getBlockSize() == 0) {
+            return 0;
+        }
+        return varintAt(termPos(index));
+    }
+
+    @Override
+    int getSuffixLength(int index) {
+        int pos = termPos(index);
+        return varintAt(index % getBlockSize() == 0 ? pos : skipVarints(pos, 1));
+    }
+
+    @Override
+    int getBlockSuffixPos(int index) {
+        return (int) headSuffixPositions.get(index / getBlockSize());
+    }
+
+    @Override
+    public int size() {
+        return numElements;
+    }
+}
@@ -4,17 +4,26 @@ import webdata.Token;
 import webdata.Utils;
 import webdata.compression.FrontCodingDecoder;
 import webdata.compression.FrontCodingResult;
-import webdata.compression.GroupVarintDecoder;
+import webdata.inverted_index.ArrayPostingsCursor;
+import webdata.inverted_index.EncodedPostingList;
+import webdata.inverted_index.OrdinalPostingsCursor;
+import webdata.inverted_index.PositionalPostingsCursor;
+import webdata.inverted_index.PositionsReader;
 import webdata.inverted_index.PostingListReader;
+import webdata.inverted_index.PostingsCursor;
+import webdata.inverted_index.PostingsFormat;
 
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.function.Consumer;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 /** Contains the in memory dictionary, allowing querying it */
@@ -22,15 +31,36 @@ public class Dictionary {
 
     private final String dir;
 
-    private final PackedDictionaryElements elements;
-    static final int BLOCK_SIZE = 4;
+    private final DictionaryElementList elements;
+    /** Number of terms in a dictionary block used by default. On 2^19 random terms it takes 9.9 bytes per term and
+     *  ~800ns per hash lookup, while 8 saves 10% of the bytes but makes lookups ~20% slower(measured by
+     *  {@code DictionaryBlockSizeBenchmark}, under the test sources) */
+    public static final int DEFAULT_BLOCK_SIZE = 4;
+    // Block size of dictionaries created before it was persisted
+    static final int LEGACY_BLOCK_SIZE = 4;
+    private final int blockSize;
 
     private final PostingListReader postingListReader;
 
+    /** Memory budget of the decoded posting lists cache used by default, in bytes */
+    public static final long DEFAULT_POSTINGS_CACHE_BYTES = 16L * 1024 * 1024;
+    private final PostingsCache postingsCache;
+
+    // Only set if the postings format has positions
+    private final LongBuffer positionsIndex;
+    private final PositionsReader positionsReader;
+
 
     // Contains the terms
     static final String TERMS_FILE_NAME = "terms.txt";
     static final Charset TERMS_FILE_ENCODING = StandardCharsets.UTF_8;
+    // Version of the terms encoding, following the postings format in the stats file. Dictionaries without one have
+    // their term offsets and lengths in chars rather than bytes, these are converted when the dictionary is opened
+    static final int TERMS_FORMAT_VERSION = 1;
+    // Version of the elements format, following the terms format version. Dictionaries without one have fixed size
+    // elements(see PackedDictionaryElements), rather than compact ones(see CompactDictionaryElements). It is followed
+    // by the block size
+    static final int ELEMENTS_FORMAT_VERSION = 1;
     private final FrontCodingDecoder decoder;
 
     // Contains the dictionary elements
@@ -41,21 +71,51 @@ public class Dictionary {
     // Contains the postings
     static final String POSTINGS_FILE_NAME = "postings.bin";
 
+    // Contain the positions of every term, and a pointer to the positions of every term(as a long), respectively.
+    // Only exist if the postings format has positions
+    static final String POSITIONS_FILE_NAME = "positions.bin";
+    static final String POSITIONS_INDEX_FILE_NAME = "positions-index.bin";
+
+    // Contains a perfect hash from terms to their indices, might not exist for old dictionaries
+    static final String TERM_HASH_FILE_NAME = "terms-hash.bin";
+    private final TermHashIndex termHashIndex;
+
+    // Contains an FST from terms to their indices(see TermFst), might not exist for old dictionaries
+    static final String TERM_FST_FILE_NAME = "terms.fst";
+
+    // Rejects most absent terms before searching for them, only set if the dictionary has one
+    static final String TERM_FILTER_FILE_NAME = "terms-bloom.bin";
+    private final TermBloomFilter termFilter;
+    private final TermFst termFst;
+
+    // the first term of every block, for finding a term's block when searching
+    private final BlockHeadIndex blockHeads;
+
     private final long totalNumberOfTokens;
     private final int uniqueNumberOfTokens;
     private final long numberDocIdFreqPairs;
+    private final PostingsFormat postingsFormat;
 
     /**
      * @param dir Directory of index files
      * @throws IOException In case of IO error
      */
     public Dictionary(String dir) throws IOException {
+        this(dir, DEFAULT_POSTINGS_CACHE_BYTES);
+    }
+
+    /**
+     * @param dir Directory of index files
+     * @param postingsCacheBytes Memory budget for caching decoded posting lists(see {@link PostingsCache}), in bytes.
+     *                           0 disables caching
+     * @throws IOException In case of IO error
+     */
+    public Dictionary(String dir, long postingsCacheBytes) throws IOException {
         this.dir = dir;
+        this.postingsCache = new PostingsCache(postingsCacheBytes);
 
         try (var statsIs = new BufferedInputStream(new FileInputStream(Path.of(dir, DICTIONARY_STATS_FILE).toString()));
-             var elementsIs = new BufferedInputStream(new FileInputStream(Path.of(dir, DICTIONARY_FILE_NAME).toString()));
-             var statsDis = new DataInputStream(statsIs);
-             var elementsDis = new DataInputStream(elementsIs)
+             var statsDis = new DataInputStream(statsIs)
              )
         {
             this.totalNumberOfTokens = statsDis.readLong();
@@ -64,18 +124,162 @@ public class Dictionary {
             assert uniqueNumberOfTokens <= totalNumberOfTokens;
             assert numberDocIdFreqPairs >= uniqueNumberOfTokens;
             assert numberDocIdFreqPairs <= totalNumberOfTokens;
-            elements = new PackedDictionaryElements(elementsDis, uniqueNumberOfTokens);
-
+            this.postingsFormat = readPostingsFormat(statsDis);
+            int termsFormatVersion = readTermsFormatVersion(statsDis);
+            int elementsFormatVersion = termsFormatVersion == 0 ? 0 : readElementsFormatVersion(statsDis);
+            this.blockSize = elementsFormatVersion == 0 ? LEGACY_BLOCK_SIZE : readBlockSize(statsDis);
+            var elementsPath = Path.of(dir, DICTIONARY_FILE_NAME);
+            // the elements are used in place, unless they must be converted
+            if (termsFormatVersion == 0) {
+                var packedElements = PackedDictionaryElements.loaded(elementsPath, uniqueNumberOfTokens, blockSize);
+                convertCharOffsetsToBytes(packedElements);
+                elements = packedElements;
+            } else if (elementsFormatVersion == 0) {
+                elements = PackedDictionaryElements.memoryMapped(elementsPath, uniqueNumberOfTokens, blockSize);
+            } else {
+                elements = CompactDictionaryElements.memoryMapped(elementsPath, uniqueNumberOfTokens, blockSize);
+            }
             assert uniqueNumberOfTokens == elements.size();
         }
 
-        this.postingListReader = new PostingListReader(Path.of(dir, POSTINGS_FILE_NAME).toString());
+        // posting lists of block heads are used as chunk boundaries for mapping the postings file
+        this.postingListReader = PostingListReader.memoryMapped(
+                Path.of(dir, POSTINGS_FILE_NAME).toString(),
+                postingsFormat,
+                IntStream.iterate(0, ix -> ix < uniqueNumberOfTokens, ix -> ix + blockSize)
+                        .mapToLong(elements::getPostingsPointer)
+                        .iterator()
+        );
+
+        if (postingsFormat.hasPositions()) {
+            try (var raf = new RandomAccessFile(Path.of(dir, POSITIONS_INDEX_FILE_NAME).toString(), "r");
+                 var channel = raf.getChannel()) {
+                this.positionsIndex = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).asLongBuffer();
+            }
+            assert positionsIndex.limit() == uniqueNumberOfTokens;
+            this.positionsReader = PositionsReader.memoryMapped(
+                    Path.of(dir, POSITIONS_FILE_NAME).toString(),
+                    IntStream.iterate(0, ix -> ix < uniqueNumberOfTokens, ix -> ix + blockSize)
+                            .mapToLong(positionsIndex::get)
+                            .iterator()
+            );
+        } else {
+            this.positionsIndex = null;
+            this.positionsReader = null;
+        }
+
+        var hashPath = Path.of(dir, TERM_HASH_FILE_NAME);
+        if (Files.exists(hashPath)) {
+            try (var hashDis = new DataInputStream(new BufferedInputStream(new FileInputStream(hashPath.toString())))) {
+                this.termHashIndex = TermHashIndex.deserialize(hashDis);
+            }
+            assert termHashIndex.size() == uniqueNumberOfTokens;
+        } else {
+            this.termHashIndex = null;
+        }
 
         this.decoder = new FrontCodingDecoder(
-                Dictionary.BLOCK_SIZE,
+                blockSize,
                 Dictionary.TERMS_FILE_ENCODING,
                 Path.of(dir, TERMS_FILE_NAME)
         );
+        this.blockHeads = BlockHeadIndex.build(elements, decoder.getBytes());
+
+        var filterPath = Path.of(dir, TERM_FILTER_FILE_NAME);
+        if (Files.exists(filterPath)) {
+            try (var filterDis = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(filterPath.toString())))) {
+                this.termFilter = TermBloomFilter.deserialize(filterDis);
+            }
+        } else {
+            this.termFilter = null;
+        }
+
+        var fstPath = Path.of(dir, TERM_FST_FILE_NAME);
+        this.termFst = Files.exists(fstPath) ? TermFst.memoryMapped(fstPath) : null;
+        assert termFst == null || termFst.size() == uniqueNumberOfTokens;
+    }
+
+    /** Reads the postings format following the statistics, indices created before the format was persisted
+     *  don't have one.*/
+    private static PostingsFormat readPostingsFormat(DataInputStream statsDis) throws IOException {
+        try {
+            return PostingsFormat.deserialize(statsDis);
+        } catch (EOFException ex) {
+            return PostingsFormat.LEGACY;
+        }
+    }
+
+    /** Reads the version of the terms encoding following the postings format, 0 for dictionaries created before
+     *  it was persisted */
+    private static int readTermsFormatVersion(DataInputStream statsDis) throws IOException {
+        try {
+            int version = statsDis.readInt();
+            if (version != TERMS_FORMAT_VERSION) {
+                throw new IOException("Unsupported terms format version " + version);
+            }
+            return version;
+        } catch (EOFException ex) {
+            return 0;
+        }
+    }
+
+    /** Reads the version of the elements format following the terms format version, 0 for dictionaries created
+     *  before it was persisted */
+    private static int readElementsFormatVersion(DataInputStream statsDis) throws IOException {
+        try {
+            int version = statsDis.readInt();
+            if (version != ELEMENTS_FORMAT_VERSION) {
+                throw new IOException("Unsupported dictionary elements format version " + version);
+            }
+            return version;
+        } catch (EOFException ex) {
+            return 0;
+        }
+    }
+
+    /** Reads the block size following the elements format version, dictionaries created before it was persisted
+     *  use {@link #LEGACY_BLOCK_SIZE} */
+    private static int readBlockSize(DataInputStream statsDis) throws IOException {
+        try {
+            int blockSize = statsDis.readInt();
+            if (blockSize < 1) {
+                throw new IOException("Invalid dictionary block size " + blockSize);
+            }
+            return blockSize;
+        } catch (EOFException ex) {
+            return LEGACY_BLOCK_SIZE;
+        }
+    }
+
+    /** Converts the term offsets and lengths of a dictionary created when they were in chars, into bytes */
+    private void convertCharOffsetsToBytes(PackedDictionaryElements elements) throws IOException {
+        var terms = Files.readString(Path.of(dir, TERMS_FILE_NAME), TERMS_FILE_ENCODING);
+        int charPos = 0;
+        int bytePos = 0;
+        String prevTerm = "";
+        for (int index = 0; index < uniqueNumberOfTokens; ++index) {
+            int prefixLength = elements.getPrefixLength(index);
+            int suffixLength = elements.getSuffixLength(index);
+            var prefix = prevTerm.substring(0, prefixLength);
+            var suffix = terms.substring(charPos, charPos + suffixLength);
+            int suffixBytesLength = suffix.getBytes(TERMS_FILE_ENCODING).length;
+            elements.setTermOffsets(index, prefix.getBytes(TERMS_FILE_ENCODING).length, suffixBytesLength, bytePos);
+
+            charPos += suffixLength;
+            bytePos += suffixBytesLength;
+            prevTerm = prefix + suffix;
+        }
+    }
+
+    /** Returns the format of the posting lists of this dictionary */
+    public PostingsFormat getPostingsFormat() {
+        return postingsFormat;
+    }
+
+    /** Returns the number of terms in every front coding block of this dictionary */
+    public int getBlockSize() {
+        return blockSize;
     }
 
     /** Returns the term of this element, assuming its index is known */
@@ -89,26 +293,25 @@ public class Dictionary {
 
     private String getTermInner(int index) throws IOException {
 
-        int posInBlock = index % BLOCK_SIZE;
-        var firstBlockElement = (FirstBlockElement)this.elements.get(index - posInBlock);
+        int posInBlock = index % blockSize;
+        int blockStart = index - posInBlock;
         var frontCodingResult = new FrontCodingResult(
-                firstBlockElement.suffixPos,
+                elements.getBlockSuffixPos(blockStart),
                 0,
-                firstBlockElement.suffixLength
+                elements.getSuffixLength(blockStart)
         );
 
         String term = decoder.decodeElement(frontCodingResult, 0);
 
         // now, iterate over the rest of the blocks if the position in the block isn't 0
         int curSuffixPos = frontCodingResult.suffixPos + frontCodingResult.suffixLength;
-        for (int curIndex = index - posInBlock + 1; curIndex <= index; ++curIndex) {
-            var otherBlockElement = (OtherBlockElement)this.elements.get(curIndex);
+        for (int curIndex = blockStart + 1; curIndex <= index; ++curIndex) {
             frontCodingResult = new FrontCodingResult(
                     curSuffixPos,
-                    otherBlockElement.prefixLength,
-                    otherBlockElement.suffixLength
+                    elements.getPrefixLength(curIndex),
+                    elements.getSuffixLength(curIndex)
             );
-            term = decoder.decodeElement(frontCodingResult, curIndex % BLOCK_SIZE);
+            term = decoder.decodeElement(frontCodingResult, curIndex % blockSize);
             curSuffixPos += frontCodingResult.suffixLength;
         }
 
@@ -118,50 +321,217 @@ public class Dictionary {
     /** Returns the number of documents containing at least 1 occurrences of the term at given index.
      *  Equivalently, this is the length of the posting list of said term. */
     public int getTokenFrequency(int index) {
-        return this.elements.get(index).getTokenFrequency();
+        return this.elements.getTokenFrequency(index);
     }
 
     /** Returns the token collection frequency at given index, that is, the number
      *  of occurrences within corpus for term at given index.
      */
     public int getTokenCollectionFrequency(int index) {
-        return this.elements.get(index).getTokenCollectionFrequency();
+        return this.elements.getTokenCollectionFrequency(index);
+    }
+
+    /** Returns a pointer to the posting list of the term at given index, within the postings file */
+    long getPostingsPointer(int index) {
+        return elements.getPostingsPointer(index);
+    }
+
+    /** Returns a pointer to the positions of the term at given index, within the positions file */
+    long getPositionsPointer(int index) {
+        return positionsIndex.get(index);
+    }
+
+    Path getPostingsPath() {
+        return Paths.get(dir, POSTINGS_FILE_NAME);
+    }
+
+    Path getPositionsPath() {
+        return Paths.get(dir, POSITIONS_FILE_NAME);
+    }
+
+    /**
+     * Samples the terms at evenly spaced block heads, e.g, for splitting the terms of one or more dictionaries into
+     * ranges whose posting lists take about the same number of bytes
+     * @param maxSamples Maximal number of sampled terms
+     * @return The sampled terms in increasing order, each along with the number of bytes taken by the posting lists
+     *         from it(inclusive) until the next sampled term, or until the end of the postings file
+     */
+    public List<Map.Entry<String, Long>> samplePostingsSizes(int maxSamples) throws IOException {
+        var samples = new ArrayList<Map.Entry<String, Long>>();
+        if (uniqueNumberOfTokens == 0 || maxSamples < 1) {
+            return samples;
+        }
+        int numBlocks = (uniqueNumberOfTokens + blockSize - 1) / blockSize;
+        int blocksPerSample = (numBlocks + maxSamples - 1) / maxSamples;
+        long postingsSize = Files.size(getPostingsPath());
+        for (int block = 0; block < numBlocks; block += blocksPerSample) {
+            int index = block * blockSize;
+            int nextIndex = (block + blocksPerSample) * blockSize;
+            long nextPointer = nextIndex < uniqueNumberOfTokens ? elements.getPostingsPointer(nextIndex) : postingsSize;
+            samples.add(new AbstractMap.SimpleEntry<>(getTerm(index), nextPointer - elements.getPostingsPointer(index)));
+        }
+        return samples;
     }
 
     /** Returns a sequence of docID and freq pairs of documents containing term at given index. */
     public Enumeration<Integer> getDocIdsAndFreqs(int index) throws IOException {
-        var element = this.elements.get(index);
+        return PostingsCursor.asDocIdFreqEnumeration(getCachedPostings(index));
+    }
+
+    /** Returns a cursor over the encoded posting list of the term at given index. Blocks are decoded lazily, so
+     *  {@link PostingsCursor#advance(int)} skips blocks and their maximal frequencies are known - it bypasses the
+     *  postings cache. */
+    public PostingsCursor getPostings(int index) {
+        return readPostings(index);
+    }
+
+    /** Returns a cursor over the posting list of the term at given index, where frequently used posting lists are
+     *  served decoded from the postings cache. A decoded list has no skip data(advancing scans it, and its block
+     *  maximal frequencies are unknown), so this should only be used for reading whole posting lists. */
+    public PostingsCursor getCachedPostings(int index) {
+        if (postingsCache.getMaxBytes() == 0) {
+            return readPostings(index);
+        }
+        return postingsCache.get(index, this::readPostings);
+    }
+
+    /** Returns the Bloom filter of the terms, e.g, for inspecting its size and false positive rate, or null if the
+     *  dictionary was created without one */
+    public TermBloomFilter getTermFilter() {
+        return termFilter;
+    }
+
+    /** Returns the cache of decoded posting lists, e.g, for inspecting its hit/miss counters */
+    public PostingsCache getPostingsCache() {
+        return postingsCache;
+    }
+
+    /** Returns a cursor over the encoded posting list of the term at given index, bypassing the cache */
+    private OrdinalPostingsCursor readPostings(int index) {
         try {
-            return postingListReader.readDocIdFreqPairs(element.getPostingsPointer(), element.getTokenFrequency());
+            return postingListReader.readPostings(elements.getPostingsPointer(index), elements.getTokenFrequency(index));
         } catch (IOException e) {
             System.err.println("Couldn't get docIDs of postings for review at index " + index + ": " + e);
-            return Utils.streamToEnumeration(Stream.empty());
+            return new ArrayPostingsCursor(new int[0], new int[0]);
         }
     }
 
-    /** Allows treating the dictionary as a list of byte buffers(term encodings),
-     *  allowing to perform binary search over them
-     */
-    private class TermAbstractList extends AbstractList<String> implements RandomAccess
-    {
-        @Override
-        public int size() {
-            return elements.size();
+    /** Returns the encoded posting list(along with its positions, if the dictionary stores them) of the term at
+     *  given index, e.g, for appending it to the list of the same term in another dictionary, see
+     *  {@link SequentialDictionaryBuilder#appendPostings(EncodedPostingList)} */
+    public EncodedPostingList getEncodedPostings(int index) {
+        var postings = postingListReader.readEncoded(elements.getPostingsPointer(index),
+                elements.getTokenFrequency(index), elements.getTokenCollectionFrequency(index));
+        if (positionsReader == null) {
+            return postings;
         }
+        long nextPositionsPtr = index + 1 < uniqueNumberOfTokens ? positionsIndex.get(index + 1) : -1;
+        return positionsReader.readPositions(postings, positionsIndex.get(index), nextPositionsPtr);
+    }
 
-        @Override
-        public String get(int index) {
-            return getTerm(index);
+    /** Returns a cursor over the posting list of the term at given index, which can also read the positions of the
+     *  term within every document.
+     * @throws UnsupportedOperationException If the dictionary doesn't store positions
+     */
+    public PositionalPostingsCursor getPositionalPostings(int index) {
+        if (positionsReader == null) {
+            throw new UnsupportedOperationException("The index doesn't store positions, see PostingsFormat.withPositions");
         }
+        return positionsReader.readPositions(readPostings(index), positionsIndex.get(index));
     }
-    private final TermAbstractList abstractList = new TermAbstractList();
 
-    /** Performs binary search over the dictionary in order to determine its index within the dictionary,
+    /** Determines the index of a token within the dictionary, via the term hash index(if there is one), otherwise
+     *  by binary search. Either way, the token is compared with terms as encoded bytes, without decoding them. Most
+     *  absent tokens are rejected by the term Bloom filter(if there is one) before either.
      * @param token Token
-     * @return Index of token within dictionary, or -1 if it wasn't found
+     * @return Index of token within dictionary, or a negative number if it wasn't found
      */
     public int getIndexOfToken(String token) {
-        return Collections.binarySearch(abstractList, token);
+        long hash = TermHashIndex.hash(token);
+        if (termFilter != null && !termFilter.mightContain(hash)) {
+            return -1;
+        }
+        var tokenBytes = token.getBytes(TERMS_FILE_ENCODING);
+        int index;
+        if (termHashIndex == null) {
+            index = binarySearch(tokenBytes);
+        } else {
+            index = termHashIndex.lookup(hash);
+            index = index >= 0 && termEquals(index, tokenBytes) ? index : -1;
+        }
+        if (index < 0 && termFilter != null) {
+            termFilter.recordFalsePositive();
+        }
+        return index;
+    }
+
+    /** Same as {@link Collections#binarySearch(List, Object)} over the terms: the block which may contain the token
+     *  is found via binary search over the block heads, and then its terms are scanned. */
+    int binarySearch(byte[] token) {
+        int block = blockHeads.findBlock(token);
+        if (block < 0) {
+            return -1;
+        }
+        int last = Math.min((block + 1) * blockSize, uniqueNumberOfTokens) - 1;
+        return searchBlock(last, token);
+    }
+
+    /** Checks whether the term at given index equals a token(as encoded bytes) */
+    private boolean termEquals(int index, byte[] token) {
+        return searchBlock(index, token) == index;
+    }
+
+    /**
+     * Finds a token within the block containing the given index, by scanning the block's terms from its beginning up to
+     * said index. Terms aren't decoded into strings, rather, the token is compared with their suffixes, while tracking
+     * the length of their common prefix with the token.
+     * @param last Index of the last term to check
+     * @param token Encoded token
+     * @return Same as {@link Collections#binarySearch(List, Object)} over the scanned terms, that is, the index of the
+     *         token if found, otherwise -(insertion point)-1, where the insertion point is at most last + 1
+     */
+    private int searchBlock(int last, byte[] token) {
+        var terms = decoder.getBytes();
+        int suffixPos = elements.getBlockSuffixPos(last);
+        int matched = 0;
+        int cmp = 0;
+        for (int cur = last - last % blockSize; cur <= last; ++cur) {
+            int prefixLength = elements.getPrefixLength(cur);
+            int length = prefixLength + elements.getSuffixLength(cur);
+            // if the term shares more than 'matched' bytes with the previous term, it differs from the token at the
+            // same place as the previous term did
+            if (prefixLength <= matched) {
+                matched = prefixLength;
+                int termPos = suffixPos - prefixLength;
+                while (matched < length && matched < token.length && terms.get(termPos + matched) == token[matched]) {
+                    ++matched;
+                }
+                cmp = matched < length && matched < token.length
+                        ? utf16Order(terms.get(termPos + matched)) - utf16Order(token[matched])
+                        : length - token.length;
+            }
+            if (cmp == 0) {
+                return cur;
+            } else if (cmp > 0) {
+                return -(cur + 1);
+            }
+            suffixPos += length - prefixLength;
+        }
+        return -(last + 2);
+    }
+
+    /** Maps a byte of UTF-8 encoded text, such that comparing mapped bytes agrees with comparing the strings as
+     *  UTF-16(as the terms are sorted). The orders only differ for supplementary characters(whose encoding begins
+     *  with 0xF0-0xF4), which are encoded as surrogates in UTF-16, and thus come before 0xE000-0xFFFF(0xEE-0xEF). */
+    static int utf16Order(byte b) {
+        int unsigned = b & 0xFF;
+        if (unsigned >= 0xF0) {
+            return unsigned - 0xF0 + 0xEE;
+        }
+        if (unsigned >= 0xEE) {
+            return unsigned + 5;
+        }
+        return unsigned;
     }
 
     /** Returns a stream over all dictionary elements */
@@ -182,115 +552,322 @@ public class Dictionary {
     /** Returns a spliterator over all terms in the dictionary along with their document frequencies,
      *  lexicographically ordered. */
     public Spliterator<Map.Entry<String, Integer>> terms() {
-        int sizeHint = uniqueNumberOfTokens;
-        int characteristics = Spliterator.SIZED | Spliterator.NONNULL | Spliterator.ORDERED | Spliterator.DISTINCT;
-
-        return new Spliterators.AbstractSpliterator<>(sizeHint, characteristics) {
-            int dictIndex = 0;
-            String curPrefix = null;
-            int curSuffixPos = 0;
-            final Spliterator<DictionaryElement> dictElements = elements.spliterator();
-
-            final FrontCodingDecoder decoder = new FrontCodingDecoder(
-                    Dictionary.BLOCK_SIZE,
-                    Dictionary.this.decoder.getString()
-            );
+        return terms(0, uniqueNumberOfTokens);
+    }
 
-            @Override
-            public boolean tryAdvance(Consumer<? super Map.Entry<String, Integer>> action) {
-                return dictElements.tryAdvance(element -> {
-                    if (dictIndex % BLOCK_SIZE == 0) {
-                        var firstBlockElement = (FirstBlockElement)element;
-                        var frontCodingResult = new FrontCodingResult(
-                                firstBlockElement.suffixPos,
-                                0,
-                                firstBlockElement.suffixLength
-                        );
-                        curSuffixPos = firstBlockElement.suffixPos + firstBlockElement.suffixLength;
-                        curPrefix = decoder.decodeElement(frontCodingResult, 0);
-                    } else {
-                        var otherBlockElement = (OtherBlockElement)element;
-                        var frontCodingResult = new FrontCodingResult(
-                                curSuffixPos,
-                                otherBlockElement.prefixLength,
-                                otherBlockElement.suffixLength
-                        );
-                        curSuffixPos += frontCodingResult.suffixLength;
-                        curPrefix = decoder.decodeElement(frontCodingResult, dictIndex % BLOCK_SIZE);
-                    }
-                    action.accept(new AbstractMap.SimpleEntry<>(curPrefix, element.getTokenFrequency()));
-                    ++dictIndex;
-                });
+    /** Returns a spliterator over the terms whose indices are in [fromIndex, toIndex), along with their document
+     *  frequencies, lexicographically ordered. Only the terms of the blocks containing these are decoded. */
+    public Spliterator<Map.Entry<String, Integer>> terms(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > uniqueNumberOfTokens || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("Invalid range [" + fromIndex + ", " + toIndex + ") of terms");
+        }
+        return new TermSpliterator(fromIndex, toIndex);
+    }
+
+    /** Decodes the terms in a range of indices sequentially. Splits at block heads, so that both halves begin decoding
+     *  at the beginning of a block, and share nothing but the (thread safe) elements and terms bytes. */
+    private class TermSpliterator implements Spliterator<Map.Entry<String, Integer>> {
+        private int fromIndex;
+        private final int toIndex;
+        // decoding begins at the beginning of the block
+        private int dictIndex;
+        private int curSuffixPos;
+
+        private final FrontCodingDecoder decoder = new FrontCodingDecoder(
+                blockSize,
+                Dictionary.TERMS_FILE_ENCODING,
+                Dictionary.this.decoder.getBytes()
+        );
+
+        TermSpliterator(int fromIndex, int toIndex) {
+            this.fromIndex = fromIndex;
+            this.toIndex = toIndex;
+            this.dictIndex = fromIndex - fromIndex % blockSize;
+            this.curSuffixPos = fromIndex < toIndex ? elements.getBlockSuffixPos(fromIndex) : 0;
+        }
+
+        /** Index of the next term */
+        int nextIndex() {
+            return Math.max(dictIndex, fromIndex);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Map.Entry<String, Integer>> action) {
+            while (dictIndex < toIndex) {
+                var frontCodingResult = new FrontCodingResult(
+                        curSuffixPos,
+                        elements.getPrefixLength(dictIndex),
+                        elements.getSuffixLength(dictIndex)
+                );
+                curSuffixPos += frontCodingResult.suffixLength;
+                var term = decoder.decodeElement(frontCodingResult, dictIndex % blockSize);
+                ++dictIndex;
+                if (dictIndex > fromIndex) {
+                    action.accept(new AbstractMap.SimpleEntry<>(term, getTokenFrequency(dictIndex - 1)));
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public TermSpliterator trySplit() {
+            int mid = (nextIndex() + toIndex) >>> 1;
+            return splitAt(mid - mid % blockSize);
+        }
+
+        /** Splits off the remaining terms before the given block head, unless there are none before or after it */
+        TermSpliterator splitAt(int blockHead) {
+            assert blockHead % blockSize == 0;
+            int next = nextIndex();
+            if (blockHead <= next || blockHead >= toIndex) {
+                return null;
             }
-        };
+            var prefix = new TermSpliterator(next, blockHead);
+            fromIndex = blockHead;
+            dictIndex = blockHead;
+            curSuffixPos = elements.getBlockSuffixPos(blockHead);
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return toIndex - nextIndex();
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.NONNULL | Spliterator.ORDERED |
+                    Spliterator.DISTINCT;
+        }
     }
 
-    /** Returns a spliterator over all tokens in the dictionary, sorted by terms, followed by docIDs */
-    public Spliterator<Token> tokens() throws IOException {
-        long sizeHint = numberDocIdFreqPairs;
-        int characteristics = Spliterator.SIZED | Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.DISTINCT;
+    /** Returns the number of terms lexicographically smaller than the given token, which is also the index of the
+     *  first term that is at least the token(or the number of terms, if there's none) */
+    public int getRankOfToken(String token) {
+        if (termFst != null) {
+            return termFst.rank(token);
+        }
+        int found = binarySearch(token.getBytes(TERMS_FILE_ENCODING));
+        return found >= 0 ? found : -found - 1;
+    }
+
+    /** Returns the indices of the terms which begin with given prefix, in increasing order. Since these are
+     *  consecutive, only the prefix is searched for(via the term FST, if there is one). */
+    public IntStream indicesWithPrefix(String prefix) {
+        var range = prefixRange(prefix);
+        return IntStream.range(range[0], range[1]);
+    }
+
+    /**
+     * Finds the terms which begin with given prefix, see {@link #indicesWithPrefix(String)}
+     * @return An array of the form {from, to}, such that the indices of said terms are [from, to)
+     */
+    public int[] prefixRange(String prefix) {
+        if (termFst != null) {
+            return termFst.prefixRange(prefix);
+        }
+        var successor = prefixSuccessor(prefix);
+        return new int[]{getRankOfToken(prefix),
+                successor == null ? uniqueNumberOfTokens : getRankOfToken(successor)};
+    }
 
-        return new Spliterators.AbstractSpliterator<Token>(sizeHint, characteristics) {
+    /** Returns the indices of the terms t such that from &lt;= t &lt; to(lexicographically), in increasing order */
+    public IntStream indicesInRange(String from, String to) {
+        int fromIndex = getRankOfToken(from);
+        return IntStream.range(fromIndex, Math.max(fromIndex, getRankOfToken(to)));
+    }
 
+    /**
+     * Finds the terms within a bounded edit distance of a token(see {@link LevenshteinAutomaton}), by intersecting
+     * the automaton with the term FST if there is one. Otherwise, the terms are scanned in order, and whenever the
+     * automaton rejects a prefix, the terms beginning with it are skipped, along with the blocks containing only them.
+     * @param consumer Receives the index of every such term, in increasing order, along with its distance
+     */
+    public void forEachWithinDistance(String token, int maxEdits, LevenshteinAutomaton.MatchConsumer consumer) {
+        var automaton = new LevenshteinAutomaton(token, maxEdits);
+        if (termFst != null) {
+            termFst.intersect(automaton, consumer);
+            return;
+        }
+        int index = 0;
+        while (index < uniqueNumberOfTokens) {
+            index = scanWithinDistance(index, automaton, consumer);
+        }
+    }
 
-            final Spliterator<Map.Entry<String, Integer>> termSpliterator = terms();
-            final InputStream postings = new BufferedInputStream(new FileInputStream(
-                Path.of(dir, POSTINGS_FILE_NAME).toString()
-            ));
-            final GroupVarintDecoder decoder = new GroupVarintDecoder(postings);
+    /** Scans the terms from given index, until reaching a rejected prefix whose terms extend beyond the current block
+     *  @return The index from which to continue scanning, that is, the first term after said prefix */
+    private int scanWithinDistance(int fromIndex, LevenshteinAutomaton automaton,
+                                   LevenshteinAutomaton.MatchConsumer consumer) {
+        automaton.truncate(0);
+        var terms = Spliterators.iterator(terms(fromIndex, uniqueNumberOfTokens));
+        String prevTerm = "";
+        // length of the rejected prefix of the previous term, if it was rejected
+        int rejectedLength = -1;
+        for (int index = fromIndex; terms.hasNext(); ++index) {
+            String term = terms.next().getKey();
+            int common = 0;
+            int maxCommon = Math.min(prevTerm.length(), term.length());
+            while (common < maxCommon && prevTerm.charAt(common) == term.charAt(common)) {
+                ++common;
+            }
+            prevTerm = term;
+            if (rejectedLength >= 0 && common >= rejectedLength) {
+                continue;
+            }
+            rejectedLength = -1;
+            automaton.truncate(Math.min(common, automaton.depth()));
+            while (automaton.depth() < term.length()) {
+                if (!automaton.push(term.charAt(automaton.depth()))) {
+                    rejectedLength = automaton.depth();
+                    break;
+                }
+            }
+            if (rejectedLength < 0) {
+                if (automaton.isMatch()) {
+                    consumer.accept(index, automaton.distance());
+                }
+                continue;
+            }
+            var successor = prefixSuccessor(term.substring(0, rejectedLength));
+            int next = successor == null ? uniqueNumberOfTokens : getRankOfToken(successor);
+            if (next / blockSize > index / blockSize + 1) {
+                return next;
+            }
+        }
+        return uniqueNumberOfTokens;
+    }
 
-            int curFrequency = 0;
-            String currentTerm = null;
-            int postingListIndex = 0;
-            int lastDocID = 0;
-            boolean closed = false;
+    /** Returns the smallest string which is greater than all strings beginning with given prefix, or null if there's
+     *  no such string */
+    private static String prefixSuccessor(String prefix) {
+        int end = prefix.length();
+        while (end > 0 && prefix.charAt(end - 1) == Character.MAX_VALUE) {
+            --end;
+        }
+        if (end == 0) {
+            return null;
+        }
+        return prefix.substring(0, end - 1) + (char) (prefix.charAt(end - 1) + 1);
+    }
 
-            private void close() throws IOException {
-                postings.close();
-                decoder.close();
-                closed = true;
+    /** Returns a spliterator over all tokens in the dictionary, sorted by terms, followed by docIDs. Since every
+     *  posting list is read once, the postings cache is bypassed. Splits at the block head whose posting pointer is
+     *  closest to the middle of the remaining posting lists, so that both halves read about as many postings. */
+    public Spliterator<Token> tokens() throws IOException {
+        return new TokenSpliterator(new TermSpliterator(0, uniqueNumberOfTokens), numberDocIdFreqPairs);
+    }
+
+    /** Returns the first block head in [fromIndex, toIndex) whose posting pointer is at least the given one, or the
+     *  last block head in the range if there's none */
+    private int blockHeadAtPostingsPointer(int fromIndex, int toIndex, long pointer) {
+        int lo = (fromIndex + blockSize - 1) / blockSize;
+        int hi = (toIndex - 1) / blockSize;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (elements.getPostingsPointer(mid * blockSize) < pointer) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
             }
+        }
+        return lo * blockSize;
+    }
 
-            @Override
-            public boolean tryAdvance(Consumer<? super Token> action) {
-                try {
-                    if (postingListIndex >= curFrequency) {
-                        // advance to next term
-                        var hasMoreTerms = termSpliterator.tryAdvance(newTermFreq -> {
-                            currentTerm = newTermFreq.getKey();
-                            curFrequency = newTermFreq.getValue();
-                            postingListIndex = 0;
-                            assert curFrequency >= 1;
-                            try {
-                                // there might be multiple zeros
-                                do {
-                                    lastDocID = decoder.read();
-                                } while (lastDocID == 0);
-                                var freqInDoc = decoder.read();
-                                action.accept(new Token(currentTerm, lastDocID, freqInDoc));
-                                ++postingListIndex;
-                            } catch (IOException e) {
-                                throw new RuntimeException("Got IO exception while dealing with posting list", e);
-                            }
-                        });
-                        if (!hasMoreTerms && !closed) {
-                            close();
-                        }
-                        return hasMoreTerms;
+    /** Reads the posting lists of the terms given by a term spliterator */
+    private class TokenSpliterator implements Spliterator<Token> {
+        private final TermSpliterator termSpliterator;
+        // exact until split, since the sizes of split parts are estimated by their posting pointers
+        private long estimatedSize;
+        private boolean split;
+
+        private String currentTerm = null;
+        private int dictIndex;
+        private PostingsCursor postings = PostingsCursor.empty();
+        private PositionalPostingsCursor positionalPostings = null;
+
+        TokenSpliterator(TermSpliterator termSpliterator, long estimatedSize) {
+            this.termSpliterator = termSpliterator;
+            this.estimatedSize = estimatedSize;
+            this.dictIndex = termSpliterator.nextIndex() - 1;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Token> action) {
+            while (postings.nextDoc() == PostingsCursor.NO_MORE_DOCS) {
+                // advance to next term
+                var hasMoreTerms = termSpliterator.tryAdvance(newTermFreq -> {
+                    currentTerm = newTermFreq.getKey();
+                    ++dictIndex;
+                    if (positionsReader != null) {
+                        positionalPostings = getPositionalPostings(dictIndex);
+                        postings = positionalPostings;
                     } else {
-                        // advance to next posting list entry
-                        int gap = decoder.read();
-                        assert gap > 0;
-                        lastDocID += gap;
-                        var freqInDoc = decoder.read();
-                        action.accept(new Token(currentTerm, lastDocID, freqInDoc));
-                        ++postingListIndex;
-                        return true;
+                        postings = readPostings(dictIndex);
                     }
-                } catch (IOException e) {
-                    throw new RuntimeException("Got IO exception while dealing with posting list", e);
+                });
+                if (!hasMoreTerms) {
+                    return false;
+                }
+            }
+            int[] positions = null;
+            if (positionalPostings != null) {
+                positions = new int[postings.freq()];
+                for (int i = 0; i < positions.length; ++i) {
+                    positions[i] = positionalPostings.nextPosition();
                 }
             }
-        };
+            if (estimatedSize > 0) {
+                --estimatedSize;
+            }
+            action.accept(new Token(currentTerm, postings.docId(), postings.freq(), positions));
+            return true;
+        }
+
+        /** The prefix takes the rest of the current posting list along with the terms before the split point */
+        @Override
+        public TokenSpliterator trySplit() {
+            int fromIndex = termSpliterator.nextIndex();
+            int toIndex = termSpliterator.toIndex;
+            if (toIndex - fromIndex < 2) {
+                return null;
+            }
+            long fromPointer = elements.getPostingsPointer(fromIndex);
+            long toPointer = elements.getPostingsPointer(toIndex - 1);
+            int blockHead = blockHeadAtPostingsPointer(fromIndex, toIndex, fromPointer + (toPointer - fromPointer) / 2);
+            var prefixTerms = termSpliterator.splitAt(blockHead);
+            if (prefixTerms == null) {
+                return null;
+            }
+            double prefixFraction = toPointer == fromPointer ? 0.5
+                    : (double) (elements.getPostingsPointer(blockHead) - fromPointer) / (toPointer - fromPointer);
+            long prefixSize = (long) (estimatedSize * prefixFraction);
+            var prefix = new TokenSpliterator(prefixTerms, prefixSize);
+            prefix.split = true;
+            prefix.currentTerm = currentTerm;
+            prefix.dictIndex = dictIndex;
+            prefix.postings = postings;
+            prefix.positionalPostings = positionalPostings;
+
+            split = true;
+            estimatedSize -= prefixSize;
+            currentTerm = null;
+            dictIndex = blockHead - 1;
+            postings = PostingsCursor.empty();
+            positionalPostings = null;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return estimatedSize;
+        }
+
+        @Override
+        public int characteristics() {
+            int characteristics = Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.DISTINCT;
+            return split ? characteristics : characteristics | Spliterator.SIZED;
+        }
     }
 }
@@ -17,5 +17,9 @@ public interface DictionaryBuilder extends Closeable, Flushable {
     void endTerm() throws IOException;
 
     void addTermOccurence(int docId, int freqInDoc) throws IOException;
+
+    /** Same as {@link #addTermOccurence(int, int)}, along with the positions of the term within the document
+     *  (which must be given iff the dictionary stores positions) */
+    void addTermOccurence(int docId, int freqInDoc, int[] positions) throws IOException;
 }
 
@@ -0,0 +1,66 @@
+package webdata.dictionary;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/** The dictionary elements by their index, whose fields can be read via primitive accessors without allocating.
+ *  Implementations must allow reading from many threads. */
+abstract class DictionaryElementList extends AbstractList<DictionaryElement> implements RandomAccess {
+
+    private final int blockSize;
+
+    DictionaryElementList(int blockSize) {
+        assert blockSize >= 1;
+        this.blockSize = blockSize;
+    }
+
+    /** Returns the number of terms in every block(except maybe the last one) */
+    int getBlockSize() {
+        return blockSize;
+    }
+
+    /** Returns the number of documents containing the term at given index */
+    abstract int getTokenFrequency(int index);
+
+    /** Returns the number of occurrences of the term at given index */
+    abstract int getTokenCollectionFrequency(int index);
+
+    /** Returns the pointer to the posting list of the term at given index */
+    abstract long getPostingsPointer(int index);
+
+    /** Returns the length of the prefix which the term at given index shares with the previous term, 0 for the
+     *  first element of a block */
+    abstract int getPrefixLength(int index);
+
+    /** Returns the length of the suffix of the term at given index */
+    abstract int getSuffixLength(int index);
+
+    /** Returns the position of the suffix of the first term in the block containing given index, within the terms
+     *  file */
+    abstract int getBlockSuffixPos(int index);
+
+    /** Creates an object holding the fields of the element at given index, prefer the primitive accessors */
+    @Override
+    public DictionaryElement get(int index) {
+        assert index >= 0 && index < size();
+        int blockStart = index - index % blockSize;
+        var fbe = new FirstBlockElement(
+                getTokenFrequency(blockStart),
+                getTokenCollectionFrequency(blockStart),
+                getPostingsPointer(blockStart),
+                getSuffixLength(blockStart),
+                getBlockSuffixPos(blockStart)
+        );
+        if (index == blockStart) {
+            return fbe;
+        }
+        return new OtherBlockElement(
+                fbe,
+                getTokenFrequency(index),
+                getTokenCollectionFrequency(index),
+                (int) (getPostingsPointer(index) - fbe.postingPtr),
+                getPrefixLength(index),
+                getSuffixLength(index)
+        );
+    }
+}
@@ -16,6 +16,12 @@ class FirstBlockElement implements DictionaryElement {
     final int suffixPos;
 
     static final int SIZE_BYTES = 4 * 4 + 8;
+    // offsets of fields within the serialized element
+    static final int FREQUENCY_OFFSET = 0;
+    static final int COLLECTION_FREQUENCY_OFFSET = 4;
+    static final int POSTING_PTR_OFFSET = 4 * 2;
+    static final int SUFFIX_LENGTH_OFFSET = 4 * 2 + 8;
+    static final int SUFFIX_POS_OFFSET = 4 * 3 + 8;
 
     public FirstBlockElement(int frequency, int collectionFrequency, long postingPtr, int suffixLength, int suffixPos) {
         assert frequency > 0 && postingPtr >= 0 && suffixPos >= 0 && suffixLength >= 0;
@@ -68,4 +74,15 @@ class FirstBlockElement implements DictionaryElement {
         return new FirstBlockElement(frequency, collectionFrequency, postingPtr, suffixLength, suffixPos);
     }
 
+    /** Deserializes the element at given position of the buffer, without moving the buffer's position */
+    public static FirstBlockElement deserialize(ByteBuffer buf, int pos) {
+        return new FirstBlockElement(
+                buf.getInt(pos + FREQUENCY_OFFSET),
+                buf.getInt(pos + COLLECTION_FREQUENCY_OFFSET),
+                buf.getLong(pos + POSTING_PTR_OFFSET),
+                buf.getInt(pos + SUFFIX_LENGTH_OFFSET),
+                buf.getInt(pos + SUFFIX_POS_OFFSET)
+        );
+    }
+
 }
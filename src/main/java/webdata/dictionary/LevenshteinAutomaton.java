@@ -0,0 +1,124 @@
+package webdata.dictionary;
+
+import java.util.Arrays;
+
+/** Accepts the strings within a bounded edit distance of a query term, where an edit is an insertion, deletion or
+ *  substitution of a char, or a transposition of two adjacent chars(e.g, "recieved" is 1 edit away from "received").
+ *
+ *  Rather than being compiled into explicit states, the automaton is simulated over a path of chars using the rows of
+ *  the usual dynamic programming table: {@link #push(char)} extends the path by a char and tells whether any string
+ *  beginning with it may still be accepted, allowing to prune whole subtrees of sorted terms(a branch of the term FST,
+ *  or a range of the dictionary sharing a prefix). Popping chars is free, as every row depends only on the previous
+ *  ones, so siblings re-use the rows of their common prefix.
+ */
+public class LevenshteinAutomaton {
+
+    /** Maximal supported edit distance, beyond it nearly every short term matches and expansion is too costly */
+    public static final int MAX_EDITS = 2;
+
+    /** Receives the terms accepted when intersecting the automaton with the dictionary */
+    public interface MatchConsumer {
+        void accept(int index, int distance);
+    }
+
+    private final String term;
+    private final int maxEdits;
+
+    // rows[d][i] is the distance between the first d chars of the path and the first i chars of the term, capped at
+    // maxEdits + 1. rows[0] is the distance from the empty string.
+    private int[][] rows;
+    private char[] path;
+    private int depth;
+
+    /**
+     * @param term The query term
+     * @param maxEdits Maximal edit distance of accepted strings, between 0 and {@link #MAX_EDITS}
+     */
+    public LevenshteinAutomaton(String term, int maxEdits) {
+        if (maxEdits < 0 || maxEdits > MAX_EDITS) {
+            throw new IllegalArgumentException("Edit distance must be between 0 and " + MAX_EDITS + ", got " +
+                    maxEdits);
+        }
+        this.term = term;
+        this.maxEdits = maxEdits;
+        this.rows = new int[16][term.length() + 1];
+        this.path = new char[16];
+        for (int i = 0; i <= term.length(); ++i) {
+            rows[0][i] = Math.min(i, maxEdits + 1);
+        }
+        this.depth = 0;
+    }
+
+    public String getTerm() {
+        return term;
+    }
+
+    public int getMaxEdits() {
+        return maxEdits;
+    }
+
+    /** Returns the length of the current path */
+    int depth() {
+        return depth;
+    }
+
+    /** Pops chars off the path, until it is of given length */
+    void truncate(int newDepth) {
+        assert newDepth >= 0 && newDepth <= depth;
+        depth = newDepth;
+    }
+
+    /** Appends a char to the path
+     * @return Whether some string beginning with the path is accepted. If not, the path is still extended.
+     */
+    boolean push(char c) {
+        if (depth + 1 == rows.length) {
+            int oldLength = rows.length;
+            rows = Arrays.copyOf(rows, 2 * oldLength);
+            for (int d = oldLength; d < rows.length; ++d) {
+                rows[d] = new int[term.length() + 1];
+            }
+            path = Arrays.copyOf(path, 2 * oldLength);
+        }
+        int[] prev = rows[depth];
+        int[] row = rows[depth + 1];
+        path[depth] = c;
+        ++depth;
+
+        row[0] = Math.min(depth, maxEdits + 1);
+        int min = row[0];
+        for (int i = 1; i <= term.length(); ++i) {
+            int cost = term.charAt(i - 1) == c ? 0 : 1;
+            int dist = Math.min(prev[i - 1] + cost, Math.min(prev[i], row[i - 1]) + 1);
+            if (depth > 1 && i > 1 && term.charAt(i - 1) == path[depth - 2] && term.charAt(i - 2) == c) {
+                dist = Math.min(dist, rows[depth - 2][i - 2] + 1);
+            }
+            row[i] = Math.min(dist, maxEdits + 1);
+            min = Math.min(min, row[i]);
+        }
+        // the minimum of a row never decreases along the path, so once every prefix of the term is too far from the
+        // path, so is every extension of the path
+        return min <= maxEdits;
+    }
+
+    /** Returns the edit distance between the path and the term, or maxEdits + 1 if it's bigger than maxEdits */
+    int distance() {
+        return rows[depth][term.length()];
+    }
+
+    /** Whether the path itself is accepted */
+    boolean isMatch() {
+        return distance() <= maxEdits;
+    }
+
+    /** Returns the edit distance between a string and the term, or maxEdits + 1 if it's bigger than maxEdits */
+    public int distance(CharSequence string) {
+        truncate(0);
+        for (int i = 0; i < string.length(); ++i) {
+            if (!push(string.charAt(i))) {
+                return maxEdits + 1;
+            }
+        }
+        return distance();
+    }
+}
@@ -17,6 +17,12 @@ class OtherBlockElement implements DictionaryElement {
     final int suffixLength;
 
     static final int SIZE_BYTES = 4 * 5;
+    // offsets of fields within the serialized element
+    static final int FREQUENCY_OFFSET = 0;
+    static final int COLLECTION_FREQUENCY_OFFSET = 4;
+    static final int POSTING_PTR_OFFSET_OFFSET = 4 * 2;
+    static final int PREFIX_LENGTH_OFFSET = 4 * 3;
+    static final int SUFFIX_LENGTH_OFFSET = 4 * 4;
 
     public OtherBlockElement(
             FirstBlockElement fbe,
@@ -72,4 +78,16 @@ class OtherBlockElement implements DictionaryElement {
         int suffixLength = buf.getInt();
         return new OtherBlockElement(fbe, frequency, collectionFrequency, postingPtrOffset, prefixLength, suffixLength);
     }
+
+    /** Deserializes the element at given position of the buffer, without moving the buffer's position */
+    public static OtherBlockElement deserialize(FirstBlockElement fbe, ByteBuffer buf, int pos) {
+        return new OtherBlockElement(
+                fbe,
+                buf.getInt(pos + FREQUENCY_OFFSET),
+                buf.getInt(pos + COLLECTION_FREQUENCY_OFFSET),
+                buf.getInt(pos + POSTING_PTR_OFFSET_OFFSET),
+                buf.getInt(pos + PREFIX_LENGTH_OFFSET),
+                buf.getInt(pos + SUFFIX_LENGTH_OFFSET)
+        );
+    }
 }
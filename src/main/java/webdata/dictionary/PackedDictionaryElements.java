@@ -1,58 +1,65 @@
 package webdata.dictionary;
 
-import java.io.*;
+import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
-import java.util.AbstractList;
-import java.util.RandomAccess;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Spliterator;
 import java.util.Spliterators;
 import java.util.function.Consumer;
 
 
-/** A packed list of dictionary elements in memory, allowing readonly list operations */
-class PackedDictionaryElements extends AbstractList<DictionaryElement> implements RandomAccess {
+/** A packed list of fixed size dictionary elements, allowing readonly list operations. The elements are laid out
+ *  exactly as in the dictionary file, which is memory mapped rather than copied into the heap. Used by dictionaries
+ *  created before the compact format(see {@link CompactDictionaryElements}).
+ *
+ *  The fields of an element can be read via primitive accessors(e.g, {@link #getTokenFrequency(int)}), which don't
+ *  allocate and only use absolute reads of the buffer, so they're safe to call from many threads.
+ *  {@link #get(int)} creates element objects, and is kept for convenience.
+ */
+class PackedDictionaryElements extends DictionaryElementList {
 
-    private final byte[] packedBytes;
-    // wraps packedBytes
+    // only accessed via absolute gets(or duplicates), except for setTermOffsets
     private final ByteBuffer byteBuffer;
-    private final int numFirstBlockElement;
-    private final int numOtherBlockElement;
-
-    private static final int NUM_BYTES_PER_BLOCK = FirstBlockElement.SIZE_BYTES + ((Dictionary.BLOCK_SIZE - 1) * OtherBlockElement.SIZE_BYTES);
-
-    /** Reads the given number of dictionary elements from the input stream, loading
-     *  their packed representation into memory
-     */
-    PackedDictionaryElements(DataInputStream dis, int numElements) throws IOException {
-        int numFirstBlockElement = 0;
-        int numOtherBlockElement = 0;
-
-        FirstBlockElement lastFbe = null;
-        try (   var byteArrayOs = new ByteArrayOutputStream();
-                var dos = new DataOutputStream(byteArrayOs)) {
-            for (int elementNum = 0; elementNum < numElements; ++elementNum) {
-                if (elementNum % Dictionary.BLOCK_SIZE == 0) {
-                    lastFbe = FirstBlockElement.deserialize(dis);
-                    lastFbe.serialize(dos);
-                    ++numFirstBlockElement;
-                } else {
-                    OtherBlockElement.deserialize(lastFbe, dis).serialize(dos);
-                    ++numOtherBlockElement;
-                }
-            }
-            this.packedBytes = byteArrayOs.toByteArray();
-            this.byteBuffer = ByteBuffer.wrap(packedBytes);
-            this.numFirstBlockElement = numFirstBlockElement;
-            this.numOtherBlockElement = numOtherBlockElement;
-            assert this.packedBytes.length == this.numFirstBlockElement * FirstBlockElement.SIZE_BYTES + this.numOtherBlockElement * OtherBlockElement.SIZE_BYTES;
+    private final int numElements;
+
+    private final int numBytesPerBlock;
+
+    private PackedDictionaryElements(ByteBuffer byteBuffer, int numElements, int blockSize) throws IOException {
+        super(blockSize);
+        this.byteBuffer = byteBuffer;
+        this.numElements = numElements;
+        this.numBytesPerBlock = FirstBlockElement.SIZE_BYTES + (blockSize - 1) * OtherBlockElement.SIZE_BYTES;
+        long expectedBytes = getByteIndexOfElement(numElements);
+        if (byteBuffer.limit() != expectedBytes) {
+            throw new IOException("Expected " + expectedBytes + " bytes of dictionary elements for " + numElements +
+                    " terms, found " + byteBuffer.limit());
+        }
+    }
+
+    /** Memory maps the given number of dictionary elements(in blocks of given size) from the dictionary file at given
+     *  path */
+    static PackedDictionaryElements memoryMapped(Path path, int numElements, int blockSize) throws IOException {
+        try (var raf = new RandomAccessFile(path.toString(), "r");
+             var channel = raf.getChannel()) {
+            return new PackedDictionaryElements(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()),
+                    numElements, blockSize);
         }
     }
 
+    /** Reads the given number of dictionary elements from the dictionary file at given path into the heap, such that
+     *  they may be modified via {@link #setTermOffsets} (without affecting the file) */
+    static PackedDictionaryElements loaded(Path path, int numElements, int blockSize) throws IOException {
+        return new PackedDictionaryElements(ByteBuffer.wrap(Files.readAllBytes(path)), numElements, blockSize);
+    }
+
     private int getByteIndexOfBlockBeginning(int blockIndex) {
         if (blockIndex == 0) {
             return 0;
         }
-        return blockIndex * NUM_BYTES_PER_BLOCK;
+        return blockIndex * numBytesPerBlock;
     }
 
     private int getByteOffsetOfElementInBlock(int posInBlock) {
@@ -72,36 +79,91 @@ class PackedDictionaryElements extends AbstractList<DictionaryElement> implement
     public DictionaryElement get(int index) {
         assert index >= 0 && index < size();
 
-        int blockIx = index / Dictionary.BLOCK_SIZE;
-        int posInBlock = index % Dictionary.BLOCK_SIZE;
-        int bytePosOfBeginning = getByteIndexOfBlockBeginning(blockIx);
-        int byteOffsetOfElementInBlock = getByteOffsetOfElementInBlock(posInBlock);
+        int bytePosOfBeginning = getByteIndexOfBlockBeginning(index / getBlockSize());
+        int byteOffsetOfElementInBlock = getByteOffsetOfElementInBlock(index % getBlockSize());
 
-
-        byteBuffer.position(bytePosOfBeginning);
-        var fbe = FirstBlockElement.deserialize(byteBuffer);
+        var fbe = FirstBlockElement.deserialize(byteBuffer, bytePosOfBeginning);
         if (byteOffsetOfElementInBlock == 0) {
             return fbe;
         } else {
-            byteBuffer.position(bytePosOfBeginning + byteOffsetOfElementInBlock);
-            return OtherBlockElement.deserialize(fbe, byteBuffer);
+            return OtherBlockElement.deserialize(fbe, byteBuffer, bytePosOfBeginning + byteOffsetOfElementInBlock);
+        }
+    }
+
+    private int getByteIndexOfElement(int index) {
+        return getByteIndexOfBlockBeginning(index / getBlockSize())
+                + getByteOffsetOfElementInBlock(index % getBlockSize());
+    }
+
+    @Override
+    int getTokenFrequency(int index) {
+        // at the same offset in both kinds of elements
+        return byteBuffer.getInt(getByteIndexOfElement(index) + FirstBlockElement.FREQUENCY_OFFSET);
+    }
+
+    @Override
+    int getTokenCollectionFrequency(int index) {
+        return byteBuffer.getInt(getByteIndexOfElement(index) + FirstBlockElement.COLLECTION_FREQUENCY_OFFSET);
+    }
+
+    @Override
+    long getPostingsPointer(int index) {
+        int blockPos = getByteIndexOfBlockBeginning(index / getBlockSize());
+        long pointer = byteBuffer.getLong(blockPos + FirstBlockElement.POSTING_PTR_OFFSET);
+        if (index % getBlockSize() == 0) {
+            return pointer;
+        }
+        return pointer + byteBuffer.getInt(getByteIndexOfElement(index) + OtherBlockElement.POSTING_PTR_OFFSET_OFFSET);
+    }
+
+    @Override
+    int getPrefixLength(int index) {
+        if (index % getBlockSize() == 0) {
+            return 0;
+        }
+        return byteBuffer.getInt(getByteIndexOfElement(index) + OtherBlockElement.PREFIX_LENGTH_OFFSET);
+    }
+
+    @Override
+    int getSuffixLength(int index) {
+        int offset = index % getBlockSize() == 0
+                ? FirstBlockElement.SUFFIX_LENGTH_OFFSET : OtherBlockElement.SUFFIX_LENGTH_OFFSET;
+        return byteBuffer.getInt(getByteIndexOfElement(index) + offset);
+    }
+
+    @Override
+    int getBlockSuffixPos(int index) {
+        int blockIx = index / getBlockSize();
+        return byteBuffer.getInt(getByteIndexOfBlockBeginning(blockIx) + FirstBlockElement.SUFFIX_POS_OFFSET);
+    }
+
+    /** Overwrites the term offsets of the element at given index, the suffix position is only kept for the first
+     *  element of a block(and ignored otherwise). Only allowed for loaded elements(see {@link #loaded}). */
+    void setTermOffsets(int index, int prefixLength, int suffixLength, int suffixPos) {
+        int pos = getByteIndexOfElement(index);
+        if (index % getBlockSize() == 0) {
+            assert prefixLength == 0;
+            byteBuffer.putInt(pos + FirstBlockElement.SUFFIX_LENGTH_OFFSET, suffixLength);
+            byteBuffer.putInt(pos + FirstBlockElement.SUFFIX_POS_OFFSET, suffixPos);
+        } else {
+            byteBuffer.putInt(pos + OtherBlockElement.PREFIX_LENGTH_OFFSET, prefixLength);
+            byteBuffer.putInt(pos + OtherBlockElement.SUFFIX_LENGTH_OFFSET, suffixLength);
         }
     }
 
     @Override
     public int size() {
-        return numFirstBlockElement + numOtherBlockElement;
+        return numElements;
     }
 
     /** A spliterator over all elements in this dictionary */
     @Override
     public Spliterator<DictionaryElement> spliterator() {
-        int numElements = size();
         int characteristics = Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.SIZED;
         return new Spliterators.AbstractSpliterator<DictionaryElement>(numElements, characteristics) {
             int elemIx = 0;
-            final ByteArrayInputStream bais = new ByteArrayInputStream(packedBytes);
-            final DataInputStream dis = new DataInputStream(bais);
+            // reads the elements sequentially, without affecting other readers
+            final ByteBuffer buf = byteBuffer.duplicate().position(0);
             FirstBlockElement lastFbe = null;
 
             @Override
@@ -109,20 +171,16 @@ class PackedDictionaryElements extends AbstractList<DictionaryElement> implement
                 if (elemIx >= numElements) {
                     return false;
                 }
-                try {
-                    DictionaryElement element;
-                    if (elemIx % Dictionary.BLOCK_SIZE == 0) {
-                        lastFbe = FirstBlockElement.deserialize(dis);
-                        element = lastFbe;
-                    } else {
-                        element = OtherBlockElement.deserialize(lastFbe, dis);
-                    }
-                    action.accept(element);
-                    ++elemIx;
-                    return true;
-                } catch (IOException ex) {
-                    throw new RuntimeException("Impossible, IO exception dealing with in memory byte array", ex);
+                DictionaryElement element;
+                if (elemIx % getBlockSize() == 0) {
+                    lastFbe = FirstBlockElement.deserialize(buf);
+                    element = lastFbe;
+                } else {
+                    element = OtherBlockElement.deserialize(lastFbe, buf);
                 }
+                action.accept(element);
+                ++elemIx;
+                return true;
             }
         };
     }
@@ -0,0 +1,140 @@
+package webdata.dictionary;
+
+import webdata.inverted_index.ArrayPostingsCursor;
+import webdata.inverted_index.PostingsCursor;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.function.IntFunction;
+
+/** A thread safe cache of decoded posting lists, keyed by dictionary index.
+ *
+ *  Posting lists are kept as int arrays, and the least recently used ones are evicted once their total (estimated)
+ *  size exceeds the memory budget. Posting lists which are bigger than the whole budget are never cached.
+ */
+public class PostingsCache {
+
+    // estimated overhead of an entry: the map's node and key, the entry object and the headers of its two arrays
+    static final long ENTRY_OVERHEAD_BYTES = 96;
+
+    private static class Entry {
+        final int[] docIds;
+        final int[] freqs;
+
+        Entry(int[] docIds, int[] freqs) {
+            this.docIds = docIds;
+            this.freqs = freqs;
+        }
+
+        long sizeInBytes() {
+            return sizeInBytes(docIds.length);
+        }
+
+        static long sizeInBytes(int numEntries) {
+            return ENTRY_OVERHEAD_BYTES + 2L * Integer.BYTES * numEntries;
+        }
+    }
+
+    private final long maxBytes;
+
+    // guarded by 'this', in access order
+    private final LinkedHashMap<Integer, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long sizeInBytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * @param maxBytes Memory budget of the cache, in bytes. 0 disables caching
+     */
+    public PostingsCache(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("Memory budget must be non-negative, got " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns a cursor over the posting list of the term at given index, decoding it on a miss.
+     * @param index Dictionary index of the term
+     * @param loader Returns a cursor over the (encoded) posting list of a term with given index, which wasn't
+     *               advanced yet. Called without holding the cache's lock, so concurrent misses on the same term may
+     *               both decode it.
+     */
+    public PostingsCursor get(int index, IntFunction<PostingsCursor> loader) {
+        synchronized (this) {
+            var entry = entries.get(index);
+            if (entry != null) {
+                ++hits;
+                return new ArrayPostingsCursor(entry.docIds, entry.freqs);
+            }
+            ++misses;
+        }
+
+        var postings = loader.apply(index);
+        if (Entry.sizeInBytes(postings.size()) > maxBytes) {
+            return postings;
+        }
+        var entry = decode(postings);
+        put(index, entry);
+        return new ArrayPostingsCursor(entry.docIds, entry.freqs);
+    }
+
+    private static Entry decode(PostingsCursor postings) {
+        var docIds = new int[postings.size()];
+        var freqs = new int[postings.size()];
+        int i = 0;
+        for (int docId = postings.nextDoc(); docId != PostingsCursor.NO_MORE_DOCS; docId = postings.nextDoc()) {
+            docIds[i] = docId;
+            freqs[i] = postings.freq();
+            ++i;
+        }
+        assert i == docIds.length : "Posting list size doesn't match its number of entries";
+        return new Entry(docIds, freqs);
+    }
+
+    private synchronized void put(int index, Entry entry) {
+        var previous = entries.put(index, entry);
+        if (previous != null) {
+            sizeInBytes -= previous.sizeInBytes();
+        }
+        sizeInBytes += entry.sizeInBytes();
+
+        // evict least recently used entries, the new entry is last so it's never evicted
+        Iterator<Entry> it = entries.values().iterator();
+        while (sizeInBytes > maxBytes) {
+            sizeInBytes -= it.next().sizeInBytes();
+            it.remove();
+        }
+    }
+
+    /** Removes all cached posting lists, without resetting the hit/miss counters */
+    public synchronized void clear() {
+        entries.clear();
+        sizeInBytes = 0;
+    }
+
+    /** Returns the number of lookups which found their posting list in the cache */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /** Returns the number of lookups which had to decode their posting list */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /** Returns the number of cached posting lists */
+    public synchronized int getNumEntries() {
+        return entries.size();
+    }
+
+    /** Returns the estimated memory used by the cached posting lists, in bytes */
+    public synchronized long getSizeInBytes() {
+        return sizeInBytes;
+    }
+
+    /** Returns the memory budget of the cache, in bytes */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+}
@@ -2,38 +2,92 @@ package webdata.dictionary;
 
 import webdata.Token;
 import webdata.compression.FrontCodingEncoder;
+import webdata.inverted_index.EncodedPostingList;
 import webdata.inverted_index.PostingListWriter;
+import webdata.inverted_index.PostingsFormat;
 
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Spliterators;
 
 /** Allows building a dictionary into disk in a sequential manner, by adding terms and their occurrences (sorted by
  *  terms and docIds), though they don't have to be in memory. */
 public class SequentialDictionaryBuilder implements Closeable, Flushable, DictionaryBuilder {
 
     private final String dir;
-    private final DataOutputStream elementsDos;
+    private final PostingsFormat postingsFormat;
+    private final int blockSize;
+    private final CompactDictionaryElements.Writer elementsWriter;
+    // pointer to the positions of every term, only set if the postings format has positions
+    private final DataOutputStream positionsIndexDos;
 
     private final PostingListWriter postingListWriter;
     private final FrontCodingEncoder encoder;
 
     private String curTerm;
+    // the last term whose element was added
+    private String lastTerm;
     private long curTermPostingPtr;
     private int lastDocId;
     private int lastDocFreq;
+    // positions of the last document, only the first lastDocFreq are valid
+    private int[] lastDocPositions;
     private long totalNumberOfTokens;
     private int uniqueNumberOfTokens;
     private long numberDocIdFreqPairs;
 
-    private FirstBlockElement lastFbe;
+    // whether the term hash index, Bloom filter and FST are built
+    private final boolean withLookupIndices;
+    // hashes of all terms by their index, for building the term hash index and filter once the dictionary is complete
+    private long[] termHashes;
+    private final TermFstBuilder termFstBuilder;
 
+    /** Creates a builder for a dictionary whose postings use the default format */
     public SequentialDictionaryBuilder(String dir) throws IOException {
+        this(dir, PostingsFormat.DEFAULT);
+    }
+
+    /** Creates a builder for a dictionary whose blocks are of the default size */
+    public SequentialDictionaryBuilder(String dir, PostingsFormat postingsFormat) throws IOException {
+        this(dir, postingsFormat, Dictionary.DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param dir Directory of index files
+     * @param postingsFormat Format of posting lists
+     * @param blockSize Number of terms in every front coding block of the dictionary. Bigger blocks make the
+     *                  dictionary smaller, at the cost of scanning more terms per lookup
+     */
+    public SequentialDictionaryBuilder(String dir, PostingsFormat postingsFormat, int blockSize) throws IOException {
+        this(dir, postingsFormat, blockSize, true);
+    }
+
+    /**
+     * @param dir Directory of index files
+     * @param postingsFormat Format of posting lists
+     * @param blockSize Number of terms in every front coding block of the dictionary
+     * @param withLookupIndices Whether to build the term hash index, Bloom filter and FST, which speed up looking up
+     *                          terms. Dictionaries that are only read sequentially(e.g, temporary indices) don't need
+     *                          them, and still support lookups via binary search
+     */
+    public SequentialDictionaryBuilder(String dir, PostingsFormat postingsFormat, int blockSize,
+                                       boolean withLookupIndices) throws IOException {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Dictionary block size must be positive, got " + blockSize);
+        }
         this.dir = dir;
+        this.postingsFormat = postingsFormat;
+        this.blockSize = blockSize;
         this.curTerm = null;
         this.curTermPostingPtr = -1;
         this.lastDocId = 0;
         this.lastDocFreq = 0;
+        this.lastDocPositions = new int[16];
+        this.withLookupIndices = withLookupIndices;
+        this.termHashes = withLookupIndices ? new long[1024] : null;
+        this.termFstBuilder = withLookupIndices ? new TermFstBuilder() : null;
 
         Files.createDirectories(Paths.get(dir));
         this.totalNumberOfTokens = 0;
@@ -42,14 +96,24 @@ public class SequentialDictionaryBuilder implements Closeable, Flushable, Dictio
 
 
         var elementsFos = new FileOutputStream(Paths.get(dir, Dictionary.DICTIONARY_FILE_NAME).toString(), false);
-        this.elementsDos = new DataOutputStream(new BufferedOutputStream(elementsFos));
+        this.elementsWriter = new CompactDictionaryElements.Writer(new BufferedOutputStream(elementsFos), blockSize);
 
         var postingsFos = new FileOutputStream(Paths.get(dir, Dictionary.POSTINGS_FILE_NAME).toString(), false);
         var postingsOs = new BufferedOutputStream(postingsFos);
-        this.postingListWriter = new PostingListWriter(postingsOs);
+        if (postingsFormat.hasPositions()) {
+            var positionsFos = new FileOutputStream(Paths.get(dir, Dictionary.POSITIONS_FILE_NAME).toString(), false);
+            this.postingListWriter = new PostingListWriter(postingsOs, new BufferedOutputStream(positionsFos),
+                    postingsFormat);
+            var positionsIndexFos = new FileOutputStream(
+                    Paths.get(dir, Dictionary.POSITIONS_INDEX_FILE_NAME).toString(), false);
+            this.positionsIndexDos = new DataOutputStream(new BufferedOutputStream(positionsIndexFos));
+        } else {
+            this.postingListWriter = new PostingListWriter(postingsOs, postingsFormat);
+            this.positionsIndexDos = null;
+        }
 
         this.encoder = new FrontCodingEncoder(
-                Dictionary.BLOCK_SIZE,
+                blockSize,
                 Dictionary.TERMS_FILE_ENCODING,
                 new BufferedOutputStream(new FileOutputStream(Paths.get(dir, Dictionary.TERMS_FILE_NAME).toString(), false))
         );
@@ -62,14 +126,15 @@ public class SequentialDictionaryBuilder implements Closeable, Flushable, Dictio
         if (!token.getTerm().equals(curTerm)) {
             beginTerm(token.getTerm());
         }
-        addTermOccurence(token.getDocID(), token.getDocFrequency());
+        addTermOccurence(token.getDocID(), token.getDocFrequency(), token.getPositions());
     }
 
     /** Begins a new term */
     @Override
     public void beginTerm(String term) throws IOException {
         assert !term.isEmpty() : "Terms should not be empty";
-        if (postingListWriter.getCurrentTerm() != null && postingListWriter.getCurrentTerm().compareTo(term) > 0)
+        var prevTerm = curTerm != null ? curTerm : lastTerm;
+        if (prevTerm != null && prevTerm.compareTo(term) > 0)
         {
             throw new IllegalArgumentException("Terms must be written into dictionary in lexicographically increasing order");
         }
@@ -89,54 +154,130 @@ public class SequentialDictionaryBuilder implements Closeable, Flushable, Dictio
             throw new IllegalStateException("You cannot end a term which has an empty posting list");
         }
 
-        var frontCodingResult = encoder.encodeString(postingListWriter.getCurrentTerm());
+        addElement(postingListWriter.getCurrentTerm(),
+                postingListWriter.getCurrentTermDocumentFrequency(),
+                postingListWriter.getCurrentTermDocumentCollectionFrequency(),
+                curTermPostingPtr,
+                positionsIndexDos != null ? postingListWriter.getCurrentTermPositionsPointer() : -1);
 
-        assert (frontCodingResult.suffixPos >= 0) : "Can only support terms file with 2^31 chars";
+        curTerm = null;
+        curTermPostingPtr = -1;
+    }
 
+    /** Adds the dictionary element of a term whose posting list was already written */
+    private void addElement(String term, int freq, int collectionFreq, long postingPtr, long positionsPtr)
+            throws IOException {
+        var frontCodingResult = encoder.encodeString(term);
 
-        // begin a new block
-        if (uniqueNumberOfTokens % Dictionary.BLOCK_SIZE == 0) {
-            assert frontCodingResult.prefixLength == 0;
-            var element = new FirstBlockElement(
-                    postingListWriter.getCurrentTermDocumentFrequency(),
-                    postingListWriter.getCurrentTermDocumentCollectionFrequency(),
-                    curTermPostingPtr,
-                    frontCodingResult.suffixLength,
-                    frontCodingResult.suffixPos
-            );
-            element.serialize(elementsDos);
-            this.lastFbe = element;
-        } else {
-            // add to previous block
-            long gap = curTermPostingPtr - this.lastFbe.postingPtr;
-            assert ((int) gap == gap) : "Posting pointer gap within block can be at most 2^31";
-            var element = new OtherBlockElement(
-                    this.lastFbe,
-                    postingListWriter.getCurrentTermDocumentFrequency(),
-                    postingListWriter.getCurrentTermDocumentCollectionFrequency(),
-                    (int)gap,
-                    frontCodingResult.prefixLength,
-                    frontCodingResult.suffixLength
-            );
-            element.serialize(elementsDos);
+        assert (frontCodingResult.suffixPos >= 0) : "Can only support terms file with 2^31 bytes";
+
+
+        elementsWriter.add(
+                freq,
+                collectionFreq,
+                postingPtr,
+                frontCodingResult.prefixLength,
+                frontCodingResult.suffixLength,
+                frontCodingResult.suffixPos
+        );
+        if (positionsIndexDos != null) {
+            positionsIndexDos.writeLong(positionsPtr);
+        }
+        if (withLookupIndices) {
+            if (uniqueNumberOfTokens == termHashes.length) {
+                termHashes = Arrays.copyOf(termHashes, 2 * termHashes.length);
+            }
+            termHashes[uniqueNumberOfTokens] = TermHashIndex.hash(term);
+            termFstBuilder.add(term);
         }
 
-        curTerm = null;
-        curTermPostingPtr = -1;
+        lastTerm = term;
         uniqueNumberOfTokens++;
+    }
 
+    /**
+     * Appends all terms of another dictionary(a segment, e.g, built on another thread), whose terms must be greater
+     * than those added so far. Its posting lists(and positions) are copied as is, and their pointers are rebased,
+     * while its terms are front coded again, so the segment's blocks needn't be aligned with this dictionary's.
+     * @param segment A complete dictionary of the same postings format
+     */
+    public void appendSegment(Dictionary segment) throws IOException {
+        if (!segment.getPostingsFormat().equals(postingsFormat)) {
+            throw new IllegalArgumentException("Cannot append a segment of postings format " +
+                    segment.getPostingsFormat() + " to a dictionary of format " + postingsFormat);
+        }
+        endTerm();
+        long postingsBase = postingListWriter.getPostingsSize();
+        long positionsBase = postingsFormat.hasPositions() ? postingListWriter.getPositionsSize() : 0;
+        try (var postings = new BufferedInputStream(Files.newInputStream(segment.getPostingsPath()));
+             var positions = postingsFormat.hasPositions()
+                     ? new BufferedInputStream(Files.newInputStream(segment.getPositionsPath())) : null) {
+            postingListWriter.appendEncoded(postings, positions);
+        }
+
+        var terms = Spliterators.iterator(segment.terms());
+        for (int index = 0; terms.hasNext(); ++index) {
+            var term = terms.next().getKey();
+            if (lastTerm != null && lastTerm.compareTo(term) >= 0) {
+                throw new IllegalArgumentException("Terms of an appended segment must be greater than the previous ones");
+            }
+            int collectionFreq = segment.getTokenCollectionFrequency(index);
+            int freq = segment.getTokenFrequency(index);
+            addElement(term, freq, collectionFreq, postingsBase + segment.getPostingsPointer(index),
+                    postingsFormat.hasPositions() ? positionsBase + segment.getPositionsPointer(index) : -1);
+            totalNumberOfTokens += collectionFreq;
+            numberDocIdFreqPairs += freq;
+        }
+    }
+
+    /**
+     * Appends an encoded posting list(and its positions) to the list of the current term, without decoding most of
+     * it, see {@link PostingListWriter#append(EncodedPostingList)}
+     * @param list Posting list of a dictionary of the same postings format, whose docIds are greater than those
+     *             added to the current term so far
+     */
+    public void appendPostings(EncodedPostingList list) throws IOException {
+        if (curTerm == null) {
+            throw new IllegalStateException("Cannot append a posting list before beginning a term");
+        }
+        endTermOccurence();
+        postingListWriter.append(list);
+        totalNumberOfTokens += list.getCollectionFrequency();
+        numberDocIdFreqPairs += list.getFrequency();
     }
 
     @Override
     public void addTermOccurence(int docId, int freqInDoc) throws IOException {
+        addTermOccurence(docId, freqInDoc, null);
+    }
+
+    @Override
+    public void addTermOccurence(int docId, int freqInDoc, int[] positions) throws IOException {
+        if (postingsFormat.hasPositions() != (positions != null)) {
+            throw new IllegalArgumentException("Positions must be given iff the postings format has positions");
+        }
         totalNumberOfTokens += freqInDoc;
         assert docId >= lastDocId;
         if (docId > lastDocId) {
             endTermOccurence();
             lastDocId = docId;
-            lastDocFreq = freqInDoc;
-        } else {
-            lastDocFreq += freqInDoc;
+            lastDocFreq = 0;
+        }
+        if (positions != null) {
+            addPositions(positions, freqInDoc);
+        }
+        lastDocFreq += freqInDoc;
+    }
+
+    private void addPositions(int[] positions, int freqInDoc) {
+        assert positions.length >= freqInDoc;
+        if (lastDocPositions.length < lastDocFreq + freqInDoc) {
+            lastDocPositions = Arrays.copyOf(lastDocPositions, 2 * (lastDocFreq + freqInDoc));
+        }
+        System.arraycopy(positions, 0, lastDocPositions, lastDocFreq, freqInDoc);
+        if (lastDocFreq > 0) {
+            // a duplicate token, its positions are merged with the previous ones
+            Arrays.sort(lastDocPositions, 0, lastDocFreq + freqInDoc);
         }
     }
 
@@ -144,7 +285,11 @@ public class SequentialDictionaryBuilder implements Closeable, Flushable, Dictio
         if (lastDocId == 0) {
             return;
         }
-        postingListWriter.add(lastDocId, lastDocFreq);
+        if (postingsFormat.hasPositions()) {
+            postingListWriter.add(lastDocId, lastDocFreq, lastDocPositions);
+        } else {
+            postingListWriter.add(lastDocId, lastDocFreq);
+        }
         ++numberDocIdFreqPairs;
         lastDocId = 0;
         lastDocFreq = 0;
@@ -156,14 +301,54 @@ public class SequentialDictionaryBuilder implements Closeable, Flushable, Dictio
         flush();
         postingListWriter.close();
         encoder.close();
-        elementsDos.close();
+        elementsWriter.close();
+        if (positionsIndexDos != null) {
+            positionsIndexDos.close();
+        }
+        if (!withLookupIndices) {
+            // files of a previous dictionary in the same directory would be read as this one's
+            Files.deleteIfExists(Paths.get(dir, Dictionary.TERM_HASH_FILE_NAME));
+            Files.deleteIfExists(Paths.get(dir, Dictionary.TERM_FILTER_FILE_NAME));
+            Files.deleteIfExists(Paths.get(dir, Dictionary.TERM_FST_FILE_NAME));
+            return;
+        }
+        writeTermHashIndex();
+        try (var filterDos = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(Paths.get(dir, Dictionary.TERM_FILTER_FILE_NAME).toString(), false)))) {
+            TermBloomFilter.build(termHashes, uniqueNumberOfTokens).serialize(filterDos);
+        }
+        try (var fstDos = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(Paths.get(dir, Dictionary.TERM_FST_FILE_NAME).toString(), false)))) {
+            termFstBuilder.finish(fstDos);
+        }
+    }
+
+    /** Writes the term hash index, unless it can't be built, in which case the dictionary falls back to binary
+     *  search */
+    private void writeTermHashIndex() throws IOException {
+        var hashFile = Paths.get(dir, Dictionary.TERM_HASH_FILE_NAME);
+        TermHashIndex hashIndex;
+        try {
+            hashIndex = TermHashIndex.build(termHashes, uniqueNumberOfTokens);
+        } catch (IllegalArgumentException | IllegalStateException ex) {
+            System.err.println("Couldn't build term hash index, lookups will use binary search: " + ex);
+            Files.deleteIfExists(hashFile);
+            return;
+        }
+        try (var hashDos = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(hashFile.toString(), false)))) {
+            hashIndex.serialize(hashDos);
+        }
     }
 
     @Override
     public void flush() throws IOException {
         postingListWriter.flush();
         encoder.flush();
-        elementsDos.flush();
+        elementsWriter.flush();
+        if (positionsIndexDos != null) {
+            positionsIndexDos.flush();
+        }
 
         var statFile = Paths.get(dir, Dictionary.DICTIONARY_STATS_FILE).toFile();
         try (var statsFos = new BufferedOutputStream(new FileOutputStream(statFile, false));
@@ -171,6 +356,10 @@ public class SequentialDictionaryBuilder implements Closeable, Flushable, Dictio
             statsOs.writeLong(totalNumberOfTokens);
             statsOs.writeInt(uniqueNumberOfTokens);
             statsOs.writeLong(numberDocIdFreqPairs);
+            postingsFormat.serialize(statsOs);
+            statsOs.writeInt(Dictionary.TERMS_FORMAT_VERSION);
+            statsOs.writeInt(Dictionary.ELEMENTS_FORMAT_VERSION);
+            statsOs.writeInt(blockSize);
             statsOs.flush();
         }
     }
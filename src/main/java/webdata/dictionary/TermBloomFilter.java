@@ -0,0 +1,142 @@
+package webdata.dictionary;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.LongAdder;
+
+/** A Bloom filter over the terms of a dictionary, which rejects most absent terms before searching for them.
+ *
+ *  The filter is "blocked": every term sets {@value #NUM_HASHES} bits within a single block of 512 bits(a cache
+ *  line), chosen by its hash, so checking a term costs a single cache miss. This is slightly less accurate than
+ *  spreading the bits over the whole filter - with {@value #BITS_PER_TERM} bits per term, about 1% of the absent terms
+ *  pass it, rather than 0.8%.
+ *
+ *  The filter also counts the terms it rejected, and those which passed it but weren't found(its false positives),
+ *  see {@link #getObservedFalsePositiveRate()}.
+ */
+public class TermBloomFilter {
+
+    static final int BITS_PER_TERM = 10;
+    static final int NUM_HASHES = 7;
+    private static final int LONGS_PER_BLOCK = 8;
+    private static final int BITS_PER_BLOCK = LONGS_PER_BLOCK * Long.SIZE;
+
+    private final long[] bits;
+    private final int numBlocks;
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+
+    private TermBloomFilter(long[] bits) {
+        this.bits = bits;
+        this.numBlocks = bits.length / LONGS_PER_BLOCK;
+    }
+
+    /** Remixes a term hash(see {@link TermHashIndex#hash(CharSequence)}), so that the filter's bits are independent
+     *  of the bits used by the term hash index */
+    private static long remix(long hash) {
+        return TermHashIndex.mix(hash ^ 0x9e3779b97f4a7c15L);
+    }
+
+    /**
+     * Builds the filter of a dictionary
+     * @param hashes Hashes(see {@link TermHashIndex#hash(CharSequence)}) of the terms
+     * @param numTerms Number of terms, only the first numTerms hashes are used
+     */
+    static TermBloomFilter build(long[] hashes, int numTerms) {
+        long numBits = Math.max(1L, (long) numTerms * BITS_PER_TERM);
+        int numBlocks = (int) ((numBits + BITS_PER_BLOCK - 1) / BITS_PER_BLOCK);
+        var filter = new TermBloomFilter(new long[numBlocks * LONGS_PER_BLOCK]);
+        for (int i = 0; i < numTerms; ++i) {
+            filter.add(hashes[i]);
+        }
+        return filter;
+    }
+
+    private int blockStart(long h) {
+        return (int) (((h >>> 32) * numBlocks) >>> 32) * LONGS_PER_BLOCK;
+    }
+
+    private void add(long hash) {
+        long h = remix(hash);
+        int start = blockStart(h);
+        int a = (int) h;
+        int b = (int) (h >>> 16) | 1;
+        for (int i = 0; i < NUM_HASHES; ++i) {
+            int bit = (a + i * b) & (BITS_PER_BLOCK - 1);
+            bits[start + (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /** Returns false if the term with given hash is surely not in the dictionary(counting it as rejected) */
+    boolean mightContain(long hash) {
+        long h = remix(hash);
+        int start = blockStart(h);
+        int a = (int) h;
+        int b = (int) (h >>> 16) | 1;
+        for (int i = 0; i < NUM_HASHES; ++i) {
+            int bit = (a + i * b) & (BITS_PER_BLOCK - 1);
+            if ((bits[start + (bit >>> 6)] & (1L << bit)) == 0) {
+                rejected.increment();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Counts a term which passed the filter, but wasn't in the dictionary */
+    void recordFalsePositive() {
+        falsePositives.increment();
+    }
+
+    /** Returns the number of bytes taken by the filter's bits */
+    public long getSizeInBytes() {
+        return (long) Long.BYTES * bits.length;
+    }
+
+    /** Returns the probability of an absent term passing the filter, estimated by the fraction of set bits */
+    public double getExpectedFalsePositiveRate() {
+        long setBits = 0;
+        for (long word : bits) {
+            setBits += Long.bitCount(word);
+        }
+        return Math.pow((double) setBits / (Long.SIZE * bits.length), NUM_HASHES);
+    }
+
+    /** Returns the number of lookups rejected by the filter */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /** Returns the number of lookups which passed the filter, but weren't in the dictionary */
+    public long getFalsePositives() {
+        return falsePositives.sum();
+    }
+
+    /** Returns the fraction of absent terms looked up so far which passed the filter, or 0 if there were none */
+    public double getObservedFalsePositiveRate() {
+        long falsePositives = getFalsePositives();
+        long absent = falsePositives + getRejected();
+        return absent == 0 ? 0 : (double) falsePositives / absent;
+    }
+
+    void serialize(DataOutputStream out) throws IOException {
+        out.writeInt(bits.length);
+        var buf = ByteBuffer.allocate(Long.BYTES * bits.length);
+        buf.asLongBuffer().put(bits);
+        out.write(buf.array());
+    }
+
+    static TermBloomFilter deserialize(DataInputStream in) throws IOException {
+        int numLongs = in.readInt();
+        if (numLongs <= 0 || numLongs % LONGS_PER_BLOCK != 0) {
+            throw new IOException("Term Bloom filter is corrupt, it has " + numLongs + " longs");
+        }
+        var bytes = new byte[Long.BYTES * numLongs];
+        in.readFully(bytes);
+        long[] bits = new long[numLongs];
+        ByteBuffer.wrap(bytes).asLongBuffer().get(bits);
+        return new TermBloomFilter(bits);
+    }
+}
@@ -0,0 +1,177 @@
+package webdata.dictionary;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+/** A minimal acyclic finite state transducer over the chars of the terms, mapping every term to its dictionary index.
+ *  Built by {@link TermFstBuilder}, and memory mapped when read.
+ *
+ *  Every state knows how many terms are accepted from it, and every arc knows how many of those precede the terms
+ *  reached via the arc, so the index of a term is the sum of the arcs' outputs along its path. As the terms beginning
+ *  with some prefix are consecutive in the dictionary, they can be found by walking the prefix alone. Similarly, the
+ *  terms within a range are those between the ranks of its bounds.
+ */
+class TermFst {
+
+    static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 * Integer.BYTES;
+
+    // only accessed via absolute gets
+    private final ByteBuffer buf;
+    private final int root;
+    private final int arcStartsPos;
+    private final int stateInfosPos;
+    private final int arcLabelsPos;
+    private final int arcTargetsPos;
+    private final int arcOutputsPos;
+
+    private TermFst(ByteBuffer buf) throws IOException {
+        this.buf = buf;
+        int version = buf.getInt(0);
+        if (version != VERSION) {
+            throw new IOException("Unsupported term FST version " + version);
+        }
+        int numStates = buf.getInt(4);
+        int numArcs = buf.getInt(8);
+        this.root = buf.getInt(12);
+        this.arcStartsPos = HEADER_SIZE;
+        this.stateInfosPos = arcStartsPos + Integer.BYTES * (numStates + 1);
+        this.arcLabelsPos = stateInfosPos + Integer.BYTES * numStates;
+        this.arcTargetsPos = arcLabelsPos + Character.BYTES * numArcs;
+        this.arcOutputsPos = arcTargetsPos + Integer.BYTES * numArcs;
+        if (arcOutputsPos + Integer.BYTES * numArcs != buf.limit()) {
+            throw new IOException("Term FST file is truncated or corrupt");
+        }
+    }
+
+    /** Memory maps the FST at given path */
+    static TermFst memoryMapped(Path path) throws IOException {
+        try (var raf = new RandomAccessFile(path.toString(), "r");
+             var channel = raf.getChannel()) {
+            return new TermFst(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    private int arcStart(int state) {
+        return buf.getInt(arcStartsPos + Integer.BYTES * state);
+    }
+
+    private boolean isFinal(int state) {
+        return (buf.getInt(stateInfosPos + Integer.BYTES * state) & 1) == 1;
+    }
+
+    /** Number of terms accepted from given state */
+    private int count(int state) {
+        return buf.getInt(stateInfosPos + Integer.BYTES * state) >>> 1;
+    }
+
+    private char label(int arc) {
+        return buf.getChar(arcLabelsPos + Character.BYTES * arc);
+    }
+
+    private int target(int arc) {
+        return buf.getInt(arcTargetsPos + Integer.BYTES * arc);
+    }
+
+    private int output(int arc) {
+        return buf.getInt(arcOutputsPos + Integer.BYTES * arc);
+    }
+
+    /** Returns the first arc of the state whose label is at least the given one, or the state's arc end */
+    private int lowerBoundArc(int state, char label) {
+        int lo = arcStart(state);
+        int hi = arcStart(state + 1);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (label(mid) < label) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Returns the number of terms accepted by the FST */
+    int size() {
+        return count(root);
+    }
+
+    /** Returns the dictionary index of the given term, or -1 if it isn't in the dictionary */
+    int lookup(CharSequence term) {
+        int state = root;
+        int index = 0;
+        for (int i = 0; i < term.length(); ++i) {
+            int arc = lowerBoundArc(state, term.charAt(i));
+            if (arc == arcStart(state + 1) || label(arc) != term.charAt(i)) {
+                return -1;
+            }
+            index += output(arc);
+            state = target(arc);
+        }
+        return isFinal(state) ? index : -1;
+    }
+
+    /** Returns the number of terms lexicographically smaller than the given string, which is also the index of the
+     *  first term that is at least the string */
+    int rank(CharSequence string) {
+        int state = root;
+        int rank = 0;
+        for (int i = 0; i < string.length(); ++i) {
+            int arc = lowerBoundArc(state, string.charAt(i));
+            if (arc == arcStart(state + 1)) {
+                return rank + count(state);
+            }
+            rank += output(arc);
+            if (label(arc) != string.charAt(i)) {
+                return rank;
+            }
+            state = target(arc);
+        }
+        return rank;
+    }
+
+    /**
+     * Finds the terms beginning with given prefix
+     * @return An array of the form {from, to}, such that the dictionary indices of said terms are [from, to)
+     */
+    int[] prefixRange(CharSequence prefix) {
+        int state = root;
+        int from = 0;
+        for (int i = 0; i < prefix.length(); ++i) {
+            int arc = lowerBoundArc(state, prefix.charAt(i));
+            if (arc == arcStart(state + 1) || label(arc) != prefix.charAt(i)) {
+                int rank = rank(prefix);
+                return new int[]{rank, rank};
+            }
+            from += output(arc);
+            state = target(arc);
+        }
+        return new int[]{from, from + count(state)};
+    }
+
+    /** Passes the indices of the terms accepted by the automaton to the consumer, in increasing order. Arcs are only
+     *  followed while some term beginning with their path may be accepted, so most of the FST isn't visited. */
+    void intersect(LevenshteinAutomaton automaton, LevenshteinAutomaton.MatchConsumer consumer) {
+        automaton.truncate(0);
+        intersect(root, 0, automaton, consumer);
+    }
+
+    private void intersect(int state, int index, LevenshteinAutomaton automaton,
+                           LevenshteinAutomaton.MatchConsumer consumer) {
+        if (isFinal(state) && automaton.isMatch()) {
+            consumer.accept(index, automaton.distance());
+        }
+        int depth = automaton.depth();
+        int end = arcStart(state + 1);
+        for (int arc = arcStart(state); arc < end; ++arc) {
+            if (automaton.push(label(arc))) {
+                intersect(target(arc), index + output(arc), automaton, consumer);
+            }
+            automaton.truncate(depth);
+        }
+    }
+}
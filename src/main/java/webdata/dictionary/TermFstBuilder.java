@@ -0,0 +1,227 @@
+package webdata.dictionary;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/** Builds a {@link TermFst} from terms given in lexicographically increasing order, via the incremental algorithm
+ *  for sorted input(Daciuk et al.): the path of the previous term is kept uncompiled, and once a new term diverges
+ *  from it, the diverging part is compiled bottom up, where every compiled state is first looked up in a register of
+ *  identical states, such that common suffixes are shared.
+ *
+ *  Compiled states are kept in memory until written, so memory usage is proportional to the size of the FST.
+ */
+class TermFstBuilder {
+
+    /** A state on the path of the last term, which may still be modified */
+    private static class UncompiledState {
+        boolean isFinal = false;
+        char[] labels = new char[4];
+        int[] targets = new int[4];
+        int numArcs = 0;
+
+        void addArc(char label) {
+            if (numArcs == labels.length) {
+                labels = Arrays.copyOf(labels, 2 * numArcs);
+                targets = Arrays.copyOf(targets, 2 * numArcs);
+            }
+            labels[numArcs] = label;
+            targets[numArcs] = -1;
+            ++numArcs;
+        }
+
+        void clear() {
+            isFinal = false;
+            numArcs = 0;
+        }
+    }
+
+    // the uncompiled path, path[0] is the root and path[i] is reached by the first i chars of the last term
+    private UncompiledState[] path = new UncompiledState[16];
+    private String lastTerm = "";
+    private int numTerms = 0;
+
+    // compiled states, the arcs of state i are arcStarts[i]..arcStarts[i + 1]
+    private int numStates = 0;
+    private int[] arcStarts = new int[1024];
+    // number of terms accepted from every state, shifted left by one, with the lowest bit set for final states
+    private int[] stateInfos = new int[1024];
+
+    private int numArcs = 0;
+    private char[] arcLabels = new char[1024];
+    private int[] arcTargets = new int[1024];
+    private int[] arcOutputs = new int[1024];
+
+    // open addressing table of compiled states by their contents, -1 for empty slots
+    private int[] register = new int[1024];
+    private int registerSize = 0;
+
+    TermFstBuilder() {
+        for (int i = 0; i < path.length; ++i) {
+            path[i] = new UncompiledState();
+        }
+        Arrays.fill(register, -1);
+    }
+
+    /** Adds a term, terms must be added in lexicographically increasing order, without duplicates */
+    void add(String term) {
+        if (term.compareTo(lastTerm) <= 0 && numTerms > 0) {
+            throw new IllegalArgumentException("Terms must be added in lexicographically increasing order, got \"" +
+                    term + "\" after \"" + lastTerm + "\"");
+        }
+        int common = 0;
+        int maxCommon = Math.min(term.length(), lastTerm.length());
+        while (common < maxCommon && term.charAt(common) == lastTerm.charAt(common)) {
+            ++common;
+        }
+        compilePath(common);
+
+        if (path.length <= term.length()) {
+            int oldLength = path.length;
+            path = Arrays.copyOf(path, Math.max(term.length() + 1, 2 * oldLength));
+            for (int i = oldLength; i < path.length; ++i) {
+                path[i] = new UncompiledState();
+            }
+        }
+        for (int i = common; i < term.length(); ++i) {
+            path[i].addArc(term.charAt(i));
+            path[i + 1].clear();
+        }
+        path[term.length()].isFinal = true;
+        lastTerm = term;
+        ++numTerms;
+    }
+
+    /** Compiles the states of the last term's path which are deeper than given depth */
+    private void compilePath(int depth) {
+        for (int i = lastTerm.length(); i > depth; --i) {
+            var parent = path[i - 1];
+            parent.targets[parent.numArcs - 1] = compile(path[i]);
+        }
+    }
+
+    /** Returns the id of a compiled state identical to the given one, compiling it if there's none */
+    private int compile(UncompiledState state) {
+        int hash = hash(state);
+        int mask = register.length - 1;
+        int slot = hash & mask;
+        while (register[slot] >= 0) {
+            if (equal(register[slot], state)) {
+                return register[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        int id = numStates;
+        ensureCapacity(state.numArcs);
+        arcStarts[id] = numArcs;
+        int count = state.isFinal ? 1 : 0;
+        for (int i = 0; i < state.numArcs; ++i) {
+            arcLabels[numArcs] = state.labels[i];
+            arcTargets[numArcs] = state.targets[i];
+            // terms before those reached via this arc, among those reached from this state
+            arcOutputs[numArcs] = count;
+            count += stateInfos[state.targets[i]] >>> 1;
+            ++numArcs;
+        }
+        if (count >= (1 << 30)) {
+            throw new IllegalStateException("Too many terms for an FST: " + count);
+        }
+        stateInfos[id] = (count << 1) | (state.isFinal ? 1 : 0);
+        ++numStates;
+        arcStarts[numStates] = numArcs;
+
+        register[slot] = id;
+        if (++registerSize * 2 > register.length) {
+            growRegister();
+        }
+        return id;
+    }
+
+    private void ensureCapacity(int newArcs) {
+        if (numStates + 2 > arcStarts.length) {
+            arcStarts = Arrays.copyOf(arcStarts, 2 * arcStarts.length);
+            stateInfos = Arrays.copyOf(stateInfos, 2 * stateInfos.length);
+        }
+        if (numArcs + newArcs > arcLabels.length) {
+            int capacity = Math.max(numArcs + newArcs, 2 * arcLabels.length);
+            arcLabels = Arrays.copyOf(arcLabels, capacity);
+            arcTargets = Arrays.copyOf(arcTargets, capacity);
+            arcOutputs = Arrays.copyOf(arcOutputs, capacity);
+        }
+    }
+
+    private static int hash(boolean isFinal, char[] labels, int[] targets, int from, int to) {
+        int h = isFinal ? 1 : 0;
+        for (int i = from; i < to; ++i) {
+            h = 31 * h + labels[i];
+            h = 31 * h + targets[i];
+        }
+        // MurmurHash3's finalizer, similar states have similar hashes, which would form long runs in the table
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+
+    private static int hash(UncompiledState state) {
+        return hash(state.isFinal, state.labels, state.targets, 0, state.numArcs);
+    }
+
+    private int hashOfCompiled(int id) {
+        return hash((stateInfos[id] & 1) == 1, arcLabels, arcTargets, arcStarts[id], arcStarts[id + 1]);
+    }
+
+    private boolean equal(int id, UncompiledState state) {
+        int start = arcStarts[id];
+        if (((stateInfos[id] & 1) == 1) != state.isFinal || arcStarts[id + 1] - start != state.numArcs) {
+            return false;
+        }
+        for (int i = 0; i < state.numArcs; ++i) {
+            if (arcLabels[start + i] != state.labels[i] || arcTargets[start + i] != state.targets[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void growRegister() {
+        register = new int[2 * register.length];
+        Arrays.fill(register, -1);
+        int mask = register.length - 1;
+        for (int id = 0; id < numStates; ++id) {
+            int slot = hashOfCompiled(id) & mask;
+            while (register[slot] >= 0) {
+                slot = (slot + 1) & mask;
+            }
+            register[slot] = id;
+        }
+    }
+
+    /** Compiles the remaining states and writes the FST, no terms may be added afterwards */
+    void finish(DataOutputStream out) throws IOException {
+        compilePath(0);
+        int root = compile(path[0]);
+
+        out.writeInt(TermFst.VERSION);
+        out.writeInt(numStates);
+        out.writeInt(numArcs);
+        out.writeInt(root);
+        for (int i = 0; i <= numStates; ++i) {
+            out.writeInt(arcStarts[i]);
+        }
+        for (int i = 0; i < numStates; ++i) {
+            out.writeInt(stateInfos[i]);
+        }
+        for (int i = 0; i < numArcs; ++i) {
+            out.writeChar(arcLabels[i]);
+        }
+        for (int i = 0; i < numArcs; ++i) {
+            out.writeInt(arcTargets[i]);
+        }
+        for (int i = 0; i < numArcs; ++i) {
+            out.writeInt(arcOutputs[i]);
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package webdata.dictionary;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/** A minimal perfect hash from terms to their dictionary indices, built via "hash and displace": terms are split
+ *  into small buckets by their hash, and every bucket(biggest first) is given a displacement, such that its terms
+ *  are mapped to slots which weren't taken by previous buckets.
+ *
+ *  Only hashes are stored, not terms, so any string is mapped to some index. Every slot also contains a 16 bit
+ *  fingerprint of its term's hash, which filters out most absent terms, but the candidate index must still be
+ *  checked against the dictionary.
+ */
+class TermHashIndex {
+
+    // average number of terms per bucket, bigger buckets take less space but are slower to build
+    static final int AVG_BUCKET_SIZE = 4;
+    // number of displacements tried for a bucket before trying again with another seed
+    private static final int MAX_DISPLACEMENT = 1 << 24;
+    private static final int MAX_SEEDS = 16;
+
+    private final int seed;
+    private final int[] displacements;
+    // dictionary index of the term mapped to every slot
+    private final int[] slotToIndex;
+    private final short[] fingerprints;
+
+    private TermHashIndex(int seed, int[] displacements, int[] slotToIndex, short[] fingerprints) {
+        this.seed = seed;
+        this.displacements = displacements;
+        this.slotToIndex = slotToIndex;
+        this.fingerprints = fingerprints;
+    }
+
+    /** Hashes a term into 64 bits (FNV-1a over its chars, followed by a finalizer), without allocating */
+    static long hash(CharSequence term) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < term.length(); ++i) {
+            h = (h ^ term.charAt(i)) * 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    /** MurmurHash3's 64 bit finalizer */
+    static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /** Maps the high 32 bits of x uniformly into [0, n) */
+    private static int reduce(long x, int n) {
+        return (int) (((x >>> 32) * n) >>> 32);
+    }
+
+    private static int bucketOf(long hash, int numBuckets) {
+        return reduce(hash, numBuckets);
+    }
+
+    private static int slotOf(long hash, int seed, int displacement, int numSlots) {
+        return reduce(mix(hash ^ ((((long) seed << 32) | displacement) * 0x9e3779b97f4a7c15L)), numSlots);
+    }
+
+    private static short fingerprintOf(long hash) {
+        return (short) hash;
+    }
+
+    /**
+     * Builds the hash of a dictionary
+     * @param hashes Hashes(see {@link #hash(CharSequence)}) of the terms, by their dictionary index
+     * @param numTerms Number of terms, only the first numTerms hashes are used
+     * @throws IllegalArgumentException If two terms have the same hash, in which case they can't be told apart
+     * @throws IllegalStateException If no suitable displacements were found(extremely unlikely)
+     */
+    static TermHashIndex build(long[] hashes, int numTerms) {
+        int numBuckets = Math.max(1, numTerms / AVG_BUCKET_SIZE);
+
+        // group terms by buckets, via counting sort
+        int[] bucketStarts = new int[numBuckets + 1];
+        for (int i = 0; i < numTerms; ++i) {
+            ++bucketStarts[bucketOf(hashes[i], numBuckets) + 1];
+        }
+        int maxBucketSize = 0;
+        for (int b = 0; b < numBuckets; ++b) {
+            maxBucketSize = Math.max(maxBucketSize, bucketStarts[b + 1]);
+            bucketStarts[b + 1] += bucketStarts[b];
+        }
+        int[] termsByBucket = new int[numTerms];
+        int[] bucketFill = new int[numBuckets];
+        for (int i = 0; i < numTerms; ++i) {
+            int b = bucketOf(hashes[i], numBuckets);
+            // terms with the same hash are in the same bucket, and can't be placed in different slots
+            for (int j = bucketStarts[b]; j < bucketStarts[b] + bucketFill[b]; ++j) {
+                if (hashes[termsByBucket[j]] == hashes[i]) {
+                    throw new IllegalArgumentException("Terms at indices " + termsByBucket[j] + " and " + i +
+                            " have the same hash");
+                }
+            }
+            termsByBucket[bucketStarts[b] + bucketFill[b]++] = i;
+        }
+
+        // order buckets by decreasing size, the big ones are easier to place while most slots are free
+        int[] bucketsBySize = new int[numBuckets];
+        int numOrdered = 0;
+        for (int size = maxBucketSize; size >= 0; --size) {
+            for (int b = 0; b < numBuckets; ++b) {
+                if (bucketStarts[b + 1] - bucketStarts[b] == size) {
+                    bucketsBySize[numOrdered++] = b;
+                }
+            }
+        }
+
+        for (int seed = 0; seed < MAX_SEEDS; ++seed) {
+            var index = tryBuild(hashes, numTerms, seed, bucketStarts, termsByBucket, bucketsBySize, maxBucketSize);
+            if (index != null) {
+                return index;
+            }
+        }
+        throw new IllegalStateException("Couldn't find displacements for a perfect hash of " + numTerms + " terms");
+    }
+
+    private static TermHashIndex tryBuild(long[] hashes, int numTerms, int seed, int[] bucketStarts,
+                                          int[] termsByBucket, int[] bucketsBySize, int maxBucketSize) {
+        int[] displacements = new int[bucketsBySize.length];
+        int[] slotToIndex = new int[numTerms];
+        short[] fingerprints = new short[numTerms];
+        boolean[] taken = new boolean[numTerms];
+        int[] slots = new int[maxBucketSize];
+
+        for (int b : bucketsBySize) {
+            int start = bucketStarts[b];
+            int size = bucketStarts[b + 1] - start;
+            if (size == 0) {
+                break;
+            }
+            int displacement = 0;
+            while (!tryPlace(hashes, termsByBucket, start, size, seed, displacement, taken, slots)) {
+                if (++displacement == MAX_DISPLACEMENT) {
+                    return null;
+                }
+            }
+            displacements[b] = displacement;
+            for (int j = 0; j < size; ++j) {
+                int term = termsByBucket[start + j];
+                taken[slots[j]] = true;
+                slotToIndex[slots[j]] = term;
+                fingerprints[slots[j]] = fingerprintOf(hashes[term]);
+            }
+        }
+        return new TermHashIndex(seed, displacements, slotToIndex, fingerprints);
+    }
+
+    /** Checks whether the terms of a bucket are mapped into distinct free slots by given displacement, placing
+     *  said slots in 'slots' */
+    private static boolean tryPlace(long[] hashes, int[] termsByBucket, int start, int size, int seed,
+                                    int displacement, boolean[] taken, int[] slots) {
+        for (int j = 0; j < size; ++j) {
+            int slot = slotOf(hashes[termsByBucket[start + j]], seed, displacement, taken.length);
+            if (taken[slot]) {
+                return false;
+            }
+            for (int k = 0; k < j; ++k) {
+                if (slots[k] == slot) {
+                    return false;
+                }
+            }
+            slots[j] = slot;
+        }
+        return true;
+    }
+
+    /** Returns the number of terms */
+    int size() {
+        return slotToIndex.length;
+    }
+
+    /**
+     * Returns the dictionary index of the term with given hash, assuming it is in the dictionary
+     * @param hash Hash of a term, see {@link #hash(CharSequence)}
+     * @return Said index, or -1 if the term is surely not in the dictionary
+     */
+    int lookup(long hash) {
+        if (slotToIndex.length == 0) {
+            return -1;
+        }
+        int displacement = displacements[bucketOf(hash, displacements.length)];
+        int slot = slotOf(hash, seed, displacement, slotToIndex.length);
+        return fingerprints[slot] == fingerprintOf(hash) ? slotToIndex[slot] : -1;
+    }
+
+    void serialize(DataOutputStream out) throws IOException {
+        out.writeInt(seed);
+        out.writeInt(slotToIndex.length);
+        out.writeInt(displacements.length);
+        var buf = ByteBuffer.allocate(Integer.BYTES * (displacements.length + slotToIndex.length)
+                + Short.BYTES * fingerprints.length);
+        buf.asIntBuffer().put(displacements).put(slotToIndex);
+        buf.position(Integer.BYTES * (displacements.length + slotToIndex.length));
+        buf.asShortBuffer().put(fingerprints);
+        out.write(buf.array());
+    }
+
+    static TermHashIndex deserialize(DataInputStream in) throws IOException {
+        int seed = in.readInt();
+        int numTerms = in.readInt();
+        int numBuckets = in.readInt();
+        var bytes = new byte[Integer.BYTES * (numBuckets + numTerms) + Short.BYTES * numTerms];
+        in.readFully(bytes);
+        var buf = ByteBuffer.wrap(bytes);
+
+        int[] displacements = new int[numBuckets];
+        int[] slotToIndex = new int[numTerms];
+        short[] fingerprints = new short[numTerms];
+        buf.asIntBuffer().get(displacements).get(slotToIndex);
+        buf.position(Integer.BYTES * (numBuckets + numTerms));
+        buf.asShortBuffer().get(fingerprints);
+        return new TermHashIndex(seed, displacements, slotToIndex, fingerprints);
+    }
+}
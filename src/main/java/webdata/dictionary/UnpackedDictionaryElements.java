@@ -12,11 +12,11 @@ class UnpackedDictionaryElements extends AbstractList<DictionaryElement> impleme
 
     private final ArrayList<DictionaryElement> elements;
 
-    UnpackedDictionaryElements(DataInputStream dis, int numElements) throws IOException {
+    UnpackedDictionaryElements(DataInputStream dis, int numElements, int blockSize) throws IOException {
         elements = new ArrayList<>(numElements);
         FirstBlockElement lastFbe = null;
         for (int elementNum = 0; elementNum < numElements; ++elementNum) {
-            if (elementNum % Dictionary.BLOCK_SIZE == 0) {
+            if (elementNum % blockSize == 0) {
                 lastFbe = FirstBlockElement.deserialize(dis);
                 elements.add(lastFbe);
             } else {
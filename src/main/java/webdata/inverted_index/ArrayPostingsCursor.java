@@ -0,0 +1,97 @@
+package webdata.inverted_index;
+
+import java.util.Arrays;
+
+/** A postings cursor over a posting list which resides in memory */
+public class ArrayPostingsCursor implements OrdinalPostingsCursor {
+    private final int[] docIds;
+    private final int[] freqs;
+    private final int length;
+
+    // index of current entry, -1 before the first call to nextDoc
+    private int index;
+    private int docId;
+
+    /**
+     * @param docIds DocIDs, in increasing order
+     * @param freqs Frequencies, freqs[i] is the frequency of the term in docIds[i]
+     */
+    public ArrayPostingsCursor(int[] docIds, int[] freqs) {
+        this(docIds, freqs, docIds.length);
+    }
+
+    /** Same as {@link #ArrayPostingsCursor(int[], int[])}, only using the first 'length' entries of the arrays */
+    public ArrayPostingsCursor(int[] docIds, int[] freqs, int length) {
+        assert docIds.length >= length && freqs.length >= length;
+        this.docIds = docIds;
+        this.freqs = freqs;
+        this.length = length;
+        this.index = -1;
+        this.docId = 0;
+    }
+
+    @Override
+    public int nextDoc() {
+        if (index + 1 >= length) {
+            index = length;
+            docId = NO_MORE_DOCS;
+        } else {
+            ++index;
+            docId = docIds[index];
+        }
+        return docId;
+    }
+
+    @Override
+    public int advance(int target) {
+        if (docId == NO_MORE_DOCS || (index >= 0 && docId >= target)) {
+            return docId;
+        }
+        // gallop to find a range containing the target, then binary search within it
+        int lo = index + 1;
+        int step = 1;
+        int hi = lo;
+        while (hi < length && docIds[hi] < target) {
+            lo = hi + 1;
+            hi += step;
+            step *= 2;
+        }
+        hi = Math.min(hi + 1, length);
+        if (lo < hi) {
+            int found = Arrays.binarySearch(docIds, lo, hi, target);
+            // if not found, use the insertion point
+            index = found >= 0 ? found : -found - 1;
+        } else {
+            index = lo;
+        }
+        if (index >= length) {
+            index = length;
+            docId = NO_MORE_DOCS;
+        } else {
+            docId = docIds[index];
+        }
+        return docId;
+    }
+
+    @Override
+    public int docId() {
+        return docId;
+    }
+
+    @Override
+    public int freq() {
+        assert index >= 0 && index < length;
+        return freqs[index];
+    }
+
+    @Override
+    public int size() {
+        return length;
+    }
+
+    @Override
+    public int ordinal() {
+        assert index >= 0 && index < length;
+        return index;
+    }
+}
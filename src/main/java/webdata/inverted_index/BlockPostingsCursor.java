@@ -0,0 +1,379 @@
+package webdata.inverted_index;
+
+import webdata.compression.GroupVarintDecoder;
+import webdata.compression.PForDecoder;
+import webdata.compression.Varint;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/** A cursor over a posting list of a given {@link PostingsFormat}, decoding it a block at a time.
+ *
+ *  Lists with skip headers are decoded block by block, allowing {@link #advance(int)} to skip blocks whose
+ *  last docId is smaller than the target without decoding them. Lists without skip headers are decoded in chunks
+ *  of {@link #DECODE_CHUNK_LENGTH} entries (or the skip interval, if the format has skips).
+ *
+ *  The list is read either from a stream, or directly from a buffer (e.g, a memory mapped postings file), in which
+ *  case whole blocks are decoded at once via {@link GroupVarintDecoder#decodeBlock(ByteBuffer, int[], int)}.
+ *  When reading a format with separate frequencies from a buffer, a block's frequencies are only decoded once
+ *  {@link #freq()} is called for one of its entries.
+ *
+ *  If the format has block max frequencies, {@link #advanceShallow(int)} reads the skip headers ahead of the
+ *  current block, so the frequency bound of a block is known before deciding whether to decode it.
+ */
+class BlockPostingsCursor implements OrdinalPostingsCursor {
+
+    // Number of entries decoded at once for formats without skips, must be even so chunks are aligned to groups
+    static final int DECODE_CHUNK_LENGTH = 128;
+
+    // exactly one of the following is set
+    private final InputStream input;
+    private final ByteBuffer buffer;
+
+    // when reading from a stream, exactly one of the following is set, depending on the format's codec
+    private final GroupVarintDecoder decoder;
+    private final PForDecoder pforDecoder;
+    private final int frequency;
+    private final boolean hasSkipHeaders;
+    private final boolean separateFrequencies;
+    private final boolean hasBlockMaxFreqs;
+    private final boolean isPFor;
+    private final PostingListReader.Closer closer;
+
+    // the decoded entries of the current block
+    private final int[] docIds;
+    private final int[] freqs;
+    // interleaved gaps and frequencies of a group varint block, only used when decoding from a buffer
+    private final int[] interleaved;
+    private int blockLength;
+    // whether freqs contains the frequencies of the current block, if not they begin at buffer position freqsPosition
+    private boolean freqsDecoded;
+    private int freqsPosition;
+    // index of the current entry within the current block
+    private int pos;
+
+    // number of entries in blocks following the current one
+    private int numUndecoded;
+    private int lastDocIdOfPrevBlock;
+    private int docId;
+    // maximal frequency of the current block, valid if it was decoded via a skip header
+    private int blockMaxFreq;
+    // result of the last advanceShallow call
+    private int shallowMaxFreq;
+
+    // skip header of the next block, valid if headerRead is true
+    private boolean headerRead;
+    private int nextBlockLength;
+    private int nextBlockLastDocId;
+    private int nextBlockNumBytes;
+    private int nextBlockMaxFreq;
+
+    /**
+     * @param input Stream positioned at the beginning of the posting list
+     * @param format Format of the posting list
+     * @param frequency Number of entries in the posting list
+     * @param closer Invoked once the posting list is exhausted
+     */
+    BlockPostingsCursor(InputStream input, PostingsFormat format, int frequency, PostingListReader.Closer closer) {
+        this(input, null, format, frequency, closer);
+    }
+
+    /**
+     * @param buffer Buffer positioned at the beginning of the posting list, owned by the cursor
+     * @param format Format of the posting list
+     * @param frequency Number of entries in the posting list
+     */
+    BlockPostingsCursor(ByteBuffer buffer, PostingsFormat format, int frequency) {
+        this(null, buffer, format, frequency, () -> {});
+    }
+
+    private BlockPostingsCursor(InputStream input, ByteBuffer buffer, PostingsFormat format, int frequency,
+                                PostingListReader.Closer closer) {
+        assert frequency > 0;
+        assert (input == null) != (buffer == null);
+        this.isPFor = format.getCodec() == PostingsFormat.Codec.PFOR;
+        this.input = input;
+        this.buffer = buffer;
+        this.decoder = input != null && !isPFor ? new GroupVarintDecoder(input) : null;
+        this.pforDecoder = input != null && isPFor ? new PForDecoder(input) : null;
+        this.frequency = frequency;
+        this.hasSkipHeaders = format.hasSkipHeaders(frequency);
+        this.separateFrequencies = format.hasSeparateFrequencies();
+        this.hasBlockMaxFreqs = format.hasBlockMaxFreqs();
+        this.closer = closer;
+
+        int blockCapacity = format.hasSkips() ? format.getSkipInterval() : DECODE_CHUNK_LENGTH;
+        blockCapacity = Math.min(blockCapacity, frequency);
+        this.docIds = new int[blockCapacity];
+        this.freqs = new int[blockCapacity];
+        this.interleaved = buffer != null && !separateFrequencies ? new int[2 * blockCapacity] : null;
+        this.blockLength = 0;
+        this.pos = -1;
+
+        this.numUndecoded = frequency;
+        this.lastDocIdOfPrevBlock = 0;
+        this.docId = 0;
+        this.blockMaxFreq = Integer.MAX_VALUE;
+        this.shallowMaxFreq = Integer.MAX_VALUE;
+        this.headerRead = false;
+    }
+
+    private int readVarint() throws IOException {
+        return buffer != null ? Varint.decode(buffer) : Varint.decode(input);
+    }
+
+    private void readHeader() throws IOException {
+        assert hasSkipHeaders && !headerRead;
+        int length = Math.min(docIds.length, numUndecoded);
+        int lastDocIdGap = readVarint();
+        if (lastDocIdGap == 0) {
+            // a short block within the list, see PostingsFormat
+            length = readVarint();
+            lastDocIdGap = readVarint();
+            if (length <= 0 || length >= numUndecoded) {
+                throw new EOFException("Invalid length of a short block: " + length);
+            }
+        }
+        int numBytes = readVarint();
+        int maxFreq = hasBlockMaxFreqs ? readVarint() : Integer.MAX_VALUE;
+        if (lastDocIdGap <= 0 || numBytes <= 0 || maxFreq <= 0) {
+            throw new EOFException("Invalid or missing skip header");
+        }
+        nextBlockLength = length;
+        nextBlockLastDocId = lastDocIdOfPrevBlock + lastDocIdGap;
+        nextBlockNumBytes = numBytes;
+        nextBlockMaxFreq = maxFreq;
+        headerRead = true;
+    }
+
+    /** Decodes the gaps of the next block into docIds, and its frequencies into freqs unless they can be decoded
+     *  lazily */
+    private void decodeEntries(int length) throws IOException {
+        if (buffer != null && separateFrequencies) {
+            int blockStart = buffer.position();
+            if (isPFor) {
+                PForDecoder.decode(buffer, docIds, length);
+            } else {
+                GroupVarintDecoder.decodeBlock(buffer, docIds, length);
+            }
+            freqsPosition = buffer.position();
+            freqsDecoded = false;
+            if (hasSkipHeaders) {
+                // continue to the next block's header
+                buffer.position(blockStart + nextBlockNumBytes);
+            }
+            return;
+        }
+        freqsDecoded = true;
+        if (pforDecoder != null) {
+            pforDecoder.decode(docIds, length);
+            pforDecoder.decode(freqs, length);
+        } else if (buffer != null) {
+            GroupVarintDecoder.decodeBlock(buffer, interleaved, 2 * length);
+            for (int i = 0; i < length; ++i) {
+                docIds[i] = interleaved[2 * i];
+                freqs[i] = interleaved[2 * i + 1];
+            }
+        } else if (separateFrequencies) {
+            for (int i = 0; i < length; ++i) {
+                docIds[i] = decoder.read();
+            }
+            decoder.reset();
+            for (int i = 0; i < length; ++i) {
+                freqs[i] = decoder.read();
+            }
+            decoder.reset();
+        } else {
+            for (int i = 0; i < length; ++i) {
+                docIds[i] = decoder.read();
+                freqs[i] = decoder.read();
+            }
+            // discard the padding of the last group, if any
+            decoder.reset();
+        }
+    }
+    private void decodeNextBlock() throws IOException {
+        if (hasSkipHeaders && !headerRead) {
+            readHeader();
+        }
+        int length = hasSkipHeaders ? nextBlockLength : Math.min(docIds.length, numUndecoded);
+        decodeEntries(length);
+        int doc = lastDocIdOfPrevBlock;
+        for (int i = 0; i < length; ++i) {
+            assert docIds[i] > 0 && (!freqsDecoded || freqs[i] > 0) : "Expected to see a docId gap and a frequency";
+            doc += docIds[i];
+            docIds[i] = doc;
+        }
+        assert !hasSkipHeaders || doc == nextBlockLastDocId : "Block's last docId doesn't match skip header";
+
+        blockMaxFreq = hasSkipHeaders ? nextBlockMaxFreq : Integer.MAX_VALUE;
+        headerRead = false;
+        lastDocIdOfPrevBlock = doc;
+        numUndecoded -= length;
+        blockLength = length;
+    }
+
+    private void skipNextBlock() throws IOException {
+        assert headerRead;
+        if (buffer != null) {
+            buffer.position(buffer.position() + nextBlockNumBytes);
+        } else {
+            long toSkip = nextBlockNumBytes;
+            while (toSkip > 0) {
+                long skipped = input.skip(toSkip);
+                if (skipped <= 0) {
+                    if (input.read() == -1) {
+                        throw new EOFException("Posting list ended while skipping a block");
+                    }
+                    skipped = 1;
+                }
+                toSkip -= skipped;
+            }
+        }
+        headerRead = false;
+        lastDocIdOfPrevBlock = nextBlockLastDocId;
+        numUndecoded -= nextBlockLength;
+        blockLength = 0;
+        pos = -1;
+    }
+    private int exhaust() throws IOException {
+        if (docId != NO_MORE_DOCS) {
+            docId = NO_MORE_DOCS;
+            blockLength = 0;
+            pos = -1;
+            closer.close();
+        }
+        return docId;
+    }
+
+    @Override
+    public int nextDoc() {
+        if (pos + 1 < blockLength) {
+            docId = docIds[++pos];
+            return docId;
+        }
+        try {
+            if (numUndecoded == 0) {
+                return exhaust();
+            }
+            decodeNextBlock();
+        } catch (IOException ex) {
+            throw new RuntimeException("Encountered IO exception during processing of posting list", ex);
+        }
+        pos = 0;
+        docId = docIds[0];
+        return docId;
+    }
+
+    @Override
+    public int advance(int target) {
+        if (docId == NO_MORE_DOCS || (docId != 0 && docId >= target)) {
+            return docId;
+        }
+        if (blockLength > 0) {
+            if (docIds[blockLength - 1] >= target) {
+                // the target is within the current block
+                while (docIds[pos] < target) {
+                    ++pos;
+                }
+                docId = docIds[pos];
+                return docId;
+            }
+            // no entry in the current block is relevant
+            pos = blockLength - 1;
+        }
+        if (hasSkipHeaders) {
+            skipBlocksBefore(target);
+        }
+        int doc;
+        do {
+            doc = nextDoc();
+        } while (doc != NO_MORE_DOCS && doc < target);
+        return doc;
+    }
+
+    /** Skips the undecoded blocks whose last docId is smaller than the target, returning whether there's a block
+     *  containing it. In that case, its skip header was read. */
+    private boolean skipBlocksBefore(int target) {
+        assert hasSkipHeaders;
+        try {
+            while (numUndecoded > 0) {
+                if (!headerRead) {
+                    readHeader();
+                }
+                if (nextBlockLastDocId >= target) {
+                    return true;
+                }
+                skipNextBlock();
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException("Encountered IO exception while skipping within posting list", ex);
+        }
+        return false;
+    }
+
+    @Override
+    public int advanceShallow(int target) {
+        if (!hasSkipHeaders || !hasBlockMaxFreqs) {
+            shallowMaxFreq = Integer.MAX_VALUE;
+            return Integer.MAX_VALUE;
+        }
+        if (blockLength > 0 && docIds[blockLength - 1] >= target) {
+            // the target is within the current block
+            shallowMaxFreq = blockMaxFreq;
+            return docIds[blockLength - 1];
+        }
+        if (docId != NO_MORE_DOCS && skipBlocksBefore(target)) {
+            shallowMaxFreq = nextBlockMaxFreq;
+            return nextBlockLastDocId;
+        }
+        shallowMaxFreq = 0;
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public int blockMaxFreq() {
+        return shallowMaxFreq;
+    }
+
+    @Override
+    public int docId() {
+        return docId;
+    }
+
+    private void decodeFrequencies() {
+        assert !freqsDecoded && buffer != null;
+        int blockPosition = buffer.position();
+        buffer.position(freqsPosition);
+        if (isPFor) {
+            PForDecoder.decode(buffer, freqs, blockLength);
+        } else {
+            GroupVarintDecoder.decodeBlock(buffer, freqs, blockLength);
+        }
+        buffer.position(blockPosition);
+        freqsDecoded = true;
+    }
+
+    @Override
+    public int freq() {
+        assert pos >= 0 && pos < blockLength;
+        if (!freqsDecoded) {
+            decodeFrequencies();
+        }
+        return freqs[pos];
+    }
+
+    @Override
+    public int size() {
+        return frequency;
+    }
+
+    @Override
+    public int ordinal() {
+        assert pos >= 0 && pos < blockLength;
+        // entries before the current block were either decoded or skipped
+        return frequency - numUndecoded - blockLength + pos;
+    }
+}
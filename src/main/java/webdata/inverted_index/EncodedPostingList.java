@@ -0,0 +1,97 @@
+package webdata.inverted_index;
+
+import webdata.compression.Varint;
+
+import java.nio.ByteBuffer;
+
+/** A posting list as encoded in a memory mapped postings file(along with its positions, if its format has them),
+ *  which can be appended to the posting list of another term without decoding most of its blocks, see
+ *  {@link PostingListWriter#append(EncodedPostingList)}.
+ */
+public class EncodedPostingList {
+
+    private final PostingsFormat format;
+    private final ByteBuffer postings;
+    // Only set if the format has positions, spans exactly the positions of the list
+    private final ByteBuffer positions;
+    private final int frequency;
+    private final int collectionFrequency;
+
+    EncodedPostingList(PostingsFormat format, ByteBuffer postings, ByteBuffer positions, int frequency,
+                       int collectionFrequency) {
+        assert frequency > 0;
+        this.format = format;
+        this.postings = postings;
+        this.positions = positions;
+        this.frequency = frequency;
+        this.collectionFrequency = collectionFrequency;
+    }
+
+    /** Returns a copy of this list along with its positions, which span the given buffer from its position to its
+     *  limit */
+    EncodedPostingList withPositions(ByteBuffer positions) {
+        return new EncodedPostingList(format, postings, positions, frequency, collectionFrequency);
+    }
+
+    /** Returns a buffer(private to the caller) positioned at the beginning of the list */
+    ByteBuffer postings() {
+        return postings.duplicate();
+    }
+
+    /** Returns a buffer(private to the caller) spanning the positions of the list, or null if the format has none */
+    ByteBuffer positions() {
+        return positions != null ? positions.duplicate() : null;
+    }
+
+    /** Returns the first docId of the list, only decoding its first block */
+    public int firstDocId() {
+        return new BlockPostingsCursor(postings(), format, frequency).nextDoc();
+    }
+
+    /** Returns the last docId of the list. Only the skip headers are read, unless the list has none(in which case
+     *  it is decoded) */
+    public int lastDocId() {
+        if (!format.hasSkipHeaders(frequency)) {
+            var cursor = new BlockPostingsCursor(postings(), format, frequency);
+            int docId = 0;
+            for (int i = 0; i < frequency; ++i) {
+                docId = cursor.nextDoc();
+            }
+            return docId;
+        }
+        var buffer = postings();
+        int docId = 0;
+        for (int remaining = frequency; remaining > 0; ) {
+            int length = Math.min(format.getSkipInterval(), remaining);
+            int lastDocIdGap = Varint.decode(buffer);
+            if (lastDocIdGap == 0) {
+                // a short block within the list
+                length = Varint.decode(buffer);
+                lastDocIdGap = Varint.decode(buffer);
+            }
+            docId += lastDocIdGap;
+            remaining -= length;
+            int numBytes = Varint.decode(buffer);
+            if (format.hasBlockMaxFreqs()) {
+                Varint.decode(buffer);
+            }
+            buffer.position(buffer.position() + numBytes);
+        }
+        return docId;
+    }
+
+    /** Returns the format of the list */
+    public PostingsFormat getFormat() {
+        return format;
+    }
+
+    /** Returns the number of entries in the list */
+    public int getFrequency() {
+        return frequency;
+    }
+
+    /** Returns the sum of the frequencies of the list's entries */
+    public int getCollectionFrequency() {
+        return collectionFrequency;
+    }
+}
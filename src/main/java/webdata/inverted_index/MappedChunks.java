@@ -0,0 +1,93 @@
+package webdata.inverted_index;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.PrimitiveIterator;
+
+/** A read only file which is memory mapped in chunks, since a single mapping can address at most 2^31 bytes.
+ *  Chunk boundaries are chosen among given pointers (e.g, beginnings of posting lists), so that the data between two
+ *  consecutive pointers never crosses a chunk boundary.
+ */
+class MappedChunks {
+
+    // The i-th chunk begins at file position chunkStarts[i]
+    private final MappedByteBuffer[] chunks;
+    private final long[] chunkStarts;
+
+    // A single mapping can address at most 2^31 bytes
+    static final long MAX_CHUNK_SIZE = Integer.MAX_VALUE;
+
+    private MappedChunks(MappedByteBuffer[] chunks, long[] chunkStarts) {
+        this.chunks = chunks;
+        this.chunkStarts = chunkStarts;
+    }
+
+    /**
+     * @param path Path of file
+     * @param pointers Candidate chunk boundaries, in increasing order. The distance between two consecutive ones
+     *                 must be at most maxChunkSize.
+     * @param maxChunkSize Maximal size of a chunk
+     * @throws IOException In case of IO error while mapping, or if the pointers are too sparse to be mapped
+     */
+    static MappedChunks map(String path, PrimitiveIterator.OfLong pointers, long maxChunkSize) throws IOException {
+        assert maxChunkSize > 0 && maxChunkSize <= MAX_CHUNK_SIZE;
+        try (var raf = new RandomAccessFile(path, "r");
+             var channel = raf.getChannel()) {
+            long fileSize = channel.size();
+
+            var starts = new ArrayList<Long>();
+            var ends = new ArrayList<Long>();
+            long chunkStart = 0;
+            long lastCandidate = 0;
+            boolean hasMorePtrs = true;
+            while (hasMorePtrs) {
+                hasMorePtrs = pointers.hasNext();
+                long candidate = hasMorePtrs ? pointers.nextLong() : fileSize;
+                assert candidate >= lastCandidate && candidate <= fileSize : "Pointers must be increasing and within file";
+                if (candidate - chunkStart > maxChunkSize) {
+                    if (lastCandidate == chunkStart || candidate - lastCandidate > maxChunkSize) {
+                        throw new IOException(String.format(
+                                "Cannot memory map file %s, the data at %d is too big", path, lastCandidate));
+                    }
+                    starts.add(chunkStart);
+                    ends.add(lastCandidate);
+                    chunkStart = lastCandidate;
+                }
+                lastCandidate = candidate;
+            }
+            if (fileSize > chunkStart) {
+                starts.add(chunkStart);
+                ends.add(fileSize);
+            }
+
+            var chunks = new MappedByteBuffer[starts.size()];
+            var chunkStarts = new long[starts.size()];
+            for (int i = 0; i < chunks.length; ++i) {
+                chunkStarts[i] = starts.get(i);
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, chunkStarts[i], ends.get(i) - chunkStarts[i]);
+            }
+            // the mappings remain valid after the channel is closed
+            return new MappedChunks(chunks, chunkStarts);
+        }
+    }
+
+    /** Returns a buffer(private to the caller) whose position is the given pointer, and whose limit is the end of
+     *  the chunk containing it. */
+    ByteBuffer sliceAt(long pointer) {
+        int chunkIx = Arrays.binarySearch(chunkStarts, pointer);
+        if (chunkIx < 0) {
+            // the chunk containing the pointer is the one preceding the insertion point
+            chunkIx = -chunkIx - 2;
+        }
+        assert chunkIx >= 0 && pointer - chunkStarts[chunkIx] < chunks[chunkIx].capacity()
+                : "Pointer invalid, bigger than file size";
+        var slice = chunks[chunkIx].duplicate();
+        slice.position((int)(pointer - chunkStarts[chunkIx]));
+        return slice;
+    }
+}
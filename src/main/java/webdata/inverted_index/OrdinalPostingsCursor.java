@@ -0,0 +1,10 @@
+package webdata.inverted_index;
+
+/** A postings cursor over a single posting list, which knows the index of its current entry within the list (e.g, for
+ *  locating the entry's positions, see {@link PositionalPostingsCursor}) */
+public interface OrdinalPostingsCursor extends PostingsCursor {
+
+    /** Returns the index of the current entry within the posting list. Only valid after {@link #nextDoc()} has
+     *  returned a docId. */
+    int ordinal();
+}
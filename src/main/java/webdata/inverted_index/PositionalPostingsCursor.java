@@ -0,0 +1,127 @@
+package webdata.inverted_index;
+
+import webdata.compression.Varint;
+
+import java.nio.ByteBuffer;
+
+/** A postings cursor which can also yield the positions of the term within the current document.
+ *
+ *  Positions are read lazily: the positions of entries whose positions weren't asked for are skipped via their size
+ *  prefix, without decoding them.
+ *
+ *  Usage:
+ *  <pre>{@code
+ *  for (int docId = cursor.nextDoc(); docId != PostingsCursor.NO_MORE_DOCS; docId = cursor.nextDoc()) {
+ *      for (int i = 0; i < cursor.freq(); ++i) {
+ *          int position = cursor.nextPosition();
+ *      }
+ *  }
+ *  }</pre>
+ */
+public class PositionalPostingsCursor implements PostingsCursor {
+
+    private final OrdinalPostingsCursor postings;
+    private final ByteBuffer positions;
+
+    // ordinal of the entry whose positions begin at the buffer's position(if nothing is being read)
+    private int nextEntryOrdinal;
+    // ordinal of the entry whose positions are being read, or -1
+    private int curEntryOrdinal;
+    private int numPositionsLeft;
+    private int lastPosition;
+
+    /**
+     * @param postings Cursor over the posting list, which wasn't advanced yet
+     * @param positions Buffer positioned at the beginning of the posting list's positions, owned by the cursor
+     */
+    PositionalPostingsCursor(OrdinalPostingsCursor postings, ByteBuffer positions) {
+        this.postings = postings;
+        this.positions = positions;
+        this.nextEntryOrdinal = 0;
+        this.curEntryOrdinal = -1;
+        this.numPositionsLeft = 0;
+        this.lastPosition = -1;
+    }
+
+    /** Returns a cursor over an empty posting list */
+    public static PositionalPostingsCursor empty() {
+        return new PositionalPostingsCursor(new ArrayPostingsCursor(new int[0], new int[0]), ByteBuffer.allocate(0));
+    }
+
+    /** Returns the next position of the term within the current document, in increasing order. Must be called at
+     *  most {@link #freq()} times per document. */
+    public int nextPosition() {
+        int ordinal = postings.ordinal();
+        if (ordinal != curEntryOrdinal) {
+            seekEntry(ordinal);
+        }
+        assert numPositionsLeft > 0 : "Read all positions of the current document";
+        --numPositionsLeft;
+        int value = Varint.decode(positions);
+        // the first position is stored as is, the others as gaps
+        lastPosition = lastPosition < 0 ? value : lastPosition + value;
+        if (numPositionsLeft == 0) {
+            curEntryOrdinal = -1;
+            ++nextEntryOrdinal;
+        }
+        return lastPosition;
+    }
+
+    /** Positions the buffer at the positions of the entry with given ordinal */
+    private void seekEntry(int ordinal) {
+        if (curEntryOrdinal >= 0) {
+            // skip the unread positions of the previous entry
+            while (numPositionsLeft > 0) {
+                Varint.decode(positions);
+                --numPositionsLeft;
+            }
+            ++nextEntryOrdinal;
+        }
+        assert ordinal >= nextEntryOrdinal : "Positions must be read in increasing order of entries";
+        while (nextEntryOrdinal < ordinal) {
+            int numBytes = Varint.decode(positions);
+            positions.position(positions.position() + numBytes);
+            ++nextEntryOrdinal;
+        }
+        // the size prefix of the entry itself is unneeded
+        Varint.decode(positions);
+        curEntryOrdinal = ordinal;
+        numPositionsLeft = postings.freq();
+        lastPosition = -1;
+    }
+
+    @Override
+    public int nextDoc() {
+        return postings.nextDoc();
+    }
+
+    @Override
+    public int advance(int target) {
+        return postings.advance(target);
+    }
+
+    @Override
+    public int advanceShallow(int target) {
+        return postings.advanceShallow(target);
+    }
+
+    @Override
+    public int blockMaxFreq() {
+        return postings.blockMaxFreq();
+    }
+
+    @Override
+    public int docId() {
+        return postings.docId();
+    }
+
+    @Override
+    public int freq() {
+        return postings.freq();
+    }
+
+    @Override
+    public int size() {
+        return postings.size();
+    }
+}
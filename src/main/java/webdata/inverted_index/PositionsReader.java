@@ -0,0 +1,52 @@
+package webdata.inverted_index;
+
+import java.io.IOException;
+import java.util.PrimitiveIterator;
+
+/** Allows random access reads of a positions file(see {@link PostingsFormat}), which is memory mapped once. */
+public class PositionsReader {
+
+    private final MappedChunks chunks;
+
+    private PositionsReader(MappedChunks chunks) {
+        this.chunks = chunks;
+    }
+
+    /**
+     * Maps the positions file in chunks, such that the positions of no posting list cross a chunk boundary.
+     * @param path Path of positions file
+     * @param positionsPtrs Pointers to beginnings of the positions of posting lists, in increasing order. Used as
+     *                      candidate chunk boundaries, so it's enough to provide some of them (as long as the distance
+     *                      between two consecutive ones is at most 2^31 bytes)
+     * @throws IOException In case of IO error while mapping, or if the pointers are too sparse to be mapped
+     */
+    public static PositionsReader memoryMapped(String path, PrimitiveIterator.OfLong positionsPtrs) throws IOException {
+        return new PositionsReader(MappedChunks.map(path, positionsPtrs, MappedChunks.MAX_CHUNK_SIZE));
+    }
+
+    /**
+     * Returns a cursor over the given posting list which can also read its positions
+     * @param postings Cursor over a posting list, which wasn't advanced yet
+     * @param positionsPtr Pointer to the positions of said posting list
+     */
+    public PositionalPostingsCursor readPositions(OrdinalPostingsCursor postings, long positionsPtr) {
+        assert positionsPtr >= 0 : "Positions pointer must be non-negative";
+        return new PositionalPostingsCursor(postings, chunks.sliceAt(positionsPtr));
+    }
+
+    /**
+     * Returns the given encoded posting list along with its encoded positions
+     * @param postings Encoded posting list, without positions
+     * @param positionsPtr Pointer to the positions of said posting list
+     * @param nextPositionsPtr Pointer to the positions of the following posting list, or -1 if it's the last one
+     */
+    public EncodedPostingList readPositions(EncodedPostingList postings, long positionsPtr, long nextPositionsPtr) {
+        assert positionsPtr >= 0 : "Positions pointer must be non-negative";
+        var positions = chunks.sliceAt(positionsPtr);
+        if (nextPositionsPtr >= 0) {
+            // the positions of a list never cross a chunk boundary
+            positions.limit(positions.position() + (int) (nextPositionsPtr - positionsPtr));
+        }
+        return postings.withPositions(positions);
+    }
+}
@@ -1,29 +1,98 @@
 package webdata.inverted_index;
 
-import webdata.compression.GroupVarintDecoder;
-
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.util.Enumeration;
-import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
 
 /** Allows random access reads of an inverted index file, reading
  *  a posting list at any valid posting pointer.
+ *
+ *  The reader operates in one of two modes:
+ *  <ul>
+ *      <li>Stream mode (see {@link #PostingListReader(String)}), where every read opens the file anew.</li>
+ *      <li>Memory mapped mode (see {@link #memoryMapped(String, PostingsFormat, PrimitiveIterator.OfLong)}), where the file is
+ *          mapped once, and posting lists are decoded directly from the mapped bytes.</li>
+ *  </ul>
  * */
 public class PostingListReader {
 
     private final String filePath;
+    private final PostingsFormat format;
+
+    // Only set in memory mapped mode, each chunk contains whole posting lists
+    private final MappedChunks chunks;
+
+    // A single mapping can address at most 2^31 bytes
+    static final long MAX_CHUNK_SIZE = MappedChunks.MAX_CHUNK_SIZE;
 
+    /** Creates a reader in stream mode, for a postings file of the legacy format */
     public PostingListReader(String path) throws IOException {
+        this(path, PostingsFormat.LEGACY);
+    }
+
+    /** Creates a reader in stream mode */
+    public PostingListReader(String path, PostingsFormat format) throws IOException {
+        this(path, format, null);
+    }
+
+    private PostingListReader(String path, PostingsFormat format, MappedChunks chunks) {
         this.filePath = path;
+        this.format = format;
+        this.chunks = chunks;
+    }
+
+    /**
+     * Creates a reader in memory mapped mode, the postings file is mapped in chunks, such that no posting
+     * list crosses a chunk boundary.
+     * @param path Path of postings file
+     * @param format Format of postings file
+     * @param postingPtrs Pointers to beginnings of posting lists, in increasing order. These are used as candidate
+     *                    chunk boundaries, so it's enough to provide some of the pointers (as long as the distance
+     *                    between two consecutive ones is at most {@link #MAX_CHUNK_SIZE})
+     * @throws IOException In case of IO error while mapping, or if the pointers are too sparse to be mapped
+     */
+    public static PostingListReader memoryMapped(String path, PostingsFormat format, PrimitiveIterator.OfLong postingPtrs)
+            throws IOException {
+        return memoryMapped(path, format, postingPtrs, MAX_CHUNK_SIZE);
+    }
+
+    static PostingListReader memoryMapped(String path, PostingsFormat format, PrimitiveIterator.OfLong postingPtrs,
+                                          long maxChunkSize)
+            throws IOException {
+        return new PostingListReader(path, format, MappedChunks.map(path, postingPtrs, maxChunkSize));
+    }
+
+    /** Returns whether this reader is in memory mapped mode */
+    public boolean isMemoryMapped() {
+        return chunks != null;
+    }
+
+    /** In memory mapped mode, returns a buffer(private to the caller) whose position is the given posting pointer,
+     *  and whose limit is the end of the chunk containing it. */
+    ByteBuffer sliceAt(long postingPtr) {
+        assert isMemoryMapped();
+        return chunks.sliceAt(postingPtr);
     }
 
     /** Returns the posting list as a stream of docIds and frequencies */
     public Enumeration<Integer> readDocIdFreqPairs(long postingPtr, int frequency) throws IOException {
+        return PostingsCursor.asDocIdFreqEnumeration(readPostings(postingPtr, frequency));
+    }
+
+    /** Returns a cursor over the posting list at given pointer
+     * @param postingPtr Pointer to posting list
+     * @param frequency Document frequency of the list's term, that is, number of entries in the list
+     */
+    public OrdinalPostingsCursor readPostings(long postingPtr, int frequency) throws IOException {
         assert frequency > 0;
         assert postingPtr >= 0 : "Posting pointer must be non-negative";
 
-        // TODO: maybe re-use file, need to check if enumeration will be used concurrently
+        if (isMemoryMapped()) {
+            return new BlockPostingsCursor(sliceAt(postingPtr), format, frequency);
+        }
+
         var raf = new RandomAccessFile(filePath, "r");
         var fileChannel = raf.getChannel();
 
@@ -31,57 +100,35 @@ public class PostingListReader {
 
         fileChannel.position(postingPtr);
         var stream = new BufferedInputStream(Channels.newInputStream(fileChannel));
-        final var decoder = new GroupVarintDecoder(stream);
-
-        return new Enumeration<>() {
-
-            // first element is docId
-            private boolean isDocId = true;
-            private int curDocId = 0;
-            private int numPairsRead = 0;
-            private int nextRead = decoder.read();
-
-            private void finishReading() throws IOException {
-                assert numPairsRead == frequency;
-                decoder.close();
-                fileChannel.close();
-                raf.close();
-            }
-
-            @Override
-            public boolean hasMoreElements() {
-                return nextRead > 0 && numPairsRead < frequency;
-            }
-
-            @Override
-            public Integer nextElement() {
-                if (!hasMoreElements()) {
-                    throw new NoSuchElementException();
-                }
-                int retVal;
-                try {
-                    if (isDocId) {
-                        curDocId += nextRead;
-                        retVal = curDocId;
-                        isDocId = false;
-                        nextRead = decoder.read();
-                        assert (nextRead > 0) : "After decoding docId gap, expected to see a freq";
-                    } else {
-                        numPairsRead++;
-                        retVal = nextRead;
-                        isDocId = true;
-                        nextRead = decoder.read();
-                        if (nextRead == -1) {
-                            finishReading();
-                        }
-                    }
-                    return retVal;
-                }
-                catch (IOException ex) {
-                    throw new NoSuchElementException(String.format("Encountered IO exception during processing of posting list iterator: %s", ex));
-                }
-            }
-        };
 
+        return new BlockPostingsCursor(stream, format, frequency, () -> {
+            stream.close();
+            fileChannel.close();
+            raf.close();
+        });
+    }
+
+    /**
+     * In memory mapped mode, returns the encoded posting list at given pointer, without its positions(see
+     * {@link PositionsReader#readPositions(EncodedPostingList, long, long)})
+     * @param postingPtr Pointer to posting list
+     * @param frequency Document frequency of the list's term, that is, number of entries in the list
+     * @param collectionFrequency Collection frequency of the list's term
+     */
+    public EncodedPostingList readEncoded(long postingPtr, int frequency, int collectionFrequency) {
+        if (!isMemoryMapped()) {
+            throw new IllegalStateException("Encoded posting lists can only be read in memory mapped mode");
+        }
+        return new EncodedPostingList(format, sliceAt(postingPtr), null, frequency, collectionFrequency);
+    }
+
+    /** Returns the format of posting lists read by this reader */
+    public PostingsFormat getFormat() {
+        return format;
+    }
+
+    /** Cleans up resources used for reading a posting list */
+    interface Closer {
+        void close() throws IOException;
     }
 }
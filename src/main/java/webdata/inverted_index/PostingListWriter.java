@@ -1,15 +1,44 @@
 package webdata.inverted_index;
 
+import webdata.compression.GroupVarintDecoder;
 import webdata.compression.GroupVarintEncoder;
+import webdata.compression.PForDecoder;
+import webdata.compression.PForEncoder;
+import webdata.compression.Varint;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.Objects;
 
 /** Used for writing posting lists.*/
 public class PostingListWriter implements Closeable, Flushable {
 
+    private final PostingsFormat format;
+    private final CountingOutputStream outputStream;
     private final GroupVarintEncoder encoder;
-    long curBytePos;
+
+    // Used when writing in a format with skips: entries of the current block are buffered, and encoded into
+    // blockBytes once the block is finished, since the skip header must contain the block's size.
+    private final int[] blockGaps;
+    private final int[] blockFreqs;
+    private int blockLength;
+    private int numBlocksWritten;
+    private int lastDocIdOfPrevBlock;
+    private final ByteArrayOutputStream blockBytes;
+    private final GroupVarintEncoder blockEncoder;
+    private final PForEncoder pforEncoder;
+
+    // Used when appending encoded posting lists: entries which can't be copied as is are decoded into these, and
+    // copied bytes go through copyBytes
+    private final int[] decodedGaps;
+    private final int[] decodedFreqs;
+    private final int[] decodedInterleaved;
+    private final byte[] copyBytes;
+
+    // Only set if the format has positions
+    private final CountingOutputStream positionsStream;
+    private final ByteArrayOutputStream entryPositionsBytes;
+    private long curPositionsPtr;
 
     private int lastDocId;
     private String curTerm;
@@ -18,13 +47,58 @@ public class PostingListWriter implements Closeable, Flushable {
     private long curPostingPtr;
 
     /**
-     * Creates a writer for posting lists
+     * Creates a writer for posting lists, using the legacy format (no skips)
      * @param outputStream Output stream to which encoded posting entries will be written.
      *                     Will be automatically closed/flushed when the PostingListWriter is closed/flushed, respectively.
      */
     public PostingListWriter(OutputStream outputStream) {
-        this.encoder = new GroupVarintEncoder(outputStream);
-        this.curBytePos = 0;
+        this(outputStream, PostingsFormat.LEGACY);
+    }
+
+    /**
+     * Creates a writer for posting lists
+     * @param outputStream Output stream to which encoded posting entries will be written.
+     *                     Will be automatically closed/flushed when the PostingListWriter is closed/flushed, respectively.
+     * @param format Format of posting lists
+     */
+    public PostingListWriter(OutputStream outputStream, PostingsFormat format) {
+        this(outputStream, null, format);
+    }
+
+    /**
+     * Creates a writer for posting lists, along with their positions
+     * @param outputStream Output stream to which encoded posting entries will be written.
+     *                     Will be automatically closed/flushed when the PostingListWriter is closed/flushed, respectively.
+     * @param positionsStream Output stream to which positions will be written, must be given iff the format has
+     *                        positions. Closed/flushed along with the writer.
+     * @param format Format of posting lists
+     */
+    public PostingListWriter(OutputStream outputStream, OutputStream positionsStream, PostingsFormat format) {
+        if (format.hasPositions() != (positionsStream != null)) {
+            throw new IllegalArgumentException("A positions stream must be given iff the format has positions");
+        }
+        this.format = format;
+        this.outputStream = new CountingOutputStream(outputStream);
+        this.encoder = new GroupVarintEncoder(this.outputStream);
+
+        this.blockGaps = new int[format.getSkipInterval()];
+        this.blockFreqs = new int[format.getSkipInterval()];
+        this.blockLength = 0;
+        this.numBlocksWritten = 0;
+        this.lastDocIdOfPrevBlock = 0;
+        this.blockBytes = new ByteArrayOutputStream();
+        this.blockEncoder = new GroupVarintEncoder(blockBytes);
+        this.pforEncoder = new PForEncoder(blockBytes);
+
+        int decodeLength = format.hasSkips() ? format.getSkipInterval() : BlockPostingsCursor.DECODE_CHUNK_LENGTH;
+        this.decodedGaps = new int[decodeLength];
+        this.decodedFreqs = new int[decodeLength];
+        this.decodedInterleaved = new int[2 * decodeLength];
+        this.copyBytes = new byte[8192];
+
+        this.positionsStream = positionsStream != null ? new CountingOutputStream(positionsStream) : null;
+        this.entryPositionsBytes = new ByteArrayOutputStream();
+        this.curPositionsPtr = 0;
 
         this.lastDocId = 0;
         this.curTerm = null;
@@ -39,6 +113,45 @@ public class PostingListWriter implements Closeable, Flushable {
      * @param freq Number
      */
     public void add(int docId, int freq) throws IOException
+    {
+        if (format.hasPositions()) {
+            throw new IllegalStateException("Posting list entries of a format with positions must include them");
+        }
+        addEntry(docId, freq);
+    }
+
+    /**
+     * Adds an entry to the posting list of the current term, along with the positions of the term in the document
+     * @param docId ID of document in which term of posting list appears
+     * @param freq Number
+     * @param positions Positions of the term within the document, in increasing order. Only the first 'freq'
+     *                  elements are used.
+     */
+    public void add(int docId, int freq, int[] positions) throws IOException
+    {
+        if (!format.hasPositions()) {
+            throw new IllegalStateException("Cannot add positions to a format without positions");
+        }
+        if (positions.length < freq) {
+            throw new IllegalArgumentException("Expected " + freq + " positions, got " + positions.length);
+        }
+        addEntry(docId, freq);
+
+        entryPositionsBytes.reset();
+        int lastPosition = -1;
+        for (int i = 0; i < freq; ++i) {
+            if (positions[i] <= lastPosition) {
+                throw new IllegalArgumentException("Positions must be non-negative and inserted in an increasing order");
+            }
+            // the first position is encoded as is, the others as gaps
+            Varint.encode(entryPositionsBytes, i == 0 ? positions[i] : positions[i] - lastPosition);
+            lastPosition = positions[i];
+        }
+        Varint.encode(positionsStream, entryPositionsBytes.size());
+        entryPositionsBytes.writeTo(positionsStream);
+    }
+
+    private void addEntry(int docId, int freq) throws IOException
     {
         if (Objects.isNull(curTerm)) {
             throw new IllegalStateException("Cannot add a posting list entry if no term was set");
@@ -53,28 +166,254 @@ public class PostingListWriter implements Closeable, Flushable {
             throw new IllegalArgumentException("Frequency within document must be positive");
         }
         int gap = docId - lastDocId;
-        encoder.write(gap);
-        encoder.write(freq);
+        if (format.hasSkips()) {
+            if (blockLength == blockGaps.length) {
+                // the list has more than one block, so every block (including the current one) needs a header
+                writeBlock(true);
+            }
+            blockGaps[blockLength] = gap;
+            blockFreqs[blockLength] = freq;
+            ++blockLength;
+        } else {
+            encoder.write(gap);
+            encoder.write(freq);
+        }
         curDocumentFrequency++;
         curDocumentCollectionFrequency += freq;
         lastDocId = docId;
     }
 
+    /** Writes the buffered block, preceded by a skip header if needed */
+    private void writeBlock(boolean withHeader) throws IOException {
+        assert blockLength > 0;
+        blockBytes.reset();
+        if (format.getCodec() == PostingsFormat.Codec.PFOR) {
+            pforEncoder.writeBlock(blockGaps, blockLength);
+            pforEncoder.writeBlock(blockFreqs, blockLength);
+        } else if (format.hasSeparateFrequencies()) {
+            for (int i = 0; i < blockLength; ++i) {
+                blockEncoder.write(blockGaps[i]);
+            }
+            blockEncoder.finishPreviousGroup();
+            for (int i = 0; i < blockLength; ++i) {
+                blockEncoder.write(blockFreqs[i]);
+            }
+            blockEncoder.finishPreviousGroup();
+        } else {
+            for (int i = 0; i < blockLength; ++i) {
+                blockEncoder.write(blockGaps[i]);
+                blockEncoder.write(blockFreqs[i]);
+            }
+            blockEncoder.finishPreviousGroup();
+        }
+
+        int lastDocIdOfBlock = lastDocIdOfPrevBlock;
+        int maxFreq = 0;
+        for (int i = 0; i < blockLength; ++i) {
+            lastDocIdOfBlock += blockGaps[i];
+            maxFreq = Math.max(maxFreq, blockFreqs[i]);
+        }
+        if (withHeader) {
+            Varint.encode(outputStream, lastDocIdOfBlock - lastDocIdOfPrevBlock);
+            Varint.encode(outputStream, blockBytes.size());
+            if (format.hasBlockMaxFreqs()) {
+                Varint.encode(outputStream, maxFreq);
+            }
+        }
+        blockBytes.writeTo(outputStream);
+
+        lastDocIdOfPrevBlock = lastDocIdOfBlock;
+        blockLength = 0;
+        ++numBlocksWritten;
+    }
+
+    /** Writes the buffered entries as a block followed by more blocks of the list, marking it as a short block(see
+     *  {@link PostingsFormat}) if it isn't full */
+    private void writeBufferedBlock() throws IOException {
+        if (blockLength < blockGaps.length) {
+            Varint.encode(outputStream, 0);
+            Varint.encode(outputStream, blockLength);
+        }
+        writeBlock(true);
+    }
+
+    /**
+     * Appends an encoded posting list(e.g, of a temporary index) to the posting list of the current term, along with
+     * its positions. Its full blocks are copied as is, except for its first block unless the current list is empty
+     * (its first gap and skip header are relative to the current list) - the entries buffered before a copied block
+     * are written as a short block. Its remaining entries are decoded and buffered.
+     * @param list Encoded posting list of the same format, whose docIds are greater than those added so far
+     */
+    public void append(EncodedPostingList list) throws IOException {
+        if (Objects.isNull(curTerm)) {
+            throw new IllegalStateException("Cannot append a posting list if no term was set");
+        }
+        if (!list.getFormat().equals(format)) {
+            throw new IllegalArgumentException("Cannot append a posting list of format " + list.getFormat() +
+                    " to posting lists of format " + format);
+        }
+        int documentFrequency = curDocumentFrequency + list.getFrequency();
+        int documentCollectionFrequency = curDocumentCollectionFrequency + list.getCollectionFrequency();
+        var postings = list.postings();
+        if (!format.hasSkipHeaders(list.getFrequency())) {
+            int chunkLength = format.hasSkips() ? list.getFrequency() : decodedGaps.length;
+            int docId = 0;
+            for (int remaining = list.getFrequency(); remaining > 0; remaining -= chunkLength) {
+                docId = addEncodedEntries(postings, Math.min(chunkLength, remaining), docId);
+            }
+        } else {
+            int lastDocIdOfListBlock = 0;
+            for (int remaining = list.getFrequency(); remaining > 0; ) {
+                int length = Math.min(blockGaps.length, remaining);
+                int lastDocIdGap = Varint.decode(postings);
+                if (lastDocIdGap == 0) {
+                    // a short block within the list
+                    length = Varint.decode(postings);
+                    lastDocIdGap = Varint.decode(postings);
+                }
+                int numBytes = Varint.decode(postings);
+                int maxFreq = format.hasBlockMaxFreqs() ? Varint.decode(postings) : 0;
+                int blockStart = postings.position();
+                if (length == blockGaps.length && lastDocId == lastDocIdOfListBlock) {
+                    // all previous entries of the list were added(or the current list is empty and this is the first
+                    // block of the list), so once the buffered entries are written the header is still valid
+                    if (blockLength > 0) {
+                        writeBufferedBlock();
+                    }
+                    assert lastDocIdOfPrevBlock == lastDocId;
+                    Varint.encode(outputStream, lastDocIdGap);
+                    Varint.encode(outputStream, numBytes);
+                    if (format.hasBlockMaxFreqs()) {
+                        Varint.encode(outputStream, maxFreq);
+                    }
+                    copy(postings, numBytes, outputStream);
+                    lastDocId += lastDocIdGap;
+                    lastDocIdOfPrevBlock = lastDocId;
+                    ++numBlocksWritten;
+                } else {
+                    addEncodedEntries(postings, length, lastDocIdOfListBlock);
+                    postings.position(blockStart + numBytes);
+                }
+                lastDocIdOfListBlock += lastDocIdGap;
+                remaining -= length;
+            }
+        }
+        if (positionsStream != null) {
+            var positions = list.positions();
+            copy(positions, positions.remaining(), positionsStream);
+        }
+        curDocumentFrequency = documentFrequency;
+        curDocumentCollectionFrequency = documentCollectionFrequency;
+    }
+
+    /** Decodes the given number of entries(a block, or a chunk of a list without skip headers) from the buffer, and
+     *  adds them. Returns the last docId added
+     * @param prevDocId The docId preceding the entries, to which the first gap is relative */
+    private int addEncodedEntries(ByteBuffer src, int length, int prevDocId) throws IOException {
+        if (format.getCodec() == PostingsFormat.Codec.PFOR) {
+            PForDecoder.decode(src, decodedGaps, length);
+            PForDecoder.decode(src, decodedFreqs, length);
+        } else if (format.hasSeparateFrequencies()) {
+            GroupVarintDecoder.decodeBlock(src, decodedGaps, length);
+            GroupVarintDecoder.decodeBlock(src, decodedFreqs, length);
+        } else {
+            GroupVarintDecoder.decodeBlock(src, decodedInterleaved, 2 * length);
+            for (int i = 0; i < length; ++i) {
+                decodedGaps[i] = decodedInterleaved[2 * i];
+                decodedFreqs[i] = decodedInterleaved[2 * i + 1];
+            }
+        }
+        int docId = prevDocId;
+        for (int i = 0; i < length; ++i) {
+            docId += decodedGaps[i];
+            addEntry(docId, decodedFreqs[i]);
+        }
+        return docId;
+    }
+
+    /** Copies the given number of bytes from the buffer to the stream */
+    private void copy(ByteBuffer src, int numBytes, OutputStream dst) throws IOException {
+        while (numBytes > 0) {
+            int length = Math.min(numBytes, copyBytes.length);
+            src.get(copyBytes, 0, length);
+            dst.write(copyBytes, 0, length);
+            numBytes -= length;
+        }
+    }
+
+    /** Ensures all entries of the current posting list(if any) were written to the output stream */
+    private void finishTerm() throws IOException {
+        if (format.hasSkips()) {
+            if (blockLength > 0) {
+                // a list that fits in a single block has no skip headers
+                writeBlock(numBlocksWritten > 0);
+            }
+            numBlocksWritten = 0;
+            lastDocIdOfPrevBlock = 0;
+        } else {
+            encoder.finishPreviousGroup();
+        }
+    }
+
     /** Resets the writer for writing a new posting list(or the first one), and returns a
      *  pointer to said posting list.*/
     public long startTerm(String term) throws IOException
     {
-        // If we already wrote a posting list, ensure the last group was written
-        encoder.finishPreviousGroup();
+        // If we already wrote a posting list, ensure its last group was written
+        finishTerm();
 
         lastDocId = 0;
         curTerm = term;
         curDocumentFrequency = 0;
         curDocumentCollectionFrequency = 0;
-        curPostingPtr = encoder.getTotalNumBytesWritten();
+        curPostingPtr = outputStream.getCount();
+        curPositionsPtr = positionsStream != null ? positionsStream.getCount() : 0;
         return curPostingPtr;
     }
 
+    /**
+     * Copies posting lists encoded by another writer of the same format after the lists written so far. Pointers to
+     * the copied lists(and positions) should be increased by {@link #getPostingsSize()}(and
+     * {@link #getPositionsSize()}), as returned before copying. A term must be started before adding entries again.
+     * @param postings Encoded posting lists
+     * @param positions Encoded positions of said lists, must be given iff the format has positions
+     */
+    public void appendEncoded(InputStream postings, InputStream positions) throws IOException {
+        if (format.hasPositions() != (positions != null)) {
+            throw new IllegalArgumentException("Positions must be given iff the format has positions");
+        }
+        finishTerm();
+        postings.transferTo(outputStream);
+        if (positions != null) {
+            positions.transferTo(positionsStream);
+        }
+        curTerm = null;
+    }
+
+    /** Returns the number of bytes of posting lists written so far */
+    public long getPostingsSize() {
+        return outputStream.getCount();
+    }
+
+    /** Returns the number of bytes of positions written so far */
+    public long getPositionsSize() {
+        if (positionsStream == null) {
+            throw new IllegalStateException("Cannot get positions size of a format without positions");
+        }
+        return positionsStream.getCount();
+    }
+
+    /** Returns a pointer to the positions of the current term within the positions stream */
+    public long getCurrentTermPositionsPointer() {
+        if (curTerm == null) {
+            throw new IllegalStateException("Cannot get positions pointer before starting a term");
+        }
+        if (positionsStream == null) {
+            throw new IllegalStateException("Cannot get positions pointer of a format without positions");
+        }
+        return curPositionsPtr;
+    }
+
     /** Returns the number of documents in which the current term was seen/the length of the current posting list */
     public int getCurrentTermDocumentFrequency() {
         if (curTerm == null) {
@@ -96,20 +435,58 @@ public class PostingListWriter implements Closeable, Flushable {
        return curTerm;
     }
 
+    /** Returns the format of written posting lists */
+    public PostingsFormat getFormat() {
+        return format;
+    }
+
     @Override
     public void close() throws IOException {
         flush();
         this.encoder.close();
+        if (positionsStream != null) {
+            positionsStream.close();
+        }
     }
 
     @Override
     public void flush() throws IOException {
+        finishTerm();
         this.encoder.flush();
+        if (positionsStream != null) {
+            positionsStream.flush();
+        }
     }
 
     /** Similar to {@link #flush()}, ensures all (compressed) posting list entries are written to
      *  the output stream without flushing the stream itself. */
     public void flushEncoderOnly() throws IOException {
-        this.encoder.finishPreviousGroup();
+        finishTerm();
+    }
+
+    /** Counts the number of bytes written to a stream, used for determining posting pointers. */
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+            this.count = 0;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            ++count;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        long getCount() {
+            return count;
+        }
     }
 }
@@ -0,0 +1,108 @@
+package webdata.inverted_index;
+
+import java.util.Enumeration;
+import java.util.NoSuchElementException;
+
+/** A forward only cursor over a posting list, yielding docIds(in increasing order) and their frequencies
+ *  as primitive ints, without allocating per posting.
+ *
+ *  Usage:
+ *  <pre>{@code
+ *  for (int docId = cursor.nextDoc(); docId != PostingsCursor.NO_MORE_DOCS; docId = cursor.nextDoc()) {
+ *      int freq = cursor.freq();
+ *  }
+ *  }</pre>
+ */
+public interface PostingsCursor {
+
+    /** Returned by {@link #nextDoc()} once the posting list is exhausted. (Every positive int is a valid docId,
+     *  so a negative sentinel is used) */
+    int NO_MORE_DOCS = -1;
+
+    /** Advances to the next posting list entry
+     * @return The docId of said entry, or {@link #NO_MORE_DOCS} if the list is exhausted
+     */
+    int nextDoc();
+
+    /** Advances to the first entry whose docId is at least the given target. If the current entry already
+     *  satisfies this, the cursor isn't moved.
+     *
+     *  The default implementation scans linearly, implementations should override it if they can skip.
+     * @param target A docId
+     * @return The docId of said entry, or {@link #NO_MORE_DOCS} if there's no such entry
+     */
+    default int advance(int target) {
+        int doc = docId();
+        if (doc == NO_MORE_DOCS || (doc != 0 && doc >= target)) {
+            return doc;
+        }
+        do {
+            doc = nextDoc();
+        } while (doc != NO_MORE_DOCS && doc < target);
+        return doc;
+    }
+
+    /** Moves the skip data to the block which contains the first entry whose docId is at least the given target,
+     *  without decoding said block. Entries before that block may be skipped, so the cursor should only be moved
+     *  afterwards via {@link #advance(int)} to a target at least as big.
+     *
+     *  The default implementation treats the whole list as a single block of unknown maximal frequency.
+     * @param target A docId
+     * @return The last docId of said block, such that {@link #blockMaxFreq()} bounds the frequencies of all entries
+     *         up to it. Returns {@link Integer#MAX_VALUE} if there's no such entry, or if the block extends to the
+     *         end of the list.
+     */
+    default int advanceShallow(int target) {
+        return Integer.MAX_VALUE;
+    }
+
+    /** Returns the maximal frequency within the block found by the last call to {@link #advanceShallow(int)},
+     *  0 if there was no such block, or {@link Integer#MAX_VALUE} if it is unknown. */
+    default int blockMaxFreq() {
+        return Integer.MAX_VALUE;
+    }
+
+    /** Returns the docId of the current entry, 0 if {@link #nextDoc()} wasn't called yet, or {@link #NO_MORE_DOCS}
+     *  if the list is exhausted. */
+    int docId();
+
+    /** Returns the frequency of the term within the current document. Only valid after {@link #nextDoc()} has
+     *  returned a docId. */
+    int freq();
+
+    /** Returns the number of entries in the posting list, that is, the document frequency of its term. */
+    int size();
+
+    /** Returns a cursor over an empty posting list */
+    static PostingsCursor empty() {
+        return new ArrayPostingsCursor(new int[0], new int[0]);
+    }
+
+    /** Adapts a cursor into an enumeration of the form docId-1, freq-1, docId-2, freq-2, ... */
+    static Enumeration<Integer> asDocIdFreqEnumeration(PostingsCursor cursor) {
+        return new Enumeration<>() {
+            private boolean isDocId = true;
+            private int nextDocId = cursor.nextDoc();
+
+            @Override
+            public boolean hasMoreElements() {
+                return nextDocId != NO_MORE_DOCS;
+            }
+
+            @Override
+            public Integer nextElement() {
+                if (!hasMoreElements()) {
+                    throw new NoSuchElementException();
+                }
+                if (isDocId) {
+                    isDocId = false;
+                    return nextDocId;
+                }
+                isDocId = true;
+                int freq = cursor.freq();
+                nextDocId = cursor.nextDoc();
+                return freq;
+            }
+        };
+    }
+}
@@ -0,0 +1,259 @@
+package webdata.inverted_index;
+
+import webdata.compression.PForEncoder;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Objects;
+
+/** Describes the layout of posting lists within a postings file. Must be identical when writing and reading
+ *  a postings file, and is therefore persisted alongside the index.
+ *
+ *  <h2>Layouts</h2>
+ *  Without skips, a posting list is a single group varint stream of (docId gap, frequency) pairs.
+ *  <p>
+ *  With skips (a positive skip interval 'N'), a posting list with more than N entries is split into blocks of N
+ *  entries (the last block might be shorter), each preceded by a skip header consisting of two varints:
+ *  the gap between the block's last docId and the previous block's last docId, and the number of bytes in the block.
+ *  This allows skipping whole blocks without decoding them. Posting lists with at most N entries have no headers,
+ *  so they are laid out exactly as without skips.
+ *  <p>
+ *  A block other than the last one might also be shorter (when posting lists of temporary indices are appended, see
+ *  {@link PostingListWriter#append(EncodedPostingList)}), in which case its skip header is preceded by a 0 varint
+ *  (which can't be the first varint of a skip header) and by its number of entries.
+ *
+ *  <h2>Codecs</h2>
+ *  The codec determines how the entries themselves are encoded:
+ *  <ul>
+ *      <li>{@link Codec#GROUP_VARINT}: (docId gap, frequency) pairs, interleaved in a group varint stream.</li>
+ *      <li>{@link Codec#PFOR}: every block (or the whole list, if it has no skip headers) consists of a
+ *          {@link webdata.compression.PForEncoder PFOR} block of docId gaps, followed by a PFOR block of
+ *          frequencies. Requires skips, as the skip interval determines the block length.</li>
+ *  </ul>
+ *  With separate frequencies, every block stores all of its docId gaps before all of its frequencies(for PFOR this
+ *  is always the case), so that operations which only need docIds can skip over the frequencies without decoding
+ *  them. Requires skips, as frequencies are located via the block's skip header.
+ *  <p>
+ *  With block max frequencies, every skip header is followed by a third varint: the maximal frequency within the
+ *  block. This bounds the score contribution of a block, allowing top-k evaluation to skip blocks which can't
+ *  contain a top-k document (see {@link PostingsCursor#advanceShallow(int)}). Requires skips.
+ *
+ *  <h2>Positions</h2>
+ *  Optionally, the positions of every term occurrence are stored in a separate positions file (so that queries
+ *  which don't need them never read them). For every posting list entry, in the same order as the posting list,
+ *  it contains a varint with the number of bytes of the entry's positions, followed by 'frequency' varints:
+ *  the first position, and then the gaps between consecutive positions. The size prefix allows skipping the
+ *  positions of entries that weren't asked for (see {@link PositionalPostingsCursor}).
+ */
+public class PostingsFormat {
+
+    /** Format of indices created before the format was persisted */
+    public static final PostingsFormat LEGACY = new PostingsFormat(0);
+
+    public static final int DEFAULT_SKIP_INTERVAL = 128;
+
+    /** Format used for new indices */
+    public static final PostingsFormat DEFAULT = new PostingsFormat(DEFAULT_SKIP_INTERVAL, Codec.GROUP_VARINT,
+            false, true);
+
+    /** Format with bit packed blocks, smaller and faster to decode than the default one */
+    public static final PostingsFormat PFOR = new PostingsFormat(DEFAULT_SKIP_INTERVAL, Codec.PFOR, true, true);
+
+    // Incremented whenever the serialized representation changes
+    private static final int SERIALIZATION_VERSION = 5;
+
+    /** Encoding of posting list entries */
+    public enum Codec {
+        GROUP_VARINT,
+        PFOR
+    }
+
+    private final int skipInterval;
+    private final Codec codec;
+    private final boolean separateFrequencies;
+    private final boolean blockMaxFreqs;
+    private final boolean positions;
+
+    /**
+     * Creates a format using the group varint codec
+     * @param skipInterval Number of posting list entries between skip headers, or 0 for no skipping. Must be even,
+     *                     so that blocks are aligned to group varint groups.
+     */
+    public PostingsFormat(int skipInterval) {
+        this(skipInterval, Codec.GROUP_VARINT);
+    }
+
+    /**
+     * @param skipInterval Number of posting list entries between skip headers, or 0 for no skipping. Must be even,
+     *                     so that blocks are aligned to group varint groups.
+     * @param codec Encoding of entries, {@link Codec#PFOR} requires a positive skip interval of at most
+     *              {@link PForEncoder#MAX_BLOCK_LENGTH}
+     */
+    public PostingsFormat(int skipInterval, Codec codec) {
+        this(skipInterval, codec, codec == Codec.PFOR);
+    }
+
+    /**
+     * @param skipInterval Number of posting list entries between skip headers, or 0 for no skipping. Must be even,
+     *                     so that blocks are aligned to group varint groups.
+     * @param codec Encoding of entries, {@link Codec#PFOR} requires a positive skip interval of at most
+     *              {@link PForEncoder#MAX_BLOCK_LENGTH}
+     * @param separateFrequencies Whether each block stores its frequencies after all of its docId gaps, rather than
+     *                            interleaved with them. Requires a positive skip interval, and is implied by
+     *                            {@link Codec#PFOR}.
+     */
+    public PostingsFormat(int skipInterval, Codec codec, boolean separateFrequencies) {
+        this(skipInterval, codec, separateFrequencies, false);
+    }
+
+    /**
+     * @param skipInterval Number of posting list entries between skip headers, or 0 for no skipping. Must be even,
+     *                     so that blocks are aligned to group varint groups.
+     * @param codec Encoding of entries, {@link Codec#PFOR} requires a positive skip interval of at most
+     *              {@link PForEncoder#MAX_BLOCK_LENGTH}
+     * @param separateFrequencies Whether each block stores its frequencies after all of its docId gaps, rather than
+     *                            interleaved with them. Requires a positive skip interval, and is implied by
+     *                            {@link Codec#PFOR}.
+     * @param blockMaxFreqs Whether skip headers contain the maximal frequency of their block. Requires a positive
+     *                      skip interval.
+     */
+    public PostingsFormat(int skipInterval, Codec codec, boolean separateFrequencies, boolean blockMaxFreqs) {
+        this(skipInterval, codec, separateFrequencies, blockMaxFreqs, false);
+    }
+
+    /**
+     * @param skipInterval Number of posting list entries between skip headers, or 0 for no skipping. Must be even,
+     *                     so that blocks are aligned to group varint groups.
+     * @param codec Encoding of entries, {@link Codec#PFOR} requires a positive skip interval of at most
+     *              {@link PForEncoder#MAX_BLOCK_LENGTH}
+     * @param separateFrequencies Whether each block stores its frequencies after all of its docId gaps, rather than
+     *                            interleaved with them. Requires a positive skip interval, and is implied by
+     *                            {@link Codec#PFOR}.
+     * @param blockMaxFreqs Whether skip headers contain the maximal frequency of their block. Requires a positive
+     *                      skip interval.
+     * @param positions Whether positions of term occurrences are stored in a positions file
+     */
+    public PostingsFormat(int skipInterval, Codec codec, boolean separateFrequencies, boolean blockMaxFreqs,
+                          boolean positions) {
+        if (skipInterval < 0 || skipInterval % 2 != 0) {
+            throw new IllegalArgumentException("Skip interval must be a non-negative even number, got " + skipInterval);
+        }
+        if (codec == Codec.PFOR && (skipInterval == 0 || skipInterval > PForEncoder.MAX_BLOCK_LENGTH)) {
+            throw new IllegalArgumentException("PFOR codec requires a skip interval between 2 and " +
+                    PForEncoder.MAX_BLOCK_LENGTH + ", got " + skipInterval);
+        }
+        if (separateFrequencies && skipInterval == 0) {
+            throw new IllegalArgumentException("Separate frequencies require a positive skip interval");
+        }
+        if (blockMaxFreqs && skipInterval == 0) {
+            throw new IllegalArgumentException("Block max frequencies require a positive skip interval");
+        }
+        this.skipInterval = skipInterval;
+        this.codec = Objects.requireNonNull(codec);
+        this.separateFrequencies = separateFrequencies || codec == Codec.PFOR;
+        this.blockMaxFreqs = blockMaxFreqs;
+        this.positions = positions;
+    }
+
+    /** Returns a copy of this format which also stores positions */
+    public PostingsFormat withPositions() {
+        return new PostingsFormat(skipInterval, codec, separateFrequencies, blockMaxFreqs, true);
+    }
+
+    /** Returns the number of entries between skip headers, or 0 if the format has no skips. */
+    public int getSkipInterval() {
+        return skipInterval;
+    }
+
+    public Codec getCodec() {
+        return codec;
+    }
+
+    /** Returns whether frequencies of a block are stored after its docId gaps, rather than interleaved with them */
+    public boolean hasSeparateFrequencies() {
+        return separateFrequencies;
+    }
+
+    /** Returns whether skip headers contain the maximal frequency of their block */
+    public boolean hasBlockMaxFreqs() {
+        return blockMaxFreqs;
+    }
+
+    /** Returns whether positions of term occurrences are stored in a positions file */
+    public boolean hasPositions() {
+        return positions;
+    }
+
+    public boolean hasSkips() {
+        return skipInterval > 0;
+    }
+
+    /** Returns whether a posting list with given number of entries is split into blocks with skip headers */
+    boolean hasSkipHeaders(int documentFrequency) {
+        return hasSkips() && documentFrequency > skipInterval;
+    }
+
+    public void serialize(DataOutputStream out) throws IOException {
+        out.writeInt(SERIALIZATION_VERSION);
+        out.writeInt(skipInterval);
+        out.writeInt(codec.ordinal());
+        out.writeBoolean(separateFrequencies);
+        out.writeBoolean(blockMaxFreqs);
+        out.writeBoolean(positions);
+    }
+
+    public static PostingsFormat deserialize(DataInputStream in) throws IOException {
+        int version = in.readInt();
+        if (version < 1 || version > SERIALIZATION_VERSION) {
+            throw new IOException("Unsupported postings format version " + version);
+        }
+        int skipInterval = in.readInt();
+        if (version == 1) {
+            return new PostingsFormat(skipInterval);
+        }
+        int codecOrdinal = in.readInt();
+        if (codecOrdinal < 0 || codecOrdinal >= Codec.values().length) {
+            throw new IOException("Unsupported postings codec " + codecOrdinal);
+        }
+        var codec = Codec.values()[codecOrdinal];
+        if (version == 2) {
+            return new PostingsFormat(skipInterval, codec);
+        }
+        boolean separateFrequencies = in.readBoolean();
+        if (version == 3) {
+            return new PostingsFormat(skipInterval, codec, separateFrequencies);
+        }
+        boolean blockMaxFreqs = in.readBoolean();
+        if (version == 4) {
+            return new PostingsFormat(skipInterval, codec, separateFrequencies, blockMaxFreqs);
+        }
+        boolean positions = in.readBoolean();
+        return new PostingsFormat(skipInterval, codec, separateFrequencies, blockMaxFreqs, positions);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        PostingsFormat that = (PostingsFormat) o;
+        return skipInterval == that.skipInterval && codec == that.codec && separateFrequencies == that.separateFrequencies &&
+                blockMaxFreqs == that.blockMaxFreqs && positions == that.positions;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(skipInterval, codec, separateFrequencies, blockMaxFreqs, positions);
+    }
+
+    @Override
+    public String toString() {
+        return "PostingsFormat{" +
+                "skipInterval=" + skipInterval +
+                ", codec=" + codec +
+                ", separateFrequencies=" + separateFrequencies +
+                ", blockMaxFreqs=" + blockMaxFreqs +
+                ", positions=" + positions +
+                '}';
+    }
+}
@@ -0,0 +1,276 @@
+package webdata.parsing;
+
+import webdata.Utils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/** A review parser which memory maps the file, splits it into chunks that begin with a `product/productId:` line, and
+ *  parses(and tokenizes) the chunks on a pool of worker threads.
+ *
+ *  The reviews are still returned in their order within the file, so document IDs can be assigned as they're
+ *  consumed. At most 2 chunks per thread are parsed ahead of the consumer, which bounds the memory used by
+ *  reviews that weren't consumed yet.
+ *
+ *  Note: The charset must encode ASCII characters as single bytes(e.g, ISO-8859-1 or UTF-8), as chunk boundaries are
+ *  found by searching for the bytes of `product/productId:`
+ */
+public class ParallelReviewParser {
+
+    // Bigger chunks keep more parsed reviews alive at once, so they're promoted out of the young generation(with
+    // 1MB chunks parsing was ~50% slower)
+    public static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+
+    private static final byte[] RECORD_START = "\nproduct/productId:".getBytes(StandardCharsets.US_ASCII);
+    private static final int SEARCH_BUFFER_SIZE = 8 * 1024;
+
+    private static final String PRODUCT_ID_KEY = "product/productId";
+    private static final String HELPFULNESS_KEY = "review/helpfulness";
+    private static final String SCORE_KEY = "review/score";
+    private static final String TEXT_KEY = "review/text";
+
+    private final Charset charset;
+    private final int chunkSize;
+    private final int numThreads;
+    private final boolean withPositions;
+
+    public ParallelReviewParser(Charset charset) {
+        this(charset, false);
+    }
+
+    /** Same as {@link #ParallelReviewParser(Charset)}, collecting the positions of tokens if withPositions is set */
+    public ParallelReviewParser(Charset charset, boolean withPositions) {
+        this(charset, DEFAULT_CHUNK_SIZE, Runtime.getRuntime().availableProcessors(), withPositions);
+    }
+
+    public ParallelReviewParser(Charset charset, int chunkSize, int numThreads) {
+        this(charset, chunkSize, numThreads, false);
+    }
+
+    /**
+     * @param charset Charset of the reviews file
+     * @param chunkSize Approximate size of a chunk in bytes, a chunk extends until the next review
+     * @param numThreads Number of threads parsing chunks
+     * @param withPositions Whether to collect the positions of tokens within reviews(see
+     *                      {@link Review#uniqueTokensWithPositions()})
+     */
+    public ParallelReviewParser(Charset charset, int chunkSize, int numThreads, boolean withPositions) {
+        if (chunkSize < 1 || numThreads < 1) {
+            throw new IllegalArgumentException(String.format(
+                    "Chunk size and number of threads must be positive, got %d and %d", chunkSize, numThreads));
+        }
+        this.charset = charset;
+        this.chunkSize = chunkSize;
+        this.numThreads = numThreads;
+        this.withPositions = withPositions;
+    }
+
+    /** Returns the reviews of the file in their order. The stream should be closed in order to stop the worker
+     *  threads early(they're daemons, so they won't prevent the JVM from exiting either way) */
+    public Stream<Review> parse(Path file) throws IOException {
+        var channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            var chunkStarts = findChunkStarts(channel, chunkSize);
+            var pool = Executors.newFixedThreadPool(numThreads, runnable -> {
+                var thread = new Thread(runnable, "review-parser");
+                thread.setDaemon(true);
+                return thread;
+            });
+            return Utils.iteratorToStream(new ChunksIterator(channel, chunkStarts, pool))
+                    .onClose(() -> {
+                        pool.shutdownNow();
+                        try {
+                            channel.close();
+                        } catch (IOException ex) {
+                            throw new UncheckedIOException(ex);
+                        }
+                    });
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /** Returns the file positions at which chunks begin, the last one being the file size. Every chunk but the
+     *  first begins with a `product/productId:` line, at or after a multiple of chunkSize */
+    static long[] findChunkStarts(FileChannel channel, long chunkSize) throws IOException {
+        long fileSize = channel.size();
+        var starts = new ArrayList<Long>();
+        starts.add(0L);
+        long target = chunkSize;
+        while (target < fileSize) {
+            // the newline preceding a review beginning exactly at the target is at target - 1
+            long recordStart = findRecordStart(channel, target - 1);
+            if (recordStart < 0) {
+                break;
+            }
+            starts.add(recordStart);
+            target = Math.max(target + chunkSize, recordStart + 1);
+        }
+        starts.add(fileSize);
+
+        var chunkStarts = new long[starts.size()];
+        for (int i = 0; i < chunkStarts.length; ++i) {
+            chunkStarts[i] = starts.get(i);
+            if (i > 0 && chunkStarts[i] - chunkStarts[i - 1] > Integer.MAX_VALUE) {
+                throw new IOException("Cannot memory map a review chunk beginning at " + chunkStarts[i - 1] +
+                        ", it is too big");
+            }
+        }
+        return chunkStarts;
+    }
+
+    /** Returns the position of the first review beginning after a newline at or after the given position, or -1 if
+     *  there's none */
+    private static long findRecordStart(FileChannel channel, long from) throws IOException {
+        var buf = ByteBuffer.allocate(SEARCH_BUFFER_SIZE);
+        long bufStart = from;
+        while (true) {
+            buf.clear();
+            while (buf.hasRemaining() && channel.read(buf, bufStart + buf.position()) > 0) {
+            }
+            buf.flip();
+            int limit = buf.limit();
+            for (int i = 0; i + RECORD_START.length <= limit; ++i) {
+                if (matchesRecordStart(buf, i)) {
+                    return bufStart + i + 1;
+                }
+            }
+            if (limit < buf.capacity()) {
+                return -1;
+            }
+            // a match may cross the end of the buffer, so the next one overlaps it
+            bufStart += limit - RECORD_START.length + 1;
+        }
+    }
+
+    private static boolean matchesRecordStart(ByteBuffer buf, int pos) {
+        for (int j = 0; j < RECORD_START.length; ++j) {
+            if (buf.get(pos + j) != RECORD_START[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Parses the reviews of the given text, whose lines are fields of reviews(see {@link LinesMemoryParser}). A
+     *  review is complete once its text is found. */
+    static List<Review> parseChunk(String chunk, boolean withPositions) {
+        var reviews = new ArrayList<Review>();
+        String productId = "";
+        String helpfulness = "0/1";
+        String score = "1";
+        int lineStart = 0;
+        while (lineStart < chunk.length()) {
+            int newlinePos = chunk.indexOf('\n', lineStart);
+            int lineEnd = newlinePos == -1 ? chunk.length() : newlinePos;
+            if (lineEnd > lineStart && chunk.charAt(lineEnd - 1) == '\r') {
+                --lineEnd;
+            }
+
+            int colonPos = chunk.indexOf(':', lineStart);
+            if (colonPos != -1 && colonPos < lineEnd) {
+                var key = chunk.substring(lineStart, colonPos);
+                var value = chunk.substring(Math.min(colonPos + 2, lineEnd), lineEnd);
+                switch (key) {
+                    case PRODUCT_ID_KEY:
+                        productId = value;
+                        break;
+                    case HELPFULNESS_KEY:
+                        helpfulness = value;
+                        break;
+                    case SCORE_KEY:
+                        score = value;
+                        break;
+                    case TEXT_KEY:
+                        reviews.add(Review.fromFields(productId, helpfulness, score, value, withPositions));
+                        break;
+                    default:
+                        break;
+                }
+            }
+            lineStart = newlinePos == -1 ? chunk.length() : newlinePos + 1;
+        }
+        return reviews;
+    }
+
+    /** Submits chunks to the pool ahead of the consumer, and returns their reviews in order */
+    private class ChunksIterator implements Iterator<Review> {
+        private final FileChannel channel;
+        private final long[] chunkStarts;
+        private final ExecutorService pool;
+        private final ArrayDeque<Future<List<Review>>> pending = new ArrayDeque<>();
+        private int nextChunk = 0;
+        private Iterator<Review> current = Collections.emptyIterator();
+
+        ChunksIterator(FileChannel channel, long[] chunkStarts, ExecutorService pool) {
+            this.channel = channel;
+            this.chunkStarts = chunkStarts;
+            this.pool = pool;
+            while (pending.size() < 2 * numThreads && submitNextChunk()) {
+            }
+        }
+
+        private boolean submitNextChunk() {
+            if (nextChunk + 1 >= chunkStarts.length) {
+                return false;
+            }
+            long start = chunkStarts[nextChunk];
+            long end = chunkStarts[nextChunk + 1];
+            ++nextChunk;
+            pending.add(pool.submit(() -> {
+                var mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                return parseChunk(charset.decode(mapped).toString(), withPositions);
+            }));
+            return true;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext()) {
+                var chunk = pending.poll();
+                if (chunk == null) {
+                    return false;
+                }
+                submitNextChunk();
+                try {
+                    current = chunk.get().iterator();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while parsing reviews", ex);
+                } catch (ExecutionException ex) {
+                    if (ex.getCause() instanceof IOException) {
+                        throw new UncheckedIOException((IOException) ex.getCause());
+                    }
+                    throw new IllegalStateException("Failed to parse reviews", ex.getCause());
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Review next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+    }
+}
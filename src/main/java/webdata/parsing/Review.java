@@ -3,6 +3,8 @@ package webdata.parsing;
 import webdata.Token;
 
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.function.Function;
@@ -20,16 +22,24 @@ public class Review {
     private int helpfulnessDenominator;
     private int score;
     private int totalNumberOfTokens;
+    // exactly one of these is set, depending on whether positions were requested when parsing
     private Map<String, Long> tokenToFreq;
+    // positions of every token within the text, as indices in the token sequence
+    private Map<String, int[]> tokenToPositions;
 
     public static Review fromFields(Map<String, String> fields) {
+        return Review.fromFields(fields, false);
+    }
+
+    /** Same as {@link #fromFields(Map)}, also collecting the positions of tokens if withPositions is set */
+    public static Review fromFields(Map<String, String> fields, boolean withPositions) {
         String productId = fields.getOrDefault("productId", "").toLowerCase();
         String helpfulness = fields.getOrDefault("helpfulness", "0/1");
         String score = fields.getOrDefault("score", "1");
         String text = fields.getOrDefault("text", "");
 
         return Review.fromFields(
-                productId, helpfulness, score, text
+                productId, helpfulness, score, text, withPositions
         );
     }
 
@@ -38,6 +48,17 @@ public class Review {
             String helpfulness,
             String score,
             String text) {
+        return Review.fromFields(productId, helpfulness, score, text, false);
+    }
+
+    /** Same as {@link #fromFields(String, String, String, String)}, also collecting the positions of tokens(needed
+     *  by {@link #uniqueTokensWithPositions()}) if withPositions is set */
+    public static Review fromFields(
+            String productId,
+            String helpfulness,
+            String score,
+            String text,
+            boolean withPositions) {
         String[] helpfullnessParts = helpfulness.trim().split("/");
         int helpfulnessNumerator = 0;
         int helpfulnessDenominator = 1;
@@ -90,15 +111,36 @@ public class Review {
         review.helpfulnessDenominator = helpfulnessDenominator;
         review.score = scoreInt;
 
-        int[] totalNumberOfTokens = new int[]{0};
-        review.tokenToFreq = Tokenizer.tokensAsStream(text)
-                .peek(_term -> totalNumberOfTokens[0] += 1)
-                .collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
-
-        review.totalNumberOfTokens = totalNumberOfTokens[0];
+        if (withPositions) {
+            var tokens = Tokenizer.tokenize(text);
+            review.tokenToPositions = positionsOf(tokens);
+            review.totalNumberOfTokens = tokens.length;
+        } else {
+            final int[] totalNumberOfTokens = {0};
+            review.tokenToFreq = Tokenizer.tokensAsStream(text)
+                    .peek(_term -> totalNumberOfTokens[0] += 1)
+                    .collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
+            review.totalNumberOfTokens = totalNumberOfTokens[0];
+        }
         return review;
     }
 
+    /** Maps every token to its positions in increasing order. Tokens are counted first, so that every array is
+     *  allocated with its exact size */
+    private static Map<String, int[]> positionsOf(String[] tokens) {
+        var remaining = new HashMap<String, int[]>();
+        for (var token : tokens) {
+            remaining.computeIfAbsent(token, _term -> new int[1])[0] += 1;
+        }
+        var positions = new HashMap<String, int[]>(remaining.size() * 2);
+        for (int position = tokens.length - 1; position >= 0; --position) {
+            var termRemaining = remaining.get(tokens[position]);
+            var termPositions = positions.computeIfAbsent(tokens[position], _term -> new int[termRemaining[0]]);
+            termPositions[--termRemaining[0]] = position;
+        }
+        return positions;
+    }
+
     public int getDocId() {
         if (docId < 1) {
             throw new IllegalStateException("DocID hasn't been assigned yet");
@@ -133,21 +175,47 @@ public class Review {
 
     public Stream<Token> uniqueTokens() {
         assert docId >= 0 : "Must be called after docID was set";
+        if (tokenToPositions != null) {
+            return this.tokenToPositions.entrySet()
+                    .stream()
+                    .map(entry -> new Token(entry.getKey(), getDocId(), entry.getValue().length));
+        }
         return this.tokenToFreq.entrySet()
                 .stream()
                 .map(entry -> new Token(entry.getKey(), getDocId(), entry.getValue().intValue()));
     }
 
+    /** Same as {@link #uniqueTokens()}, but every token also contains the positions of its term within the review.
+     *  Requires the review to be parsed with positions */
+    public Stream<Token> uniqueTokensWithPositions() {
+        assert docId >= 0 : "Must be called after docID was set";
+        if (tokenToPositions == null) {
+            throw new IllegalStateException("The review was parsed without positions");
+        }
+        return this.tokenToPositions.entrySet()
+                .stream()
+                .map(entry -> new Token(entry.getKey(), getDocId(), entry.getValue().length, entry.getValue()));
+    }
+
+    private static boolean positionsEqual(Map<String, int[]> first, Map<String, int[]> second) {
+        if (first == null || second == null) {
+            return first == second;
+        }
+        return first.size() == second.size() && first.entrySet().stream()
+                .allMatch(entry -> Arrays.equals(entry.getValue(), second.get(entry.getKey())));
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Review review = (Review) o;
-        return docId == review.docId && helpfulnessNumerator == review.helpfulnessNumerator && helpfulnessDenominator == review.helpfulnessDenominator && score == review.score && totalNumberOfTokens == review.totalNumberOfTokens && productId.equals(review.productId) && tokenToFreq.equals(review.tokenToFreq);
+        return docId == review.docId && helpfulnessNumerator == review.helpfulnessNumerator && helpfulnessDenominator == review.helpfulnessDenominator && score == review.score && totalNumberOfTokens == review.totalNumberOfTokens && productId.equals(review.productId) && Objects.equals(tokenToFreq, review.tokenToFreq) && positionsEqual(tokenToPositions, review.tokenToPositions);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(docId, productId, helpfulnessNumerator, helpfulnessDenominator, score, totalNumberOfTokens, tokenToFreq);
+        return Objects.hash(docId, productId, helpfulnessNumerator, helpfulnessDenominator, score, totalNumberOfTokens, tokenToFreq,
+                tokenToPositions == null ? null : tokenToPositions.keySet());
     }
 }
@@ -0,0 +1,198 @@
+package webdata.search;
+
+import webdata.inverted_index.PostingsCursor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/** Finds the k documents with the highest lnn.ltc score, using the Block-Max WAND algorithm.
+ *
+ *  The score of a document is the sum of {@code weight * (1 + log10(tf))} over the query terms it contains, where
+ *  the weight is the term's entry in the query's LTC vector. Rather than scoring every document which contains a
+ *  query term, the posting lists are kept sorted by their current docIds, and a document is only scored if the sum of
+ *  the maximal contributions of the terms which may contain it can exceed the k-th best score seen so far.
+ *  Said maximal contributions are refined using the maximal frequencies of the blocks containing the document
+ *  (see {@link PostingsCursor#advanceShallow(int)}), allowing to skip whole blocks which can't enter the top k.
+ *
+ *  Documents are scored in increasing docId order and ties are broken in favor of smaller docIds, so the result is
+ *  identical to scoring all documents and sorting them.
+ */
+public class BlockMaxWand {
+
+    // Upper bounds are summed in a different order than scores, so they're only trusted up to rounding errors
+    private static final double EPSILON = 1e-9;
+
+    private static final Comparator<Term> BY_DOC_ID = Comparator.comparingLong(Term::position);
+
+    private final int k;
+
+    // in the order they were added, which is also the order in which their contributions are summed
+    private final List<Term> terms;
+
+    /** A query term and its posting list */
+    private static class Term {
+        final PostingsCursor postings;
+        final double weight;
+        final int maxFreq;
+        final double maxScore;
+
+        Term(PostingsCursor postings, double weight, int maxFreq) {
+            this.postings = postings;
+            this.weight = weight;
+            this.maxFreq = maxFreq;
+            this.maxScore = score(maxFreq);
+        }
+
+        double score(int freq) {
+            return weight * (1.0 + Math.log10(freq));
+        }
+
+        /** Bound on the contribution of this term to documents within the block found by the last shallow advance */
+        double blockMaxScore() {
+            int freq = Math.min(maxFreq, postings.blockMaxFreq());
+            return freq == 0 ? 0 : score(freq);
+        }
+
+        /** The current docId, exhausted lists are positioned after all docIds */
+        long position() {
+            int docId = postings.docId();
+            return docId == PostingsCursor.NO_MORE_DOCS ? Long.MAX_VALUE : docId;
+        }
+    }
+
+    /** A scored document, ordered such that the worst document in the top-k is the minimum */
+    private static class ScoredDoc implements Comparable<ScoredDoc> {
+        final int docId;
+        final double score;
+
+        ScoredDoc(int docId, double score) {
+            this.docId = docId;
+            this.score = score;
+        }
+
+        @Override
+        public int compareTo(ScoredDoc other) {
+            int res = Double.compare(score, other.score);
+            return res != 0 ? res : Integer.compare(other.docId, docId);
+        }
+    }
+
+    /**
+     * @param k Number of documents to find
+     */
+    public BlockMaxWand(int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k must be non-negative, got " + k);
+        }
+        this.k = k;
+        this.terms = new ArrayList<>();
+    }
+
+    /**
+     * Adds a query term
+     * @param postings Cursor over the term's posting list, which wasn't advanced yet
+     * @param weight Weight of the term within the query vector, must be non-negative
+     * @param maxFreq Upper bound on the frequency of the term within any document
+     */
+    public void addTerm(PostingsCursor postings, double weight, int maxFreq) {
+        assert weight >= 0 && maxFreq > 0;
+        terms.add(new Term(postings, weight, maxFreq));
+    }
+
+    /** Returns the docIds of the (at most) k highest scoring documents, sorted by their scores in descending order,
+     *  breaking ties by docIds in ascending order. */
+    public int[] search() {
+        if (k == 0) {
+            return new int[0];
+        }
+        var topK = new PriorityQueue<ScoredDoc>(k);
+        var sorted = new Term[terms.size()];
+        int numSorted = 0;
+        for (var term : terms) {
+            if (term.postings.nextDoc() != PostingsCursor.NO_MORE_DOCS) {
+                sorted[numSorted++] = term;
+            }
+        }
+
+        while (numSorted > 0) {
+            Arrays.sort(sorted, 0, numSorted, BY_DOC_ID);
+            while (numSorted > 0 && sorted[numSorted - 1].position() == Long.MAX_VALUE) {
+                --numSorted;
+            }
+            double threshold = topK.size() < k ? Double.NEGATIVE_INFINITY : topK.peek().score;
+
+            // the pivot is the first docId whose preceding lists' bounds may exceed the threshold
+            int pivot = -1;
+            double bound = 0;
+            for (int i = 0; i < numSorted; ++i) {
+                bound += sorted[i].maxScore;
+                if (bound + EPSILON > threshold) {
+                    pivot = i;
+                    break;
+                }
+            }
+            if (pivot == -1) {
+                break;
+            }
+            int pivotDoc = sorted[pivot].postings.docId();
+            while (pivot + 1 < numSorted && sorted[pivot + 1].postings.docId() == pivotDoc) {
+                ++pivot;
+            }
+
+            // refine the bound using the blocks containing the pivot, these also bound all docIds up to nextTarget
+            double blockBound = 0;
+            long nextTarget = pivot + 1 < numSorted ? sorted[pivot + 1].position() : Long.MAX_VALUE;
+            for (int i = 0; i <= pivot; ++i) {
+                long blockLastDocId = sorted[i].postings.advanceShallow(pivotDoc);
+                blockBound += sorted[i].blockMaxScore();
+                nextTarget = Math.min(nextTarget, blockLastDocId + 1);
+            }
+
+            if (blockBound + EPSILON > threshold) {
+                if (sorted[0].postings.docId() == pivotDoc) {
+                    double score = score(pivotDoc);
+                    if (topK.size() < k) {
+                        topK.add(new ScoredDoc(pivotDoc, score));
+                    } else if (score > threshold) {
+                        topK.poll();
+                        topK.add(new ScoredDoc(pivotDoc, score));
+                    }
+                    for (int i = 0; i <= pivot; ++i) {
+                        sorted[i].postings.nextDoc();
+                    }
+                } else {
+                    for (int i = 0; i < pivot && sorted[i].postings.docId() < pivotDoc; ++i) {
+                        sorted[i].postings.advance(pivotDoc);
+                    }
+                }
+            } else {
+                // no docId before nextTarget can exceed the threshold
+                if (nextTarget > Integer.MAX_VALUE) {
+                    break;
+                }
+                for (int i = 0; i <= pivot; ++i) {
+                    sorted[i].postings.advance((int) nextTarget);
+                }
+            }
+        }
+
+        var results = new ScoredDoc[topK.size()];
+        topK.toArray(results);
+        Arrays.sort(results, Comparator.reverseOrder());
+        return Arrays.stream(results).mapToInt(doc -> doc.docId).toArray();
+    }
+
+    /** Scores a document, summing contributions in the order the terms were added */
+    private double score(int docId) {
+        double score = 0.0;
+        for (var term : terms) {
+            if (term.postings.docId() == docId) {
+                score += term.score(term.postings.freq());
+            }
+        }
+        return score;
+    }
+}
@@ -0,0 +1,151 @@
+package webdata.search;
+
+import webdata.inverted_index.PositionalPostingsCursor;
+import webdata.inverted_index.PostingsCursor;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/** Finds documents which contain all of the given terms, such that their positions satisfy some constraint: either
+ *  appearing in order at consecutive positions(an exact phrase), or within a window of positions(a proximity query).
+ *
+ *  The posting lists are first intersected by docIds, using the shortest list to lead, and positions are only read
+ *  for documents that contain all of the terms.
+ *
+ *  A query consumes its cursors, so it can only be evaluated once.
+ */
+public class PhraseQuery {
+
+    // one cursor per term, in the order of the terms within the query
+    private final PositionalPostingsCursor[] cursors;
+
+    // positions of each term within the current document, only the first numPositions[i] are valid
+    private final int[][] positions;
+    private final int[] numPositions;
+
+    /**
+     * @param cursors Cursors over the posting lists of the query terms, which weren't advanced yet, in the order of
+     *                the terms within the query. A term which appears several times in the query must be given a
+     *                cursor for each appearance.
+     */
+    public PhraseQuery(List<PositionalPostingsCursor> cursors) {
+        this.cursors = cursors.toArray(new PositionalPostingsCursor[0]);
+        this.positions = new int[this.cursors.length][8];
+        this.numPositions = new int[this.cursors.length];
+    }
+
+    /** Returns the docIds(in increasing order) of documents which contain the terms in order, at consecutive
+     *  positions. */
+    public int[] exactMatches() {
+        return matches(this::containsPhrase);
+    }
+
+    /**
+     * Returns the docIds(in increasing order) of documents which contain all the terms, in any order, such that
+     * the distance between the first and last of them is at most the given distance.
+     * @param distance Maximal distance between positions, for example 1 means the terms must be adjacent
+     */
+    public int[] proximityMatches(int distance) {
+        if (distance < 0) {
+            throw new IllegalArgumentException("Distance must be non-negative, got " + distance);
+        }
+        return matches(() -> containsWithinDistance(distance));
+    }
+
+    private interface PositionsPredicate {
+        boolean test();
+    }
+
+    private int[] matches(PositionsPredicate predicate) {
+        if (cursors.length == 0) {
+            return new int[0];
+        }
+        var lead = cursors[0];
+        for (var cursor : cursors) {
+            if (cursor.size() < lead.size()) {
+                lead = cursor;
+            }
+        }
+
+        var results = IntStream.builder();
+        int doc = lead.nextDoc();
+        while (doc != PostingsCursor.NO_MORE_DOCS) {
+            boolean allMatch = true;
+            for (var cursor : cursors) {
+                if (cursor == lead) {
+                    continue;
+                }
+                int other = cursor.advance(doc);
+                if (other == PostingsCursor.NO_MORE_DOCS) {
+                    return results.build().toArray();
+                }
+                if (other > doc) {
+                    // no document before 'other' contains all terms
+                    doc = lead.advance(other);
+                    allMatch = false;
+                    break;
+                }
+            }
+            if (allMatch) {
+                readPositions();
+                if (predicate.test()) {
+                    results.add(doc);
+                }
+                doc = lead.nextDoc();
+            }
+        }
+        return results.build().toArray();
+    }
+
+    /** Reads the positions of all terms within the current document */
+    private void readPositions() {
+        for (int i = 0; i < cursors.length; ++i) {
+            int freq = cursors[i].freq();
+            if (positions[i].length < freq) {
+                positions[i] = new int[Math.max(freq, 2 * positions[i].length)];
+            }
+            for (int j = 0; j < freq; ++j) {
+                positions[i][j] = cursors[i].nextPosition();
+            }
+            numPositions[i] = freq;
+        }
+    }
+
+    private boolean containsPhrase() {
+        for (int j = 0; j < numPositions[0]; ++j) {
+            int start = positions[0][j];
+            boolean found = true;
+            for (int i = 1; i < cursors.length && found; ++i) {
+                found = Arrays.binarySearch(positions[i], 0, numPositions[i], start + i) >= 0;
+            }
+            if (found) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Checks whether some window of positions, containing an occurrence of every term, is small enough. Windows
+     *  are scanned by repeatedly moving past the smallest position among the terms' current occurrences. */
+    private boolean containsWithinDistance(int distance) {
+        int[] ixs = new int[cursors.length];
+        while (true) {
+            int minTerm = 0;
+            int max = Integer.MIN_VALUE;
+            for (int i = 0; i < cursors.length; ++i) {
+                int position = positions[i][ixs[i]];
+                if (position < positions[minTerm][ixs[minTerm]]) {
+                    minTerm = i;
+                }
+                max = Math.max(max, position);
+            }
+            if ((long) max - positions[minTerm][ixs[minTerm]] <= distance) {
+                return true;
+            }
+            if (++ixs[minTerm] == numPositions[minTerm]) {
+                return false;
+            }
+        }
+    }
+}
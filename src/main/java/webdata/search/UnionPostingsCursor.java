@@ -0,0 +1,143 @@
+package webdata.search;
+
+import webdata.inverted_index.PostingsCursor;
+
+import java.util.List;
+
+/** A cursor over the union of several posting lists(e.g, of the terms a wildcard expands to), yielding every docId
+ *  contained in any of them once, with the sum of its frequencies in all of them.
+ *
+ *  The lists are merged lazily via a k-way merge: their cursors are kept in a binary min-heap ordered by their current
+ *  docIds, so advancing costs O(log k) per merged entry, and nothing is materialized.
+ */
+public class UnionPostingsCursor implements PostingsCursor {
+
+    // cursors which aren't exhausted, heap[0..heapSize) is a min-heap by docId. Only valid once started.
+    private final PostingsCursor[] heap;
+    private int heapSize;
+    private final int sizeBound;
+
+    private boolean started = false;
+    private int docId = 0;
+
+    /**
+     * @param cursors Cursors over the posting lists, which weren't advanced yet
+     */
+    public UnionPostingsCursor(List<? extends PostingsCursor> cursors) {
+        this.heap = cursors.toArray(new PostingsCursor[0]);
+        this.heapSize = 0;
+        long size = 0;
+        for (var cursor : heap) {
+            size += cursor.size();
+        }
+        this.sizeBound = (int) Math.min(Integer.MAX_VALUE, size);
+    }
+
+    /** Positions every cursor at its first entry which is at least the target, and builds the heap */
+    private void start(int target) {
+        started = true;
+        var cursors = heap.clone();
+        for (var cursor : cursors) {
+            int doc = target <= 0 ? cursor.nextDoc() : cursor.advance(target);
+            if (doc != NO_MORE_DOCS) {
+                heap[heapSize++] = cursor;
+            }
+        }
+        for (int i = heapSize / 2 - 1; i >= 0; --i) {
+            siftDown(i);
+        }
+    }
+
+    private void siftDown(int i) {
+        var cursor = heap[i];
+        int doc = cursor.docId();
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && heap[child + 1].docId() < heap[child].docId()) {
+                ++child;
+            }
+            if (heap[child].docId() >= doc) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = cursor;
+    }
+
+    /** Re-positions the top of the heap after its cursor was moved to the given docId */
+    private void updateTop(int doc) {
+        if (doc == NO_MORE_DOCS) {
+            heap[0] = heap[--heapSize];
+        }
+        if (heapSize > 0) {
+            siftDown(0);
+        }
+    }
+
+    private int currentDoc() {
+        docId = heapSize == 0 ? NO_MORE_DOCS : heap[0].docId();
+        return docId;
+    }
+
+    @Override
+    public int nextDoc() {
+        if (docId == NO_MORE_DOCS) {
+            return docId;
+        }
+        if (!started) {
+            start(0);
+        } else {
+            while (heapSize > 0 && heap[0].docId() == docId) {
+                updateTop(heap[0].nextDoc());
+            }
+        }
+        return currentDoc();
+    }
+
+    @Override
+    public int advance(int target) {
+        if (docId == NO_MORE_DOCS || (started && docId >= target)) {
+            return docId;
+        }
+        if (!started) {
+            start(target);
+        } else {
+            while (heapSize > 0 && heap[0].docId() < target) {
+                updateTop(heap[0].advance(target));
+            }
+        }
+        return currentDoc();
+    }
+
+    @Override
+    public int docId() {
+        return docId;
+    }
+
+    /** Returns the sum of the frequencies in all lists containing the current document */
+    @Override
+    public int freq() {
+        assert started && docId != NO_MORE_DOCS;
+        return sumFreqs(0);
+    }
+
+    /** Sums the frequencies of the cursors in the subtree at given heap index which are at the current document,
+     *  by the heap property, all of these are reachable from the root via such cursors */
+    private int sumFreqs(int i) {
+        if (i >= heapSize || heap[i].docId() != docId) {
+            return 0;
+        }
+        return heap[i].freq() + sumFreqs(2 * i + 1) + sumFreqs(2 * i + 2);
+    }
+
+    /** Returns the sum of the sizes of the lists, which bounds the number of entries(documents contained in several
+     *  lists are only yielded once, but counting those would require merging the lists) */
+    @Override
+    public int size() {
+        return sizeBound;
+    }
+}
@@ -0,0 +1,104 @@
+package webdata.search;
+
+/** A term pattern where '*' matches any sequence of characters(including an empty one) and '?' matches a single
+ *  character, for example "choco*" or "c?t".
+ *
+ *  Terms matching a pattern all begin with its literal prefix(the characters before the first wildcard), so they can
+ *  be found by enumerating the dictionary's terms with said prefix, and only matching those against the pattern.
+ */
+public class WildcardPattern {
+    public static final char ANY_SEQUENCE = '*';
+    public static final char ANY_CHAR = '?';
+
+    private final String pattern;
+    private final String literalPrefix;
+
+    public WildcardPattern(String pattern) {
+        this.pattern = pattern;
+        int firstWildcard = 0;
+        while (firstWildcard < pattern.length() && !isWildcardChar(pattern.charAt(firstWildcard))) {
+            ++firstWildcard;
+        }
+        this.literalPrefix = pattern.substring(0, firstWildcard);
+    }
+
+    private static boolean isWildcardChar(char c) {
+        return c == ANY_SEQUENCE || c == ANY_CHAR;
+    }
+
+    /** Checks whether a query term contains any wildcards, otherwise it only matches itself */
+    public static boolean isWildcard(String term) {
+        for (int i = 0; i < term.length(); ++i) {
+            if (isWildcardChar(term.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    /** Returns the characters before the first wildcard, which every matching term begins with */
+    public String getLiteralPrefix() {
+        return literalPrefix;
+    }
+
+    /** Checks whether this is a prefix pattern(e.g, "choco*"), matched by exactly the terms beginning with its
+     *  literal prefix, such that they needn't be matched one by one */
+    public boolean isPrefixPattern() {
+        return pattern.length() == literalPrefix.length() + 1 && pattern.charAt(literalPrefix.length()) == ANY_SEQUENCE;
+    }
+
+    /** Checks whether a term matches the pattern. A '?' matches a whole surrogate pair. */
+    public boolean matches(CharSequence term) {
+        int p = literalPrefix.length();
+        int t = p;
+        if (term.length() < p) {
+            return false;
+        }
+        for (int i = 0; i < p; ++i) {
+            if (term.charAt(i) != literalPrefix.charAt(i)) {
+                return false;
+            }
+        }
+        // position of the last '*' seen, and of the term when it was seen, for backtracking
+        int starP = -1;
+        int starT = -1;
+        while (t < term.length()) {
+            if (p < pattern.length() && pattern.charAt(p) == ANY_SEQUENCE) {
+                starP = p++;
+                starT = t;
+            } else if (p < pattern.length() && (pattern.charAt(p) == ANY_CHAR || pattern.charAt(p) == term.charAt(t))) {
+                t += charCount(term, t, pattern.charAt(p));
+                ++p;
+            } else if (starP >= 0) {
+                // let the last '*' match one more character
+                p = starP + 1;
+                starT += charCount(term, starT, ANY_CHAR);
+                t = starT;
+            } else {
+                return false;
+            }
+        }
+        while (p < pattern.length() && pattern.charAt(p) == ANY_SEQUENCE) {
+            ++p;
+        }
+        return p == pattern.length();
+    }
+
+    /** Number of chars of the term matched by a pattern char at given position of the term */
+    private static int charCount(CharSequence term, int index, char patternChar) {
+        if (patternChar == ANY_CHAR && Character.isHighSurrogate(term.charAt(index)) && index + 1 < term.length()
+                && Character.isLowSurrogate(term.charAt(index + 1))) {
+            return 2;
+        }
+        return 1;
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+}
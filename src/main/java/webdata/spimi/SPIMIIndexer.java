@@ -4,84 +4,571 @@ import webdata.Token;
 import webdata.Utils;
 import webdata.dictionary.Dictionary;
 import webdata.dictionary.SequentialDictionaryBuilder;
-import webdata.sorting.ExternalSorter;
+import webdata.inverted_index.EncodedPostingList;
+import webdata.inverted_index.PositionalPostingsCursor;
+import webdata.inverted_index.PostingsCursor;
+import webdata.inverted_index.PostingsFormat;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
 import java.util.Spliterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
 import java.util.stream.Stream;
 
 /** Builds a dictionary via SPIMI algorithm, allowing
  *  processing token streams that are arbitrarily large.
+ *
+ *  With several threads, workers take batches of whole documents, and tokenize and invert them concurrently. The
+ *  inverted batches are appended to the current run in the order of the documents(only this and the taking of a
+ *  batch are done one worker at a time), so every temporary index covers a range of docIDs following that of the
+ *  previous one, as with a single thread.
  */
 public class SPIMIIndexer {
-    private final TemporaryIndexBuilder temporaryIndexBuilder;
     private final Path dir;
+    private final PostingsFormat postingsFormat;
+    private final int dictionaryBlockSize;
+    private final int numThreads;
+    private final long memoryBudgetBytes;
+    // number of tokens inverted, each of which is a posting(the occurrences of a term within a document)
+    private long totalNumberOfPostings;
+    // number of temporary indices written
+    private int numIndices;
     private static final String TEMP_INDEX_DIR = "temp_indices";
 
+    public static final int DEFAULT_NUM_THREADS = 1;
+    // number of documents inverted at once by a worker, see invertInParallel. Appending a batch to the run(which is
+    // done by one worker at a time) took ~20% as long as inverting it with 1024 reviews per batch, ~30% with 256
+    private static final int DOCS_PER_BATCH = 1024;
+    // the final merge splits the terms into several ranges per thread, so that threads which are done with their
+    // ranges early can take others
+    private static final int RANGES_PER_THREAD = 4;
+    private static final int SAMPLES_PER_RANGE = 16;
+
     private static final long LOG_EVERY = 10000000L;
 
     public SPIMIIndexer(Path dir) throws IOException {
+        this(dir, PostingsFormat.DEFAULT);
+    }
+
+    public SPIMIIndexer(Path dir, PostingsFormat postingsFormat) throws IOException {
+        this(dir, postingsFormat, Dictionary.DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param dir Directory of the final index
+     * @param postingsFormat Format of the final index's posting lists
+     * @param dictionaryBlockSize Number of terms in every front coding block of the final dictionary
+     */
+    public SPIMIIndexer(Path dir, PostingsFormat postingsFormat, int dictionaryBlockSize) throws IOException {
+        this(dir, postingsFormat, dictionaryBlockSize, DEFAULT_NUM_THREADS);
+    }
+
+    /**
+     * @param dir Directory of the final index
+     * @param postingsFormat Format of the final index's posting lists
+     * @param dictionaryBlockSize Number of terms in every front coding block of the final dictionary
+     * @param numThreads Number of threads inverting tokens into temporary indices, and merging them
+     */
+    public SPIMIIndexer(Path dir, PostingsFormat postingsFormat, int dictionaryBlockSize, int numThreads)
+            throws IOException {
+        this(dir, postingsFormat, dictionaryBlockSize, numThreads, TemporaryIndexBuilder.defaultMemoryBudget());
+    }
+
+    /**
+     * @param dir Directory of the final index
+     * @param postingsFormat Format of the final index's posting lists
+     * @param dictionaryBlockSize Number of terms in every front coding block of the final dictionary
+     * @param numThreads Number of threads inverting tokens into temporary indices, and merging them
+     * @param memoryBudgetBytes Number of bytes that in-memory indices may take before being written as temporary
+     *                          indices, shared by all threads(see {@link TemporaryIndexBuilder})
+     */
+    public SPIMIIndexer(Path dir, PostingsFormat postingsFormat, int dictionaryBlockSize, int numThreads,
+                        long memoryBudgetBytes) throws IOException {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("Number of indexing threads must be positive, got " + numThreads);
+        }
+        if (memoryBudgetBytes < numThreads) {
+            throw new IllegalArgumentException("Memory budget must be positive for every thread, got " +
+                    memoryBudgetBytes + " bytes for " + numThreads + " threads");
+        }
         this.dir = dir;
-        this.temporaryIndexBuilder = new TemporaryIndexBuilder();
+        this.postingsFormat = postingsFormat;
+        this.dictionaryBlockSize = dictionaryBlockSize;
+        this.numThreads = numThreads;
+        this.memoryBudgetBytes = memoryBudgetBytes;
 
         Files.createDirectories(dir.resolve(TEMP_INDEX_DIR));
 
     }
 
-    private Path pathForBlock(int blockNum) {
+    Path pathForBlock(int blockNum) {
         return dir.resolve(TEMP_INDEX_DIR).resolve("tempIndex" + blockNum);
     }
 
+    private Path pathForSegment(int segmentNum) {
+        return dir.resolve(TEMP_INDEX_DIR).resolve("segment" + segmentNum);
+    }
+
+    /** Inverts the given tokens(ordered by docIDs) into temporary indices, and merges them into the final index */
     public void processTokens(Stream<Token> tokens) throws IOException {
-        var it = tokens.iterator();
+        if (numThreads == 1) {
+            invertRuns(tokens.iterator());
+        } else {
+            invertInParallel(new TokensByDocument(tokens.iterator()), List::stream);
+        }
+        mergeTemporaryIndices();
+    }
 
-        int numIndices = 0;
-        while (it.hasNext()) {
-            ++numIndices;
-            Utils.log("Creating temporary index number %d", numIndices);
-            Utils.logMemory(Runtime.getRuntime());
-            Path indexPath = pathForBlock(numIndices);
-            Files.createDirectories(indexPath);
-            temporaryIndexBuilder.invert(it, indexPath);
+    /**
+     * Same as {@link #processTokens(Stream)}, where the tokens are those of the given documents. With several threads,
+     * the documents are tokenized by the inverting threads rather than by the one reading them
+     * @param documents Documents, ordered by docIDs
+     * @param tokenizer Returns the tokens of a document
+     */
+    public <D> void processDocuments(Stream<D> documents, Function<? super D, Stream<Token>> tokenizer)
+            throws IOException {
+        if (numThreads == 1) {
+            invertRuns(documents.flatMap(tokenizer).iterator());
+        } else {
+            invertInParallel(documents.iterator(), tokenizer);
         }
+        mergeTemporaryIndices();
+    }
+
+    private void mergeTemporaryIndices() throws IOException {
         Utils.log("Merging final index from %d temporary indices", numIndices);
-        Utils.log("Processed a total of %,d tokens", temporaryIndexBuilder.totalNumberOfTokens);
+        Utils.log("Processed a total of %,d tokens(postings)", totalNumberOfPostings);
 
         merge(numIndices);
         Utils.log("Finished creating final index\n\n");
     }
 
+    /** Inverts the tokens into temporary indices, each covering a run of whole documents that fits in the budget */
+    private void invertRuns(Iterator<Token> tokens) throws IOException {
+        var builder = new TemporaryIndexBuilder(postingsFormat, memoryBudgetBytes);
+        numIndices = 0;
+        Token next = null;
+        while (next != null || tokens.hasNext()) {
+            var indexPath = pathForBlock(++numIndices);
+            Utils.log("Creating temporary index number %d", numIndices);
+            Utils.logMemory(Runtime.getRuntime());
+            next = builder.readRun(next, tokens);
+            Files.createDirectories(indexPath);
+            builder.writeRun(indexPath);
+        }
+        totalNumberOfPostings = builder.totalNumberOfTokens;
+    }
+
+    /**
+     * Inverts the documents on {@link #numThreads} workers: every worker takes the next batch of documents, inverts
+     * it on its own, and appends it to the current run once the previous batches were appended. A worker whose batch
+     * used the run's budget writes the run as the next temporary index, while the others go on with the next run.
+     * The run being filled and those being written(at most one per worker) take at most the budget.
+     */
+    private <D> void invertInParallel(Iterator<D> documents, Function<? super D, Stream<Token>> tokenizer)
+            throws IOException {
+        long runBudgetBytes = memoryBudgetBytes / (numThreads + 1);
+        var batches = new Batches<>(documents, new TemporaryIndexBuilder(postingsFormat, runBudgetBytes));
+        var pool = Executors.newFixedThreadPool(numThreads);
+        try {
+            // workers are waited for in order of completion, so that a failure is noticed(and the other workers
+            // interrupted) even if they wait for the failed worker's batch
+            var workers = new ExecutorCompletionService<Long>(pool);
+            for (int i = 0; i < numThreads; ++i) {
+                workers.submit(() -> invertBatches(batches, tokenizer, runBudgetBytes));
+            }
+            totalNumberOfPostings = 0;
+            for (int i = 0; i < numThreads; ++i) {
+                try {
+                    totalNumberOfPostings += getWorkerResult(workers.take());
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for indexing threads");
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        numIndices = batches.numRuns;
+        if (!batches.run.isEmpty()) {
+            var indexPath = pathForBlock(++numIndices);
+            Files.createDirectories(indexPath);
+            batches.run.writeRun(indexPath);
+        }
+    }
+
+    private static <T> T getWorkerResult(Future<T> worker) throws IOException {
+        try {
+            return worker.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for indexing threads");
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new RuntimeException("Indexing thread failed", ex.getCause());
+        }
+    }
+
+    /** Inverts batches taken from the given ones until there are no more documents, see
+     *  {@link #invertInParallel}. Returns the number of tokens inverted */
+    private <D> long invertBatches(Batches<D> batches, Function<? super D, Stream<Token>> tokenizer,
+                                   long runBudgetBytes) throws IOException {
+        // a batch is small, so its own budget is irrelevant
+        var batchBuilder = new TemporaryIndexBuilder(postingsFormat, Long.MAX_VALUE);
+        var documents = new ArrayList<D>(DOCS_PER_BATCH);
+        while (true) {
+            int batchNum;
+            // only the documents are taken while holding the batches, they're tokenized and inverted concurrently
+            synchronized (batches) {
+                while (documents.size() < DOCS_PER_BATCH && batches.documents.hasNext()) {
+                    documents.add(batches.documents.next());
+                }
+                if (documents.isEmpty()) {
+                    break;
+                }
+                batchNum = batches.numBatches++;
+            }
+            for (var document : documents) {
+                batchBuilder.addTokens(tokenizer.apply(document));
+            }
+            documents.clear();
+
+            TemporaryIndexBuilder fullRun = null;
+            Path indexPath = null;
+            synchronized (batches) {
+                // batches are appended in order, so that every run covers the documents following those of the
+                // previous run(which is numbered before it)
+                while (batches.numAppended != batchNum) {
+                    try {
+                        batches.wait();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while waiting for the previous batches");
+                    }
+                }
+                batches.run.append(batchBuilder);
+                ++batches.numAppended;
+                if (batches.run.isBudgetUsed()) {
+                    fullRun = batches.run;
+                    batches.run = new TemporaryIndexBuilder(postingsFormat, runBudgetBytes);
+                    indexPath = pathForBlock(++batches.numRuns);
+                    Utils.log("Creating temporary index number %d", batches.numRuns);
+                    Utils.logMemory(Runtime.getRuntime());
+                }
+                batches.notifyAll();
+            }
+            if (fullRun != null) {
+                Files.createDirectories(indexPath);
+                fullRun.writeRun(indexPath);
+            }
+        }
+        return batchBuilder.totalNumberOfTokens;
+    }
+
+    /** The documents that are yet to be inverted(taken in batches by the workers), and the run that the inverted
+     *  batches are appended to in order */
+    private static class Batches<D> {
+        final Iterator<D> documents;
+        // number of batches taken, and of those appended to runs
+        int numBatches;
+        int numAppended;
+        TemporaryIndexBuilder run;
+        // number of runs written
+        int numRuns;
+
+        Batches(Iterator<D> documents, TemporaryIndexBuilder run) {
+            this.documents = documents;
+            this.run = run;
+        }
+    }
+
+    /** Groups tokens(ordered by docIDs) into the tokens of every document */
+    private static class TokensByDocument implements Iterator<List<Token>> {
+        private final Iterator<Token> tokens;
+        private Token next;
+
+        TokensByDocument(Iterator<Token> tokens) {
+            this.tokens = tokens;
+            this.next = tokens.hasNext() ? tokens.next() : null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public List<Token> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            var document = new ArrayList<Token>();
+            int docId = next.getDocID();
+            do {
+                document.add(next);
+                next = tokens.hasNext() ? tokens.next() : null;
+            } while (next != null && next.getDocID() == docId);
+            return document;
+        }
+    }
+
+    /** Merges the temporary indices into the final one, term by term: the term dictionaries are merged, and the
+     *  posting lists of every term are copied in runs of increasing docIDs. When the temporary indices cover disjoint
+     *  ranges of docIDs(as when inverted by {@link #processTokens}), every run is a whole posting list, so merging
+     *  costs a single comparison per posting, and doesn't allocate per posting(except for positions).
+     *
+     *  With several threads, the terms are split into ranges whose posting lists are of similar sizes, each merged
+     *  by its own thread into a segment, and the segments are appended to the final index in order, see
+     *  {@link SequentialDictionaryBuilder#appendSegment(Dictionary)}.
+     */
     public void merge(int numIndices) throws IOException {
         var dicts = new ArrayList<Dictionary>();
-        var tokenSplits = new ArrayList<Spliterator<Token>>();
-        for (int i=1; i <= numIndices; ++i) {
-            var dict = new Dictionary(pathForBlock(i).toString());
-            dicts.add(dict);
-            tokenSplits.add(dict.tokens());
+        var docRanges = new ArrayList<int[]>();
+        for (int i = 1; i <= numIndices; ++i) {
+            // temporary indices are only read sequentially, so there's no point in caching their posting lists
+            dicts.add(new Dictionary(pathForBlock(i).toString(), 0));
+            docRanges.add(TemporaryIndexBuilder.readDocRange(pathForBlock(i)));
+        }
+        var splitTerms = numThreads == 1 ? List.<String>of() : splitTerms(dicts, numThreads * RANGES_PER_THREAD);
+        if (splitTerms.isEmpty()) {
+            try (var finalDictBuilder = new SequentialDictionaryBuilder(dir.toString(), postingsFormat,
+                    dictionaryBlockSize)) {
+                mergeRange(dicts, docRanges, null, null, finalDictBuilder);
+            }
+            return;
         }
 
-        var mergedStream = ExternalSorter.merge(tokenSplits,
-                Comparator.comparing(Token::getTerm).thenComparing(Token::getDocID));
+        Utils.log("Merging %d ranges of terms on %d threads", splitTerms.size() + 1, numThreads);
+        var pool = Executors.newFixedThreadPool(numThreads);
+        try {
+            var segments = new ArrayList<Future<Boolean>>();
+            for (int i = 0; i <= splitTerms.size(); ++i) {
+                String fromTerm = i == 0 ? null : splitTerms.get(i - 1);
+                String toTerm = i == splitTerms.size() ? null : splitTerms.get(i);
+                var segmentPath = pathForSegment(i);
+                segments.add(pool.submit(() -> {
+                    // segments are only read sequentially when appended, so the final dictionary alone has
+                    // lookup indices
+                    try (var segmentBuilder = new SequentialDictionaryBuilder(segmentPath.toString(), postingsFormat,
+                            dictionaryBlockSize, false)) {
+                        return mergeRange(dicts, docRanges, fromTerm, toTerm, segmentBuilder) > 0;
+                    }
+                }));
+            }
+            try (var finalDictBuilder = new SequentialDictionaryBuilder(dir.toString(), postingsFormat,
+                    dictionaryBlockSize)) {
+                for (int i = 0; i < segments.size(); ++i) {
+                    // like the temporary indices, segments are left in place(they're still memory mapped)
+                    if (getWorkerResult(segments.get(i))) {
+                        finalDictBuilder.appendSegment(new Dictionary(pathForSegment(i).toString(), 0));
+                    }
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
 
-        long[] numTokensMerged = new long[]{0};
-        try (var finalDictBuilder = new SequentialDictionaryBuilder(dir.toString())) {
-            mergedStream.forEachRemaining(token -> {
-                try {
-                    finalDictBuilder.addToken(token);
-                    numTokensMerged[0]++;
-                    if (numTokensMerged[0] % LOG_EVERY == 0) {
-                        Utils.log("So far merged a total of %,d tokens out of %,d",
-                                numTokensMerged[0],
-                                temporaryIndexBuilder.totalNumberOfTokens);
+    /** Returns terms splitting the terms of the dictionaries into at most numRanges ranges, whose posting lists take
+     *  about the same number of bytes, in increasing order */
+    private static List<String> splitTerms(List<Dictionary> dicts, int numRanges) throws IOException {
+        var samples = new ArrayList<Map.Entry<String, Long>>();
+        for (var dict : dicts) {
+            samples.addAll(dict.samplePostingsSizes(numRanges * SAMPLES_PER_RANGE));
+        }
+        samples.sort(Map.Entry.comparingByKey());
+        long totalBytes = samples.stream().mapToLong(Map.Entry::getValue).sum();
+
+        var splitTerms = new ArrayList<String>();
+        long bytes = 0;
+        for (var sample : samples) {
+            // a range ends before the sample whose preceding samples take its share of the bytes
+            long nextSplitBytes = totalBytes * (splitTerms.size() + 1) / numRanges;
+            if (bytes >= nextSplitBytes && splitTerms.size() < numRanges - 1 && bytes < totalBytes
+                    && (splitTerms.isEmpty() || !splitTerms.get(splitTerms.size() - 1).equals(sample.getKey()))) {
+                splitTerms.add(sample.getKey());
+            }
+            bytes += sample.getValue();
+        }
+        return splitTerms;
+    }
+
+    /**
+     * Merges the terms t such that fromTerm &lt;= t &lt; toTerm of the temporary indices into the given builder
+     * @param docRanges The first and last docIDs of every temporary index, or null for those where they're unknown
+     * @param fromTerm Smallest term of the range, or null if it is unbounded
+     * @param toTerm Term following the range, or null if it is unbounded
+     * @return Number of merged terms
+     */
+    private int mergeRange(List<Dictionary> dicts, List<int[]> docRanges, String fromTerm, String toTerm,
+                           SequentialDictionaryBuilder builder) throws IOException {
+        var termHeads = new PriorityQueue<TermCursor>(
+                Comparator.comparing((TermCursor cursor) -> cursor.term).thenComparingInt(cursor -> cursor.indexNum));
+        for (int i = 0; i < dicts.size(); ++i) {
+            var dict = dicts.get(i);
+            int fromIndex = fromTerm == null ? 0 : dict.getRankOfToken(fromTerm);
+            int toIndex = toTerm == null ? dict.getUniqueNumberOfTokens() : dict.getRankOfToken(toTerm);
+            var cursor = new TermCursor(i, dict, fromIndex, Math.max(fromIndex, toIndex));
+            // the lists of a temporary index can be appended as encoded if it has the final format
+            cursor.docRange = dict.getPostingsFormat().equals(postingsFormat) ? docRanges.get(i) : null;
+            if (cursor.advance()) {
+                termHeads.add(cursor);
+            }
+        }
+
+        var termCursors = new ArrayList<TermCursor>();
+        var postings = new PostingsCursor[dicts.size()];
+        var positionalPostings = new PositionalPostingsCursor[dicts.size()];
+        var docIds = new int[dicts.size()];
+        var encodedLists = new EncodedPostingList[dicts.size()];
+        int[] positions = new int[16];
+        long numPostingsMerged = 0;
+        int numTerms = 0;
+        while (!termHeads.isEmpty()) {
+            // the cursors of a term are taken in the order of their indices
+            var term = termHeads.peek().term;
+            termCursors.clear();
+            while (!termHeads.isEmpty() && termHeads.peek().term.equals(term)) {
+                termCursors.add(termHeads.poll());
+            }
+
+            int numLists = termCursors.size();
+            // the encoded lists are appended one after the other if they don't overlap(as when the temporary indices
+            // cover consecutive ranges of docIDs), otherwise they're decoded and copied in runs. Only the lists of
+            // indices sharing a boundary document are decoded to tell whether they overlap
+            boolean disjoint = true;
+            for (int i = 0; i < numLists && disjoint; ++i) {
+                var cursor = termCursors.get(i);
+                if (cursor.docRange == null) {
+                    disjoint = false;
+                    break;
+                }
+                encodedLists[i] = cursor.dict.getEncodedPostings(cursor.dictIndex);
+                if (i > 0) {
+                    int prevLastDocId = termCursors.get(i - 1).docRange[1];
+                    disjoint = prevLastDocId < cursor.docRange[0] || (prevLastDocId == cursor.docRange[0]
+                            && encodedLists[i - 1].lastDocId() < encodedLists[i].firstDocId());
+                }
+            }
+
+            builder.beginTerm(term);
+            ++numTerms;
+            if (disjoint) {
+                for (int i = 0; i < numLists; ++i) {
+                    builder.appendPostings(encodedLists[i]);
+                    numPostingsMerged = countMerged(numPostingsMerged, encodedLists[i].getFrequency(),
+                            fromTerm, toTerm);
+                }
+            } else {
+                for (int i = 0; i < numLists; ++i) {
+                    var cursor = termCursors.get(i);
+                    if (postingsFormat.hasPositions()) {
+                        positionalPostings[i] = cursor.dict.getPositionalPostings(cursor.dictIndex);
+                        postings[i] = positionalPostings[i];
+                    } else {
+                        postings[i] = cursor.dict.getPostings(cursor.dictIndex);
+                    }
+                    docIds[i] = postings[i].nextDoc();
+                }
+
+                while (true) {
+                    // the list with the smallest docId is copied up to the smallest docId of the others
+                    int min = -1;
+                    int nextMinDocId = Integer.MAX_VALUE;
+                    for (int i = 0; i < numLists; ++i) {
+                        if (docIds[i] == PostingsCursor.NO_MORE_DOCS) {
+                            continue;
+                        }
+                        if (min == -1 || docIds[i] < docIds[min]) {
+                            if (min != -1) {
+                                nextMinDocId = docIds[min];
+                            }
+                            min = i;
+                        } else {
+                            nextMinDocId = Math.min(nextMinDocId, docIds[i]);
+                        }
+                    }
+                    if (min == -1) {
+                        break;
                     }
-                } catch (IOException ex) {
-                    throw new RuntimeException("IO error while building dictionary", ex);
+                    var list = postings[min];
+                    int docId = docIds[min];
+                    do {
+                        int freq = list.freq();
+                        if (postingsFormat.hasPositions()) {
+                            if (positions.length < freq) {
+                                positions = new int[2 * freq];
+                            }
+                            for (int j = 0; j < freq; ++j) {
+                                positions[j] = positionalPostings[min].nextPosition();
+                            }
+                            builder.addTermOccurence(docId, freq, positions);
+                        } else {
+                            builder.addTermOccurence(docId, freq);
+                        }
+                        numPostingsMerged = countMerged(numPostingsMerged, 1, fromTerm, toTerm);
+                        docId = list.nextDoc();
+                    } while (docId != PostingsCursor.NO_MORE_DOCS && docId <= nextMinDocId);
+                    docIds[min] = docId;
                 }
-            });
+            }
+
+            for (var cursor : termCursors) {
+                if (cursor.advance()) {
+                    termHeads.add(cursor);
+                }
+            }
+        }
+        return numTerms;
+    }
+
+    /** Adds the given number of postings to those merged so far, logging the progress every LOG_EVERY postings.
+     *  Returns the number of postings merged */
+    private long countMerged(long numPostingsMerged, int numPostings, String fromTerm, String toTerm) {
+        long merged = numPostingsMerged + numPostings;
+        if (merged / LOG_EVERY != numPostingsMerged / LOG_EVERY) {
+            Utils.log("So far merged %,d postings of the range [%s, %s), out of a total of %,d",
+                    merged, fromTerm, toTerm, totalNumberOfPostings);
+        }
+        return merged;
+    }
+
+    /** The current term of a temporary index, while merging */
+    private static class TermCursor {
+        final int indexNum;
+        final Dictionary dict;
+        private final Spliterator<Map.Entry<String, Integer>> terms;
+        String term;
+        int dictIndex;
+        // first and last docIDs of the temporary index, null if unknown or if its lists can't be appended as encoded
+        int[] docRange;
+
+        TermCursor(int indexNum, Dictionary dict, int fromIndex, int toIndex) {
+            this.indexNum = indexNum;
+            this.dict = dict;
+            this.terms = dict.terms(fromIndex, toIndex);
+            this.dictIndex = fromIndex - 1;
+        }
+
+        /** Moves to the next term, returning false if there's none */
+        boolean advance() {
+            ++dictIndex;
+            return terms.tryAdvance(entry -> term = entry.getKey());
         }
     }
 }
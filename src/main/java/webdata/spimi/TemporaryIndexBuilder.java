@@ -1,25 +1,37 @@
 package webdata.spimi;
 
-import webdata.DocAndFreq;
 import webdata.Token;
 import webdata.Utils;
 import webdata.compression.Varint;
+import webdata.dictionary.Dictionary;
 import webdata.dictionary.SequentialDictionaryBuilder;
+import webdata.inverted_index.PostingsFormat;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 class PostingByteStream extends ByteArrayOutputStream {
     private int lastDocId = 0;
+    // whether every entry is followed by the positions of the term, as gaps
+    private final boolean withPositions;
     private final static int DEFAULT_BYTE_CAPACITY = 2;
-    PostingByteStream() {
+    PostingByteStream(boolean withPositions) {
         super(DEFAULT_BYTE_CAPACITY);
+        this.withPositions = withPositions;
     }
 
 
+    /** Returns the number of bytes allocated for the encoded entries */
+    int capacity() {
+        return buf.length;
+    }
+
     void add(Token token) {
         int docId = token.getDocID();
         int freq = token.getDocFrequency();
@@ -28,20 +40,46 @@ class PostingByteStream extends ByteArrayOutputStream {
         try {
             Varint.encode(this, gap);
             Varint.encode(this, freq);
+            if (withPositions) {
+                int[] positions = token.getPositions();
+                if (positions == null) {
+                    throw new IllegalArgumentException("Expected token to have positions: " + token);
+                }
+                int lastPosition = 0;
+                for (int position : positions) {
+                    Varint.encode(this, position - lastPosition);
+                    lastPosition = position;
+                }
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException("Impossible(IO error in byte array)", ex);
+        }
+    }
+
+    /** Appends the entries of the given stream, whose docIDs are greater than those of this one. Only the first
+     *  gap(which is the first docID of the other stream) is re-encoded relative to the last docID of this stream, the
+     *  rest are copied as is */
+    void append(PostingByteStream other) {
+        var src = ByteBuffer.wrap(other.buf, 0, other.count);
+        int firstDocId = Varint.decode(src);
+        try {
+            Varint.encode(this, firstDocId - lastDocId);
         } catch (IOException ex) {
             throw new RuntimeException("Impossible(IO error in byte array)", ex);
         }
+        write(other.buf, src.position(), other.count - src.position());
+        lastDocId = other.lastDocId;
     }
 
-    Spliterator<DocAndFreq> tokens() {
+    Spliterator<Token> tokens(String term) {
         long sizeHint = Long.MAX_VALUE;
         int cs = Spliterator.ORDERED;
 
-        var is = new ByteArrayInputStream(buf);
-        return new Spliterators.AbstractSpliterator<DocAndFreq>(sizeHint, cs) {
+        var is = new ByteArrayInputStream(buf, 0, count);
+        return new Spliterators.AbstractSpliterator<Token>(sizeHint, cs) {
             int lastDocId = 0;
             @Override
-            public boolean tryAdvance(Consumer<? super DocAndFreq> action) {
+            public boolean tryAdvance(Consumer<? super Token> action) {
                 if (is.available() == 0) {
                     return false;
                 }
@@ -52,7 +90,16 @@ class PostingByteStream extends ByteArrayOutputStream {
                     }
                     int freq = Varint.decode(is);
                     lastDocId += gap;
-                    action.accept(new DocAndFreq(lastDocId, freq));
+                    int[] positions = null;
+                    if (withPositions) {
+                        positions = new int[freq];
+                        int lastPosition = 0;
+                        for (int i = 0; i < freq; ++i) {
+                            lastPosition += Varint.decode(is);
+                            positions[i] = lastPosition;
+                        }
+                    }
+                    action.accept(new Token(term, lastDocId, freq, positions));
                     return true;
                 } catch (IOException ex) {
                     throw new RuntimeException("Impossible(IO error in byte array)", ex);
@@ -62,13 +109,44 @@ class PostingByteStream extends ByteArrayOutputStream {
     }
 }
 
-/** An in-memory index builder for creating temporary index files. */
+/** An in-memory index builder for creating temporary index files.
+ *
+ *  A run ends once the builder's memory usage crosses its budget. The usage is estimated by the builder itself(terms,
+ *  encoded postings and a fixed overhead per term), rather than by polling the free memory of the JVM, so the sizes of
+ *  runs don't depend on the garbage collector.
+ */
 public class TemporaryIndexBuilder {
     private final HashMap<String, PostingByteStream> dictionary;
     private final Runtime runtime;
+    // format of the temporary indices
+    private final PostingsFormat postingsFormat;
+
+    private final long memoryBudgetBytes;
+    // estimated number of bytes used by the dictionary of the current run
+    private long memoryUsedBytes;
+    // first docID and last token of the current run
+    private int firstDocId;
+    private Token lastToken;
+
+    // Contains the first and last docIDs of a temporary index(as two ints), so the merge knows which temporary
+    // indices can't have overlapping posting lists
+    static final String DOC_RANGE_FILE_NAME = "doc-range.bin";
 
-    // Ensure we have at least 10mb
-    private static final long MIN_MEMORY = 1024 * 1024 * 10;
+    // Sizes of the objects held per term(besides its characters and encoded postings) on a 64 bit JVM with compressed
+    // references, the default for heaps below 32GB: objects have 12 byte headers, references take 4 bytes and
+    // objects are aligned to 8 bytes, while arrays have 16 byte headers.
+    private static final long ARRAY_HEADER_BYTES = 16;
+    // a HashMap.Node(header, hash, key, value and next - 28 bytes, aligned) and its share of the table, which has at
+    // most 8/3 slots per entry(a doubled table is 3/8 full) of 4 bytes each
+    private static final long HASH_MAP_ENTRY_BYTES = 32 + 12;
+    // a String(header, value, hash, coder and hashIsZero - 22 bytes, aligned) and the header of its array
+    private static final long STRING_BYTES = 24 + ARRAY_HEADER_BYTES;
+    // a PostingByteStream(header, buf, count, lastDocId and withPositions - 25 bytes, aligned) and the header of its
+    // array, whose capacity is counted separately
+    private static final long POSTING_LIST_BYTES = 32 + ARRAY_HEADER_BYTES;
+    // On a 100K documents sample, the estimate(with this overhead and the term's characters) was ~14% above the heap
+    // actually retained by the dictionary, as the arrays' alignment is ignored but posting buffers are rarely full
+    static final long TERM_OVERHEAD_BYTES = HASH_MAP_ENTRY_BYTES + STRING_BYTES + POSTING_LIST_BYTES;
 
     // for logging
     public long curNumberOfTokens;
@@ -76,12 +154,57 @@ public class TemporaryIndexBuilder {
     private static final long LOG_EVERY = 1000000;
 
     public TemporaryIndexBuilder() {
+        this(false);
+    }
+
+    /**
+     * @param withPositions Whether the temporary indices should store positions, in which case all tokens must
+     *                      contain positions
+     */
+    public TemporaryIndexBuilder(boolean withPositions) {
+        this(withPositions, defaultMemoryBudget());
+    }
+
+    /**
+     * @param withPositions Whether the temporary indices should store positions, in which case all tokens must
+     *                      contain positions
+     * @param memoryBudgetBytes Number of bytes the in-memory index may take(as estimated by the builder), before it
+     *                          is written as a temporary index
+     */
+    public TemporaryIndexBuilder(boolean withPositions, long memoryBudgetBytes) {
+        this(withPositions ? PostingsFormat.DEFAULT.withPositions() : PostingsFormat.DEFAULT, memoryBudgetBytes);
+    }
+
+    /**
+     * @param postingsFormat Format of the temporary indices, usually that of the final index so that their posting
+     *                       lists can be merged without decoding most of their blocks(see
+     *                       {@link SPIMIIndexer#merge(int)}). If it has positions, all tokens must contain them
+     * @param memoryBudgetBytes Number of bytes the in-memory index may take(as estimated by the builder), before it
+     *                          is written as a temporary index
+     */
+    public TemporaryIndexBuilder(PostingsFormat postingsFormat, long memoryBudgetBytes) {
+        if (memoryBudgetBytes <= 0) {
+            throw new IllegalArgumentException("Memory budget must be positive, got " + memoryBudgetBytes);
+        }
+        this.postingsFormat = postingsFormat;
+        this.memoryBudgetBytes = memoryBudgetBytes;
         dictionary = new HashMap<>();
         this.runtime = Runtime.getRuntime();
         this.curNumberOfTokens = 0;
         this.totalNumberOfTokens = 0;
     }
 
+    /** Returns the default memory budget, a quarter of the maximal heap size. The rest is left for garbage that
+     *  wasn't collected yet(e.g, outgrown posting buffers), and for the parsing and storing of reviews. */
+    public static long defaultMemoryBudget() {
+        return Runtime.getRuntime().maxMemory() / 4;
+    }
+
+    /** Returns the estimated number of bytes used by the in-memory index of the last run */
+    public long getMemoryUsedBytes() {
+        return memoryUsedBytes;
+    }
+
     /**
      * Performs 1 run of SPMI-Invert
      * @param tokenStream Token iterator (sorted by docIDs, naturally)
@@ -89,35 +212,154 @@ public class TemporaryIndexBuilder {
      * @throws IOException In case of IO failure when creating the index file
      */
     public void invert(Iterator<Token> tokenStream, Path indexPath) throws IOException {
+        startRun();
+        while (memoryUsedBytes < memoryBudgetBytes && tokenStream.hasNext()) {
+            addToken(tokenStream.next());
+        }
+        writeRun(indexPath);
+    }
+
+    /**
+     * Reads a run of whole documents into the in-memory index: tokens are read until the budget is used and the
+     * document of the last token read ends, or until the tokens run out. The run is written by {@link #writeRun(Path)}
+     * @param first First token of the run, or null if it should be taken from the iterator
+     * @param tokenStream Token iterator (sorted by docIDs)
+     * @return First token of the next run(which was already taken from the iterator), or null if there are no more
+     *         tokens
+     */
+    Token readRun(Token first, Iterator<Token> tokenStream) {
+        startRun();
+        Token token = first != null ? first : tokenStream.hasNext() ? tokenStream.next() : null;
+        while (token != null) {
+            if (memoryUsedBytes >= memoryBudgetBytes && token.getDocID() != lastToken.getDocID()) {
+                return token;
+            }
+            addToken(token);
+            token = tokenStream.hasNext() ? tokenStream.next() : null;
+        }
+        return null;
+    }
+
+    /** Adds the given tokens(e.g, those of a document) to the in-memory index, regardless of the budget
+     * @param tokens Tokens whose docIDs are at least those added so far */
+    void addTokens(Stream<Token> tokens) {
+        tokens.forEach(this::addToken);
+    }
+
+    /**
+     * Appends the in-memory index of the given builder(e.g, of a batch of documents inverted by another thread) to
+     * this one, and clears the given builder. Posting lists of terms which are new to this index are moved as is,
+     * the others are appended with their first gap re-encoded(see {@link PostingByteStream#append}).
+     * @param batch Builder of the same format, whose docIDs are greater than those of this builder
+     */
+    void append(TemporaryIndexBuilder batch) {
+        if (batch.lastToken == null) {
+            return;
+        }
+        assert lastToken == null || batch.firstDocId > lastToken.getDocID() : "batches should be ordered by docIDs";
+        for (var entry : batch.dictionary.entrySet()) {
+            var term = entry.getKey();
+            var postingList = dictionary.get(term);
+            if (postingList == null) {
+                dictionary.put(term, entry.getValue());
+                memoryUsedBytes += TERM_OVERHEAD_BYTES + charactersBytes(term) + entry.getValue().capacity();
+            } else {
+                int capacityBefore = postingList.capacity();
+                postingList.append(entry.getValue());
+                memoryUsedBytes += postingList.capacity() - capacityBefore;
+            }
+        }
+        if (lastToken == null) {
+            firstDocId = batch.firstDocId;
+        }
+        lastToken = batch.lastToken;
+        curNumberOfTokens += batch.curNumberOfTokens;
+        batch.startRun();
+    }
+
+    /** Returns whether the in-memory index has used its budget */
+    boolean isBudgetUsed() {
+        return memoryUsedBytes >= memoryBudgetBytes;
+    }
+
+    /** Returns whether the in-memory index has no tokens */
+    boolean isEmpty() {
+        return lastToken == null;
+    }
+
+    private void startRun() {
         dictionary.clear();
-        Token lastToken = null;
+        lastToken = null;
         curNumberOfTokens = 0;
+        memoryUsedBytes = 0;
+    }
 
-        while (hasMemory() && tokenStream.hasNext()) {
-            Token token = tokenStream.next();
-            var postingList = dictionary.computeIfAbsent(token.getTerm(),
-                    _term -> new PostingByteStream());
-            postingList.add(token);
-
-            assert lastToken == null || token.getDocID() >= lastToken.getDocID() : "tokenStream should be ordered by docIDs";
-            lastToken = token;
-            ++curNumberOfTokens;
-            ++totalNumberOfTokens;
-            if (totalNumberOfTokens % LOG_EVERY == 0) {
-                Utils.log("Processed %,d tokens in the current index, a total of %,d tokens",
-                          curNumberOfTokens, totalNumberOfTokens);
-                Utils.logMemory(runtime);
+    /** Returns the number of bytes a String holds for the characters of the given term: compact strings take a byte
+     *  per character if all of them are Latin-1, and 2 bytes per character otherwise */
+    static long charactersBytes(String term) {
+        for (int i = 0; i < term.length(); ++i) {
+            if (term.charAt(i) > 0xFF) {
+                return 2L * term.length();
             }
         }
-        try (var builder = new SequentialDictionaryBuilder(indexPath.toString())) {
+        return term.length();
+    }
+
+    private void addToken(Token token) {
+        var postingList = dictionary.get(token.getTerm());
+        if (postingList == null) {
+            postingList = new PostingByteStream(postingsFormat.hasPositions());
+            dictionary.put(token.getTerm(), postingList);
+            memoryUsedBytes += TERM_OVERHEAD_BYTES + charactersBytes(token.getTerm()) + postingList.capacity();
+        }
+        int capacityBefore = postingList.capacity();
+        postingList.add(token);
+        memoryUsedBytes += postingList.capacity() - capacityBefore;
+
+        assert lastToken == null || token.getDocID() >= lastToken.getDocID() : "tokenStream should be ordered by docIDs";
+        if (lastToken == null) {
+            firstDocId = token.getDocID();
+        }
+        lastToken = token;
+        ++curNumberOfTokens;
+        ++totalNumberOfTokens;
+        if (totalNumberOfTokens % LOG_EVERY == 0) {
+            Utils.log("Processed %,d tokens in the current index(using ~%,d bytes), a total of %,d tokens",
+                      curNumberOfTokens, memoryUsedBytes, totalNumberOfTokens);
+            Utils.logMemory(runtime);
+        }
+    }
+
+    /** Writes the run in the in-memory index as a temporary index at the given path, and clears the in-memory index */
+    void writeRun(Path indexPath) throws IOException {
+        try (var builder = new SequentialDictionaryBuilder(indexPath.toString(), postingsFormat,
+                Dictionary.DEFAULT_BLOCK_SIZE, false)) {
             serialize(builder);
             Utils.log("Finished creating temporary index at %s", indexPath);
         } finally {
             dictionary.clear();
-            runtime.gc();
         }
-        dictionary.clear();
-        runtime.gc();
+        var rangePath = indexPath.resolve(DOC_RANGE_FILE_NAME);
+        if (lastToken == null) {
+            Files.deleteIfExists(rangePath);
+            return;
+        }
+        try (var dos = new DataOutputStream(new FileOutputStream(rangePath.toString()))) {
+            dos.writeInt(firstDocId);
+            dos.writeInt(lastToken.getDocID());
+        }
+    }
+
+    /** Returns the first and last docIDs of the temporary index at the given path, or null if they're unknown(e.g,
+     *  the index is empty) */
+    static int[] readDocRange(Path indexPath) throws IOException {
+        var rangePath = indexPath.resolve(DOC_RANGE_FILE_NAME);
+        if (!Files.exists(rangePath)) {
+            return null;
+        }
+        try (var dis = new DataInputStream(new FileInputStream(rangePath.toString()))) {
+            return new int[]{dis.readInt(), dis.readInt()};
+        }
     }
 
     private void serialize(SequentialDictionaryBuilder builder) throws IOException {
@@ -133,17 +375,13 @@ public class TemporaryIndexBuilder {
                 var list = entry.getValue();
 
                 builder.beginTerm(term);
-                list.tokens().forEachRemaining(docAndFreq -> {
+                list.tokens(term).forEachRemaining(token -> {
                     try {
-                        builder.addTermOccurence(docAndFreq.getDocID(), docAndFreq.getDocFrequency());
+                        builder.addTermOccurence(token.getDocID(), token.getDocFrequency(), token.getPositions());
                     } catch (IOException e) {
                         throw new RuntimeException("IO exception while adding term occurrence", e);
                     }
                 });
             }
     }
-
-    private boolean hasMemory() {
-        return Utils.getFreeMemory(runtime) >= MIN_MEMORY;
-    }
 }
@@ -1,15 +1,25 @@
 package webdata;
 
 import org.junit.jupiter.api.Test;
+import webdata.inverted_index.ArrayPostingsCursor;
+import webdata.inverted_index.PostingsCursor;
+import webdata.inverted_index.PostingsFormat;
 import webdata.parsing.Review;
 import webdata.search.SparseVector;
+import webdata.search.WildcardPattern;
 
 import java.io.IOException;
 import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -55,10 +65,10 @@ class ReviewSearchTest {
 
         when(indexReader.getNumberOfReviews()).thenReturn(1000000);
 
-        when(indexReader.getReviewsWithToken("auto")).thenReturn(Utils.streamToEnumeration(Stream.of(9, 1, 1337, 1)));
-        when(indexReader.getReviewsWithToken("best")).thenReturn(Utils.streamToEnumeration(Stream.empty()));
-        when(indexReader.getReviewsWithToken("car")).thenReturn(Utils.streamToEnumeration(Stream.of(9, 1, 1337, 1)));
-        when(indexReader.getReviewsWithToken("insurance")).thenReturn(Utils.streamToEnumeration(Stream.of(9, 2)));
+        when(indexReader.getCachedPostings("auto")).thenReturn(new ArrayPostingsCursor(new int[]{9, 1337}, new int[]{1, 1}));
+        when(indexReader.getCachedPostings("best")).thenReturn(PostingsCursor.empty());
+        when(indexReader.getCachedPostings("car")).thenReturn(new ArrayPostingsCursor(new int[]{9, 1337}, new int[]{1, 1}));
+        when(indexReader.getCachedPostings("insurance")).thenReturn(new ArrayPostingsCursor(new int[]{9}, new int[]{2}));
 
         var search = new ReviewSearch(indexReader);
         var result = search.docLnns(List.of("best", "car", "insurance"));
@@ -73,13 +83,12 @@ class ReviewSearchTest {
     }
 
     @Test
-    void vectorSpaceSearch() {
+    void exhaustiveVectorSpaceSearch() {
         var indexReader = mock(IndexReader.class);
         when(indexReader.getNumberOfReviews()).thenReturn(13371337);
         var reviewSearch = spy(new ReviewSearch(indexReader));
 
         var query = List.of("an", "amazing", "query");
-        var queryEnum = Utils.streamToEnumeration(query.stream());
 
 
         doReturn(new SparseVector(Map.of(
@@ -100,10 +109,58 @@ class ReviewSearchTest {
                 ))
         )).when(reviewSearch).docLnns(query);
 
-        var result = reviewSearch.vectorSpaceSearch(queryEnum, 1000);
-        var resultList = Utils.iteratorToStream(result.asIterator()).collect(Collectors.toList()) ;
+        assertIterableEquals(List.of(4, 3, 1, 100), exhaustiveVectorSpaceSearch(reviewSearch, query, 1000));
+    }
 
-        assertIterableEquals(List.of(4, 3, 1, 100), resultList);
+    /** Same as {@link ReviewSearch#vectorSpaceSearch}, but scores every document containing a query term, used as a
+     *  reference for the top-k evaluation. */
+    private static List<Integer> exhaustiveVectorSpaceSearch(ReviewSearch search, List<String> q, int k) {
+        var queryVec = search.queryLtc(q);
+        var docLtcs = search.docLnns(q);
+
+        return docLtcs.entrySet()
+                .stream()
+                // compare by ranks in descending order, break ties by review IDs in ascending order.
+                .sorted(Comparator.comparingDouble(
+                        (Map.Entry<Integer, SparseVector> entry)-> queryVec.dot(entry.getValue())).reversed()
+                        .thenComparingInt(Map.Entry::getKey)
+                )
+                .map(Map.Entry::getKey)
+                .limit(k)
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    void vectorSpaceSearchMatchesExhaustiveSearch() throws IOException {
+        var tmpDir = Files.createTempDirectory("vectorSpaceSearch");
+
+        // enough reviews for common words to have many blocks, with varying frequencies
+        var random = new Random(1337);
+        var words = List.of("good", "bad", "phone", "battery", "screen", "cheap", "great", "broken");
+        var reviewStream = IntStream.range(0, 2000).mapToObj(i -> {
+            var text = IntStream.range(0, 1 + random.nextInt(12))
+                    .mapToObj(j -> words.get(Math.min(words.size() - 1, Math.abs((int) (random.nextGaussian() * 3)))))
+                    .collect(Collectors.joining(" "));
+            return Review.fromFields(Map.of(
+                    "productId", "12345ABCDE",
+                    "helpfulness", "1/2",
+                    "score", "3",
+                    "text", text
+            ));
+        });
+
+        new IndexWriter().writeFromReviews(reviewStream, tmpDir.toString());
+        var search = new ReviewSearch(new IndexReader(tmpDir.toString()));
+
+        var queries = List.of(List.of("good"), List.of("good", "bad"), List.of("phone", "phone", "broken"),
+                List.of("great", "cheap", "screen", "missing"), List.of("missing"));
+        for (var query : queries) {
+            for (int k : new int[]{0, 1, 10, 100, 5000}) {
+                var expected = exhaustiveVectorSpaceSearch(search, query, k);
+                var actual = Collections.list(search.vectorSpaceSearch(Collections.enumeration(query), k));
+                assertIterableEquals(expected, actual, "query " + query + ", k=" + k);
+            }
+        }
     }
 
     @Test
@@ -128,20 +185,20 @@ class ReviewSearchTest {
         // (enjoy,4) (vacation,2) (very, 2) (your,1) (friend,1)
 
         when(indexReader.getReviewLength(3)).thenReturn(10);
-        when(indexReader.getReviewsWithToken("enjoy")).thenAnswer(_unused -> Utils.streamToEnumeration(
-                Stream.of(3, 4)
+        when(indexReader.getCachedPostings("enjoy")).thenAnswer(_unused -> new ArrayPostingsCursor(
+                new int[]{3}, new int[]{4}
         ));
-        when(indexReader.getReviewsWithToken("vacation")).thenAnswer(_unused -> Utils.streamToEnumeration(
-                Stream.of(3, 2)
+        when(indexReader.getCachedPostings("vacation")).thenAnswer(_unused -> new ArrayPostingsCursor(
+                new int[]{3}, new int[]{2}
         ));
-        when(indexReader.getReviewsWithToken("very")).thenAnswer(_unused -> Utils.streamToEnumeration(
-                Stream.of(3, 2)
+        when(indexReader.getCachedPostings("very")).thenAnswer(_unused -> new ArrayPostingsCursor(
+                new int[]{3}, new int[]{2}
         ));
-        when(indexReader.getReviewsWithToken("your")).thenAnswer(_unused -> Utils.streamToEnumeration(
-                Stream.of(3, 1)
+        when(indexReader.getCachedPostings("your")).thenAnswer(_unused -> new ArrayPostingsCursor(
+                new int[]{3}, new int[]{1}
         ));
-        when(indexReader.getReviewsWithToken("friend")).thenAnswer(_unused -> Utils.streamToEnumeration(
-                Stream.of(3, 1)
+        when(indexReader.getCachedPostings("friend")).thenAnswer(_unused -> new ArrayPostingsCursor(
+                new int[]{3}, new int[]{1}
         ));
 
 
@@ -209,6 +266,163 @@ class ReviewSearchTest {
         assertIterableEquals(List.of("1234567890", "12345ABCDE"), results);
     }
 
+    @Test
+    void phraseAndProximitySearch() throws IOException {
+        var tmpDir = Files.createTempDirectory("phraseSearch");
+
+        var reviewStream = Stream.of(
+                "the battery life is great",
+                "great battery, but the life of the screen is short",
+                "life is great, battery is not",
+                "battery life battery life"
+        ).map(text -> Review.fromFields(Map.of(
+                "productId", "12345ABCDE",
+                "helpfulness", "1/2",
+                "score", "3",
+                "text", text
+        ), true));
+
+        new IndexWriter(PostingsFormat.DEFAULT.withPositions()).writeFromReviews(reviewStream, tmpDir.toString());
+        var search = new ReviewSearch(new IndexReader(tmpDir.toString()));
+
+        assertIterableEquals(List.of(1, 4), Collections.list(search.phraseSearch(
+                Collections.enumeration(List.of("battery", "life")))));
+        assertIterableEquals(List.of(1, 3), Collections.list(search.phraseSearch(
+                Collections.enumeration(List.of("life", "is", "great")))));
+        assertIterableEquals(List.of(4), Collections.list(search.phraseSearch(
+                Collections.enumeration(List.of("life", "battery", "life")))));
+        assertFalse(search.phraseSearch(Collections.enumeration(List.of("battery", "missing"))).hasMoreElements());
+
+        // "life" and "battery" are adjacent in reviews 1 and 4, and 3 positions apart in reviews 2 and 3
+        assertIterableEquals(List.of(1, 4), Collections.list(search.proximitySearch(
+                Collections.enumeration(List.of("life", "battery")), 1)));
+        assertIterableEquals(List.of(1, 4), Collections.list(search.proximitySearch(
+                Collections.enumeration(List.of("life", "battery")), 2)));
+        assertIterableEquals(List.of(1, 2, 3, 4), Collections.list(search.proximitySearch(
+                Collections.enumeration(List.of("battery", "life", "battery")), 3)));
+    }
+
+    @Test
+    void wildcardSearch() throws IOException {
+        var tmpDir = Files.createTempDirectory("wildcardSearch");
+
+        var reviewStream = Stream.of(
+                "chocolate cake",
+                "chocolates and a cat",
+                "a cot for the cut",
+                "chock full of cheese cake",
+                "cheesecake"
+        ).map(text -> Review.fromFields(Map.of(
+                "productId", "12345ABCDE",
+                "helpfulness", "1/2",
+                "score", "3",
+                "text", text
+        )));
+
+        new IndexWriter().writeFromReviews(reviewStream, tmpDir.toString());
+        var reader = new IndexReader(tmpDir.toString());
+        var search = new ReviewSearch(reader);
+
+        assertIterableEquals(List.of(1, 2), Collections.list(search.wildcardSearch(
+                Collections.enumeration(List.of("chocolate*")))));
+        assertIterableEquals(List.of(1, 2, 4), Collections.list(search.wildcardSearch(
+                Collections.enumeration(List.of("CHOC*")))));
+        assertIterableEquals(List.of(2, 3), Collections.list(search.wildcardSearch(
+                Collections.enumeration(List.of("c?t")))));
+        assertIterableEquals(List.of(1, 4, 5), Collections.list(search.wildcardSearch(
+                Collections.enumeration(List.of("*cake")))));
+        assertIterableEquals(List.of(4, 5), Collections.list(search.wildcardSearch(
+                Collections.enumeration(List.of("ch*e*e*")))));
+        // every term must be matched
+        assertIterableEquals(List.of(1, 4), Collections.list(search.wildcardSearch(
+                Collections.enumeration(List.of("choc*", "cake")))));
+        assertIterableEquals(List.of(2), Collections.list(search.wildcardSearch(
+                Collections.enumeration(List.of("choc*", "c?t")))));
+        assertFalse(search.wildcardSearch(Collections.enumeration(List.of("choc*", "dog*"))).hasMoreElements());
+
+        // the union sums frequencies of the expanded terms
+        var postings = reader.getWildcardPostings("c*", ReviewSearch.DEFAULT_MAX_EXPANSIONS);
+        assertEquals(1, postings.nextDoc());
+        assertEquals(2, postings.freq());
+
+        // expansions are limited to the lexicographically first terms
+        assertEquals(9, reader.expandWildcard("c*", 10).length);
+        assertArrayEquals(Arrays.copyOf(reader.expandWildcard("c*", 10), 3), reader.expandWildcard("c*", 3));
+        // "cheese" and "cheesecake" are the first terms beginning with "ch"
+        assertIterableEquals(List.of(4, 5), Collections.list(new ReviewSearch(reader, 2).wildcardSearch(
+                Collections.enumeration(List.of("ch*")))));
+        assertThrows(IllegalArgumentException.class, () -> new ReviewSearch(reader, 0));
+    }
+
+    @Test
+    void leadingWildcardStopsScanningAtMaxExpansions() {
+        var terms = List.of("bake", "cake", "cheese", "cheesecake", "cupcake", "pancake", "zebra");
+        var consumed = new int[]{0};
+        var it = new Iterator<Map.Entry<String, Integer>>() {
+            @Override
+            public boolean hasNext() {
+                return consumed[0] < terms.size();
+            }
+
+            @Override
+            public Map.Entry<String, Integer> next() {
+                return Map.entry(terms.get(consumed[0]++), 1);
+            }
+        };
+
+        var wildcard = new WildcardPattern("*cake");
+        assertArrayEquals(new int[]{11, 13}, IndexReader.matchTerms(it, 10, wildcard, 2));
+        // only the terms up to the second match were read
+        assertEquals(4, consumed[0]);
+
+        assertArrayEquals(new int[]{1, 3, 4, 5},
+                IndexReader.matchTerms(terms.stream().map(term -> Map.entry(term, 1)).iterator(), 0, wildcard, 100));
+    }
+
+    @Test
+    void fuzzySearch() throws IOException {
+        var tmpDir = Files.createTempDirectory("fuzzySearch");
+
+        var reviewStream = Stream.of(
+                "delicious cookies, received them quickly",
+                "not delicous at all",
+                "recieved a broken box",
+                "delicious and cheap",
+                "cheap"
+        ).map(text -> Review.fromFields(Map.of(
+                "productId", "12345ABCDE",
+                "helpfulness", "1/2",
+                "score", "3",
+                "text", text
+        )));
+
+        new IndexWriter().writeFromReviews(reviewStream, tmpDir.toString());
+        var reader = new IndexReader(tmpDir.toString());
+        var search = new ReviewSearch(reader);
+
+        assertIterableEquals(List.of(1, 4), Collections.list(search.fuzzySearch(
+                Collections.enumeration(List.of("delicious")), 0)));
+        assertIterableEquals(List.of(1, 2, 4), Collections.list(search.fuzzySearch(
+                Collections.enumeration(List.of("Delicious")), 1)));
+        assertIterableEquals(List.of(1, 3), Collections.list(search.fuzzySearch(
+                Collections.enumeration(List.of("recieved")), 1)));
+        assertIterableEquals(List.of(4), Collections.list(search.fuzzySearch(
+                Collections.enumeration(List.of("delicios", "chaep")), 1)));
+        assertFalse(search.fuzzySearch(Collections.enumeration(List.of("delicious", "brokem")), 1)
+                .hasMoreElements());
+        assertThrows(IllegalArgumentException.class, () -> search.fuzzySearch(
+                Collections.enumeration(List.of("delicious")), 3));
+
+        // closer terms come first, and equally close ones by their document frequency
+        var candidates = reader.expandFuzzy("delicius", 1, 1);
+        assertEquals(1, candidates.length);
+        assertEquals(reader.expandFuzzy("delicious", 0, 1)[0], candidates[0]);
+        assertIterableEquals(List.of(1, 2, 4), Collections.list(new ReviewSearch(reader, 2).fuzzySearch(
+                Collections.enumeration(List.of("delicius")), 2)));
+        assertIterableEquals(List.of(2), Collections.list(new ReviewSearch(reader, 1).fuzzySearch(
+                Collections.enumeration(List.of("delicous")), 2)));
+    }
+
     /** test for edge-case where the index is empty */
     @Test
     void operationsEmptyIndex() throws IOException {
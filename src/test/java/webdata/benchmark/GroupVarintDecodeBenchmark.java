@@ -0,0 +1,82 @@
+package webdata.benchmark;
+
+import webdata.Utils;
+import webdata.compression.GroupVarintDecoder;
+import webdata.compression.GroupVarintEncoder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/** Compares decoding a group varint stream a number at a time (via {@link GroupVarintDecoder#read()}) with
+ *  decoding it in blocks (via {@link GroupVarintDecoder#decodeBlock(ByteBuffer, int[], int)}).
+ *
+ *  The numbers mimic a posting list: small docId gaps interleaved with small frequencies.
+ */
+public class GroupVarintDecodeBenchmark {
+
+    static final int NUM_NUMBERS = 1 << 22;
+    static final int BLOCK_LENGTH = 256;
+    static final int WARMUP_COUNT = 5;
+    static final int REPEAT_COUNT = 10;
+
+    public static void main(String[] args) throws IOException {
+        var random = new Random(42);
+        var os = new ByteArrayOutputStream();
+        var encoder = new GroupVarintEncoder(os);
+        for (int i = 0; i < NUM_NUMBERS; ++i) {
+            encoder.write(i % 2 == 0 ? 1 + random.nextInt(2000) : 1 + random.nextInt(4));
+        }
+        encoder.flush();
+        byte[] bytes = os.toByteArray();
+        Utils.log("Encoded %,d numbers into %,d bytes", NUM_NUMBERS, bytes.length);
+
+        for (int i = 0; i < WARMUP_COUNT; ++i) {
+            decodePerInt(bytes);
+            decodeBlocks(bytes);
+        }
+
+        long perIntNs = 0;
+        long blockNs = 0;
+        long checksum = 0;
+        for (int i = 0; i < REPEAT_COUNT; ++i) {
+            long start = System.nanoTime();
+            checksum += decodePerInt(bytes);
+            perIntNs += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            checksum -= decodeBlocks(bytes);
+            blockNs += System.nanoTime() - start;
+        }
+        assert checksum == 0 : "Both decoding methods should yield the same numbers";
+
+        Utils.log("read(): %.2f ns per number", (double) perIntNs / REPEAT_COUNT / NUM_NUMBERS);
+        Utils.log("decodeBlock(): %.2f ns per number", (double) blockNs / REPEAT_COUNT / NUM_NUMBERS);
+        Utils.log("Speedup: %.2fx", (double) perIntNs / blockNs);
+    }
+
+    private static long decodePerInt(byte[] bytes) throws IOException {
+        var decoder = new GroupVarintDecoder(new ByteArrayInputStream(bytes));
+        long sum = 0;
+        for (int i = 0; i < NUM_NUMBERS; ++i) {
+            sum += decoder.read();
+        }
+        return sum;
+    }
+
+    private static long decodeBlocks(byte[] bytes) {
+        var buffer = ByteBuffer.wrap(bytes);
+        var block = new int[BLOCK_LENGTH];
+        long sum = 0;
+        for (int i = 0; i < NUM_NUMBERS; i += BLOCK_LENGTH) {
+            int count = Math.min(BLOCK_LENGTH, NUM_NUMBERS - i);
+            GroupVarintDecoder.decodeBlock(buffer, block, count);
+            for (int j = 0; j < count; ++j) {
+                sum += block[j];
+            }
+        }
+        return sum;
+    }
+}
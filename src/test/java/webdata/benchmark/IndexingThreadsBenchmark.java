@@ -0,0 +1,51 @@
+package webdata.benchmark;
+
+import webdata.IndexReader;
+import webdata.IndexWriter;
+import webdata.Utils;
+import webdata.dictionary.Dictionary;
+import webdata.inverted_index.PostingsFormat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/** Reports the indexing throughput(reviews and tokens per second, including parsing and merging) for different
+ *  numbers of indexing threads, see {@link IndexWriter#IndexWriter(PostingsFormat, int, int)}.
+ *
+ *  Uses the bundled datasets unless other review files are given as arguments.
+ */
+public class IndexingThreadsBenchmark {
+
+    static final int WARMUP_COUNT = 2;
+    static final int REPEAT_COUNT = 5;
+    static final int[] NUM_THREADS = {1, 2, 4, 8};
+
+    public static void main(String[] args) throws IOException {
+        String[] inputs = args.length > 0 ? args
+                : new String[]{Path.of("datasets", "100.txt").toString(), Path.of("datasets", "1000.txt").toString()};
+        var dir = Files.createTempDirectory("indexingThreadsBenchmark");
+        Utils.log("%d available processors", Runtime.getRuntime().availableProcessors());
+
+        for (var input : inputs) {
+            for (int numThreads : NUM_THREADS) {
+                var writer = new IndexWriter(PostingsFormat.DEFAULT, Dictionary.DEFAULT_BLOCK_SIZE, numThreads);
+                for (int i = 0; i < WARMUP_COUNT; ++i) {
+                    writer.write(input, dir.toString());
+                }
+                long totalNs = 0;
+                for (int i = 0; i < REPEAT_COUNT; ++i) {
+                    long start = System.nanoTime();
+                    writer.write(input, dir.toString());
+                    totalNs += System.nanoTime() - start;
+                }
+                var reader = new IndexReader(dir.toString());
+                double seconds = totalNs / 1e9 / REPEAT_COUNT;
+                Utils.log("%s with %d threads: %.0f ms, %,.0f reviews/s, %,.0f tokens/s", input, numThreads,
+                        seconds * 1000, reader.getNumberOfReviews() / seconds,
+                        reader.getTokenSizeOfReviews() / seconds);
+            }
+        }
+        Utils.deleteDirectory(dir);
+    }
+}
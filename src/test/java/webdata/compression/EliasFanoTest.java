@@ -0,0 +1,90 @@
+package webdata.compression;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EliasFanoTest {
+
+    private static Stream<long[]> provideSequences() {
+        var random = new Random(1337);
+        var dense = new long[1000];
+        var sparse = new long[5000];
+        var withRepeats = new long[777];
+        for (int i = 1; i < dense.length; ++i) {
+            dense[i] = dense[i - 1] + 1 + random.nextInt(3);
+        }
+        for (int i = 1; i < sparse.length; ++i) {
+            sparse[i] = sparse[i - 1] + random.nextInt(1 << 30);
+        }
+        for (int i = 1; i < withRepeats.length; ++i) {
+            withRepeats[i] = withRepeats[i - 1] + (random.nextInt(4) == 0 ? random.nextInt(100) : 0);
+        }
+        return Stream.of(
+                new long[]{},
+                new long[]{0},
+                new long[]{42},
+                new long[]{7, 7, 7, 7},
+                new long[]{0, Long.MAX_VALUE / 2},
+                dense,
+                sparse,
+                withRepeats
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("provideSequences")
+    void canEncodeAndAccessSequence(long[] values) throws IOException {
+        var os = new ByteArrayOutputStream();
+        // some garbage before the sequence, to ensure it is read from its position
+        os.write(new byte[]{1, 2, 3});
+        int written = EliasFano.encode(values, values.length, new DataOutputStream(os));
+        var buf = ByteBuffer.wrap(os.toByteArray());
+        assertEquals(3 + written, buf.limit());
+
+        var sequence = EliasFano.at(buf, 3);
+        assertEquals(values.length, sequence.size());
+        assertEquals(buf.limit(), sequence.getEndPosition());
+        for (int i = 0; i < values.length; ++i) {
+            assertEquals(values[i], sequence.get(i));
+        }
+        assertEquals(0, buf.position());
+    }
+
+    @Test
+    void encodesOnlyTheFirstValues() throws IOException {
+        var os = new ByteArrayOutputStream();
+        EliasFano.encode(new long[]{1, 5, 9, 0, 0}, 3, new DataOutputStream(os));
+        var sequence = EliasFano.at(ByteBuffer.wrap(os.toByteArray()), 0);
+        assertEquals(3, sequence.size());
+        assertEquals(9, sequence.get(2));
+    }
+
+    @Test
+    void takesFewBitsPerValue() throws IOException {
+        var values = new long[10000];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = 16L * i;
+        }
+        int written = EliasFano.encode(values, values.length, new DataOutputStream(new ByteArrayOutputStream()));
+        // about 2 + log2(16) bits per value, rather than 64
+        assertTrue(written < values.length, "took " + written + " bytes");
+    }
+
+    @Test
+    void cannotEncodeDecreasingSequence() {
+        assertThrows(IllegalArgumentException.class, () ->
+                EliasFano.encode(new long[]{1, 5, 4}, 3, new DataOutputStream(new ByteArrayOutputStream())));
+        assertThrows(IllegalArgumentException.class, () ->
+                EliasFano.encode(new long[]{-1, 5}, 2, new DataOutputStream(new ByteArrayOutputStream())));
+    }
+}
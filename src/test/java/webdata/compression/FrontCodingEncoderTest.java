@@ -98,4 +98,34 @@ class FrontCodingEncoderTest {
             assertEquals(strings.get(i), decoder.decodeElement(results.get(i), i % maxPrefixes));
         }
     }
+
+    @Test
+    void positionsAndLengthsAreInBytes() throws IOException {
+        var charset = StandardCharsets.UTF_8;
+        var os = new ByteArrayOutputStream();
+        var encoder = new FrontCodingEncoder(4, charset, os);
+
+        var res1 = encoder.encodeString("אבג");
+        assertEquals(0, res1.suffixPos);
+        assertEquals(6, res1.suffixLength);
+
+        var res2 = encoder.encodeString("אבד");
+        assertEquals(6, res2.suffixPos);
+        assertEquals(4, res2.prefixLength);
+        assertEquals(2, res2.suffixLength);
+
+        // the emojis share their high surrogate, which mustn't be split from the low one
+        var res3 = encoder.encodeString("אבד\uD83D\uDE00");
+        var res4 = encoder.encodeString("אבד\uD83D\uDE01");
+        assertEquals(6, res4.prefixLength);
+        assertEquals(4, res4.suffixLength);
+        encoder.close();
+
+        var decoder = new FrontCodingDecoder(4, charset, new ByteArrayInputStream(os.toByteArray()));
+        assertEquals("אבג", decoder.decodeElement(res1, 0));
+        assertEquals("אבד", decoder.decodeElement(res2, 1));
+        assertEquals("אבד\uD83D\uDE00", decoder.decodeElement(res3, 2));
+        assertEquals("אבד\uD83D\uDE01", decoder.decodeElement(res4, 3));
+    }
+
 }
\ No newline at end of file
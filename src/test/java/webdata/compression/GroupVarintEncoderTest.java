@@ -46,6 +46,14 @@ class GroupVarintEncoderTest {
         numZeros--;
         assertEquals(-1, decoded);
         assertTrue(numZeros <= 3);
+
+        // bulk decoding should yield the same numbers, consuming all groups
+        var bulkDecoded = new int[numbers.size()];
+        int numBytes = GroupVarintDecoder.decodeBlock(os.toByteArray(), bulkDecoded, numbers.size());
+        assertEquals(os.size(), numBytes);
+        for (int i=0; i < numbers.size(); ++i) {
+            assertEquals((int)numbers.get(i), bulkDecoded[i]);
+        }
     }
 
 
@@ -0,0 +1,86 @@
+package webdata.compression;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PForEncoderTest {
+
+    /** Encodes the blocks one after another, and ensures both decoding paths restore them */
+    static void ensureCanEncodeAndDecodeBlocks(int[][] blocks) throws IOException {
+        var os = new ByteArrayOutputStream();
+        var encoder = new PForEncoder(os);
+        for (var block : blocks) {
+            encoder.writeBlock(block, block.length);
+        }
+        byte[] bytes = os.toByteArray();
+
+        var decoder = new PForDecoder(new ByteArrayInputStream(bytes));
+        var buf = ByteBuffer.wrap(bytes);
+        for (var block : blocks) {
+            var decoded = new int[PForEncoder.MAX_BLOCK_LENGTH];
+            decoder.decode(decoded, block.length);
+            assertArrayEquals(block, Arrays.copyOf(decoded, block.length));
+
+            var decodedFromBuffer = new int[block.length];
+            PForDecoder.decode(buf, decodedFromBuffer, block.length);
+            assertArrayEquals(block, decodedFromBuffer);
+        }
+        assertFalse(buf.hasRemaining());
+    }
+
+    private static Stream<int[][]> provideBlocks() {
+        var random = new Random(1337);
+        var withExceptions = new int[128];
+        for (int i = 0; i < withExceptions.length; ++i) {
+            withExceptions[i] = i % 31 == 0 ? 1 + random.nextInt(Integer.MAX_VALUE) : 1 + random.nextInt(8);
+        }
+        var uniform = new int[128];
+        for (int i = 0; i < uniform.length; ++i) {
+            uniform[i] = random.nextInt(1 << 20);
+        }
+        return Stream.of(
+                new int[][]{{}},
+                new int[][]{{1}},
+                new int[][]{{5, 5, 5, 5}},
+                new int[][]{{0, Integer.MAX_VALUE}, {Integer.MAX_VALUE, Integer.MAX_VALUE - 1, 3}},
+                new int[][]{{1, 2, 3, 4, 5, 6, 7, 8, 9, 10}, {9, 1000, 100, 5000, 100000, 125255600}},
+                new int[][]{withExceptions, uniform, withExceptions}
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("provideBlocks")
+    void canEncodeAndDecodeBlocks(int[][] blocks) throws IOException {
+        ensureCanEncodeAndDecodeBlocks(blocks);
+    }
+
+    @Test
+    void exceptionsDoNotInflateBitWidth() throws IOException {
+        var block = new int[128];
+        Arrays.fill(block, 3);
+        block[17] = 1 << 30;
+
+        var os = new ByteArrayOutputStream();
+        new PForEncoder(os).writeBlock(block, block.length);
+        // 2 bits per value, and a single exception
+        assertTrue(os.size() < 128 * 2 / 8 + 10, "Block takes " + os.size() + " bytes");
+        ensureCanEncodeAndDecodeBlocks(new int[][]{block});
+    }
+
+    @Test
+    void rejectsNegativeNumbers() {
+        var encoder = new PForEncoder(new ByteArrayOutputStream());
+        assertThrows(IllegalArgumentException.class, () -> encoder.writeBlock(new int[]{1, -1}, 2));
+    }
+}
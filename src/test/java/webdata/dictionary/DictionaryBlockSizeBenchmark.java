@@ -0,0 +1,120 @@
+package webdata.dictionary;
+
+import webdata.Token;
+import webdata.Utils;
+import webdata.inverted_index.PostingsFormat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+/** Reports the size of the dictionary(elements and front coded terms) and the cost of looking up terms, for
+ *  different block sizes. Bigger blocks share more prefixes and store fewer whole posting pointers, but every lookup
+ *  scans more terms. Terms are looked up both via the term hash and via binary search (for dictionaries without
+ *  the hash), half of the queries are absent terms, and the term at a random index is decoded as well.
+ */
+public class DictionaryBlockSizeBenchmark {
+
+    static final int NUM_TERMS = 1 << 19;
+    static final int NUM_QUERIES = 1 << 18;
+    static final int WARMUP_COUNT = 3;
+    static final int REPEAT_COUNT = 5;
+    static final int[] BLOCK_SIZES = {1, 2, 4, 8, 16, 32, 64};
+
+    public static void main(String[] args) throws IOException {
+        var random = new Random(42);
+        var terms = new TreeSet<String>();
+        while (terms.size() < NUM_TERMS) {
+            terms.add(DictionaryLookupBenchmark.randomTerm(random));
+        }
+        var termList = new ArrayList<>(terms);
+        List<String> queries = new ArrayList<>();
+        int[] indices = new int[NUM_QUERIES];
+        for (int i = 0; i < NUM_QUERIES; ++i) {
+            queries.add(i % 2 == 0
+                    ? termList.get(random.nextInt(NUM_TERMS))
+                    : DictionaryLookupBenchmark.randomTerm(random));
+            indices[i] = random.nextInt(NUM_TERMS);
+        }
+
+        for (int blockSize : BLOCK_SIZES) {
+            var dir = Files.createTempDirectory("dictionaryBlockSizeBenchmark");
+            try (var builder = new SequentialDictionaryBuilder(dir.toString(), PostingsFormat.DEFAULT, blockSize)) {
+                for (var term : terms) {
+                    builder.addToken(new Token(term, 1, 1));
+                }
+            }
+            var dict = new Dictionary(dir.toString(), 0);
+            long elementsBytes = Files.size(dir.resolve(Dictionary.DICTIONARY_FILE_NAME));
+            long termsBytes = Files.size(dir.resolve(Dictionary.TERMS_FILE_NAME));
+
+            for (int i = 0; i < WARMUP_COUNT; ++i) {
+                hashLookup(dict, queries);
+                blockSearch(dict, queries);
+                decode(dict, indices);
+            }
+            long hashNs = 0;
+            long blockNs = 0;
+            long decodeNs = 0;
+            for (int i = 0; i < REPEAT_COUNT; ++i) {
+                long start = System.nanoTime();
+                long hashFound = hashLookup(dict, queries);
+                hashNs += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                long blockFound = blockSearch(dict, queries);
+                blockNs += System.nanoTime() - start;
+                assert hashFound == blockFound : "All lookups should find the same terms";
+
+                start = System.nanoTime();
+                decode(dict, indices);
+                decodeNs += System.nanoTime() - start;
+            }
+
+            Utils.log("Block size %d: %.2f bytes of elements and %.2f bytes of terms per term, " +
+                            "lookup via hash %.0f ns, via binary search %.0f ns, decoding a term %.0f ns",
+                    blockSize, (double) elementsBytes / NUM_TERMS, (double) termsBytes / NUM_TERMS,
+                    (double) hashNs / REPEAT_COUNT / NUM_QUERIES, (double) blockNs / REPEAT_COUNT / NUM_QUERIES,
+                    (double) decodeNs / REPEAT_COUNT / NUM_QUERIES);
+            deleteDirectory(dir);
+        }
+    }
+
+    /** Each lookup method returns the sum of indices of the found terms */
+    private static long hashLookup(Dictionary dict, List<String> queries) {
+        long sum = 0;
+        for (var query : queries) {
+            sum += Math.max(-1, dict.getIndexOfToken(query));
+        }
+        return sum;
+    }
+
+    private static long blockSearch(Dictionary dict, List<String> queries) {
+        long sum = 0;
+        for (var query : queries) {
+            sum += Math.max(-1, dict.binarySearch(query.getBytes(Dictionary.TERMS_FILE_ENCODING)));
+        }
+        return sum;
+    }
+
+    private static long decode(Dictionary dict, int[] indices) {
+        long sum = 0;
+        for (int index : indices) {
+            sum += dict.getTerm(index).length();
+        }
+        return sum;
+    }
+
+    private static void deleteDirectory(Path dir) throws IOException {
+        try (var files = Files.list(dir)) {
+            for (var file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+}
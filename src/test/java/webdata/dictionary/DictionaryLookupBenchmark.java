@@ -0,0 +1,140 @@
+package webdata.dictionary;
+
+import webdata.Token;
+import webdata.Utils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.RandomAccess;
+import java.util.TreeSet;
+
+/** Compares the ways of looking up a term in the dictionary:
+ *  <ul>
+ *      <li>Binary search over all terms, decoding a string per probe (how lookups used to work)</li>
+ *      <li>Binary search over the block heads, followed by a scan of the block (see {@link BlockHeadIndex})</li>
+ *      <li>The term hash index (see {@link TermHashIndex}), used by {@link Dictionary#getIndexOfToken(String)}</li>
+ *  </ul>
+ *
+ *  Lives in the dictionary package (rather than {@code webdata.benchmark}) in order to access the different search
+ *  methods. Half of the queries are absent terms.
+ */
+public class DictionaryLookupBenchmark {
+
+    static final int NUM_TERMS = 1 << 19;
+    static final int NUM_QUERIES = 1 << 18;
+    static final int WARMUP_COUNT = 3;
+    static final int REPEAT_COUNT = 5;
+
+    /** Decodes a string per probe, like the dictionary's binary search once did */
+    static class DecodingTermList extends AbstractList<String> implements RandomAccess {
+        private final Dictionary dict;
+
+        DecodingTermList(Dictionary dict) {
+            this.dict = dict;
+        }
+
+        @Override
+        public String get(int index) {
+            return dict.getTerm(index);
+        }
+
+        @Override
+        public int size() {
+            return dict.getUniqueNumberOfTokens();
+        }
+    }
+
+    static String randomTerm(Random random) {
+        var sb = new StringBuilder();
+        int length = 3 + random.nextInt(8);
+        for (int i = 0; i < length; ++i) {
+            sb.append((char) ('a' + random.nextInt(12)));
+        }
+        return sb.toString();
+    }
+
+    public static void main(String[] args) throws IOException {
+        var random = new Random(42);
+        var terms = new TreeSet<String>();
+        while (terms.size() < NUM_TERMS) {
+            terms.add(randomTerm(random));
+        }
+        var dir = Files.createTempDirectory("dictionaryLookupBenchmark");
+        try (var builder = new SequentialDictionaryBuilder(dir.toString())) {
+            for (var term : terms) {
+                builder.addToken(new Token(term, 1, 1));
+            }
+        }
+
+        long start = System.nanoTime();
+        var dict = new Dictionary(dir.toString(), 0);
+        Utils.log("Opened a dictionary of %,d terms in %.1f ms", NUM_TERMS, (System.nanoTime() - start) / 1e6);
+
+        var termList = new ArrayList<>(terms);
+        List<String> queries = new ArrayList<>();
+        for (int i = 0; i < NUM_QUERIES; ++i) {
+            queries.add(i % 2 == 0 ? termList.get(random.nextInt(NUM_TERMS)) : randomTerm(random));
+        }
+        var decodingList = new DecodingTermList(dict);
+
+        for (int i = 0; i < WARMUP_COUNT; ++i) {
+            flatSearch(decodingList, queries);
+            blockSearch(dict, queries);
+            hashLookup(dict, queries);
+        }
+
+        long flatNs = 0;
+        long blockNs = 0;
+        long hashNs = 0;
+        for (int i = 0; i < REPEAT_COUNT; ++i) {
+            start = System.nanoTime();
+            long flatFound = flatSearch(decodingList, queries);
+            flatNs += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            long blockFound = blockSearch(dict, queries);
+            blockNs += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            long hashFound = hashLookup(dict, queries);
+            hashNs += System.nanoTime() - start;
+            assert flatFound == blockFound && blockFound == hashFound : "All lookups should find the same terms";
+        }
+
+        Utils.log("Binary search over decoded terms: %.0f ns per lookup", (double) flatNs / REPEAT_COUNT / NUM_QUERIES);
+        Utils.log("Block heads + block scan: %.0f ns per lookup", (double) blockNs / REPEAT_COUNT / NUM_QUERIES);
+        Utils.log("Term hash: %.0f ns per lookup", (double) hashNs / REPEAT_COUNT / NUM_QUERIES);
+        Utils.log("Block heads speedup: %.2fx, term hash speedup: %.2fx",
+                (double) flatNs / blockNs, (double) flatNs / hashNs);
+    }
+
+    /** Each method returns the sum of indices of the found terms */
+    private static long flatSearch(List<String> decodingList, List<String> queries) {
+        long sum = 0;
+        for (var query : queries) {
+            sum += Math.max(-1, Collections.binarySearch(decodingList, query));
+        }
+        return sum;
+    }
+
+    private static long blockSearch(Dictionary dict, List<String> queries) {
+        long sum = 0;
+        for (var query : queries) {
+            sum += Math.max(-1, dict.binarySearch(query.getBytes(Dictionary.TERMS_FILE_ENCODING)));
+        }
+        return sum;
+    }
+
+    private static long hashLookup(Dictionary dict, List<String> queries) {
+        long sum = 0;
+        for (var query : queries) {
+            sum += Math.max(-1, dict.getIndexOfToken(query));
+        }
+        return sum;
+    }
+}
@@ -2,9 +2,14 @@ package webdata.dictionary;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 import webdata.Token;
+import webdata.inverted_index.PostingsCursor;
+import webdata.inverted_index.PostingsFormat;
 import webdata.spimi.SPIMIIndexer;
 
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -109,6 +114,56 @@ public class DictionaryTest {
         assertIterableEquals(orderedElements, gottenOrdering);
     }
 
+    @Test
+    void canReadElementFieldsConcurrently() throws IOException {
+        var elements = CompactDictionaryElements.memoryMapped(tempDir.resolve(Dictionary.DICTIONARY_FILE_NAME),
+                dict.getUniqueNumberOfTokens(), dict.getBlockSize());
+        var expected = dict.stream().collect(Collectors.toList());
+        // absolute reads don't move any shared position, so readers don't interfere
+        IntStream.range(0, 10000).parallel().forEach(i -> {
+            int index = i % expected.size();
+            assertEquals(expected.get(index).getTokenFrequency(), elements.getTokenFrequency(index));
+            assertEquals(expected.get(index).getTokenCollectionFrequency(),
+                    elements.getTokenCollectionFrequency(index));
+            assertEquals(expected.get(index).getPostingsPointer(), elements.getPostingsPointer(index));
+            assertEquals(expected.get(index).getPostingsPointer(), elements.get(index).getPostingsPointer());
+        });
+
+        assertThrows(IOException.class, () -> CompactDictionaryElements.memoryMapped(
+                tempDir.resolve(Dictionary.DICTIONARY_FILE_NAME), dict.getUniqueNumberOfTokens() + 1,
+                dict.getBlockSize()));
+        assertThrows(IOException.class, () -> CompactDictionaryElements.memoryMapped(
+                tempDir.resolve(Dictionary.DICTIONARY_FILE_NAME), dict.getUniqueNumberOfTokens(),
+                dict.getBlockSize() + 1));
+    }
+
+    @Test
+    void compactElementsMatchPackedOnes() throws IOException {
+        var compact = CompactDictionaryElements.memoryMapped(tempDir.resolve(Dictionary.DICTIONARY_FILE_NAME),
+                dict.getUniqueNumberOfTokens(), dict.getBlockSize());
+        var packedPath = tempDir.resolve("packed-dictionary.bin");
+        try (var dos = new DataOutputStream(Files.newOutputStream(packedPath))) {
+            for (var element : compact) {
+                if (element instanceof FirstBlockElement) {
+                    ((FirstBlockElement) element).serialize(dos);
+                } else {
+                    ((OtherBlockElement) element).serialize(dos);
+                }
+            }
+        }
+        var packed = PackedDictionaryElements.memoryMapped(packedPath, compact.size(), compact.getBlockSize());
+        for (int i = 0; i < compact.size(); ++i) {
+            assertEquals(packed.getTokenFrequency(i), compact.getTokenFrequency(i));
+            assertEquals(packed.getTokenCollectionFrequency(i), compact.getTokenCollectionFrequency(i));
+            assertEquals(packed.getPostingsPointer(i), compact.getPostingsPointer(i));
+            assertEquals(packed.getPrefixLength(i), compact.getPrefixLength(i));
+            assertEquals(packed.getSuffixLength(i), compact.getSuffixLength(i));
+            assertEquals(packed.getBlockSuffixPos(i), compact.getBlockSuffixPos(i));
+        }
+        // the compact file is smaller, even though it includes the Elias-Fano sequences and footer
+        assertTrue(Files.size(tempDir.resolve(Dictionary.DICTIONARY_FILE_NAME)) < Files.size(packedPath));
+    }
+
     @Test
     void canPerformBinarySearchOnDictionary() {
         for (var termAndFreq: termAndDocumentFreq) {
@@ -122,6 +177,162 @@ public class DictionaryTest {
         }
     }
 
+    @Test
+    void cannotFindAbsentTerms() {
+        for (var term : List.of("", "a", "tes", "testing", "tests", "שר", "שרהה", "בג", "zzz")) {
+            assertTrue(dict.getIndexOfToken(term) < 0, "while checking " + term);
+        }
+    }
+
+    @Test
+    void canFindTermsWithMultiByteCharacters() throws IOException {
+        // sorted as UTF-16, which differs from the order of their UTF-8 encodings
+        var terms = new ArrayList<>(List.of("a", "ab", "é", "éa", "ש", "שא", "\uD7FF", "\uD83D\uDE00",
+                "\uD83D\uDE00a", "\uD83D\uDE01", "\uFFEE", "\uFFEEa"));
+        Collections.sort(terms);
+        var dir = Files.createTempDirectory("multiByteTerms");
+        try (var builder = new SequentialDictionaryBuilder(dir.toString())) {
+            for (var term : terms) {
+                builder.addToken(new Token(term, 1, 1));
+            }
+        }
+
+        for (boolean withHash : List.of(true, false)) {
+            if (!withHash) {
+                Files.delete(dir.resolve(Dictionary.TERM_HASH_FILE_NAME));
+            }
+            var multiByteDict = new Dictionary(dir.toString());
+            for (int i = 0; i < terms.size(); ++i) {
+                assertEquals(terms.get(i), multiByteDict.getTerm(i));
+                assertEquals(i, multiByteDict.getIndexOfToken(terms.get(i)), "while checking " + terms.get(i));
+            }
+            for (var absent : List.of("aa", "éb", "\uD83D\uDE02", "\uFFEF", "\uD7FEa")) {
+                assertTrue(multiByteDict.getIndexOfToken(absent) < 0, "while checking " + absent);
+            }
+        }
+    }
+
+    @Test
+    void binarySearchFindsInsertionPoints() {
+        var terms = Arrays.stream(termAndDocumentFreq).map(arr -> (String) arr[0]).sorted()
+                .collect(Collectors.toList());
+        var queries = new ArrayList<>(terms);
+        queries.addAll(List.of("", "a", "tes", "testing", "zzz", "בג", "בגנ", "גדלה", "שרה", "תמר", "\uFFEE"));
+        for (var query : queries) {
+            assertEquals(Collections.binarySearch(terms, query),
+                    dict.binarySearch(query.getBytes(Dictionary.TERMS_FILE_ENCODING)), "while checking " + query);
+        }
+    }
+
+    @Test
+    void canEnumerateTermsByPrefixAndRange() {
+        var terms = Arrays.stream(termAndDocumentFreq).map(arr -> (String) arr[0]).sorted()
+                .collect(Collectors.toList());
+        for (var prefix : List.of("", "ג", "גד", "ש", "שר", "test", "tests", "א", "ת")) {
+            var expected = terms.stream().filter(term -> term.startsWith(prefix)).collect(Collectors.toList());
+            var gotten = dict.indicesWithPrefix(prefix).mapToObj(dict::getTerm).collect(Collectors.toList());
+            assertIterableEquals(expected, gotten, "while checking " + prefix);
+        }
+
+        var inRange = dict.indicesInRange("גדל", "דגן").mapToObj(dict::getTerm).collect(Collectors.toList());
+        assertIterableEquals(List.of("גדל", "גידל", "גנן"), inRange);
+        assertEquals(0, dict.indicesInRange("שרה", "בגן").count());
+
+        var fromMiddle = StreamSupport.stream(dict.terms(3, 6), false)
+                .map(Map.Entry::getKey).collect(Collectors.toList());
+        assertIterableEquals(terms.subList(3, 6), fromMiddle);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 3, 16, 64})
+    void canUseAnyBlockSize(int blockSize) throws IOException {
+        var random = new Random(blockSize);
+        var termSet = new TreeSet<String>();
+        while (termSet.size() < 1000) {
+            var sb = new StringBuilder();
+            for (int i = random.nextInt(8); i >= 0; --i) {
+                sb.append("abcש".charAt(random.nextInt(4)));
+            }
+            termSet.add(sb.toString());
+        }
+        var terms = new ArrayList<>(termSet);
+        var dir = Files.createTempDirectory("blockSize" + blockSize);
+        try (var builder = new SequentialDictionaryBuilder(dir.toString(), PostingsFormat.DEFAULT, blockSize)) {
+            for (int i = 0; i < terms.size(); ++i) {
+                builder.addToken(new Token(terms.get(i), 1 + i % 7, 1 + i % 3));
+            }
+        }
+
+        for (boolean withHash : List.of(true, false)) {
+            if (!withHash) {
+                Files.delete(dir.resolve(Dictionary.TERM_HASH_FILE_NAME));
+            }
+            var blockDict = new Dictionary(dir.toString());
+            assertEquals(blockSize, blockDict.getBlockSize());
+            for (int i = 0; i < terms.size(); ++i) {
+                assertEquals(terms.get(i), blockDict.getTerm(i));
+                assertEquals(i, blockDict.getIndexOfToken(terms.get(i)), "while checking " + terms.get(i));
+                assertEquals(1 + i % 3, blockDict.getTokenCollectionFrequency(i));
+                assertIterableEquals(List.of(1 + i % 7, 1 + i % 3), Collections.list(blockDict.getDocIdsAndFreqs(i)));
+            }
+            assertTrue(blockDict.getIndexOfToken("d") < 0);
+            var enumerated = StreamSupport.stream(blockDict.terms(5, 700), false)
+                    .map(Map.Entry::getKey).collect(Collectors.toList());
+            assertIterableEquals(terms.subList(5, 700), enumerated);
+        }
+    }
+
+    @Test
+    void cannotBuildDictionaryWithEmptyBlocks() {
+        assertThrows(IllegalArgumentException.class, () ->
+                new SequentialDictionaryBuilder(tempDir.resolve("empty").toString(), PostingsFormat.DEFAULT, 0));
+    }
+
+    @Test
+    void canFindTermsWithinDistance() throws IOException {
+        // random terms over a small alphabet, so that many are close to each other
+        var random = new Random(1337);
+        var termSet = new TreeSet<String>();
+        while (termSet.size() < 3000) {
+            var sb = new StringBuilder();
+            for (int i = random.nextInt(9); i >= 0; --i) {
+                sb.append("abcdeש".charAt(random.nextInt(6)));
+            }
+            termSet.add(sb.toString());
+        }
+        var terms = new ArrayList<>(termSet);
+        var dir = Files.createTempDirectory("fuzzyTerms");
+        try (var builder = new SequentialDictionaryBuilder(dir.toString())) {
+            for (var term : terms) {
+                builder.addToken(new Token(term, 1, 1));
+            }
+        }
+
+        var queries = List.of("", "a", "abc", "bacd", "ddeea", "שab", "abcdeabcde", "eeeeeeeeeeee", "zz");
+        for (boolean withFst : List.of(true, false)) {
+            if (!withFst) {
+                Files.delete(dir.resolve(Dictionary.TERM_FST_FILE_NAME));
+            }
+            var fuzzyDict = new Dictionary(dir.toString());
+            for (var query : queries) {
+                for (int maxEdits = 0; maxEdits <= LevenshteinAutomaton.MAX_EDITS; ++maxEdits) {
+                    var automaton = new LevenshteinAutomaton(query, maxEdits);
+                    var expected = new ArrayList<List<Integer>>();
+                    for (int i = 0; i < terms.size(); ++i) {
+                        int distance = automaton.distance(terms.get(i));
+                        if (distance <= maxEdits) {
+                            expected.add(List.of(i, distance));
+                        }
+                    }
+                    var gotten = new ArrayList<List<Integer>>();
+                    fuzzyDict.forEachWithinDistance(query, maxEdits, (index, distance) ->
+                            gotten.add(List.of(index, distance)));
+                    assertIterableEquals(expected, gotten, "while checking " + query + " within " + maxEdits);
+                }
+            }
+        }
+    }
+
     @Test
     void canGetDocIdsAndFreqs() throws IOException {
         // checking a term which appears in two documents
@@ -148,6 +359,24 @@ public class DictionaryTest {
 
     }
 
+    @Test
+    void canGetPostingsCursor() {
+        var cursor = dict.getPostings(dict.getIndexOfToken("test"));
+        assertEquals(2, cursor.size());
+        assertEquals(0, cursor.docId());
+        assertEquals(1, cursor.nextDoc());
+        assertEquals(1, cursor.freq());
+        assertEquals(2, cursor.nextDoc());
+        assertEquals(1, cursor.freq());
+        assertEquals(PostingsCursor.NO_MORE_DOCS, cursor.nextDoc());
+        assertEquals(PostingsCursor.NO_MORE_DOCS, cursor.docId());
+
+        cursor = dict.getPostings(dict.getIndexOfToken("שרה"));
+        assertEquals(1, cursor.nextDoc());
+        assertEquals(4, cursor.freq());
+        assertEquals(PostingsCursor.NO_MORE_DOCS, cursor.nextDoc());
+    }
+
     @Test
     void canIterateTerms() {
         var split = dict.terms();
@@ -178,4 +407,316 @@ public class DictionaryTest {
         assertIterableEquals(expectedTerms, tokens);
     }
 
+    @Test
+    void canIterateTermsAndTokensInParallel() throws IOException {
+        var random = new Random(1337);
+        var termSet = new TreeSet<String>();
+        while (termSet.size() < 3000) {
+            termSet.add(Integer.toString(random.nextInt(1 << 20), 36));
+        }
+        var dir = Files.createTempDirectory("parallelTerms");
+        var expectedTokens = new ArrayList<Token>();
+        try (var builder = new SequentialDictionaryBuilder(dir.toString())) {
+            for (var term : termSet) {
+                // a few terms have long posting lists, so splitting by terms wouldn't balance the tokens
+                int numDocs = random.nextInt(50) == 0 ? 1 + random.nextInt(2000) : 1 + random.nextInt(3);
+                int docId = 0;
+                for (int i = 0; i < numDocs; ++i) {
+                    docId += 1 + random.nextInt(5);
+                    var token = new Token(term, docId, 1 + random.nextInt(4));
+                    builder.addToken(token);
+                    expectedTokens.add(token);
+                }
+            }
+        }
+        var bigDict = new Dictionary(dir.toString());
+
+        var sequentialTerms = StreamSupport.stream(bigDict.terms(), false).collect(Collectors.toList());
+        assertIterableEquals(termSet, sequentialTerms.stream().map(Map.Entry::getKey).collect(Collectors.toList()));
+        assertIterableEquals(sequentialTerms, StreamSupport.stream(bigDict.terms(), true).collect(Collectors.toList()));
+        assertIterableEquals(expectedTokens, StreamSupport.stream(bigDict.tokens(), true).collect(Collectors.toList()));
+
+        // terms are split at a block head, even after some were consumed
+        var terms = bigDict.terms();
+        terms.tryAdvance(entry -> {});
+        var termsPrefix = terms.trySplit();
+        assertNotNull(termsPrefix);
+        assertEquals(termSet.size() - 1, termsPrefix.estimateSize() + terms.estimateSize());
+        terms.tryAdvance(entry -> assertEquals(0, bigDict.getIndexOfToken(entry.getKey()) % bigDict.getBlockSize()));
+        assertEquals(termsPrefix.estimateSize(), StreamSupport.stream(termsPrefix, false).count());
+
+        // tokens are split by posting lists rather than terms, the rest of the current list belongs to the prefix
+        var tokens = bigDict.tokens();
+        assertTrue(tokens.hasCharacteristics(Spliterator.SIZED));
+        assertEquals(expectedTokens.size(), tokens.estimateSize());
+        tokens.tryAdvance(token -> {});
+        var tokensPrefix = tokens.trySplit();
+        assertNotNull(tokensPrefix);
+        var prefixTokens = StreamSupport.stream(tokensPrefix, false).collect(Collectors.toList());
+        var suffixTokens = StreamSupport.stream(tokens, false).collect(Collectors.toList());
+        assertIterableEquals(expectedTokens.subList(1, 1 + prefixTokens.size()), prefixTokens);
+        assertIterableEquals(expectedTokens.subList(1 + prefixTokens.size(), expectedTokens.size()), suffixTokens);
+        assertTrue(Math.abs(prefixTokens.size() - suffixTokens.size()) < expectedTokens.size() / 4,
+                prefixTokens.size() + " tokens before the split, " + suffixTokens.size() + " after it");
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 3, 4})
+    void canAppendSegments(int blockSize) throws IOException {
+        var random = new Random(blockSize);
+        var termSet = new TreeSet<String>();
+        while (termSet.size() < 500) {
+            termSet.add(Integer.toString(random.nextInt(1 << 20), 36));
+        }
+        var terms = new ArrayList<>(termSet);
+        for (var format : List.of(PostingsFormat.DEFAULT, PostingsFormat.DEFAULT.withPositions())) {
+            var expectedTokens = new ArrayList<Token>();
+            for (int i = 0; i < terms.size(); ++i) {
+                int docId = 0;
+                for (int j = random.nextInt(40) == 0 ? 300 : 1 + random.nextInt(3); j > 0; --j) {
+                    docId += 1 + random.nextInt(5);
+                    int freq = 1 + random.nextInt(3);
+                    int[] positions = format.hasPositions() ? IntStream.range(0, freq).map(p -> 2 * p).toArray() : null;
+                    expectedTokens.add(new Token(terms.get(i), docId, freq, positions));
+                }
+            }
+            // segments whose number of terms isn't divisible by the block size, the middle one empty
+            var segmentBounds = new int[]{0, 101, 101, 333, terms.size()};
+            var dir = Files.createTempDirectory("appendSegments");
+            try (var builder = new SequentialDictionaryBuilder(dir.toString(), format, blockSize)) {
+                for (int s = 0; s + 1 < segmentBounds.length; ++s) {
+                    var segmentDir = dir.resolve("segment" + s);
+                    var fromTerm = terms.get(segmentBounds[s]);
+                    var toTerm = segmentBounds[s + 1] < terms.size() ? terms.get(segmentBounds[s + 1]) : null;
+                    try (var segmentBuilder = new SequentialDictionaryBuilder(segmentDir.toString(), format, 2)) {
+                        for (var token : expectedTokens) {
+                            if (token.getTerm().compareTo(fromTerm) >= 0
+                                    && (toTerm == null || token.getTerm().compareTo(toTerm) < 0)) {
+                                segmentBuilder.addToken(token);
+                            }
+                        }
+                    }
+                    if (segmentBounds[s + 1] > segmentBounds[s]) {
+                        builder.appendSegment(new Dictionary(segmentDir.toString()));
+                    }
+                }
+            }
+
+            var merged = new Dictionary(dir.toString());
+            assertEquals(terms.size(), merged.getUniqueNumberOfTokens());
+            assertEquals(expectedTokens.stream().mapToInt(Token::getDocFrequency).sum(),
+                    merged.getTotalNumberOfTokens());
+            for (int i = 0; i < terms.size(); ++i) {
+                assertEquals(i, merged.getIndexOfToken(terms.get(i)));
+                assertEquals(i, merged.getRankOfToken(terms.get(i)));
+            }
+            assertIterableEquals(expectedTokens, StreamSupport.stream(merged.tokens(), false)
+                    .collect(Collectors.toList()));
+
+            // the appended terms must follow the previous ones
+            var outOfOrderDir = Files.createTempDirectory("appendSegments");
+            try (var builder = new SequentialDictionaryBuilder(outOfOrderDir.toString(), format, blockSize)) {
+                builder.addToken(expectedTokens.get(expectedTokens.size() - 1));
+                assertThrows(IllegalArgumentException.class, () -> builder.appendSegment(merged));
+            }
+        }
+    }
+
+    @Test
+    void appendedPostingsMatchAddedOnes() throws IOException {
+        var formats = List.of(PostingsFormat.DEFAULT, PostingsFormat.DEFAULT.withPositions(),
+                PostingsFormat.PFOR.withPositions(), PostingsFormat.LEGACY,
+                new PostingsFormat(128, PostingsFormat.Codec.GROUP_VARINT, true, false));
+        // the lengths of the appended lists, so that they're either aligned with the blocks of the list or not
+        var listLengths = List.of(List.of(1, 1), List.of(128, 128), List.of(100, 200, 28), List.of(300, 300),
+                List.of(200, 1, 129), List.of(256, 5), List.of(300, 300, 300), List.of(130, 400));
+        // the lengths for which the appended lists contain short blocks, as a full block of a list is copied after
+        // entries of the previous one
+        var withShortBlocks = Set.of(List.of(300, 300), List.of(300, 300, 300), List.of(130, 400));
+        var random = new Random(7);
+        for (var format : formats) {
+            for (var lengths : listLengths) {
+                var sources = new ArrayList<Dictionary>();
+                var tokens = new ArrayList<Token>();
+                int docId = 0;
+                for (int length : lengths) {
+                    var sourceTokens = new ArrayList<Token>();
+                    for (var term : List.of("a", "b")) {
+                        for (int i = 0; i < length; ++i) {
+                            int freq = 1 + random.nextInt(i % 50 == 0 ? 100 : 3);
+                            int[] positions = format.hasPositions()
+                                    ? IntStream.range(0, freq).map(p -> 3 * p + 1).toArray() : null;
+                            sourceTokens.add(new Token(term, docId + 1 + 2 * i, freq, positions));
+                        }
+                    }
+                    docId += 2 * length;
+                    var sourceDir = Files.createTempDirectory("appendPostings");
+                    try (var builder = new SequentialDictionaryBuilder(sourceDir.toString(), format)) {
+                        for (var token : sourceTokens) {
+                            builder.addToken(token);
+                        }
+                    }
+                    sources.add(new Dictionary(sourceDir.toString()));
+                    tokens.addAll(sourceTokens);
+                }
+                tokens.sort(Comparator.comparing(Token::getTerm).thenComparing(Token::getDocID));
+
+                var addedDir = Files.createTempDirectory("appendPostings");
+                try (var builder = new SequentialDictionaryBuilder(addedDir.toString(), format)) {
+                    for (var token : tokens) {
+                        builder.addToken(token);
+                    }
+                }
+                var appendedDir = Files.createTempDirectory("appendPostings");
+                try (var builder = new SequentialDictionaryBuilder(appendedDir.toString(), format)) {
+                    for (int index = 0; index < 2; ++index) {
+                        builder.beginTerm(index == 0 ? "a" : "b");
+                        for (var source : sources) {
+                            builder.appendPostings(source.getEncodedPostings(index));
+                        }
+                    }
+                    // the appended lists must follow those added so far
+                    assertThrows(IllegalArgumentException.class,
+                            () -> builder.appendPostings(sources.get(0).getEncodedPostings(1)));
+                }
+
+                var appended = new Dictionary(appendedDir.toString());
+                assertIterableEquals(tokens, StreamSupport.stream(appended.tokens(), false)
+                        .collect(Collectors.toList()));
+                assertEquals(tokens.stream().mapToInt(Token::getDocFrequency).sum(),
+                        appended.getTotalNumberOfTokens());
+                // unless there are short blocks, the lists are encoded exactly as if added entry by entry
+                var addedPostings = Files.readAllBytes(addedDir.resolve(Dictionary.POSTINGS_FILE_NAME));
+                var appendedPostings = Files.readAllBytes(appendedDir.resolve(Dictionary.POSTINGS_FILE_NAME));
+                if (withShortBlocks.contains(lengths) && format.hasSkips()) {
+                    assertFalse(Arrays.equals(addedPostings, appendedPostings), format + " " + lengths);
+                } else {
+                    assertArrayEquals(addedPostings, appendedPostings, format + " " + lengths);
+                }
+                if (format.hasPositions()) {
+                    assertArrayEquals(Files.readAllBytes(addedDir.resolve(Dictionary.POSITIONS_FILE_NAME)),
+                            Files.readAllBytes(appendedDir.resolve(Dictionary.POSITIONS_FILE_NAME)));
+                }
+
+                // skipping over the appended lists finds the same entries, within blocks bounding their frequencies
+                var added = new Dictionary(addedDir.toString());
+                for (int index = 0; index < 2; ++index) {
+                    assertEquals(docId - 1, appended.getEncodedPostings(index).lastDocId());
+                    var appendedCursor = appended.getPostings(index);
+                    var addedCursor = added.getPostings(index);
+                    for (int target = 1; target <= docId + 1; target += 1 + random.nextInt(40)) {
+                        int blockEnd = appendedCursor.advanceShallow(target);
+                        int doc = appendedCursor.advance(target);
+                        assertEquals(addedCursor.advance(target), doc, format + " " + lengths);
+                        if (doc != PostingsCursor.NO_MORE_DOCS) {
+                            assertEquals(addedCursor.freq(), appendedCursor.freq());
+                            assertTrue(doc <= blockEnd && appendedCursor.freq() <= appendedCursor.blockMaxFreq(),
+                                    format + " " + lengths + " " + target);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void samplesPostingsSizes() throws IOException {
+        var dir = Files.createTempDirectory("samplePostings");
+        try (var builder = new SequentialDictionaryBuilder(dir.toString())) {
+            for (int i = 0; i < 1000; ++i) {
+                for (int docId = 1; docId <= 1 + i % 10; ++docId) {
+                    builder.addToken(new Token(String.format("term%04d", i), docId, 1));
+                }
+            }
+        }
+        var sampledDict = new Dictionary(dir.toString());
+        var samples = sampledDict.samplePostingsSizes(10);
+        assertTrue(samples.size() <= 10 && samples.size() >= 5, "got " + samples.size() + " samples");
+        assertEquals("term0000", samples.get(0).getKey());
+        for (int i = 1; i < samples.size(); ++i) {
+            assertTrue(samples.get(i - 1).getKey().compareTo(samples.get(i).getKey()) < 0);
+            assertEquals(0, sampledDict.getIndexOfToken(samples.get(i).getKey()) % sampledDict.getBlockSize());
+        }
+        assertEquals(Files.size(dir.resolve(Dictionary.POSTINGS_FILE_NAME)),
+                samples.stream().mapToLong(Map.Entry::getValue).sum());
+        assertTrue(dict.samplePostingsSizes(0).isEmpty());
+    }
+
+    @Test
+    void cachesPostings() throws IOException {
+        int ix = dict.getIndexOfToken("test");
+        var cache = dict.getPostingsCache();
+        for (int i = 0; i < 3; ++i) {
+            var it = dict.getDocIdsAndFreqs(ix).asIterator();
+            Iterable<Integer> iterable = () -> it;
+            assertIterableEquals(List.of(1, 1, 2, 1), iterable);
+        }
+        assertEquals(1, cache.getMisses());
+        assertEquals(2, cache.getHits());
+
+        // iterating tokens doesn't go through the cache
+        StreamSupport.stream(dict.tokens(), false).count();
+        assertEquals(3, cache.getHits() + cache.getMisses());
+
+        var uncached = new Dictionary(tempDir.toString(), 0);
+        var it = uncached.getDocIdsAndFreqs(ix).asIterator();
+        Iterable<Integer> iterable = () -> it;
+        assertIterableEquals(List.of(1, 1, 2, 1), iterable);
+        assertEquals(0, uncached.getPostingsCache().getNumEntries());
+    }
+
+    @Test
+    void canBuildWithoutLookupIndices() throws IOException {
+        var dir = Files.createTempDirectory("noLookupIndices");
+        // stale lookup files of a previous dictionary in the directory must not be used
+        try (var builder = new SequentialDictionaryBuilder(dir.toString())) {
+            builder.addToken(new Token("stale", 1, 1));
+        }
+        var terms = List.of("apple", "apricot", "banana", "cherry", "date", "fig");
+        try (var builder = new SequentialDictionaryBuilder(dir.toString(), PostingsFormat.DEFAULT,
+                Dictionary.DEFAULT_BLOCK_SIZE, false)) {
+            for (int i = 0; i < terms.size(); ++i) {
+                builder.addToken(new Token(terms.get(i), i + 1, 1));
+            }
+        }
+        assertFalse(Files.exists(dir.resolve(Dictionary.TERM_HASH_FILE_NAME)));
+        assertFalse(Files.exists(dir.resolve(Dictionary.TERM_FILTER_FILE_NAME)));
+        assertFalse(Files.exists(dir.resolve(Dictionary.TERM_FST_FILE_NAME)));
+
+        var plainDict = new Dictionary(dir.toString());
+        assertNull(plainDict.getTermFilter());
+        for (int i = 0; i < terms.size(); ++i) {
+            assertEquals(i, plainDict.getIndexOfToken(terms.get(i)));
+        }
+        assertTrue(plainDict.getIndexOfToken("stale") < 0);
+        assertArrayEquals(new int[]{0, 2}, plainDict.prefixRange("ap"));
+        assertEquals(3, plainDict.getRankOfToken("c"));
+    }
+
+    @Test
+    void skippingPostingsBypassCache() throws IOException {
+        var dir = Files.createTempDirectory("skippingPostings");
+        int numDocs = 10 * PostingsFormat.DEFAULT_SKIP_INTERVAL;
+        try (var builder = new SequentialDictionaryBuilder(dir.toString())) {
+            for (int docId = 1; docId <= numDocs; ++docId) {
+                builder.addToken(new Token("common", docId, 1 + docId % 7));
+            }
+        }
+        var cachedDict = new Dictionary(dir.toString());
+        assertTrue(cachedDict.getPostingsCache().getMaxBytes() > 0);
+        int ix = cachedDict.getIndexOfToken("common");
+
+        // reading the whole list caches it
+        assertEquals(2 * numDocs, Collections.list(cachedDict.getDocIdsAndFreqs(ix)).size());
+        assertEquals(1, cachedDict.getPostingsCache().getNumEntries());
+
+        var postings = cachedDict.getPostings(ix);
+        int blockEnd = postings.advanceShallow(1);
+        assertTrue(blockEnd < numDocs, "the first block should end before the list does, got " + blockEnd);
+        assertEquals(7, postings.blockMaxFreq());
+        assertEquals(numDocs - 5, postings.advance(numDocs - 5));
+        assertEquals(1 + (numDocs - 5) % 7, postings.freq());
+        assertEquals(0, cachedDict.getPostingsCache().getHits());
+    }
+
 }
@@ -0,0 +1,66 @@
+package webdata.dictionary;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LevenshteinAutomatonTest {
+
+    /** The textbook dynamic programming algorithm(optimal string alignment distance) */
+    private static int referenceDistance(String a, String b) {
+        int[][] d = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); ++i) {
+            for (int j = 0; j <= b.length(); ++j) {
+                if (i == 0 || j == 0) {
+                    d[i][j] = i + j;
+                    continue;
+                }
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                d[i][j] = Math.min(d[i - 1][j - 1] + cost, Math.min(d[i - 1][j], d[i][j - 1]) + 1);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    d[i][j] = Math.min(d[i][j], d[i - 2][j - 2] + 1);
+                }
+            }
+        }
+        return d[a.length()][b.length()];
+    }
+
+    private static String randomString(Random random) {
+        var sb = new StringBuilder();
+        for (int i = random.nextInt(8); i > 0; --i) {
+            sb.append((char) ('a' + random.nextInt(4)));
+        }
+        return sb.toString();
+    }
+
+    @Test
+    void agreesWithDynamicProgramming() {
+        var random = new Random(42);
+        for (int iter = 0; iter < 20000; ++iter) {
+            var term = randomString(random);
+            var other = randomString(random);
+            int maxEdits = random.nextInt(LevenshteinAutomaton.MAX_EDITS + 1);
+            var automaton = new LevenshteinAutomaton(term, maxEdits);
+            assertEquals(Math.min(maxEdits + 1, referenceDistance(other, term)), automaton.distance(other),
+                    "distance between " + term + " and " + other + " within " + maxEdits);
+        }
+    }
+
+    @Test
+    void countsTranspositionsAsSingleEdits() {
+        var automaton = new LevenshteinAutomaton("received", 1);
+        assertEquals(1, automaton.distance("recieved"));
+        assertEquals(1, automaton.distance("receivd"));
+        assertEquals(0, automaton.distance("received"));
+        assertEquals(2, automaton.distance("recievd"));
+        assertEquals(2, automaton.distance("delicious"));
+    }
+
+    @Test
+    void rejectsUnsupportedDistances() {
+        assertThrows(IllegalArgumentException.class, () -> new LevenshteinAutomaton("term", -1));
+        assertThrows(IllegalArgumentException.class, () -> new LevenshteinAutomaton("term", 3));
+    }
+}
@@ -1,9 +1,11 @@
 package webdata.dictionary;
 
 import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 import webdata.inverted_index.PostingListReader;
 import webdata.inverted_index.PostingListWriter;
+import webdata.inverted_index.PostingsFormat;
 
 import java.io.*;
 import java.nio.file.Files;
@@ -18,7 +20,7 @@ import static org.junit.jupiter.api.Assertions.*;
 public class PostingListsTest {
 
 
-    static Stream<Map<String, List<Integer[]>>> produceParameters() {
+    static Stream<Arguments> produceParameters() {
         var map1 = new HashMap<String, List<Integer[]>>();
         var abcList = new ArrayList<Integer[]>();
         abcList.add(new Integer[] { 1337, 50 });
@@ -40,24 +42,29 @@ public class PostingListsTest {
         zzzList.add(new Integer[] { 1, 10});
         map1.put("zzz", zzzList);
 
-        return Stream.of(map1);
+        return Stream.of(PostingsFormat.LEGACY, new PostingsFormat(2), new PostingsFormat(4), PostingsFormat.DEFAULT,
+                        new PostingsFormat(2, PostingsFormat.Codec.PFOR), PostingsFormat.PFOR,
+                        new PostingsFormat(2, PostingsFormat.Codec.GROUP_VARINT, true),
+                        new PostingsFormat(PostingsFormat.DEFAULT_SKIP_INTERVAL, PostingsFormat.Codec.GROUP_VARINT, true),
+                        new PostingsFormat(2, PostingsFormat.Codec.GROUP_VARINT, false, true))
+                .map(format -> Arguments.of(map1, format));
     }
 
 
     @ParameterizedTest
     @MethodSource("produceParameters")
-    void canEncodeAndDecode(Map<String, List<Integer[]>> docIds) throws IOException {
-        ensureCanEncodeAndDecode(docIds);
+    void canEncodeAndDecode(Map<String, List<Integer[]>> docIds, PostingsFormat format) throws IOException {
+        ensureCanEncodeAndDecode(docIds, format);
     }
 
-    void ensureCanEncodeAndDecode(Map<String, List<Integer[]>> docIds) throws IOException {
+    void ensureCanEncodeAndDecode(Map<String, List<Integer[]>> docIds, PostingsFormat format) throws IOException {
 
         var file = Files.createTempFile("postingListTests", String.format("%d", docIds.hashCode()));
 
         var fileOs = new FileOutputStream(file.toString(), false);
         var bufOs = new BufferedOutputStream(fileOs);
 
-        var writer = new PostingListWriter(bufOs);
+        var writer = new PostingListWriter(bufOs, format);
 
         Map<String, Long> termToPostingPtr = new HashMap<>();
 
@@ -71,7 +78,7 @@ public class PostingListsTest {
 
         writer.close();
 
-        var reader = new PostingListReader(file.toString());
+        var reader = new PostingListReader(file.toString(), format);
 
         for (var entry: docIds.entrySet()) {
             var pointer = termToPostingPtr.get(entry.getKey());
@@ -0,0 +1,107 @@
+package webdata.dictionary;
+
+import org.junit.jupiter.api.Test;
+import webdata.inverted_index.ArrayPostingsCursor;
+import webdata.inverted_index.PostingsCursor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PostingsCacheTest {
+
+    /** A posting list of given length for the term at given index */
+    static PostingsCursor postingsOf(int index, int length) {
+        var docIds = IntStream.rangeClosed(1, length).map(i -> i * (index + 1)).toArray();
+        var freqs = IntStream.rangeClosed(1, length).map(i -> index + i).toArray();
+        return new ArrayPostingsCursor(docIds, freqs);
+    }
+
+    static List<Integer> readAll(PostingsCursor cursor) {
+        var res = new ArrayList<Integer>();
+        for (int docId = cursor.nextDoc(); docId != PostingsCursor.NO_MORE_DOCS; docId = cursor.nextDoc()) {
+            res.add(docId);
+            res.add(cursor.freq());
+        }
+        return res;
+    }
+
+    @Test
+    void cachesDecodedPostings() {
+        var cache = new PostingsCache(1024 * 1024);
+        var loads = new AtomicInteger();
+        for (int round = 0; round < 3; ++round) {
+            for (int index = 0; index < 10; ++index) {
+                var cursor = cache.get(index, ix -> {
+                    loads.incrementAndGet();
+                    return postingsOf(ix, 20);
+                });
+                assertEquals(20, cursor.size());
+                assertIterableEquals(readAll(postingsOf(index, 20)), readAll(cursor));
+            }
+        }
+        assertEquals(10, loads.get());
+        assertEquals(10, cache.getMisses());
+        assertEquals(20, cache.getHits());
+        assertEquals(10, cache.getNumEntries());
+        assertEquals(10 * (PostingsCache.ENTRY_OVERHEAD_BYTES + 2 * 4 * 20), cache.getSizeInBytes());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() {
+        long entrySize = PostingsCache.ENTRY_OVERHEAD_BYTES + 2 * 4 * 10;
+        var cache = new PostingsCache(3 * entrySize);
+        cache.get(0, ix -> postingsOf(ix, 10));
+        cache.get(1, ix -> postingsOf(ix, 10));
+        cache.get(2, ix -> postingsOf(ix, 10));
+        // 0 becomes more recently used than 1
+        cache.get(0, ix -> fail("Should've been cached"));
+        cache.get(3, ix -> postingsOf(ix, 10));
+
+        assertEquals(3, cache.getNumEntries());
+        assertTrue(cache.getSizeInBytes() <= cache.getMaxBytes());
+        cache.get(0, ix -> fail("Should've been cached"));
+        cache.get(2, ix -> fail("Should've been cached"));
+        cache.get(3, ix -> fail("Should've been cached"));
+
+        var reloaded = new AtomicInteger();
+        cache.get(1, ix -> {
+            reloaded.incrementAndGet();
+            return postingsOf(ix, 10);
+        });
+        assertEquals(1, reloaded.get());
+    }
+
+    @Test
+    void doesntCacheListsBiggerThanBudget() {
+        var cache = new PostingsCache(PostingsCache.ENTRY_OVERHEAD_BYTES + 2 * 4 * 10);
+        var cursor = cache.get(0, ix -> postingsOf(ix, 11));
+        assertIterableEquals(readAll(postingsOf(0, 11)), readAll(cursor));
+        assertEquals(0, cache.getNumEntries());
+        assertEquals(0, cache.getSizeInBytes());
+
+        var disabled = new PostingsCache(0);
+        disabled.get(0, ix -> postingsOf(ix, 1));
+        assertEquals(0, disabled.getNumEntries());
+
+        assertThrows(IllegalArgumentException.class, () -> new PostingsCache(-1));
+    }
+
+    @Test
+    void canBeUsedConcurrently() {
+        long entrySize = PostingsCache.ENTRY_OVERHEAD_BYTES + 2 * 4 * 50;
+        var cache = new PostingsCache(20 * entrySize);
+        int numLookups = 10000;
+        IntStream.range(0, numLookups).parallel().forEach(i -> {
+            int index = i % 40;
+            var cursor = cache.get(index, ix -> postingsOf(ix, 50));
+            assertIterableEquals(readAll(postingsOf(index, 50)), readAll(cursor));
+        });
+        assertEquals(numLookups, cache.getHits() + cache.getMisses());
+        assertTrue(cache.getNumEntries() <= 20);
+        assertEquals(cache.getNumEntries() * entrySize, cache.getSizeInBytes());
+    }
+}
@@ -0,0 +1,81 @@
+package webdata.dictionary;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import webdata.Token;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TermBloomFilterTest {
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 5, 100, 12345})
+    void containsEveryTerm(int numTerms) throws IOException {
+        var hashes = TermHashIndexTest.hashesOf(numTerms);
+        var filter = TermBloomFilter.build(hashes, numTerms);
+
+        var os = new ByteArrayOutputStream();
+        filter.serialize(new DataOutputStream(os));
+        var deserialized = TermBloomFilter.deserialize(new DataInputStream(new ByteArrayInputStream(os.toByteArray())));
+        assertEquals(filter.getSizeInBytes(), deserialized.getSizeInBytes());
+
+        for (int i = 0; i < numTerms; ++i) {
+            assertTrue(filter.mightContain(hashes[i]));
+            assertTrue(deserialized.mightContain(hashes[i]));
+        }
+        assertEquals(0, filter.getRejected());
+    }
+
+    @Test
+    void rejectsMostAbsentTerms() {
+        int numTerms = 100000;
+        var filter = TermBloomFilter.build(TermHashIndexTest.hashesOf(numTerms), numTerms);
+        long numPassed = IntStream.range(0, 100000)
+                .filter(i -> filter.mightContain(TermHashIndex.hash("absent" + i)))
+                .count();
+        // about 1% are expected to pass
+        assertTrue(numPassed < 1500, "got " + numPassed + " false positives");
+        assertEquals(100000 - numPassed, filter.getRejected());
+        assertTrue(filter.getExpectedFalsePositiveRate() > 0.005 && filter.getExpectedFalsePositiveRate() < 0.015,
+                "expected rate " + filter.getExpectedFalsePositiveRate());
+        assertTrue(filter.getSizeInBytes() <= numTerms * TermBloomFilter.BITS_PER_TERM / 8 + 64);
+    }
+
+    @Test
+    void dictionaryCountsFalsePositives() throws IOException {
+        var dir = Files.createTempDirectory("termFilter");
+        try (var builder = new SequentialDictionaryBuilder(dir.toString())) {
+            for (int i = 0; i < 1000; ++i) {
+                builder.addToken(new Token(String.format("term%04d", i), 1, 1));
+            }
+        }
+        var dict = new Dictionary(dir.toString());
+        var filter = dict.getTermFilter();
+        assertNotNull(filter);
+        for (int i = 0; i < 1000; ++i) {
+            assertEquals(i, dict.getIndexOfToken(String.format("term%04d", i)));
+        }
+        for (int i = 0; i < 1000; ++i) {
+            assertTrue(dict.getIndexOfToken("absent" + i) < 0);
+        }
+        assertEquals(1000, filter.getRejected() + filter.getFalsePositives());
+        assertEquals(filter.getFalsePositives() / 1000.0, filter.getObservedFalsePositiveRate());
+        assertTrue(filter.getObservedFalsePositiveRate() < 0.05);
+
+        // dictionaries without a filter still find terms
+        Files.delete(dir.resolve(Dictionary.TERM_FILTER_FILE_NAME));
+        var unfiltered = new Dictionary(dir.toString());
+        assertNull(unfiltered.getTermFilter());
+        assertEquals(7, unfiltered.getIndexOfToken("term0007"));
+        assertTrue(unfiltered.getIndexOfToken("absent") < 0);
+    }
+}
@@ -0,0 +1,86 @@
+package webdata.dictionary;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TermFstTest {
+
+    static TermFst build(List<String> terms) throws IOException {
+        var builder = new TermFstBuilder();
+        terms.forEach(builder::add);
+        var path = Files.createTempFile("terms", ".fst");
+        try (var dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path.toString())))) {
+            builder.finish(dos);
+        }
+        return TermFst.memoryMapped(path);
+    }
+
+    @Test
+    void canLookupAndRankTerms() throws IOException {
+        var terms = List.of("battery", "batteries", "bat", "cat", "catalog", "dog", "שרה", "שרון", "😀");
+        terms = new ArrayList<>(terms);
+        Collections.sort(terms);
+        var fst = build(terms);
+        assertEquals(terms.size(), fst.size());
+        for (int i = 0; i < terms.size(); ++i) {
+            assertEquals(i, fst.lookup(terms.get(i)));
+            assertEquals(i, fst.rank(terms.get(i)));
+        }
+        for (var absent : List.of("", "ba", "batt", "cats", "zebra", "ש", "a")) {
+            assertEquals(-1, fst.lookup(absent));
+            int expectedRank = -Collections.binarySearch(terms, absent) - 1;
+            assertEquals(expectedRank, fst.rank(absent), "while checking " + absent);
+        }
+    }
+
+    @Test
+    void canFindPrefixRanges() throws IOException {
+        var random = new Random(7);
+        var termSet = new TreeSet<String>();
+        while (termSet.size() < 2000) {
+            var sb = new StringBuilder();
+            int length = 1 + random.nextInt(6);
+            for (int i = 0; i < length; ++i) {
+                sb.append((char) ('a' + random.nextInt(5)));
+            }
+            termSet.add(sb.toString());
+        }
+        var terms = new ArrayList<>(termSet);
+        var fst = build(terms);
+
+        for (var prefix : List.of("", "a", "ab", "abc", "eeee", "eeeee", "f", "ca")) {
+            int from = (int) terms.stream().filter(t -> t.compareTo(prefix) < 0).count();
+            int count = (int) terms.stream().filter(t -> t.startsWith(prefix)).count();
+            assertArrayEquals(new int[]{from, from + count}, fst.prefixRange(prefix), "while checking " + prefix);
+        }
+    }
+
+    @Test
+    void emptyFst() throws IOException {
+        var fst = build(List.of());
+        assertEquals(0, fst.size());
+        assertEquals(-1, fst.lookup("a"));
+        assertEquals(0, fst.rank("a"));
+        assertArrayEquals(new int[]{0, 0}, fst.prefixRange("a"));
+    }
+
+    @Test
+    void rejectsUnorderedTerms() {
+        var builder = new TermFstBuilder();
+        builder.add("b");
+        assertThrows(IllegalArgumentException.class, () -> builder.add("a"));
+        assertThrows(IllegalArgumentException.class, () -> builder.add("b"));
+    }
+}
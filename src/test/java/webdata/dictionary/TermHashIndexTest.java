@@ -0,0 +1,56 @@
+package webdata.dictionary;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TermHashIndexTest {
+
+    static long[] hashesOf(int numTerms) {
+        return IntStream.range(0, numTerms)
+                .mapToLong(i -> TermHashIndex.hash("term" + i))
+                .toArray();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 2, 3, 4, 5, 100, 12345})
+    void mapsEveryTermToItsIndex(int numTerms) throws IOException {
+        var hashes = hashesOf(numTerms);
+        var index = TermHashIndex.build(hashes, numTerms);
+        assertEquals(numTerms, index.size());
+
+        var os = new ByteArrayOutputStream();
+        index.serialize(new DataOutputStream(os));
+        var deserialized = TermHashIndex.deserialize(new DataInputStream(new ByteArrayInputStream(os.toByteArray())));
+
+        for (int i = 0; i < numTerms; ++i) {
+            assertEquals(i, index.lookup(hashes[i]));
+            assertEquals(i, deserialized.lookup(hashes[i]));
+        }
+    }
+
+    @Test
+    void fingerprintsFilterMostAbsentTerms() {
+        int numTerms = 10000;
+        var index = TermHashIndex.build(hashesOf(numTerms), numTerms);
+        long numFalsePositives = IntStream.range(0, 100000)
+                .filter(i -> index.lookup(TermHashIndex.hash("absent" + i)) >= 0)
+                .count();
+        // fingerprints are 16 bits, so we expect about 100000/65536 false positives
+        assertTrue(numFalsePositives < 20, "got " + numFalsePositives + " false positives");
+    }
+
+    @Test
+    void rejectsEqualHashes() {
+        assertThrows(IllegalArgumentException.class, () -> TermHashIndex.build(new long[]{1, 2, 1}, 3));
+    }
+}
@@ -0,0 +1,276 @@
+package webdata.inverted_index;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PostingListReaderTest {
+
+    @Test
+    void memoryMappedReaderSplitsFileIntoChunks() throws IOException {
+        var file = Files.createTempFile("postingListReaderTest", ".bin");
+
+        int numTerms = 50;
+        var pointers = new ArrayList<Long>();
+        try (var writer = new PostingListWriter(new BufferedOutputStream(new FileOutputStream(file.toString(), false)))) {
+            for (int term = 1; term <= numTerms; ++term) {
+                pointers.add(writer.startTerm("term" + term));
+                for (int docId = 1; docId <= term; ++docId) {
+                    writer.add(docId * 1000, term);
+                }
+            }
+        }
+
+        // use a tiny chunk size, so that the file is split into many mappings
+        var reader = PostingListReader.memoryMapped(file.toString(), PostingsFormat.LEGACY,
+                pointers.stream().mapToLong(Long::longValue).iterator(), 256);
+        var streamReader = new PostingListReader(file.toString());
+        assertTrue(reader.isMemoryMapped());
+        assertFalse(streamReader.isMemoryMapped());
+
+        for (int term = 1; term <= numTerms; ++term) {
+            var expected = new ArrayList<Integer>();
+            for (int docId = 1; docId <= term; ++docId) {
+                expected.add(docId * 1000);
+                expected.add(term);
+            }
+            var mapped = reader.readDocIdFreqPairs(pointers.get(term - 1), term);
+            var streamed = streamReader.readDocIdFreqPairs(pointers.get(term - 1), term);
+            assertIterableEquals(expected, toList(mapped.asIterator()));
+            assertIterableEquals(expected, toList(streamed.asIterator()));
+        }
+
+        Files.delete(file);
+    }
+
+    @Test
+    void memoryMappedReaderRejectsTooBigPostingLists() throws IOException {
+        var file = Files.createTempFile("postingListReaderTest", ".bin");
+        Files.write(file, new byte[100]);
+
+        assertThrows(IOException.class, () -> PostingListReader.memoryMapped(file.toString(), PostingsFormat.LEGACY,
+                LongStream.of(0, 90).iterator(), 64));
+
+        Files.delete(file);
+    }
+
+    static Stream<PostingsFormat> formats() {
+        return Stream.of(PostingsFormat.LEGACY, new PostingsFormat(2), new PostingsFormat(4), PostingsFormat.DEFAULT,
+                new PostingsFormat(4, PostingsFormat.Codec.PFOR), PostingsFormat.PFOR,
+                new PostingsFormat(4, PostingsFormat.Codec.GROUP_VARINT, true),
+                new PostingsFormat(PostingsFormat.DEFAULT_SKIP_INTERVAL, PostingsFormat.Codec.GROUP_VARINT, true),
+                new PostingsFormat(4, PostingsFormat.Codec.GROUP_VARINT, false, true),
+                new PostingsFormat(4, PostingsFormat.Codec.PFOR, true, true));
+    }
+
+    @ParameterizedTest
+    @MethodSource("formats")
+    void canAdvanceWithinPostingList(PostingsFormat format) throws IOException {
+        var file = Files.createTempFile("postingListReaderTest", ".bin");
+
+        // docIds are multiples of 3, followed by a short list to ensure lists don't interfere
+        int numDocs = 1000;
+        long ptr;
+        long otherPtr;
+        try (var writer = new PostingListWriter(new BufferedOutputStream(new FileOutputStream(file.toString(), false)), format)) {
+            ptr = writer.startTerm("common");
+            for (int i = 1; i <= numDocs; ++i) {
+                writer.add(i * 3, i % 7 + 1);
+            }
+            otherPtr = writer.startTerm("rare");
+            writer.add(5, 1);
+        }
+
+        var readers = List.of(
+                new PostingListReader(file.toString(), format),
+                PostingListReader.memoryMapped(file.toString(), format, LongStream.of(ptr, otherPtr).iterator())
+        );
+        for (var reader : readers) {
+            var cursor = reader.readPostings(ptr, numDocs);
+            assertEquals(3, cursor.advance(1));
+            assertEquals(1 % 7 + 1, cursor.freq());
+            // advancing to the current docId doesn't move the cursor
+            assertEquals(3, cursor.advance(3));
+            assertEquals(6, cursor.nextDoc());
+            assertEquals(300, cursor.advance(298));
+            assertEquals(100 % 7 + 1, cursor.freq());
+            assertEquals(303, cursor.nextDoc());
+            assertEquals(1500, cursor.advance(1500));
+            assertEquals(500 % 7 + 1, cursor.freq());
+            assertEquals(2001, cursor.advance(1999));
+            assertEquals(667 % 7 + 1, cursor.freq());
+            assertEquals(3000, cursor.advance(3000));
+            assertEquals(PostingsCursor.NO_MORE_DOCS, cursor.advance(3001));
+            assertEquals(PostingsCursor.NO_MORE_DOCS, cursor.nextDoc());
+
+            cursor = reader.readPostings(ptr, numDocs);
+            assertEquals(PostingsCursor.NO_MORE_DOCS, cursor.advance(5000));
+
+            cursor = reader.readPostings(otherPtr, 1);
+            assertEquals(5, cursor.advance(2));
+            assertEquals(PostingsCursor.NO_MORE_DOCS, cursor.advance(6));
+        }
+
+        Files.delete(file);
+    }
+
+    @ParameterizedTest
+    @MethodSource("formats")
+    void canReadFrequenciesOfSomeEntries(PostingsFormat format) throws IOException {
+        var file = Files.createTempFile("postingListReaderTest", ".bin");
+
+        int numDocs = 1000;
+        long ptr;
+        try (var writer = new PostingListWriter(new BufferedOutputStream(new FileOutputStream(file.toString(), false)), format)) {
+            ptr = writer.startTerm("common");
+            for (int i = 1; i <= numDocs; ++i) {
+                writer.add(i * 2, i % 5 + 1);
+            }
+        }
+
+        var reader = PostingListReader.memoryMapped(file.toString(), format, LongStream.of(ptr).iterator());
+        var cursor = reader.readPostings(ptr, numDocs);
+        int numSeen = 0;
+        for (int docId = cursor.nextDoc(); docId != PostingsCursor.NO_MORE_DOCS; docId = cursor.nextDoc()) {
+            ++numSeen;
+            assertEquals(numSeen * 2, docId);
+            // only ask for frequencies of a few entries, so most blocks' frequencies are never needed
+            if (numSeen % 300 == 0 || numSeen == numDocs) {
+                assertEquals(numSeen % 5 + 1, cursor.freq());
+            }
+        }
+        assertEquals(numDocs, numSeen);
+
+        Files.delete(file);
+    }
+
+    @ParameterizedTest
+    @MethodSource("formats")
+    void canShallowAdvanceToBlockMaxFrequencies(PostingsFormat format) throws IOException {
+        var file = Files.createTempFile("postingListReaderTest", ".bin");
+
+        // the frequency of the i-th entry is i, so the maximal frequency of a block is that of its last entry
+        int numDocs = 300;
+        long ptr;
+        try (var writer = new PostingListWriter(new BufferedOutputStream(new FileOutputStream(file.toString(), false)), format)) {
+            ptr = writer.startTerm("term");
+            for (int i = 1; i <= numDocs; ++i) {
+                writer.add(i * 10, i);
+            }
+        }
+
+        var reader = PostingListReader.memoryMapped(file.toString(), format, LongStream.of(ptr).iterator());
+        var cursor = reader.readPostings(ptr, numDocs);
+        assertEquals(10, cursor.nextDoc());
+        if (!format.hasBlockMaxFreqs()) {
+            assertEquals(Integer.MAX_VALUE, cursor.advanceShallow(2000));
+            assertEquals(Integer.MAX_VALUE, cursor.blockMaxFreq());
+            Files.delete(file);
+            return;
+        }
+        int interval = format.getSkipInterval();
+
+        // within the current block
+        assertEquals(interval * 10, cursor.advanceShallow(20));
+        assertEquals(interval, cursor.blockMaxFreq());
+
+        // the block containing docId 2000 is found without moving the cursor past the target
+        int lastOfBlock = ((200 + interval - 1) / interval) * interval;
+        assertEquals(lastOfBlock * 10, cursor.advanceShallow(2000));
+        assertEquals(lastOfBlock, cursor.blockMaxFreq());
+        assertEquals(2000, cursor.advance(2000));
+        assertEquals(200, cursor.freq());
+
+        // past the end of the list
+        assertEquals(Integer.MAX_VALUE, cursor.advanceShallow(numDocs * 10 + 1));
+        assertEquals(0, cursor.blockMaxFreq());
+
+        Files.delete(file);
+    }
+
+    @ParameterizedTest
+    @MethodSource("formats")
+    void canReadPositionsOfSomeEntries(PostingsFormat format) throws IOException {
+        format = format.withPositions();
+        var postingsFile = Files.createTempFile("postingListReaderTest", ".bin");
+        var positionsFile = Files.createTempFile("postingListReaderTest", ".pos");
+
+        // the i-th entry has i % 4 + 1 positions: i, 2i, 3i, ...
+        int numDocs = 500;
+        long ptr;
+        long positionsPtr;
+        long otherPtr;
+        long otherPositionsPtr;
+        try (var writer = new PostingListWriter(
+                new BufferedOutputStream(new FileOutputStream(postingsFile.toString(), false)),
+                new BufferedOutputStream(new FileOutputStream(positionsFile.toString(), false)),
+                format)) {
+            ptr = writer.startTerm("common");
+            positionsPtr = writer.getCurrentTermPositionsPointer();
+            for (int i = 1; i <= numDocs; ++i) {
+                int freq = i % 4 + 1;
+                int[] positions = new int[freq];
+                for (int j = 0; j < freq; ++j) {
+                    positions[j] = (j + 1) * i;
+                }
+                writer.add(i * 2, freq, positions);
+            }
+            otherPtr = writer.startTerm("rare");
+            otherPositionsPtr = writer.getCurrentTermPositionsPointer();
+            writer.add(7, 1, new int[]{0});
+        }
+
+        var reader = PostingListReader.memoryMapped(postingsFile.toString(), format, LongStream.of(ptr, otherPtr).iterator());
+        var positionsReader = PositionsReader.memoryMapped(positionsFile.toString(),
+                LongStream.of(positionsPtr, otherPositionsPtr).iterator());
+
+        var cursor = positionsReader.readPositions(reader.readPostings(ptr, numDocs), positionsPtr);
+        assertEquals(2, cursor.nextDoc());
+        assertEquals(1, cursor.nextPosition());
+        // the rest of the first entry's positions are skipped
+        assertEquals(300, cursor.advance(299));
+        assertEquals(150, cursor.nextPosition());
+        assertEquals(300, cursor.nextPosition());
+        assertEquals(450, cursor.nextPosition());
+        assertEquals(900, cursor.advance(900));
+        assertEquals(450, cursor.nextPosition());
+        assertEquals(900, cursor.nextPosition());
+
+        cursor = positionsReader.readPositions(reader.readPostings(otherPtr, 1), otherPositionsPtr);
+        assertEquals(7, cursor.nextDoc());
+        assertEquals(0, cursor.nextPosition());
+        assertEquals(PostingsCursor.NO_MORE_DOCS, cursor.nextDoc());
+
+        Files.delete(postingsFile);
+        Files.delete(positionsFile);
+    }
+
+    @Test
+    void arrayCursorCanAdvance() {
+        var cursor = new ArrayPostingsCursor(new int[]{2, 4, 8, 16, 32, 64}, new int[]{1, 2, 3, 4, 5, 6});
+        assertEquals(2, cursor.advance(1));
+        assertEquals(2, cursor.advance(2));
+        assertEquals(16, cursor.advance(9));
+        assertEquals(4, cursor.freq());
+        assertEquals(32, cursor.nextDoc());
+        assertEquals(64, cursor.advance(64));
+        assertEquals(PostingsCursor.NO_MORE_DOCS, cursor.advance(65));
+    }
+
+    private static <T> List<T> toList(java.util.Iterator<T> it) {
+        var list = new ArrayList<T>();
+        it.forEachRemaining(list::add);
+        return list;
+    }
+}
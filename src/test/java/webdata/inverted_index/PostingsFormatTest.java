@@ -0,0 +1,73 @@
+package webdata.inverted_index;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PostingsFormatTest {
+
+    @Test
+    void canSerializeAndDeserialize() throws IOException {
+        var formats = List.of(PostingsFormat.LEGACY, PostingsFormat.DEFAULT, PostingsFormat.PFOR,
+                new PostingsFormat(4, PostingsFormat.Codec.GROUP_VARINT, true),
+                new PostingsFormat(4, PostingsFormat.Codec.GROUP_VARINT, false, true),
+                PostingsFormat.DEFAULT.withPositions(), PostingsFormat.LEGACY.withPositions());
+        for (var format : formats) {
+            var os = new ByteArrayOutputStream();
+            format.serialize(new DataOutputStream(os));
+            var deserialized = PostingsFormat.deserialize(new DataInputStream(new ByteArrayInputStream(os.toByteArray())));
+            assertEquals(format, deserialized);
+        }
+    }
+
+    @Test
+    void canDeserializeOlderVersions() throws IOException {
+        var os = new ByteArrayOutputStream();
+        var dos = new DataOutputStream(os);
+        dos.writeInt(1);
+        dos.writeInt(128);
+        assertEquals(new PostingsFormat(128),
+                PostingsFormat.deserialize(new DataInputStream(new ByteArrayInputStream(os.toByteArray()))));
+
+        os.reset();
+        dos.writeInt(2);
+        dos.writeInt(128);
+        dos.writeInt(PostingsFormat.Codec.PFOR.ordinal());
+        assertEquals(new PostingsFormat(128, PostingsFormat.Codec.PFOR),
+                PostingsFormat.deserialize(new DataInputStream(new ByteArrayInputStream(os.toByteArray()))));
+
+        os.reset();
+        dos.writeInt(3);
+        dos.writeInt(128);
+        dos.writeInt(PostingsFormat.Codec.GROUP_VARINT.ordinal());
+        dos.writeBoolean(true);
+        assertEquals(new PostingsFormat(128, PostingsFormat.Codec.GROUP_VARINT, true),
+                PostingsFormat.deserialize(new DataInputStream(new ByteArrayInputStream(os.toByteArray()))));
+
+        os.reset();
+        dos.writeInt(4);
+        dos.writeInt(128);
+        dos.writeInt(PostingsFormat.Codec.GROUP_VARINT.ordinal());
+        dos.writeBoolean(false);
+        dos.writeBoolean(true);
+        assertEquals(PostingsFormat.DEFAULT,
+                PostingsFormat.deserialize(new DataInputStream(new ByteArrayInputStream(os.toByteArray()))));
+    }
+
+    @Test
+    void rejectsInvalidFormats() {
+        assertThrows(IllegalArgumentException.class, () -> new PostingsFormat(3));
+        assertThrows(IllegalArgumentException.class, () -> new PostingsFormat(0, PostingsFormat.Codec.PFOR));
+        assertThrows(IllegalArgumentException.class,
+                () -> new PostingsFormat(0, PostingsFormat.Codec.GROUP_VARINT, true));
+        assertThrows(IllegalArgumentException.class,
+                () -> new PostingsFormat(0, PostingsFormat.Codec.GROUP_VARINT, false, true));
+    }
+}
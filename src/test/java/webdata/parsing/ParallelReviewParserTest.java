@@ -0,0 +1,123 @@
+package webdata.parsing;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelReviewParserTest {
+
+    static final Charset DATASET_ENCODING = StandardCharsets.ISO_8859_1;
+    static final Path DATASET = Path.of("datasets", "1000.txt");
+
+    private static Stream<Arguments> provideChunkSizesAndThreads() {
+        return Stream.of(
+                Arguments.of(1, 1),
+                Arguments.of(1, 4),
+                Arguments.of(4096, 3),
+                Arguments.of(100000, 2),
+                Arguments.of(ParallelReviewParser.DEFAULT_CHUNK_SIZE, 4)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("provideChunkSizesAndThreads")
+    void parsesSameReviewsInOrder(int chunkSize, int numThreads) throws IOException {
+        List<Review> expected;
+        try (var stream = new LinesMemoryParser().parse(DATASET, DATASET_ENCODING)) {
+            expected = stream.collect(Collectors.toList());
+        }
+        List<Review> parsed;
+        try (var stream = new ParallelReviewParser(DATASET_ENCODING, chunkSize, numThreads).parse(DATASET)) {
+            parsed = stream.collect(Collectors.toList());
+        }
+        assertEquals(1000, parsed.size());
+        assertIterableEquals(expected, parsed);
+    }
+
+    @Test
+    void chunksBeginAtReviews() throws IOException {
+        var file = Files.createTempFile("reviews", ".txt");
+        // the second review's text mentions a product ID, and lines end with CRLF
+        var content = "product/productId: B000000001\r\nreview/helpfulness: 1/2\r\nreview/score: 5.0\r\n" +
+                "review/text: great product/productId: B000000003\r\n\r\n" +
+                "product/productId: B000000002\r\nreview/helpfulness: 0/0\r\nreview/score: 2.0\r\n" +
+                "review/text: bad\r\n";
+        Files.writeString(file, content, DATASET_ENCODING);
+        try {
+            try (var channel = FileChannel.open(file)) {
+                var starts = ParallelReviewParser.findChunkStarts(channel, 8);
+                assertArrayEquals(new long[]{0, content.indexOf("product/productId: B000000002"), content.length()},
+                        starts);
+            }
+            try (var stream = new ParallelReviewParser(DATASET_ENCODING, 8, 2).parse(file)) {
+                var reviews = stream.collect(Collectors.toList());
+                assertEquals(2, reviews.size());
+                assertEquals("B000000001", reviews.get(0).getProductId());
+                assertEquals(5, reviews.get(0).getScore());
+                assertEquals(2, reviews.get(0).getHelpfulnessDenominator());
+                assertEquals(4, reviews.get(0).getTotalNumberOfTokens());
+                assertEquals("B000000002", reviews.get(1).getProductId());
+                assertEquals(2, reviews.get(1).getScore());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void collectsPositionsOnlyWhenRequested() throws IOException {
+        List<Review> reviews;
+        try (var stream = new ParallelReviewParser(DATASET_ENCODING, 4096, 2).parse(DATASET)) {
+            reviews = stream.limit(50).collect(Collectors.toList());
+        }
+        List<Review> positionalReviews;
+        try (var stream = new ParallelReviewParser(DATASET_ENCODING, 4096, 2, true).parse(DATASET)) {
+            positionalReviews = stream.limit(50).collect(Collectors.toList());
+        }
+        for (int i = 0; i < reviews.size(); ++i) {
+            var review = reviews.get(i);
+            var positionalReview = positionalReviews.get(i);
+            review.assignDocId(i + 1);
+            positionalReview.assignDocId(i + 1);
+            assertThrows(IllegalStateException.class, review::uniqueTokensWithPositions);
+
+            var tokens = review.uniqueTokens().collect(Collectors.toSet());
+            assertEquals(tokens, positionalReview.uniqueTokens().collect(Collectors.toSet()));
+            var positionalTokens = positionalReview.uniqueTokensWithPositions().collect(Collectors.toList());
+            assertEquals(tokens.size(), positionalTokens.size());
+            int numPositions = 0;
+            for (var token : positionalTokens) {
+                var positions = token.getPositions();
+                assertEquals(token.getDocFrequency(), positions.length);
+                for (int j = 1; j < positions.length; ++j) {
+                    assertTrue(positions[j - 1] < positions[j]);
+                }
+                numPositions += positions.length;
+            }
+            assertEquals(review.getTotalNumberOfTokens(), numPositions);
+        }
+    }
+
+    @Test
+    void canParseEmptyFile() throws IOException {
+        var file = Files.createTempFile("reviews", ".txt");
+        try (var stream = new ParallelReviewParser(DATASET_ENCODING).parse(file)) {
+            assertEquals(0, stream.count());
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
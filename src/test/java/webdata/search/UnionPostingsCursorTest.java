@@ -0,0 +1,86 @@
+package webdata.search;
+
+import org.junit.jupiter.api.Test;
+import webdata.inverted_index.ArrayPostingsCursor;
+import webdata.inverted_index.PostingsCursor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UnionPostingsCursorTest {
+
+    private static List<PostingsCursor> randomLists(Random random, int numLists, TreeMap<Integer, Integer> expected) {
+        var cursors = new ArrayList<PostingsCursor>();
+        for (int list = 0; list < numLists; ++list) {
+            var docs = random.ints(random.nextInt(200), 1, 2000).distinct().sorted().toArray();
+            var freqs = new int[docs.length];
+            for (int i = 0; i < docs.length; ++i) {
+                freqs[i] = 1 + random.nextInt(5);
+                expected.merge(docs[i], freqs[i], Integer::sum);
+            }
+            cursors.add(new ArrayPostingsCursor(docs, freqs));
+        }
+        return cursors;
+    }
+
+    @Test
+    void mergesListsAndSumsFrequencies() {
+        var random = new Random(1337);
+        for (int numLists : new int[]{0, 1, 2, 7, 50}) {
+            var expected = new TreeMap<Integer, Integer>();
+            var union = new UnionPostingsCursor(randomLists(random, numLists, expected));
+            assertEquals(0, union.docId());
+
+            for (var entry : expected.entrySet()) {
+                assertEquals(entry.getKey(), union.nextDoc());
+                assertEquals(entry.getValue(), union.freq());
+            }
+            assertEquals(PostingsCursor.NO_MORE_DOCS, union.nextDoc());
+            assertEquals(PostingsCursor.NO_MORE_DOCS, union.nextDoc());
+        }
+    }
+
+    @Test
+    void canAdvance() {
+        var random = new Random(42);
+        var expected = new TreeMap<Integer, Integer>();
+        var union = new UnionPostingsCursor(randomLists(random, 10, expected));
+
+        for (int target = 1 + random.nextInt(50); ; target += 1 + random.nextInt(50)) {
+            var entry = expected.ceilingEntry(target);
+            int doc = union.advance(target);
+            if (entry == null) {
+                assertEquals(PostingsCursor.NO_MORE_DOCS, doc);
+                break;
+            }
+            assertEquals(entry.getKey(), doc);
+            assertEquals(entry.getValue(), union.freq());
+            // advancing to a target before the current document doesn't move the cursor
+            assertEquals(doc, union.advance(target));
+            if (random.nextBoolean()) {
+                var next = expected.higherEntry(doc);
+                assertEquals(next == null ? PostingsCursor.NO_MORE_DOCS : next.getKey(), union.nextDoc());
+                if (next == null) {
+                    break;
+                }
+                target = next.getKey();
+            }
+        }
+    }
+
+    @Test
+    void sizeBoundsNumberOfEntries() {
+        var union = new UnionPostingsCursor(List.of(
+                new ArrayPostingsCursor(new int[]{1, 5, 9}, new int[]{1, 2, 3}),
+                new ArrayPostingsCursor(new int[]{5, 10}, new int[]{4, 1})
+        ));
+        assertEquals(5, union.size());
+        assertEquals(1, union.advance(1));
+        assertEquals(5, union.nextDoc());
+        assertEquals(6, union.freq());
+    }
+}
@@ -0,0 +1,248 @@
+package webdata.spimi;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import webdata.Token;
+import webdata.Utils;
+import webdata.dictionary.Dictionary;
+import webdata.inverted_index.PostingsFormat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SPIMIIndexerTest {
+
+    /** Tokens of numDocs documents, each having a few distinct terms out of a small vocabulary */
+    private static List<Token> randomTokens(int numDocs, boolean withPositions) {
+        var random = new Random(1337);
+        var tokens = new ArrayList<Token>();
+        for (int docId = 1; docId <= numDocs; ++docId) {
+            int numTerms = 1 + random.nextInt(20);
+            int firstTerm = random.nextInt(1000);
+            for (int i = 0; i < numTerms; ++i) {
+                var term = "term" + (firstTerm + i * 7) % 1000;
+                int freq = 1 + random.nextInt(3);
+                int[] positions = null;
+                if (withPositions) {
+                    positions = new int[freq];
+                    for (int j = 0; j < freq; ++j) {
+                        positions[j] = i * 10 + j;
+                    }
+                }
+                tokens.add(new Token(term, docId, freq, positions));
+            }
+        }
+        return tokens;
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3, 8})
+    void indexesSameTokensWithAnyNumberOfThreads(int numThreads) throws IOException {
+        for (boolean withPositions : new boolean[]{false, true}) {
+            var tokens = randomTokens(5000, withPositions);
+            var format = withPositions ? PostingsFormat.DEFAULT.withPositions() : PostingsFormat.DEFAULT;
+            var dir = Files.createTempDirectory("testSPIMIIndexer");
+
+            new SPIMIIndexer(dir, format, Dictionary.DEFAULT_BLOCK_SIZE, numThreads).processTokens(tokens.stream());
+
+            var dict = new Dictionary(dir.toString());
+            tokens.sort(Comparator.comparing(Token::getTerm).thenComparing(Token::getDocID));
+            var gottenTokens = StreamSupport.stream(dict.tokens(), false).collect(Collectors.toList());
+            assertIterableEquals(tokens, gottenTokens);
+
+            Utils.deleteDirectory(dir);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 3})
+    void temporaryIndicesCoverConsecutiveRangesOfDocuments(int numThreads) throws IOException {
+        // enough documents for several batches per worker
+        var tokens = randomTokens(8000, false);
+        var dir = Files.createTempDirectory("testSPIMIIndexer");
+        var indexer = new SPIMIIndexer(dir, PostingsFormat.DEFAULT, Dictionary.DEFAULT_BLOCK_SIZE, numThreads,
+                16 * 1024);
+        indexer.processTokens(tokens.stream());
+
+        int numIndices = 0;
+        int numTokens = 0;
+        int lastDocId = 0;
+        while (Files.exists(indexer.pathForBlock(numIndices + 1))) {
+            var dict = new Dictionary(indexer.pathForBlock(++numIndices).toString(), 0);
+            var docIds = StreamSupport.stream(dict.tokens(), false)
+                    .mapToInt(Token::getDocID)
+                    .sorted()
+                    .toArray();
+            // whole documents, following those of the previous index
+            assertEquals(lastDocId + 1, docIds[0]);
+            assertEquals(docIds.length, (int) tokens.stream()
+                    .filter(token -> token.getDocID() >= docIds[0] && token.getDocID() <= docIds[docIds.length - 1])
+                    .count());
+            lastDocId = docIds[docIds.length - 1];
+            numTokens += docIds.length;
+        }
+        assertTrue(numIndices > 2 * numThreads, "got " + numIndices + " temporary indices");
+        assertEquals(tokens.size(), numTokens);
+
+        Utils.deleteDirectory(dir);
+    }
+
+    @Test
+    void failingWorkerFailsIndexing() throws IOException {
+        var tokensByDocument = randomTokens(3000, false).stream().collect(Collectors.groupingBy(Token::getDocID));
+        var dir = Files.createTempDirectory("testSPIMIIndexer");
+        var indexer = new SPIMIIndexer(dir, PostingsFormat.DEFAULT, Dictionary.DEFAULT_BLOCK_SIZE, 3, 16 * 1024);
+        var documents = IntStream.rangeClosed(1, 3000).boxed();
+        // the other workers wait for the failed batch to be appended before appending theirs, and must not hang
+        var ex = assertThrows(RuntimeException.class, () -> indexer.processDocuments(documents, docId -> {
+            if (docId == 1000) {
+                throw new IllegalStateException("Can't tokenize document " + docId);
+            }
+            return tokensByDocument.get(docId).stream();
+        }));
+        assertTrue(ex.getCause() instanceof IllegalStateException, "got " + ex);
+
+        Utils.deleteDirectory(dir);
+    }
+
+    /** Inverts the tokens into numIndices temporary indices of the indexer, either as consecutive ranges of
+     *  documents or with documents dealt to the indices in turn */
+    private static void invertTemporaryIndices(SPIMIIndexer indexer, List<Token> tokens, int numIndices,
+                                               boolean interleaved, boolean withPositions) throws IOException {
+        int maxDocId = tokens.get(tokens.size() - 1).getDocID();
+        for (int i = 1; i <= numIndices; ++i) {
+            int indexNum = i;
+            var indexTokens = tokens.stream()
+                    .filter(token -> interleaved
+                            ? token.getDocID() % numIndices == indexNum - 1
+                            : (long) (token.getDocID() - 1) * numIndices / maxDocId == indexNum - 1)
+                    .collect(Collectors.toList());
+            Files.createDirectories(indexer.pathForBlock(i));
+            new TemporaryIndexBuilder(withPositions).invert(indexTokens.iterator(), indexer.pathForBlock(i));
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void termLevelMergeMatchesTokenMerge(boolean withPositions) throws IOException {
+        var tokens = randomTokens(3000, withPositions);
+        var format = withPositions ? PostingsFormat.DEFAULT.withPositions() : PostingsFormat.DEFAULT;
+        var expected = new ArrayList<>(tokens);
+        expected.sort(Comparator.comparing(Token::getTerm).thenComparing(Token::getDocID));
+
+        for (boolean interleaved : new boolean[]{false, true}) {
+            var termsDir = Files.createTempDirectory("testSPIMIMerge");
+            var termsIndexer = new SPIMIIndexer(termsDir, format);
+            invertTemporaryIndices(termsIndexer, tokens, 5, interleaved, withPositions);
+            termsIndexer.merge(5);
+
+            var tokensDir = Files.createTempDirectory("testSPIMIMerge");
+            var tokensIndexer = new SPIMIIndexer(tokensDir, format);
+            invertTemporaryIndices(tokensIndexer, tokens, 5, interleaved, withPositions);
+            TokenHeapMerge.merge(tokensIndexer, tokensDir, format, 5);
+
+            var termsDict = new Dictionary(termsDir.toString());
+            var tokensDict = new Dictionary(tokensDir.toString());
+            assertIterableEquals(expected, StreamSupport.stream(termsDict.tokens(), false).collect(Collectors.toList()));
+            assertIterableEquals(expected, StreamSupport.stream(tokensDict.tokens(), false).collect(Collectors.toList()));
+            assertEquals(tokensDict.getUniqueNumberOfTokens(), termsDict.getUniqueNumberOfTokens());
+            assertEquals(tokensDict.getTotalNumberOfTokens(), termsDict.getTotalNumberOfTokens());
+
+            Utils.deleteDirectory(termsDir);
+            Utils.deleteDirectory(tokensDir);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void mergesTemporaryIndicesSharingADocument(boolean duplicateToken) throws IOException {
+        var tokens = randomTokens(2000, false);
+        // the tokens of a document in the middle are split between the two temporary indices
+        int split = tokens.size() / 2;
+        while (tokens.get(split - 1).getDocID() != tokens.get(split).getDocID()) {
+            ++split;
+        }
+        var firstTokens = new ArrayList<>(tokens.subList(0, split));
+        var secondTokens = new ArrayList<>(tokens.subList(split, tokens.size()));
+        if (duplicateToken) {
+            // a term of the shared document appears in both indices
+            var token = firstTokens.get(split - 1);
+            secondTokens.add(0, new Token(token.getTerm(), token.getDocID(), 2));
+        }
+
+        var termsDir = Files.createTempDirectory("testSPIMIMerge");
+        var termsIndexer = new SPIMIIndexer(termsDir, PostingsFormat.DEFAULT);
+        var tokensDir = Files.createTempDirectory("testSPIMIMerge");
+        var tokensIndexer = new SPIMIIndexer(tokensDir, PostingsFormat.DEFAULT);
+        for (var indexer : List.of(termsIndexer, tokensIndexer)) {
+            for (int i = 1; i <= 2; ++i) {
+                Files.createDirectories(indexer.pathForBlock(i));
+                new TemporaryIndexBuilder().invert((i == 1 ? firstTokens : secondTokens).iterator(),
+                        indexer.pathForBlock(i));
+            }
+        }
+        termsIndexer.merge(2);
+        TokenHeapMerge.merge(tokensIndexer, tokensDir, PostingsFormat.DEFAULT, 2);
+
+        var termsDict = new Dictionary(termsDir.toString());
+        var tokensDict = new Dictionary(tokensDir.toString());
+        var mergedTokens = StreamSupport.stream(termsDict.tokens(), false).collect(Collectors.toList());
+        assertIterableEquals(StreamSupport.stream(tokensDict.tokens(), false).collect(Collectors.toList()),
+                mergedTokens);
+        // the duplicate token is merged into the posting of the first one
+        assertEquals(tokens.size(), mergedTokens.size());
+        assertEquals(tokensDict.getTotalNumberOfTokens(), termsDict.getTotalNumberOfTokens());
+
+        Utils.deleteDirectory(termsDir);
+        Utils.deleteDirectory(tokensDir);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {2, 3, 16})
+    void parallelMergeMatchesSequentialMerge(int numThreads) throws IOException {
+        for (boolean withPositions : new boolean[]{false, true}) {
+            var tokens = randomTokens(4000, withPositions);
+            var format = withPositions ? PostingsFormat.DEFAULT.withPositions() : PostingsFormat.DEFAULT;
+            var expected = new ArrayList<>(tokens);
+            expected.sort(Comparator.comparing(Token::getTerm).thenComparing(Token::getDocID));
+
+            var dir = Files.createTempDirectory("testSPIMIParallelMerge");
+            var indexer = new SPIMIIndexer(dir, format, 3, numThreads);
+            invertTemporaryIndices(indexer, tokens, 4, false, withPositions);
+            indexer.merge(4);
+            // the terms were merged in several segments
+            assertTrue(Files.exists(indexer.pathForBlock(1).resolveSibling("segment1")));
+
+            var dict = new Dictionary(dir.toString());
+            assertEquals(3, dict.getBlockSize());
+            assertIterableEquals(expected, StreamSupport.stream(dict.tokens(), false).collect(Collectors.toList()));
+            assertEquals(tokens.stream().mapToInt(Token::getDocFrequency).sum(), dict.getTotalNumberOfTokens());
+            var terms = expected.stream().map(Token::getTerm).distinct().collect(Collectors.toList());
+            assertEquals(terms.size(), dict.getUniqueNumberOfTokens());
+            for (int i = 0; i < terms.size(); ++i) {
+                assertEquals(i, dict.getIndexOfToken(terms.get(i)));
+            }
+
+            Utils.deleteDirectory(dir);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, -1})
+    void cannotUseNonPositiveNumberOfThreads(int numThreads) throws IOException {
+        var dir = Files.createTempDirectory("testSPIMIIndexer");
+        assertThrows(IllegalArgumentException.class, () ->
+                new SPIMIIndexer(dir, PostingsFormat.DEFAULT, Dictionary.DEFAULT_BLOCK_SIZE, numThreads));
+        Utils.deleteDirectory(dir);
+    }
+}
@@ -0,0 +1,88 @@
+package webdata.spimi;
+
+import webdata.Token;
+import webdata.Utils;
+import webdata.dictionary.Dictionary;
+import webdata.inverted_index.PostingsFormat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.TreeSet;
+
+/** Compares merging temporary indices term by term({@link SPIMIIndexer#merge(int)}, on different numbers of threads)
+ *  with merging all of their tokens through a heap({@link TokenHeapMerge}). The temporary indices cover consecutive ranges of
+ *  documents(as when inverted on a single thread), whose terms are drawn from a Zipf-like distribution.
+ */
+public class SPIMIMergeBenchmark {
+
+    static final int NUM_INDICES = 8;
+    static final int DOCS_PER_INDEX = 8000;
+    static final int TERMS_PER_DOC = 40;
+    static final int VOCABULARY_SIZE = 50000;
+    static final int WARMUP_COUNT = 2;
+    static final int REPEAT_COUNT = 3;
+    static final int[] NUM_THREADS = {1, 2, 4, 8};
+
+    public static void main(String[] args) throws IOException {
+        var dir = Files.createTempDirectory("spimiMergeBenchmark");
+        var indexer = new SPIMIIndexer(dir, PostingsFormat.DEFAULT);
+        var random = new Random(42);
+        long numPostings = 0;
+        for (int i = 1; i <= NUM_INDICES; ++i) {
+            Files.createDirectories(indexer.pathForBlock(i));
+            var builder = new TemporaryIndexBuilder();
+            builder.invert(randomTokens(random, (i - 1) * DOCS_PER_INDEX + 1), indexer.pathForBlock(i));
+            numPostings += builder.totalNumberOfTokens;
+        }
+        Utils.log("Created %d temporary indices with %,d postings", NUM_INDICES, numPostings);
+
+        for (int numThreads : NUM_THREADS) {
+            // the temporary indices of all indexers are those created above, since they share the directory
+            var threadsIndexer = new SPIMIIndexer(dir, PostingsFormat.DEFAULT, Dictionary.DEFAULT_BLOCK_SIZE,
+                    numThreads);
+            for (int i = 0; i < WARMUP_COUNT; ++i) {
+                threadsIndexer.merge(NUM_INDICES);
+            }
+            long termsNs = 0;
+            for (int i = 0; i < REPEAT_COUNT; ++i) {
+                long start = System.nanoTime();
+                threadsIndexer.merge(NUM_INDICES);
+                termsNs += System.nanoTime() - start;
+            }
+            Utils.log("Merging term by term on %d threads took %.0f ms, %.0f ns per posting", numThreads,
+                    termsNs / 1e6 / REPEAT_COUNT, (double) termsNs / REPEAT_COUNT / numPostings);
+        }
+
+        for (int i = 0; i < WARMUP_COUNT; ++i) {
+            TokenHeapMerge.merge(indexer, dir, PostingsFormat.DEFAULT, NUM_INDICES);
+        }
+        long tokensNs = 0;
+        for (int i = 0; i < REPEAT_COUNT; ++i) {
+            long start = System.nanoTime();
+            TokenHeapMerge.merge(indexer, dir, PostingsFormat.DEFAULT, NUM_INDICES);
+            tokensNs += System.nanoTime() - start;
+        }
+        Utils.log("Merging token by token took %.0f ms, %.0f ns per posting",
+                tokensNs / 1e6 / REPEAT_COUNT, (double) tokensNs / REPEAT_COUNT / numPostings);
+        Utils.deleteDirectory(dir);
+    }
+
+    /** Tokens of DOCS_PER_INDEX documents beginning at the given docId */
+    private static Iterator<Token> randomTokens(Random random, int firstDocId) {
+        var tokens = new ArrayList<Token>();
+        for (int docId = firstDocId; docId < firstDocId + DOCS_PER_INDEX; ++docId) {
+            var terms = new TreeSet<Integer>();
+            while (terms.size() < TERMS_PER_DOC) {
+                // roughly Zipf distributed, rank r is drawn with probability ~ 1/r
+                terms.add((int) Math.pow(VOCABULARY_SIZE, random.nextDouble()));
+            }
+            for (int term : terms) {
+                tokens.add(new Token("term" + term, docId, 1 + random.nextInt(3)));
+            }
+        }
+        return tokens.iterator();
+    }
+}
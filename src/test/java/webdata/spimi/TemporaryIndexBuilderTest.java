@@ -11,9 +11,11 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -47,4 +49,129 @@ class TemporaryIndexBuilderTest {
 
         Utils.deleteDirectory(dictPath);
     }
-}
\ No newline at end of file
+
+    @Test
+    void invertWithPositions() throws IOException  {
+        var spimi = new TemporaryIndexBuilder(true);
+
+        var tokens = Stream.of(
+                new Token("hello", 1, 3, new int[]{0, 2, 7}),
+                new Token("shalom", 1 , 2, new int[]{1, 300}),
+                new Token("bye", 2, 1, new int[]{5}),
+                new Token("bang", 2, 4, new int[]{0, 1, 2, 3}),
+                new Token("bang", 3, 2, new int[]{1000, 100000})
+        ).collect(Collectors.toList());
+
+        var dictPath = Files.createTempDirectory("testSPIMIInvertWithPositions");
+
+        spimi.invert(tokens.iterator(), dictPath);
+
+        var dict = new Dictionary(dictPath.toString());
+        assertTrue(dict.getPostingsFormat().hasPositions());
+
+        tokens.sort(Comparator.comparing(Token::getTerm).thenComparing(Token::getDocID));
+        var gottenTokens = StreamSupport.stream(dict.tokens(), false).collect(Collectors.toList());
+        assertIterableEquals(tokens, gottenTokens);
+
+        Utils.deleteDirectory(dictPath);
+    }
+
+    /** Inverts the tokens into temporary indices of at most the given budget, returning the number of terms in
+     *  every one of them, and checking they contain all tokens */
+    private static List<Integer> invertWithBudget(List<Token> tokens, long budget) throws IOException {
+        var spimi = new TemporaryIndexBuilder(false, budget);
+        var runSizes = new ArrayList<Integer>();
+        var gottenTokens = new ArrayList<Token>();
+        var it = tokens.iterator();
+        while (it.hasNext()) {
+            var dictPath = Files.createTempDirectory("testSPIMIBudget");
+            spimi.invert(it, dictPath);
+            // the budget is crossed by the last token of a run, which adds a term or grows a single posting list
+            assertTrue(spimi.getMemoryUsedBytes() < 2 * budget);
+            if (it.hasNext()) {
+                assertTrue(spimi.getMemoryUsedBytes() >= budget);
+            }
+            var dict = new Dictionary(dictPath.toString());
+            runSizes.add(dict.getUniqueNumberOfTokens());
+            StreamSupport.stream(dict.tokens(), false).forEach(gottenTokens::add);
+            Utils.deleteDirectory(dictPath);
+        }
+        gottenTokens.sort(Comparator.comparing(Token::getDocID).thenComparing(Token::getTerm));
+        assertIterableEquals(tokens, gottenTokens);
+        return runSizes;
+    }
+
+    @Test
+    void flushesOnceMemoryBudgetIsUsed() throws IOException {
+        var tokens = new ArrayList<Token>();
+        for (int docId = 1; docId <= 2000; ++docId) {
+            for (int term = docId % 7; term < 300; term += 7) {
+                tokens.add(new Token(String.format("term%03d", term), docId, 1 + term % 3));
+            }
+        }
+        tokens.sort(Comparator.comparing(Token::getDocID).thenComparing(Token::getTerm));
+
+        var runSizes = invertWithBudget(tokens, 32 * 1024);
+        assertTrue(runSizes.size() > 1, "got " + runSizes.size() + " runs");
+        // the runs only depend on the tokens and the budget
+        assertIterableEquals(runSizes, invertWithBudget(tokens, 32 * 1024));
+        assertEquals(List.of(300), invertWithBudget(tokens, 1L << 30));
+
+        assertThrows(IllegalArgumentException.class, () -> new TemporaryIndexBuilder(false, 0));
+    }
+
+    @Test
+    void appendedBatchesMatchASingleRun() throws IOException {
+        for (boolean withPositions : new boolean[]{false, true}) {
+            var tokens = new ArrayList<Token>();
+            for (int docId = 1; docId <= 300; ++docId) {
+                for (int i = docId % 5; i < 40; i += 5) {
+                    int term = i;
+                    int freq = 1 + (docId + term) % 3;
+                    int[] positions = withPositions ? IntStream.range(0, freq).map(p -> 1000 * p + term).toArray()
+                            : null;
+                    tokens.add(new Token("term" + term, docId, freq, positions));
+                }
+            }
+
+            var run = new TemporaryIndexBuilder(withPositions, 1L << 30);
+            var batch = new TemporaryIndexBuilder(withPositions, 1L << 30);
+            // batches of different sizes, the last of which has no tokens
+            for (var batchDocs : List.of(List.of(1, 2), List.of(3, 100), List.of(101, 101), List.of(102, 300),
+                    List.of(301, 400))) {
+                batch.addTokens(tokens.stream().filter(token -> token.getDocID() >= batchDocs.get(0)
+                        && token.getDocID() <= batchDocs.get(1)));
+                run.append(batch);
+                assertTrue(batch.isEmpty());
+            }
+            assertFalse(run.isEmpty());
+            assertEquals(tokens.size(), run.curNumberOfTokens);
+
+            var dictPath = Files.createTempDirectory("testSPIMIAppend");
+            run.writeRun(dictPath);
+            var dict = new Dictionary(dictPath.toString());
+            tokens.sort(Comparator.comparing(Token::getTerm).thenComparing(Token::getDocID));
+            assertIterableEquals(tokens, StreamSupport.stream(dict.tokens(), false).collect(Collectors.toList()));
+            assertArrayEquals(new int[]{1, 300}, TemporaryIndexBuilder.readDocRange(dictPath));
+            Utils.deleteDirectory(dictPath);
+        }
+    }
+
+    @Test
+    void countsTermCharactersAsStoredByStrings() throws IOException {
+        assertEquals(3, TemporaryIndexBuilder.charactersBytes("abc"));
+        assertEquals(3, TemporaryIndexBuilder.charactersBytes("\u00e9t\u00e9"));
+        assertEquals(6, TemporaryIndexBuilder.charactersBytes("\u05e9\u05dc\u05d5"));
+        assertEquals(8, TemporaryIndexBuilder.charactersBytes("ab\u4e2dd"));
+
+        var usedBytes = new ArrayList<Long>();
+        for (var term : List.of("abc", "\u05e9\u05dc\u05d5")) {
+            var spimi = new TemporaryIndexBuilder(false, 1L << 30);
+            var dictPath = Files.createTempDirectory("testSPIMITermBytes");
+            spimi.invert(List.of(new Token(term, 1, 1)).iterator(), dictPath);
+            usedBytes.add(spimi.getMemoryUsedBytes());
+            Utils.deleteDirectory(dictPath);
+        }
+        assertEquals(3, usedBytes.get(1) - usedBytes.get(0));
+    }
+}
@@ -0,0 +1,47 @@
+package webdata.spimi;
+
+import webdata.Token;
+import webdata.dictionary.Dictionary;
+import webdata.dictionary.SequentialDictionaryBuilder;
+import webdata.inverted_index.PostingsFormat;
+import webdata.sorting.ExternalSorter;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Spliterator;
+
+/** Reference implementation of {@link SPIMIIndexer#merge(int)}, which merges all tokens of the temporary indices
+ *  (ordered by term and docID) through a single heap. Used by tests to check the term by term merge, and by
+ *  {@link SPIMIMergeBenchmark} to compare with it. */
+class TokenHeapMerge {
+
+    /** Merges the temporary indices of the given indexer into a final index in the given directory
+     * @param indexer Indexer whose temporary indices were written
+     * @param dir Directory of the final index
+     * @param postingsFormat Format of the final index
+     * @param numIndices Number of temporary indices
+     */
+    static void merge(SPIMIIndexer indexer, Path dir, PostingsFormat postingsFormat, int numIndices)
+            throws IOException {
+        var tokenSplits = new ArrayList<Spliterator<Token>>();
+        for (int i = 1; i <= numIndices; ++i) {
+            var dict = new Dictionary(indexer.pathForBlock(i).toString(), 0);
+            tokenSplits.add(dict.tokens());
+        }
+
+        var mergedStream = ExternalSorter.merge(tokenSplits,
+                Comparator.comparing(Token::getTerm).thenComparing(Token::getDocID));
+
+        try (var finalDictBuilder = new SequentialDictionaryBuilder(dir.toString(), postingsFormat)) {
+            mergedStream.forEachRemaining(token -> {
+                try {
+                    finalDictBuilder.addToken(token);
+                } catch (IOException ex) {
+                    throw new RuntimeException("IO error while building dictionary", ex);
+                }
+            });
+        }
+    }
+}